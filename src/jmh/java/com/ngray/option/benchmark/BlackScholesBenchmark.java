@@ -0,0 +1,102 @@
+package com.ngray.option.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.EuropeanOptionPricingContext;
+
+/**
+ * Benchmarks of the Black-Scholes price and greeks of a single option, comparing the individual
+ * calcXXX methods with the single pass evaluation
+ * @author nigelgray
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BlackScholesBenchmark {
+
+	@Param({ "CALL", "PUT" })
+	private Type callOrPut;
+
+	// fields rather than constants, so the JIT can't fold the calculations away
+	private double spot = 7275.0;
+	private double strike = 7300.0;
+	private double volatility = 0.15;
+	private double timeToExpiry = 0.25;
+	private double riskFreeRate = 0.01;
+	private double dividendYield = 0.02;
+
+	private EuropeanOptionPricingContext context;
+	private BlackScholesResult result;
+
+	@Setup
+	public void setup() throws MissingReferenceDataException {
+		Security underlying = new Security("BenchmarkUnderlying");
+		LocalDate valueDate = LocalDate.of(2017, 5, 16);
+		LocalDate expiryDate = valueDate.plusDays(91);
+		String identifier = "BlackScholesBenchmark" + callOrPut;
+		OptionReferenceDataMap.insert(identifier,
+				new OptionReferenceData(identifier, underlying, strike, expiryDate, callOrPut, dividendYield, riskFreeRate));
+		context = EuropeanOptionPricingContext.compile(new EuropeanOption(identifier, underlying, strike, expiryDate, callOrPut), valueDate);
+		result = new BlackScholesResult();
+	}
+
+	@Benchmark
+	public double price() {
+		return callOrPut == Type.CALL ?
+				BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield) :
+				BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+	}
+
+	@Benchmark
+	public void priceAndGreeksSeparately(Blackhole blackhole) {
+		if (callOrPut == Type.CALL) {
+			blackhole.consume(BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcCallOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcCallOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcCallOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+		} else {
+			blackhole.consume(BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcPutOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcPutOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+			blackhole.consume(BlackScholesModel.calcPutOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+		}
+		blackhole.consume(BlackScholesModel.calcOptionGamma(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+		blackhole.consume(BlackScholesModel.calcOptionVega(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+	}
+
+	@Benchmark
+	public BlackScholesResult priceAndGreeks() {
+		return BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+	}
+
+	@Benchmark
+	public BlackScholesResult priceAndGreeksFromContext() {
+		return BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, result);
+	}
+}
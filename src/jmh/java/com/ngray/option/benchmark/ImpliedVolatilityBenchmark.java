@@ -0,0 +1,74 @@
+package com.ngray.option.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.ImpliedVolatilityResult;
+import com.ngray.option.model.ImpliedVolatilitySolver;
+
+/**
+ * Benchmarks of implied volatility solves of calls and puts across moneyness and expiry, from the
+ * solver's own initial estimate and from a seed a vol point away, as on a stream of ticks
+ * @author nigelgray
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImpliedVolatilityBenchmark {
+
+	@Param({ "CALL", "PUT" })
+	private Type callOrPut;
+
+	// strike/spot
+	@Param({ "0.8", "0.9", "1.0", "1.1", "1.2" })
+	private double moneyness;
+
+	@Param({ "0.02", "0.25", "1.0" })
+	private double timeToExpiry;
+
+	private double spot = 100.0;
+	private double volatility = 0.2;
+	private double riskFreeRate = 0.01;
+	private double dividendYield = 0.02;
+
+	private double strike;
+	private double optionPrice;
+	private ImpliedVolatilityResult result;
+
+	@Setup
+	public void setup() {
+		strike = spot * moneyness;
+		optionPrice = callOrPut == Type.CALL ?
+				BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield) :
+				BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+		result = new ImpliedVolatilityResult();
+	}
+
+	@Benchmark
+	public ImpliedVolatilityResult solve() {
+		return ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+	}
+
+	@Benchmark
+	public ImpliedVolatilityResult solveSeeded() {
+		return ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield,
+				volatility + 0.01, result);
+	}
+}
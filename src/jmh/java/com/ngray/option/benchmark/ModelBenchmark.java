@@ -0,0 +1,114 @@
+package com.ngray.option.benchmark;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.model.EuropeanOptionModel;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.risk.Risk;
+
+/**
+ * End to end benchmarks of Model.calculateRisk, as called by the RiskService on each market data update:
+ * European options valued from an option price, which includes the implied volatility solve, and from
+ * a volatility, and delta one securities. The option price is valued both seeded, from the implied volatility
+ * of the last solve as on a stream of ticks, and unseeded, with the seed dropped before each invocation as on
+ * the first tick of a subscription.
+ * @author nigelgray
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ModelBenchmark {
+
+	private static final String OPTION_IDENTIFIER = "ModelBenchmarkOption";
+
+	/**
+	 * Drops the option's implied volatility seed before each invocation
+	 */
+	@State(Scope.Thread)
+	public static class UnseededState {
+
+		@Setup(Level.Invocation)
+		public void dropSeed() {
+			EuropeanOptionModel.getImpliedVolatilitySeedCache().remove(OPTION_IDENTIFIER);
+		}
+	}
+
+	private final LocalDate valueDate = LocalDate.of(2017, 5, 16);
+
+	private Security underlying;
+	private EuropeanOption option;
+	private MarketDataCollection optionPriceMarketData;
+	private MarketDataCollection volatilityMarketData;
+	private MarketDataCollection underlyingMarketData;
+
+	@Setup
+	public void setup() {
+		underlying = new Security("ModelBenchmarkUnderlying");
+		LocalDate expiryDate = valueDate.plusDays(91);
+		OptionReferenceDataMap.insert(OPTION_IDENTIFIER,
+				new OptionReferenceData(OPTION_IDENTIFIER, underlying, 7300.0, expiryDate, Type.CALL, 0.02, 0.01));
+		option = new EuropeanOption(OPTION_IDENTIFIER, underlying, 7300.0, expiryDate, Type.CALL);
+
+		MarketData underlyingPrice = new MarketData(underlying.getIdentifier(), 7274.0, 7276.0, MarketData.Type.PRICE);
+		Map<FinancialInstrument, MarketData> prices = new HashMap<>();
+		prices.put(underlying, underlyingPrice);
+		prices.put(option, new MarketData(option.getIdentifier(), 195.0, 197.0, MarketData.Type.PRICE));
+		optionPriceMarketData = new MarketDataCollection(prices);
+
+		Map<FinancialInstrument, MarketData> volatilities = new HashMap<>();
+		volatilities.put(underlying, underlyingPrice);
+		volatilities.put(option, new MarketData(option.getIdentifier(), 0.15, MarketData.Type.VOLATILITY));
+		volatilityMarketData = new MarketDataCollection(volatilities);
+
+		Map<FinancialInstrument, MarketData> underlyingPrices = new HashMap<>();
+		underlyingPrices.put(underlying, underlyingPrice);
+		underlyingMarketData = new MarketDataCollection(underlyingPrices);
+	}
+
+	@Benchmark
+	public Risk europeanOptionFromPriceSeeded() throws ModelException {
+		return option.getModel().calculateRisk(option, optionPriceMarketData, valueDate);
+	}
+
+	@Benchmark
+	public Risk europeanOptionFromPriceUnseeded(UnseededState state) throws ModelException {
+		return option.getModel().calculateRisk(option, optionPriceMarketData, valueDate);
+	}
+
+	@Benchmark
+	public Risk europeanOptionFromVolatility() throws ModelException {
+		return option.getModel().calculateRisk(option, volatilityMarketData, valueDate);
+	}
+
+	@Benchmark
+	public Risk deltaOne() throws ModelException {
+		return underlying.getModel().calculateRisk(underlying, underlyingMarketData, valueDate);
+	}
+}
@@ -13,18 +13,28 @@ import com.mongodb.MongoClientOptions;
 import com.ngray.option.analysis.scenario.ScenarioDataSource;
 import com.ngray.option.analysis.scenario.ScenarioService;
 import com.ngray.option.data.HistoricalPriceCache;
+import com.ngray.option.financialinstrument.FinancialInstrument;
 import com.ngray.option.ig.Session;
 import com.ngray.option.ig.SessionException;
 import com.ngray.option.ig.SessionLoginDetails;
 import com.ngray.option.ig.refdata.OptionReferenceDataMap;
 import com.ngray.option.ig.stream.StreamManager;
+import com.ngray.option.limit.LimitEngine;
+import com.ngray.option.limit.LimitLoader;
+import com.ngray.option.limit.LimitService;
 import com.ngray.option.marketdata.MarketDataService;
 import com.ngray.option.mongo.Mongo;
 import com.ngray.option.mongo.PriceCodec;
 import com.ngray.option.mongo.VolatilitySurfaceDefinitionCodec;
 import com.ngray.option.position.PositionService;
 import com.ngray.option.position.PositionUpdateService;
+import com.ngray.option.position.RiskAggregationService;
+import com.ngray.option.position.RiskPriorities;
+import com.ngray.option.risk.DenseRiskCache;
+import com.ngray.option.risk.RiskCache;
 import com.ngray.option.risk.RiskService;
+import com.ngray.option.risk.shard.ShardedRiskDataSource;
+import com.ngray.option.service.ConflatingExecutor;
 import com.ngray.option.ui.MainUI;
 
 /**
@@ -38,7 +48,17 @@ public class RiskEngine {
 	private static MarketDataService marketDataService = null;
 	private static RiskService riskService = null;
 	private static PositionService positionService = null;
+	private static RiskAggregationService riskAggregationService = null;
+	private static RiskPriorities riskPriorities = null;
+	private static LimitService limitService = null;
+	private static LimitEngine limitEngine = null;
 	private static Object waitLock = new Object();
+	private static final String RISK_WORKERS_PROPERTY = "option.riskWorkers";
+	private static final String LIMITS_FILE_PROPERTY = "option.limitsFile";
+	private static final String DENSE_RISK_CACHE_PROPERTY = "option.denseRiskCache";
+	private static final String RISK_BATCH_WINDOW_PROPERTY = "option.riskBatchWindow";
+	// short enough to keep within the 50ms staleness target of the most material positions
+	private static final int DEFAULT_RISK_BATCH_WINDOW = 25;
 	private static PositionUpdateService positionUpdateService = null;
 	private static ScenarioService scenarioService = null;
 	//private static MongoClient mongoClient = null;
@@ -59,6 +79,11 @@ public class RiskEngine {
 	 * Entry-point. Arguments are:
 	 * 1. filename of file containing json login details and api key
 	 * 2. flag to indicate whether the account is live or demo (default = demo)
+	 * Setting the system property option.riskWorkers to N calculates risk in N worker processes
+	 * Setting the system property option.limitsFile to a csv file of limits monitors them - see LimitLoader
+	 * Setting the system property option.denseRiskCache to true holds risk in a DenseRiskCache
+	 * Setting the system property option.riskBatchWindow to N updates position risk in batches collected over N ms,
+	 * by default 25ms - zero updates positions with every risk update
 	 * @param args
 	 */
 	public static void main(String[] args) {
@@ -109,10 +134,48 @@ public class RiskEngine {
 			StreamManager streamManager = new StreamManager(lightStreamerEndpoint, activeAccountId, cst, xst);
 			marketDataService = new MarketDataService("MarketData-LIVE", streamManager.getLivePriceStream());
 			positionUpdateService = new PositionUpdateService("PositionUpdate-LIVE", streamManager.getPositionUpdateStream());
-			riskService = new RiskService("LIVE", marketDataService, LocalDate.now());
+			RiskCache riskCache = Boolean.getBoolean(DENSE_RISK_CACHE_PROPERTY) ? new DenseRiskCache("LIVE") : new RiskCache("LIVE");
+			int riskWorkers = Integer.getInteger(RISK_WORKERS_PROPERTY, 0);
+			if (riskWorkers > 0) {
+				// books too large for one process are repriced in worker processes, partitioned by underlying
+				riskService = new RiskService(marketDataService, LocalDate.now(), null, null, null, riskCache,
+						new ShardedRiskDataSource("RiskWorkers-LIVE", marketDataService, LocalDate.now(), riskWorkers));
+			} else {
+				// recalculate risk off the market data threads, visible and material positions first, with target
+				// staleness of 50ms, 250ms and 1s for positions with vega plus gamma PnL over 500, over 50, and the rest
+				riskPriorities = new RiskPriorities("LIVE", 500.0, 50.0);
+				ConflatingExecutor<FinancialInstrument> computeExecutor = new ConflatingExecutor<>("RiskCompute-LIVE", 
+						Runtime.getRuntime().availableProcessors(), riskPriorities, 50, 250, 1000);
+				riskService = new RiskService(marketDataService, LocalDate.now(), null, null, computeExecutor, riskCache);
+			}
+			riskService.start();
 			
 			positionService = new PositionService("LIVE", session, riskService, marketDataService, positionUpdateService);
+			int riskBatchWindow = Integer.getInteger(RISK_BATCH_WINDOW_PROPERTY, DEFAULT_RISK_BATCH_WINDOW);
+			if (riskBatchWindow > 0) {
+				// positions on instruments ticking faster than the window are updated once per window
+				riskService.setBatchWindow(riskBatchWindow);
+				positionService.setBatchRisk(true);
+			}
 			positionService.initialize();
+			if (riskPriorities != null) {
+				riskPriorities.subscribe(positionService);
+			}
+			
+			riskAggregationService = new RiskAggregationService("LIVE");
+			riskAggregationService.subscribe(activeAccountId, positionService);
+			
+			// limits on the aggregated exposures are loaded from file, and breaches heard through getLimitService
+			limitService = new LimitService("LIVE");
+			limitEngine = new LimitEngine("LIVE", riskAggregationService, limitService);
+			String limitsFileName = System.getProperty(LIMITS_FILE_PROPERTY);
+			if (limitsFileName != null) {
+				try {
+					limitEngine.addLimits(LimitLoader.loadFromFile(limitsFileName));
+				} catch (IOException e) {
+					Log.getLogger().error("Error loading limits: " + e.getMessage(), e);
+				}
+			}
 			
 			// Create without a data source for now - will add when we do live updates
 			scenarioService = new ScenarioService("LIVE", new ScenarioDataSource("ScenarioDataSource-LIVE", positionService));
@@ -155,6 +218,10 @@ public class RiskEngine {
 		Log.getLogger().info("RiskEngine shutdown initiated...");
 		if (marketDataService != null) marketDataService.shutdown();
 		if (riskService != null) riskService.shutdown();
+		if (limitEngine != null) limitEngine.shutdown();
+		if (riskAggregationService != null) riskAggregationService.shutdown();
+		if (riskPriorities != null) riskPriorities.shutdown();
+		if (limitService != null) limitService.shutdown();
 		if (positionService != null) positionService.shutdown();
 		try {
 			if (session != null) session.logout();
@@ -171,6 +238,38 @@ public class RiskEngine {
 		return positionService;
 	}
 
+	/**
+	 * Get the risk aggregation service
+	 * @return
+	 */
+	public static RiskAggregationService getRiskAggregationService() {
+		return riskAggregationService;
+	}
+
+	/**
+	 * Get the priorities of risk recalculation, or null if risk is calculated in worker processes
+	 * @return
+	 */
+	public static RiskPriorities getRiskPriorities() {
+		return riskPriorities;
+	}
+
+	/**
+	 * Get the limit service, publishing limit breaches and recoveries
+	 * @return
+	 */
+	public static LimitService getLimitService() {
+		return limitService;
+	}
+
+	/**
+	 * Get the limit engine
+	 * @return
+	 */
+	public static LimitEngine getLimitEngine() {
+		return limitEngine;
+	}
+
 	/**
 	 * Get the market data service
 	 * @return
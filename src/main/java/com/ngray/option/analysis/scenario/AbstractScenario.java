@@ -3,11 +3,26 @@ package com.ngray.option.analysis.scenario;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import com.ngray.option.Log;
 import com.ngray.option.RiskEngine;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketData.Type;
+import com.ngray.option.model.BlackScholesBatchModel;
+import com.ngray.option.model.EuropeanOptionPricingContext;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.model.OptionBatch;
 import com.ngray.option.position.Position;
+import com.ngray.option.risk.Risk;
 
 public abstract class AbstractScenario implements Scenario {
 
@@ -109,4 +124,110 @@ public abstract class AbstractScenario implements Scenario {
 		double spread = position.getIgPosition().getMarket().getOffer() - position.getIgPosition().getMarket().getBid();
 		return position.getPositionSize() >= 0 ? -spread : spread;
 	}
+
+	/**
+	 * Revalue the base position at each of the supplied underlying price and implied volatility
+	 * pairs. European options are priced together in a single OptionBatch, other instruments are
+	 * priced point by point with their own model, American options from the underlying price and
+	 * volatility and everything else from the underlying price alone.
+	 * @param basePosition
+	 * @param underlyingPrices
+	 * @param volatilities
+	 * @return
+	 */
+	protected List<Position> getPerturbedPositions(Position basePosition, double[] underlyingPrices, double[] volatilities) {
+		FinancialInstrument baseInstrument = basePosition.getInstrument();
+		if (baseInstrument instanceof EuropeanOption && ((EuropeanOption)baseInstrument).getExerciseStyle() != ExerciseStyle.AMERICAN) {
+			return getPerturbedOptionPositions(basePosition, underlyingPrices, volatilities);
+		}
+		
+		List<Position> perturbedPositions = new ArrayList<>();
+		for (int i = 0; i < underlyingPrices.length; ++i) {
+			try {
+				Position position = basePosition.copy();
+				FinancialInstrument instrument = position.getInstrument();
+				Map<FinancialInstrument, MarketData> map = new HashMap<>();
+				map.put(scenarioDefinition.getInstrument(), new MarketData(scenarioDefinition.getInstrument().getIdentifier(), underlyingPrices[i], Type.PRICE));
+				if (instrument instanceof EuropeanOption) {
+					map.put(instrument, new MarketData(instrument.getIdentifier(), volatilities[i], Type.VOLATILITY));
+				}
+				Risk risk = instrument.getModel().calculateRisk(instrument, new MarketDataCollection(map), valueDate);
+				addPerturbedPosition(perturbedPositions, position, risk);
+			} catch (MissingReferenceDataException | ModelException e) {
+				Log.getLogger().error(e.getMessage(), e);
+			}
+		}
+		return perturbedPositions;
+	}
+	
+	private List<Position> getPerturbedOptionPositions(Position basePosition, double[] underlyingPrices, double[] volatilities) {
+		List<Position> perturbedPositions = new ArrayList<>();
+		try {
+			EuropeanOption option = (EuropeanOption)basePosition.getInstrument();
+			EuropeanOptionPricingContext context = EuropeanOptionPricingContext.compile(option, valueDate);
+			Risk[] risks = new Risk[underlyingPrices.length];
+			
+			if (scenarioDefinition.getApproximationErrorBound() > 0.0) {
+				approximateRisks(context, basePosition.getPositionRisk(), underlyingPrices, volatilities, risks);
+			}
+			
+			int[] repriced = IntStream.range(0, risks.length).filter(i -> risks[i] == null).toArray();
+			OptionBatch batch = new OptionBatch(repriced.length);
+			for (int k = 0; k < batch.size(); ++k) {
+				int i = repriced[k];
+				batch.set(k, context.getCallOrPut(), underlyingPrices[i], context.getStrike(), volatilities[i], context.getTimeToExpiry(),
+						context.getRiskFreeRate(), context.getDividendYield());
+			}
+			BlackScholesBatchModel.calcOptionPricesAndGreeks(batch);
+			for (int k = 0; k < batch.size(); ++k) {
+				int i = repriced[k];
+				double price = batch.getPrice()[k];
+				risks[i] = new Risk(price, batch.getDelta()[k], batch.getGamma()[k], batch.getVega()[k], batch.getTheta()[k], batch.getRho()[k],
+						batch.getVanna()[k], batch.getVolga()[k], batch.getCharm()[k], batch.getSpeed()[k], volatilities[i], price, underlyingPrices[i]);
+			}
+			
+			for (Risk risk : risks) {
+				addPerturbedPosition(perturbedPositions, basePosition.copy(), risk);
+			}
+		} catch (MissingReferenceDataException e) {
+			Log.getLogger().error(e.getMessage(), e);
+		}
+		return perturbedPositions;
+	}
+	
+	/**
+	 * Approximate the risk at each scenario point from a second order Taylor expansion about the base
+	 * position's underlying price and implied volatility. Points where the expansion's estimated
+	 * truncation error exceeds the scenario's error bound are left null to be repriced.
+	 * @param context
+	 * @param baseRisk
+	 * @param underlyingPrices
+	 * @param volatilities
+	 * @param risks
+	 */
+	private void approximateRisks(EuropeanOptionPricingContext context, Risk baseRisk, double[] underlyingPrices, double[] volatilities, Risk[] risks) {
+		double baseSpot = baseRisk.getUnderlyingPrice();
+		double baseVolatility = baseRisk.getImpliedVolatility();
+		if (Double.isNaN(baseSpot) || Double.isNaN(baseVolatility) || baseVolatility <= 0.0) {
+			return;
+		}
+		
+		TaylorApproximation approximation = new TaylorApproximation(context, baseSpot, baseVolatility);
+		double errorBound = scenarioDefinition.getApproximationErrorBound();
+		int approximated = 0;
+		for (int i = 0; i < risks.length; ++i) {
+			risks[i] = approximation.approximate(underlyingPrices[i], volatilities[i], errorBound);
+			if (risks[i] != null) {
+				++approximated;
+			}
+		}
+		Log.getLogger().debug("Scenario " + name + ": approximated " + approximated + " of " + risks.length + " points");
+	}
+	
+	private void addPerturbedPosition(List<Position> perturbedPositions, Position position, Risk risk) {
+		position.updatePositionRisk(risk);
+		double spreadAdjustedValue = risk.getValue() + getSpread(position)/2.0;
+		position.updatePositionPnL(new MarketData(position.getInstrument().getIdentifier(), spreadAdjustedValue, Type.PRICE));
+		perturbedPositions.add(position);
+	}
 }
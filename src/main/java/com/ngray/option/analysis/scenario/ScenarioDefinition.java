@@ -21,6 +21,8 @@ public class ScenarioDefinition {
 	
 	private double[] values;
 	
+	private double approximationErrorBound = Double.NaN;
+	
 	/**
 	 * Create a ScenarioDefinition of the given type which increments/decrements
 	 * the relevant variable across the given range.
@@ -99,6 +101,26 @@ public class ScenarioDefinition {
 		this.instrument = instrument;
 	}
 	
+	/**
+	 * Return the bound on the estimated error per contract within which option positions are revalued
+	 * from a Taylor expansion in their greeks instead of being repriced, the error being estimated from
+	 * the third order remainder of the expansion. NaN if approximation is disabled.
+	 * @return
+	 */
+	public double getApproximationErrorBound() {
+		return approximationErrorBound;
+	}
+
+	/**
+	 * Set the bound on the estimated error per contract within which option positions are revalued
+	 * from a Taylor expansion in their greeks instead of being repriced. NaN disables approximation,
+	 * which is the default.
+	 * @param approximationErrorBound
+	 */
+	public void setApproximationErrorBound(double approximationErrorBound) {
+		this.approximationErrorBound = approximationErrorBound;
+	}
+	
 	public boolean validate() {
 		if (instrument == null) {
 			return false;
@@ -120,10 +142,16 @@ public class ScenarioDefinition {
 			return false;
 		}	
 		
+		if (approximationErrorBound < 0.0) {
+			return false;
+		}
+		
 		return true;
 	}
 
 	public ScenarioDefinition copy() {
-		return new ScenarioDefinition(getInstrument(), getType(), getIncrement(), getBaseValue(), getRange());
+		ScenarioDefinition copy = new ScenarioDefinition(getInstrument(), getType(), getIncrement(), getBaseValue(), getRange());
+		copy.setApproximationErrorBound(getApproximationErrorBound());
+		return copy;
 	}
 }
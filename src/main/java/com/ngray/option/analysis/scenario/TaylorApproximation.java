@@ -0,0 +1,212 @@
+package com.ngray.option.analysis.scenario;
+
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.EuropeanOptionPricingContext;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Approximates the risk of a European option at a shifted underlying price and implied volatility from a
+ * second order Taylor expansion about a base point, in delta, gamma, vega, vanna and volga.
+ * The truncation error of the expansion is bounded by its Lagrange remainder, which takes the third derivatives
+ * of the price somewhere between the base point and the shifted point. Those derivatives can peak well away from
+ * the base point for short dated options, so they are sampled on a lattice over a trust region about the base
+ * point: speed analytically, and the derivatives of gamma, vanna and volga by volatility by differences of the
+ * analytic greeks between neighbouring lattice nodes. The estimate at a shift takes the largest of each derivative
+ * over the lattice nodes that cover the shift, and doubles the remainder to cover the variation of the derivatives
+ * between the nodes. Shifts outside the trust region, of one standard deviation of the underlying price to expiry and
+ * a quarter of the volatility, are not bounded, and neither are shifts whose estimated error exceeds the caller's bound.
+ * @author nigelgray
+ *
+ */
+public class TaylorApproximation {
+
+	// the volatility step of the central differences of the third derivatives at the base point
+	private static final double VOLATILITY_STEP = 0.001;
+
+	// the half widths of the trust region, in standard deviations of the underlying price to expiry and relative to the
+	// volatility, with the underlying price kept clear of zero
+	private static final double SPOT_TRUST_REGION = 1.0;
+	private static final double MAX_RELATIVE_SPOT_TRUST_REGION = 0.5;
+	private static final double VOLATILITY_TRUST_REGION = 0.25;
+
+	// the number of lattice steps either side of the base point
+	private static final int SPOT_STEPS = 8;
+	private static final int VOLATILITY_STEPS = 4;
+
+	private static final double SAFETY_FACTOR = 2.0;
+
+	// covers the rounding error of the expansion where the remainder vanishes
+	private static final double ROUNDING_ERROR = 1.0e-9;
+
+	private final double baseSpot;
+	private final double baseVolatility;
+	private final BlackScholesResult base;
+
+	// the third derivatives of the price at the base point, with vols in the same 1% units as vega
+	private final double speed;
+	private final double zomma;
+	private final double vannaVolga;
+	private final double ultima;
+
+	// the half widths of the trust region
+	private final double spotTrustRegion;
+	private final double volatilityTrustRegion;
+
+	// the largest absolute speed, zomma, vanna volga and ultima over the lattice nodes between the base point and
+	// each node, indexed by the quadrant of the shift, its spot and volatility steps, and the derivative
+	private final double[][][][] maxThirdDerivatives;
+
+	/**
+	 * Create the expansion of the option priced by the context about the base underlying price and volatility
+	 * @param context
+	 * @param baseSpot
+	 * @param baseVolatility
+	 */
+	public TaylorApproximation(EuropeanOptionPricingContext context, double baseSpot, double baseVolatility) {
+		this.baseSpot = baseSpot;
+		this.baseVolatility = baseVolatility;
+		this.base = BlackScholesModel.calcOptionPriceAndGreeks(context, baseSpot, baseVolatility, new BlackScholesResult());
+
+		double step = Math.min(VOLATILITY_STEP, 0.5 * baseVolatility);
+		BlackScholesResult up = BlackScholesModel.calcOptionPriceAndGreeks(context, baseSpot, baseVolatility + step, new BlackScholesResult());
+		BlackScholesResult down = BlackScholesModel.calcOptionPriceAndGreeks(context, baseSpot, baseVolatility - step, new BlackScholesResult());
+		double perPercent = 0.01/(2 * step);
+		this.speed = base.getSpeed();
+		this.zomma = (up.getGamma() - down.getGamma()) * perPercent;
+		this.vannaVolga = (up.getVanna() - down.getVanna()) * perPercent;
+		this.ultima = (up.getVolga() - down.getVolga()) * perPercent;
+
+		this.spotTrustRegion = Math.min(SPOT_TRUST_REGION * baseSpot * baseVolatility * context.getSqrtTimeToExpiry(),
+				MAX_RELATIVE_SPOT_TRUST_REGION * baseSpot);
+		this.volatilityTrustRegion = VOLATILITY_TRUST_REGION * baseVolatility;
+		this.maxThirdDerivatives = spotTrustRegion > 0.0 ? calcMaxThirdDerivatives(context) : null;
+	}
+
+	private double[][][][] calcMaxThirdDerivatives(EuropeanOptionPricingContext context) {
+		int spotNodes = 2 * SPOT_STEPS + 1;
+		int volatilityNodes = 2 * VOLATILITY_STEPS + 1;
+		BlackScholesResult[][] nodes = new BlackScholesResult[spotNodes][volatilityNodes];
+		for (int i = 0; i < spotNodes; ++i) {
+			double spot = baseSpot + (i - SPOT_STEPS) * spotTrustRegion/SPOT_STEPS;
+			for (int j = 0; j < volatilityNodes; ++j) {
+				double volatility = baseVolatility + (j - VOLATILITY_STEPS) * volatilityTrustRegion/VOLATILITY_STEPS;
+				nodes[i][j] = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, new BlackScholesResult());
+			}
+		}
+
+		// the third derivatives at each node, differencing the greeks by volatility over the cells either side of it
+		double perPercent = 0.01 * VOLATILITY_STEPS/volatilityTrustRegion;
+		double[][][] thirdDerivatives = new double[spotNodes][volatilityNodes][4];
+		for (int i = 0; i < spotNodes; ++i) {
+			for (int j = 0; j < volatilityNodes; ++j) {
+				double[] derivatives = thirdDerivatives[i][j];
+				derivatives[0] = Math.abs(nodes[i][j].getSpeed());
+				for (int neighbour : new int[] { j - 1, j + 1 }) {
+					if (neighbour < 0 || neighbour >= volatilityNodes) {
+						continue;
+					}
+					BlackScholesResult node = nodes[i][j];
+					BlackScholesResult other = nodes[i][neighbour];
+					derivatives[1] = Math.max(derivatives[1], Math.abs(other.getGamma() - node.getGamma()) * perPercent);
+					derivatives[2] = Math.max(derivatives[2], Math.abs(other.getVanna() - node.getVanna()) * perPercent);
+					derivatives[3] = Math.max(derivatives[3], Math.abs(other.getVolga() - node.getVolga()) * perPercent);
+				}
+			}
+		}
+
+		// the running maxima outward from the base point in each quadrant
+		double[][][][] maxima = new double[4][SPOT_STEPS + 1][VOLATILITY_STEPS + 1][];
+		for (int quadrant = 0; quadrant < 4; ++quadrant) {
+			int spotSign = (quadrant & 1) == 0 ? 1 : -1;
+			int volatilitySign = (quadrant & 2) == 0 ? 1 : -1;
+			for (int a = 0; a <= SPOT_STEPS; ++a) {
+				for (int b = 0; b <= VOLATILITY_STEPS; ++b) {
+					double[] max = thirdDerivatives[SPOT_STEPS + spotSign * a][VOLATILITY_STEPS + volatilitySign * b].clone();
+					for (int k = 0; k < max.length; ++k) {
+						if (a > 0) {
+							max[k] = Math.max(max[k], maxima[quadrant][a - 1][b][k]);
+						}
+						if (b > 0) {
+							max[k] = Math.max(max[k], maxima[quadrant][a][b - 1][k]);
+						}
+					}
+					maxima[quadrant][a][b] = max;
+				}
+			}
+		}
+		return maxima;
+	}
+
+	/**
+	 * Return the estimated truncation error of the expansion at the underlying price and volatility,
+	 * or infinity if the shift is outside the trust region of the expansion
+	 * @param spot
+	 * @param volatility
+	 * @return
+	 */
+	public double getErrorEstimate(double spot, double volatility) {
+		double dS = spot - baseSpot;
+		double dSigma = volatility - baseVolatility;
+		if (maxThirdDerivatives == null || !(Math.abs(dS) <= spotTrustRegion) || !(Math.abs(dSigma) <= volatilityTrustRegion)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		int quadrant = (dS >= 0.0 ? 0 : 1) + (dSigma >= 0.0 ? 0 : 2);
+		int a = Math.min(SPOT_STEPS, (int)Math.ceil(Math.abs(dS) * SPOT_STEPS/spotTrustRegion));
+		int b = Math.min(VOLATILITY_STEPS, (int)Math.ceil(Math.abs(dSigma) * VOLATILITY_STEPS/volatilityTrustRegion));
+		double[] max = maxThirdDerivatives[quadrant][a][b];
+
+		double absDS = Math.abs(dS);
+		double absDVol = 100.0 * Math.abs(dSigma);
+		return SAFETY_FACTOR * (max[0] * absDS * absDS * absDS + 3 * max[1] * absDS * absDS * absDVol +
+				3 * max[2] * absDS * absDVol * absDVol + max[3] * absDVol * absDVol * absDVol)/6.0 + ROUNDING_ERROR;
+	}
+
+	/**
+	 * Return the approximate risk at the underlying price and volatility, or null if its estimated
+	 * error exceeds the bound
+	 * @param spot
+	 * @param volatility
+	 * @param errorBound
+	 * @return
+	 */
+	public Risk approximate(double spot, double volatility, double errorBound) {
+		if (!(getErrorEstimate(spot, volatility) <= errorBound)) {
+			return null;
+		}
+		double dS = spot - baseSpot;
+		// the vol greeks are per 1% move
+		double dVol = 100.0 * (volatility - baseVolatility);
+
+		double value = base.getPrice() + base.getDelta() * dS + base.getVega() * dVol +
+				0.5 * base.getGamma() * dS * dS + base.getVanna() * dS * dVol + 0.5 * base.getVolga() * dVol * dVol;
+		// the greeks are expanded to second order too, so take in the third derivatives
+		return new Risk(
+				value,
+				base.getDelta() + base.getGamma() * dS + base.getVanna() * dVol +
+						0.5 * speed * dS * dS + zomma * dS * dVol + 0.5 * vannaVolga * dVol * dVol,
+				base.getGamma() + speed * dS + zomma * dVol,
+				base.getVega() + base.getVanna() * dS + base.getVolga() * dVol +
+						0.5 * zomma * dS * dS + vannaVolga * dS * dVol + 0.5 * ultima * dVol * dVol,
+				base.getTheta() + base.getCharm() * dS,
+				base.getRho(),
+				base.getVanna(), base.getVolga(), base.getCharm(), base.getSpeed(),
+				volatility, value, spot);
+	}
+
+	/**
+	 * Return the base underlying price of the expansion
+	 * @return
+	 */
+	public double getBaseSpot() {
+		return baseSpot;
+	}
+
+	/**
+	 * Return the base volatility of the expansion
+	 * @return
+	 */
+	public double getBaseVolatility() {
+		return baseVolatility;
+	}
+}
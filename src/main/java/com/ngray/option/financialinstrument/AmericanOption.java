@@ -0,0 +1,60 @@
+package com.ngray.option.financialinstrument;
+
+import java.time.LocalDate;
+
+import com.ngray.option.ig.market.Market;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.model.AmericanOptionModel;
+import com.ngray.option.model.Model;
+
+/**
+ * This class represents an American option on a simple underlying security,
+ * which may be exercised at any time up to its expiry date. It shares the
+ * terms of a European option and differs only in its exercise style and model.
+ * @author nigelgray
+ *
+ */
+public class AmericanOption extends EuropeanOption {
+
+	/**
+	 * Shared by all American options, so that pricing contexts compiled by the model are kept between calls
+	 */
+	private static final Model model = new AmericanOptionModel();
+
+	/**
+	 * Construct an American option on the specified underlying of the given strike
+	 * and type
+	 * @param identifier
+	 * @param underlying
+	 * @param strike
+	 * @param expiryDate
+	 * @param type
+	 */
+	public AmericanOption(String identifier, Security underlying, double strike, LocalDate expiryDate, Type type) {
+		super(identifier, underlying, strike, expiryDate, type);
+	}
+
+	public AmericanOption(Market market) throws MissingReferenceDataException {
+		super(market);
+	}
+
+	/**
+	 * Create the option from its market and reference data already looked up
+	 * @param market
+	 * @param refData
+	 */
+	public AmericanOption(Market market, OptionReferenceData refData) {
+		super(market, refData);
+	}
+
+	@Override
+	public Model getModel() {
+		return model;
+	}
+
+	@Override
+	public ExerciseStyle getExerciseStyle() {
+		return ExerciseStyle.AMERICAN;
+	}
+}
@@ -18,6 +18,11 @@ import com.ngray.option.model.Model;
  */
 public class EuropeanOption extends FinancialInstrument {
 
+	/**
+	 * Shared by all options, so that pricing contexts compiled by the model are kept between calls
+	 */
+	private static final Model model = new EuropeanOptionModel();
+	
 	private final Security underlying;
 	private final double strike;
 	private final LocalDate expiryDate;
@@ -34,6 +39,17 @@ public class EuropeanOption extends FinancialInstrument {
 		}
 	};
 	
+	public enum ExerciseStyle {
+		EUROPEAN,
+		AMERICAN;
+
+		public static ExerciseStyle fromString(String string) {
+			if ("EUROPEAN".equals(string)) return EUROPEAN;
+			if ("AMERICAN".equals(string)) return AMERICAN;
+			return null;
+		}
+	};
+	
 	/**
 	 * Construct a European option on the specified underlying of the given strike
 	 * and type
@@ -51,8 +67,16 @@ public class EuropeanOption extends FinancialInstrument {
 	}
 	
 	public EuropeanOption(Market market) throws MissingReferenceDataException {
+		this(market, OptionReferenceDataMap.getOptionReferenceData(market.getEpic()));
+	}
+	
+	/**
+	 * Create the option from its market and reference data already looked up
+	 * @param market
+	 * @param refData
+	 */
+	public EuropeanOption(Market market, OptionReferenceData refData) {
 		super(market.getEpic(), market);
-		OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(market.getEpic());
 		this.underlying = refData.getUnderlying();
 		this.strike = refData.getStrike();
 		this.expiryDate = refData.getExpiryDate();
@@ -83,6 +107,7 @@ public class EuropeanOption extends FinancialInstrument {
 		boolean result = getIdentifier().equals(other.getIdentifier()) &&
 				         (Double.compare(getStrike(), other.getStrike()) == 0) &&
 				         getType() == other.getType() &&
+				         getExerciseStyle() == other.getExerciseStyle() &&
 				         getExpiryDate().equals(other.getExpiryDate());
 		
 		return result;
@@ -96,7 +121,7 @@ public class EuropeanOption extends FinancialInstrument {
 	// Overrides from Security
 	@Override
 	public Model getModel() {
-		return new EuropeanOptionModel();
+		return model;
 	}
 
 	/**
@@ -126,4 +151,12 @@ public class EuropeanOption extends FinancialInstrument {
 	public LocalDate getExpiryDate() {
 		return expiryDate;
 	}
+
+	/**
+	 * Return the option's exercise style, which is European unless overridden by a subclass
+	 * @return
+	 */
+	public ExerciseStyle getExerciseStyle() {
+		return ExerciseStyle.EUROPEAN;
+	}
 }
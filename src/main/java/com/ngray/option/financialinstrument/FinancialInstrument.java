@@ -1,7 +1,10 @@
 package com.ngray.option.financialinstrument;
 
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
 import com.ngray.option.ig.market.Market;
 import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
 import com.ngray.option.model.Model;
 
 public abstract class FinancialInstrument implements Comparable<FinancialInstrument> {
@@ -12,7 +15,12 @@ public abstract class FinancialInstrument implements Comparable<FinancialInstrum
 	 * The unique id for the financial instrument
 	 */
 	private final String identifier;
-	
+
+	/**
+	 * The InstrumentRegistry id of this instrument plus one, zero until it is first looked up
+	 */
+	int registryId;
+
 	/**
 	 * Constructor
 	 * @param identifier
@@ -56,7 +64,11 @@ public abstract class FinancialInstrument implements Comparable<FinancialInstrum
 		case "OPT_INDICES":
 		case "OPT_RATES":
 		case "UNKNOWN": // Options come back as unknown sometimes
-			return new EuropeanOption(market);
+			OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(market.getEpic());
+			if (refData.getExerciseStyle() == ExerciseStyle.AMERICAN) {
+				return new AmericanOption(market, refData);
+			}
+			return new EuropeanOption(market, refData);
 		default:
 			return new Security(market);
 		}
@@ -72,6 +84,14 @@ public abstract class FinancialInstrument implements Comparable<FinancialInstrum
 	 */
 	public abstract FinancialInstrument getUnderlying();
 
+	/**
+	 * Return the dense id of this instrument in the InstrumentRegistry, registering it if need be
+	 * @return
+	 */
+	public final int getInstrumentId() {
+		return InstrumentRegistry.getId(this);
+	}
+
 	@Override
 	public int compareTo(FinancialInstrument rhs) {
 		return identifier.compareTo(rhs.getIdentifier());
@@ -0,0 +1,200 @@
+package com.ngray.option.financialinstrument;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+/**
+ * Values indexed by InstrumentRegistry id, for per-instrument state looked up on hot paths.
+ * Values are held in chunks allocated as ids are first used, so the array grows without copying values
+ * and a lookup by id is two array reads. Null values are not held - storing null removes the entry.
+ * Holders should remove the value of an instrument before releasing it from the InstrumentRegistry.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ * @param <V>
+ */
+public class InstrumentArray<V> {
+
+	private static final int CHUNK_SIZE = InstrumentRegistry.CHUNK_SIZE;
+
+	// replaced by a copy twice the size when an id beyond the last chunk is stored
+	private volatile AtomicReferenceArray<AtomicReferenceArray<V>> chunks;
+
+	public InstrumentArray() {
+		this.chunks = new AtomicReferenceArray<>(CHUNK_SIZE);
+	}
+
+	/**
+	 * Return the value for the instrument id, or null if there is none
+	 * @param id
+	 * @return
+	 */
+	public V get(int id) {
+		AtomicReferenceArray<V> chunk = findChunk(id);
+		return chunk != null ? chunk.get(id % CHUNK_SIZE) : null;
+	}
+
+	/**
+	 * Return the value for the instrument, or null if there is none
+	 * @param instrument
+	 * @return
+	 */
+	public V get(FinancialInstrument instrument) {
+		int id = InstrumentRegistry.findId(instrument);
+		return id >= 0 ? get(id) : null;
+	}
+
+	/**
+	 * Store the value for the instrument id, returning the previous value
+	 * @param id
+	 * @param value
+	 * @return
+	 */
+	public V put(int id, V value) {
+		return getChunk(id).getAndSet(id % CHUNK_SIZE, value);
+	}
+
+	/**
+	 * Store the value for the instrument, returning the previous value
+	 * @param instrument
+	 * @param value
+	 * @return
+	 */
+	public V put(FinancialInstrument instrument, V value) {
+		return put(instrument.getInstrumentId(), value);
+	}
+
+	/**
+	 * Store the value for the instrument id if it has none, and otherwise the result of the remapping function
+	 * applied to its current value and the given value, retrying if the current value changes meanwhile.
+	 * Returns the previous value, as put does.
+	 * @param id
+	 * @param value
+	 * @param remapping
+	 * @return
+	 */
+	public V merge(int id, V value, BinaryOperator<V> remapping) {
+		AtomicReferenceArray<V> chunk = getChunk(id);
+		int index = id % CHUNK_SIZE;
+		while (true) {
+			V previous = chunk.get(index);
+			V merged = previous != null ? remapping.apply(previous, value) : value;
+			if (chunk.compareAndSet(index, previous, merged)) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * Remove the value for the instrument id, returning it
+	 * @param id
+	 * @return
+	 */
+	public V remove(int id) {
+		AtomicReferenceArray<V> chunk = findChunk(id);
+		return chunk != null ? chunk.getAndSet(id % CHUNK_SIZE, null) : null;
+	}
+
+	/**
+	 * Remove the value for the instrument id only if it is the given value
+	 * @param id
+	 * @param value
+	 * @return true if the value was removed
+	 */
+	public boolean remove(int id, V value) {
+		AtomicReferenceArray<V> chunk = findChunk(id);
+		return chunk != null && value != null && chunk.compareAndSet(id % CHUNK_SIZE, value, null);
+	}
+
+	/**
+	 * Remove the value for the instrument, returning it
+	 * @param instrument
+	 * @return
+	 */
+	public V remove(FinancialInstrument instrument) {
+		int id = InstrumentRegistry.findId(instrument);
+		return id >= 0 ? remove(id) : null;
+	}
+
+	/**
+	 * Return true if there is a value for the instrument
+	 * @param instrument
+	 * @return
+	 */
+	public boolean containsKey(FinancialInstrument instrument) {
+		return get(instrument) != null;
+	}
+
+	/**
+	 * Call the action with the canonical instrument and value of every entry, in id order, skipping
+	 * entries left for instruments which have since been released
+	 * @param action
+	 */
+	public void forEach(BiConsumer<FinancialInstrument, V> action) {
+		AtomicReferenceArray<AtomicReferenceArray<V>> current = chunks;
+		for (int i = 0; i < current.length(); ++i) {
+			AtomicReferenceArray<V> chunk = current.get(i);
+			if (chunk == null) {
+				continue;
+			}
+			for (int j = 0; j < CHUNK_SIZE; ++j) {
+				V value = chunk.get(j);
+				if (value != null) {
+					FinancialInstrument instrument = InstrumentRegistry.getInstrument(i * CHUNK_SIZE + j);
+					if (instrument != null) {
+						action.accept(instrument, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all values
+	 */
+	public void clear() {
+		AtomicReferenceArray<AtomicReferenceArray<V>> current = chunks;
+		for (int i = 0; i < current.length(); ++i) {
+			current.set(i, null);
+		}
+	}
+
+	private AtomicReferenceArray<V> findChunk(int id) {
+		AtomicReferenceArray<AtomicReferenceArray<V>> current = chunks;
+		int index = id / CHUNK_SIZE;
+		return id >= 0 && index < current.length() ? current.get(index) : null;
+	}
+
+	private AtomicReferenceArray<V> getChunk(int id) {
+		int index = id / CHUNK_SIZE;
+		AtomicReferenceArray<AtomicReferenceArray<V>> current = chunks;
+		if (index >= current.length()) {
+			current = grow(index);
+		}
+		AtomicReferenceArray<V> chunk = current.get(index);
+		if (chunk == null) {
+			current.compareAndSet(index, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+			chunk = current.get(index);
+		}
+		return chunk;
+	}
+
+	// the chunks themselves are shared by the copy, so values stored concurrently are not lost
+	private synchronized AtomicReferenceArray<AtomicReferenceArray<V>> grow(int index) {
+		AtomicReferenceArray<AtomicReferenceArray<V>> current = chunks;
+		if (index < current.length()) {
+			return current;
+		}
+		int length = current.length();
+		while (length <= index) {
+			length *= 2;
+		}
+		AtomicReferenceArray<AtomicReferenceArray<V>> grown = new AtomicReferenceArray<>(length);
+		for (int i = 0; i < current.length(); ++i) {
+			grown.set(i, current.get(i));
+		}
+		chunks = grown;
+		return grown;
+	}
+}
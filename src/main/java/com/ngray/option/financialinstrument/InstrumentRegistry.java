@@ -0,0 +1,244 @@
+package com.ngray.option.financialinstrument;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.ngray.option.Log;
+
+/**
+ * Process-wide registry assigning every instrument a stable, dense int id, so that caches and services
+ * can hold per-instrument state in arrays indexed by id rather than in maps hashed on identifier strings.
+ * Equal instruments share an id, and the first instrument registered for an id is its canonical instance.
+ * The id is also remembered on each instrument instance registered, so looking up the id of an instance
+ * already seen is a field read and a check that the id is still the instrument's.
+ * Services retain the instruments they subscribe to and release them when they unsubscribe. When the last
+ * retention of an instrument is released it is unregistered, so the registry no longer holds it, and its id
+ * is freed. Freed ids are reused oldest first, and only once every id the registry has room for has been
+ * allocated, so that an id is not soon reused while state a holder failed to drop may still be indexed by it.
+ * Instruments which were never retained keep their ids. When there is no room and no freed id the registry
+ * doubles its room rather than refusing the instrument. Caches indexed by id add a ReleaseListener to drop the
+ * entries of each instrument as it is released, including any stored after their holder dropped its own.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class InstrumentRegistry {
+
+	/**
+	 * Ids are allocated in chunks of this size, so the registry never copies an instrument as it grows
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	private final static Map<FinancialInstrument, Integer> ids = new ConcurrentHashMap<>();
+
+	// the number of retentions of each id retained at least once, guarded by the class lock
+	private final static Map<Integer, Integer> retentions = new HashMap<>();
+
+	// freed ids, oldest first, guarded by the class lock
+	private final static Queue<Integer> freeIds = new ArrayDeque<>();
+
+	// the chunks, replaced by a copy twice the size when every id of every chunk is in use
+	private static volatile AtomicReferenceArray<AtomicReferenceArray<FinancialInstrument>> instruments =
+			new AtomicReferenceArray<>(CHUNK_SIZE);
+
+	// listeners told of each id freed, held weakly so that adding one doesn't keep its holder alive
+	private final static List<WeakReference<ReleaseListener>> releaseListeners = new CopyOnWriteArrayList<>();
+
+	// the next id never yet allocated
+	private static int nextId = 0;
+
+	/**
+	 * A listener told the id of each instrument released from the registry, once it is unregistered and before the id
+	 * can be reused. It is called holding the registry's lock, so must not retain or release instruments.
+	 */
+	@FunctionalInterface
+	public interface ReleaseListener {
+		void onRelease(int id);
+	}
+
+	private static int size = 0;
+
+	/**
+	 * Return the id of the instrument, registering it if it has none
+	 * @param instrument
+	 * @return
+	 */
+	public static int getId(FinancialInstrument instrument) {
+		// the instance remembers its id plus one, so that zero means not yet known
+		int id = instrument.registryId - 1;
+		if (id >= 0 && isIdOf(id, instrument)) {
+			return id;
+		}
+		Integer existing = ids.get(instrument);
+		if (existing == null) {
+			existing = register(instrument);
+		}
+		instrument.registryId = existing + 1;
+		return existing;
+	}
+
+	/**
+	 * Return the id of the instrument, or -1 if it is not registered
+	 * @param instrument
+	 * @return
+	 */
+	public static int findId(FinancialInstrument instrument) {
+		int id = instrument.registryId - 1;
+		if (id >= 0 && isIdOf(id, instrument)) {
+			return id;
+		}
+		Integer existing = ids.get(instrument);
+		return existing != null ? existing : -1;
+	}
+
+	// an id remembered by an instance may have been freed, and reused, since
+	private static boolean isIdOf(int id, FinancialInstrument instrument) {
+		FinancialInstrument canonical = getInstrument(id);
+		return canonical == instrument || (canonical != null && canonical.equals(instrument));
+	}
+
+	private static synchronized int register(FinancialInstrument instrument) {
+		Integer existing = ids.get(instrument);
+		if (existing != null) {
+			return existing;
+		}
+		int id = allocateId();
+		AtomicReferenceArray<AtomicReferenceArray<FinancialInstrument>> chunks = instruments;
+		AtomicReferenceArray<FinancialInstrument> chunk = chunks.get(id / CHUNK_SIZE);
+		if (chunk == null) {
+			chunk = new AtomicReferenceArray<>(CHUNK_SIZE);
+			chunks.set(id / CHUNK_SIZE, chunk);
+		}
+		// the volatile set publishes the instrument before its id can be seen
+		chunk.set(id % CHUNK_SIZE, instrument);
+		ids.put(instrument, id);
+		++size;
+		Log.getLogger().debug("InstrumentRegistry: registered " + instrument.getIdentifier() + " as " + id);
+		return id;
+	}
+
+	// must be called holding the class lock
+	private static int allocateId() {
+		if (nextId < instruments.length() * CHUNK_SIZE) {
+			return nextId++;
+		}
+		Integer freeId = freeIds.poll();
+		if (freeId != null) {
+			return freeId;
+		}
+		if (instruments.length() > Integer.MAX_VALUE / (2 * CHUNK_SIZE)) {
+			throw new IllegalStateException("InstrumentRegistry: full at " + size + " instruments");
+		}
+		AtomicReferenceArray<AtomicReferenceArray<FinancialInstrument>> chunks = new AtomicReferenceArray<>(2 * instruments.length());
+		for (int i = 0; i < instruments.length(); ++i) {
+			chunks.set(i, instruments.get(i));
+		}
+		Log.getLogger().warn("InstrumentRegistry: growing to " + chunks.length() * CHUNK_SIZE + " ids at " + size + " instruments");
+		instruments = chunks;
+		return nextId++;
+	}
+
+	/**
+	 * Retain the instrument, registering it if it has no id, so that its id is kept until it is released
+	 * as many times as it was retained
+	 * @param instrument
+	 * @return the id of the instrument
+	 */
+	public static synchronized int retain(FinancialInstrument instrument) {
+		int id = getId(instrument);
+		retentions.merge(id, 1, Integer::sum);
+		return id;
+	}
+
+	/**
+	 * Release a retention of the instrument, unregistering it and freeing its id if it was the last.
+	 * Holders of state indexed by the id should drop it before releasing the instrument.
+	 * @param instrument
+	 */
+	public static synchronized void release(FinancialInstrument instrument) {
+		int id = findId(instrument);
+		if (id < 0) {
+			return;
+		}
+		Integer count = retentions.get(id);
+		if (count == null) {
+			Log.getLogger().warn("InstrumentRegistry: releasing " + instrument.getIdentifier() + " which was not retained");
+			return;
+		}
+		if (count > 1) {
+			retentions.put(id, count - 1);
+			return;
+		}
+		retentions.remove(id);
+		FinancialInstrument canonical = getInstrument(id);
+		ids.remove(canonical);
+		instruments.get(id / CHUNK_SIZE).set(id % CHUNK_SIZE, null);
+		canonical.registryId = 0;
+		for (WeakReference<ReleaseListener> reference : releaseListeners) {
+			ReleaseListener listener = reference.get();
+			if (listener != null) {
+				listener.onRelease(id);
+			} else {
+				releaseListeners.remove(reference);
+			}
+		}
+		freeIds.add(id);
+		--size;
+		Log.getLogger().debug("InstrumentRegistry: released " + instrument.getIdentifier() + " from " + id);
+	}
+
+	/**
+	 * Add a listener to be told the id of each instrument released. The registry holds the listener weakly, so
+	 * the caller must keep a reference to it for as long as it should be called.
+	 * @param listener
+	 */
+	public static void addReleaseListener(ReleaseListener listener) {
+		releaseListeners.add(new WeakReference<>(listener));
+	}
+
+	/**
+	 * Return the canonical instance of the instrument with the given id, or null if no instrument has it
+	 * @param id
+	 * @return
+	 */
+	public static FinancialInstrument getInstrument(int id) {
+		AtomicReferenceArray<AtomicReferenceArray<FinancialInstrument>> chunks = instruments;
+		if (id < 0 || id / CHUNK_SIZE >= chunks.length()) {
+			return null;
+		}
+		AtomicReferenceArray<FinancialInstrument> chunk = chunks.get(id / CHUNK_SIZE);
+		return chunk != null ? chunk.get(id % CHUNK_SIZE) : null;
+	}
+
+	/**
+	 * Return the canonical instance of the instrument, registering it if it is the first
+	 * @param instrument
+	 * @return
+	 */
+	public static FinancialInstrument intern(FinancialInstrument instrument) {
+		return getInstrument(getId(instrument));
+	}
+
+	/**
+	 * Return the number of instruments registered
+	 * @return
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Return the number of freed ids waiting to be reused
+	 * @return
+	 */
+	public static synchronized int getFreeIdCount() {
+		return freeIds.size();
+	}
+}
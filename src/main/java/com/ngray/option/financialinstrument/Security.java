@@ -6,6 +6,10 @@ import com.ngray.option.model.Model;
 
 public class Security extends FinancialInstrument {
 
+	/**
+	 * Delta one pricing is stateless, so one model serves all securities
+	 */
+	private static final Model model = new DeltaOneModel();
 
 	public Security(String identifier) {
 		super(identifier);
@@ -46,7 +50,7 @@ public class Security extends FinancialInstrument {
 
 	@Override
 	public Model getModel() {
-		return new DeltaOneModel();
+		return model;
 	}
 
 	@Override
@@ -19,7 +19,8 @@ public class OptionReferenceData {
 		Expiry,
 		CallOrPut,
 		DividendYield,
-		RiskFreeRate;
+		RiskFreeRate,
+		ExerciseStyle;
 	/*	
 		private final String name;
 		
@@ -35,8 +36,14 @@ public class OptionReferenceData {
 	private final EuropeanOption.Type callOrPut;
 	private final double dividendYield;
 	private final double riskFreeRate;
+	private final EuropeanOption.ExerciseStyle exerciseStyle;
 	
 	public OptionReferenceData(String optionName, Security underlying, double strike, LocalDate expiryDate, EuropeanOption.Type callOrPut, double dividendYield, double riskFreeRate) {
+		this(optionName, underlying, strike, expiryDate, callOrPut, dividendYield, riskFreeRate, EuropeanOption.ExerciseStyle.EUROPEAN);
+	}
+	
+	public OptionReferenceData(String optionName, Security underlying, double strike, LocalDate expiryDate, EuropeanOption.Type callOrPut, double dividendYield, double riskFreeRate,
+			EuropeanOption.ExerciseStyle exerciseStyle) {
 	  this.optionName = optionName;  
 	  this.underlying = underlying;
 	  
@@ -57,10 +64,16 @@ public class OptionReferenceData {
 	   */
 	  this.dividendYield = dividendYield;
 	  this.riskFreeRate = riskFreeRate;
+	  this.exerciseStyle = exerciseStyle;
 	}
 
 	public OptionReferenceData(String optionName, String underlyingEpic, double strike, LocalDate expiryDate,
 			EuropeanOption.Type callOrPut, double dividendYield, double riskFreeRate) {
+		this(optionName, underlyingEpic, strike, expiryDate, callOrPut, dividendYield, riskFreeRate, EuropeanOption.ExerciseStyle.EUROPEAN);
+	}
+
+	public OptionReferenceData(String optionName, String underlyingEpic, double strike, LocalDate expiryDate,
+			EuropeanOption.Type callOrPut, double dividendYield, double riskFreeRate, EuropeanOption.ExerciseStyle exerciseStyle) {
 		  this.optionName = optionName;  
 		  this.underlying = null;;
 		  this.underlyingEpic = underlyingEpic;
@@ -69,6 +82,7 @@ public class OptionReferenceData {
 		  this.callOrPut = callOrPut; 
 		  this.dividendYield = dividendYield;
 		  this.riskFreeRate = riskFreeRate;
+		  this.exerciseStyle = exerciseStyle;
 	}
 
 	public String getOptionName() {
@@ -102,4 +116,8 @@ public class OptionReferenceData {
 	public String getUnderlyingEpic() {
 		return underlyingEpic;
 	}
+
+	public EuropeanOption.ExerciseStyle getExerciseStyle() {
+		return exerciseStyle;
+	}
 }
@@ -30,7 +30,8 @@ public class OptionReferenceDataLoader {
 			"Expiry",
 			"CallOrPut",
 			"DividendYield",
-			"RiskFreeRate"
+			"RiskFreeRate",
+			"ExerciseStyle"
 		};
 	
 	/**
@@ -52,7 +53,8 @@ public class OptionReferenceDataLoader {
 			while ((line = reader.readLine()) != null) {
 				Log.getLogger().info(line);
 				String[] data = line.split(",");
-				if (data.length != ATTRIBUTES.length) {
+				// the exercise style column is optional, and older files without it hold European options
+				if (data.length != ATTRIBUTES.length && data.length != ATTRIBUTES.length - 1) {
 					throw new MissingReferenceDataException("Missing option reference data in file");
 				}
 				Map<String, String> thisEntry = new HashMap<>();
@@ -114,7 +116,8 @@ public class OptionReferenceDataLoader {
 		while ((line = reader.readLine()) != null) {
 			Log.getLogger().info(line);
 			String[] data = line.split(",");
-			if (data.length != ATTRIBUTES.length) {
+			// the exercise style column is optional, and older files without it hold European options
+			if (data.length != ATTRIBUTES.length && data.length != ATTRIBUTES.length - 1) {
 				throw new MissingReferenceDataException("Missing option reference data in file");
 			}
 			Map<String, String> thisEntry = new HashMap<>();
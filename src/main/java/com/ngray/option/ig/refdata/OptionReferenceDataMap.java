@@ -47,6 +47,16 @@ public class OptionReferenceDataMap {
 		return referenceData.get(optionName);
 	}
 	
+	/**
+	 * Return the reference data for the specified option, or null if there is none. Reference data is replaced rather
+	 * than modified, so comparing the result by identity tells whether an option's reference data has changed.
+	 * @param optionName
+	 * @return
+	 */
+	public static OptionReferenceData findOptionReferenceData(String optionName) {
+		return referenceData.get(optionName);
+	}
+	
 	/**
 	 * Get all the underlyings for which we have option reference data
 	 * @return
@@ -118,11 +128,16 @@ public class OptionReferenceDataMap {
 						LocalDate expiry = parseReferenceDataExpiryDate(entry.get(Attribute.Expiry.toString()));//LocalDate.parse(entry.get(Attribute.Expiry.toString()));
 						double dividendYield = Double.parseDouble(entry.get(Attribute.DividendYield.toString()));
 						double riskFreeRate = Double.parseDouble(entry.get(Attribute.RiskFreeRate.toString()));
+						// reference data without an exercise style is European
+						EuropeanOption.ExerciseStyle exerciseStyle = EuropeanOption.ExerciseStyle.fromString(entry.get(Attribute.ExerciseStyle.toString()));
+						if (exerciseStyle == null) {
+							exerciseStyle = EuropeanOption.ExerciseStyle.EUROPEAN;
+						}
 						Market underlyingMarket = underlyings.get(entry.get(Attribute.UnderlyingEpic.toString()));
 						if (underlyingMarket != null) {
 							Security underlying = new Security(underlyingMarket);
 							OptionReferenceData data = 
-									new OptionReferenceData(entry.get(Attribute.OptionEpic.toString()), underlying, strike, expiry, callOrPut, dividendYield, riskFreeRate);
+									new OptionReferenceData(entry.get(Attribute.OptionEpic.toString()), underlying, strike, expiry, callOrPut, dividendYield, riskFreeRate, exerciseStyle);
 							referenceData.put(entry.get(Attribute.OptionEpic.toString()), data);
 							
 							if (!referenceDataByUnderlying.containsKey(underlying)) {
@@ -10,7 +10,7 @@ public class OptionReferenceDataWriter {
 	public static void writeToFile(String filename, List<OptionReferenceData> refDataList) throws IOException {
 		
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-			writer.write("OptionEpic,UnderlyingEpic,Strike,Expiry,CallOrPut,DividendYield,RiskFreeRate\n");
+			writer.write("OptionEpic,UnderlyingEpic,Strike,Expiry,CallOrPut,DividendYield,RiskFreeRate,ExerciseStyle\n");
 			for (OptionReferenceData refData : refDataList) {
 				String thisEntry = refData.getOptionName() + ",";
 				thisEntry += refData.getUnderlyingEpic() + ",";
@@ -18,7 +18,8 @@ public class OptionReferenceDataWriter {
 				thisEntry += refData.getExpiryDate() + ",";
 				thisEntry += refData.getCallOrPut().toString() + ",";
 				thisEntry += refData.getDividendYield() + ",";
-				thisEntry += refData.getRiskFreeRate() + "\n";
+				thisEntry += refData.getRiskFreeRate() + ",";
+				thisEntry += refData.getExerciseStyle().toString() + "\n";
 				writer.write(thisEntry);
 			}
 		}
@@ -0,0 +1,96 @@
+package com.ngray.option.limit;
+
+/**
+ * A limit on the exposure of the positions in an account and underlying to a measure of risk or PnL.
+ * The account or the underlying may be null, meaning all accounts or all underlyings. The limit is
+ * breached when the exposure is below its lower bound or above its upper bound.
+ * Instances of this class are immutable.
+ * @author nigelgray
+ *
+ */
+public class Limit {
+
+	public enum Measure {
+		DELTA,
+		GAMMA,
+		VEGA,
+		PNL
+	}
+
+	private final String name;
+	private final String account;
+	private final String underlying;
+	private final Measure measure;
+	private final double lowerBound;
+	private final double upperBound;
+
+	/**
+	 * Create a limit bounding the exposure of the account's positions on the underlying from below and above
+	 * @param name
+	 * @param account the account id, or null for all accounts
+	 * @param underlying the underlying identifier, or null for all underlyings
+	 * @param measure
+	 * @param lowerBound
+	 * @param upperBound
+	 */
+	public Limit(String name, String account, String underlying, Measure measure, double lowerBound, double upperBound) {
+		this.name = name;
+		this.account = account;
+		this.underlying = underlying;
+		this.measure = measure;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+	}
+
+	/**
+	 * Create a limit bounding the size of the exposure, long or short
+	 * @param name
+	 * @param account
+	 * @param underlying
+	 * @param measure
+	 * @param maximum
+	 */
+	public Limit(String name, String account, String underlying, Measure measure, double maximum) {
+		this(name, account, underlying, measure, -maximum, maximum);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getAccount() {
+		return account;
+	}
+
+	public String getUnderlying() {
+		return underlying;
+	}
+
+	public Measure getMeasure() {
+		return measure;
+	}
+
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * Return true if the exposure breaches this limit
+	 * @param exposure
+	 * @return
+	 */
+	public boolean isBreached(double exposure) {
+		return exposure < lowerBound || exposure > upperBound;
+	}
+
+	@Override
+	public String toString() {
+		return "[Name: " + name + ", Account: " + (account != null ? account : "All") + ", Underlying: " +
+				(underlying != null ? underlying : "All") + ", Measure: " + measure + ", LowerBound: " + lowerBound +
+				", UpperBound: " + upperBound + "]";
+	}
+}
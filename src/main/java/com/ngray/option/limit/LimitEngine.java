@@ -0,0 +1,297 @@
+package com.ngray.option.limit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import com.ngray.option.Log;
+import com.ngray.option.limit.Limit.Measure;
+import com.ngray.option.position.RiskAggregationListener;
+import com.ngray.option.position.RiskAggregationService;
+import com.ngray.option.position.RiskAggregationService.Totals;
+
+/**
+ * Monitors limits on the exposures of positions by account and underlying, as totalled by a RiskAggregationService.
+ * The engine listens to the totals each position event changes, and checks only the limits on the account and
+ * underlying totals which changed, so an update costs the same however many positions are held. The exposure
+ * checked is read back from the aggregation under the engine's lock, so totals passed out of order by concurrent
+ * events never leave a limit in the wrong state. Breaches and recoveries are published to a LimitService in the
+ * order they were found, after the engine's lock is released.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class LimitEngine {
+
+	// a limit and whether it is breached
+	private static class LimitState {
+		private final Limit limit;
+		private boolean breached;
+
+		LimitState(Limit limit) {
+			this.limit = limit;
+		}
+	}
+
+	private final String name;
+
+	private final RiskAggregationService aggregationService;
+
+	private final LimitService limitService;
+
+	private final RiskAggregationListener aggregationListener;
+
+	private final Object limitLock = new Object();
+
+	// serializes publishing, so events are published in the order they were found
+	private final Object publishLock = new Object();
+
+	// limits keyed by the account and underlying they apply to, with null meaning all, and by name
+	private final Map<List<String>, List<LimitState>> limitsByCell;
+	private final Map<String, LimitState> limits;
+
+	// events found holding limitLock, waiting to be published
+	private final Queue<LimitEvent> pendingEvents;
+
+	private long checks;
+	private long breaches;
+	private long recoveries;
+
+	/**
+	 * Create a limit engine on the totals of the aggregation service, publishing breaches and recoveries to the given service
+	 * @param name
+	 * @param aggregationService
+	 * @param limitService
+	 */
+	public LimitEngine(String name, RiskAggregationService aggregationService, LimitService limitService) {
+		Log.getLogger().info("Constructing LimitEngine " + name);
+		this.name = name;
+		this.aggregationService = aggregationService;
+		this.limitService = limitService;
+		this.limitsByCell = new HashMap<>();
+		this.limits = new HashMap<>();
+		this.pendingEvents = new ArrayDeque<>();
+		this.aggregationListener = (account, underlying, expiry, callOrPut, totals) -> {
+			if (expiry == null && callOrPut == null) {
+				onExposureUpdate(account, underlying);
+			}
+		};
+		aggregationService.addListener(aggregationListener);
+	}
+
+	/**
+	 * Return the name of this engine
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the service to which breaches and recoveries are published
+	 * @return
+	 */
+	public LimitService getLimitService() {
+		return limitService;
+	}
+
+	/**
+	 * Add a limit, replacing any limit of the same name, and publish a breach at once if the current exposure breaches it
+	 * @param limit
+	 */
+	public void addLimit(Limit limit) {
+		Log.getLogger().info("LimitEngine " + getName() + ": adding limit " + limit);
+		if (limit == null) return;
+
+		synchronized(limitLock) {
+			removeLimit(limit.getName());
+			LimitState state = new LimitState(limit);
+			List<String> cell = Arrays.asList(limit.getAccount(), limit.getUnderlying());
+			limitsByCell.computeIfAbsent(cell, key -> new ArrayList<>()).add(state);
+			limits.put(limit.getName(), state);
+			check(state, aggregationService.getTotals(limit.getAccount(), limit.getUnderlying(), null, null));
+		}
+		publishPendingEvents();
+	}
+
+	/**
+	 * Add each of the limits
+	 * @param limitsToAdd
+	 */
+	public void addLimits(List<Limit> limitsToAdd) {
+		limitsToAdd.forEach(this::addLimit);
+	}
+
+	/**
+	 * Remove the named limit - no recovery is published if it was breached
+	 * @param limitName
+	 */
+	public void removeLimit(String limitName) {
+		synchronized(limitLock) {
+			LimitState state = limits.remove(limitName);
+			if (state != null) {
+				List<String> cell = Arrays.asList(state.limit.getAccount(), state.limit.getUnderlying());
+				List<LimitState> cellLimits = limitsByCell.get(cell);
+				cellLimits.remove(state);
+				if (cellLimits.isEmpty()) {
+					limitsByCell.remove(cell);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the limits
+	 * @return
+	 */
+	public List<Limit> getLimits() {
+		List<Limit> result = new ArrayList<>();
+		synchronized(limitLock) {
+			limits.values().forEach(state -> result.add(state.limit));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the limits currently breached
+	 * @return
+	 */
+	public List<Limit> getBreachedLimits() {
+		List<Limit> result = new ArrayList<>();
+		synchronized(limitLock) {
+			limits.values().stream().filter(state -> state.breached).forEach(state -> result.add(state.limit));
+		}
+		return result;
+	}
+
+	// check the limits on the account and underlying against their latest totals
+	private void onExposureUpdate(String account, String underlying) {
+		List<String> cell = Arrays.asList(account, underlying);
+		synchronized(limitLock) {
+			List<LimitState> cellLimits = limitsByCell.get(cell);
+			if (cellLimits == null) {
+				return;
+			}
+			Totals totals = aggregationService.getTotals(account, underlying, null, null);
+			cellLimits.forEach(state -> check(state, totals));
+		}
+		publishPendingEvents();
+	}
+
+	// must be called holding limitLock
+	private void check(LimitState state, Totals totals) {
+		++checks;
+		double exposure = getExposure(totals, state.limit.getMeasure());
+		boolean breached = state.limit.isBreached(exposure);
+		if (breached == state.breached) {
+			return;
+		}
+		state.breached = breached;
+		LimitEvent event = new LimitEvent(state.limit, breached ? LimitEvent.Type.BREACH : LimitEvent.Type.RECOVERY, exposure);
+		if (breached) {
+			++breaches;
+			Log.getLogger().warn("LimitEngine " + getName() + ": breach " + event);
+		} else {
+			++recoveries;
+			Log.getLogger().info("LimitEngine " + getName() + ": recovery " + event);
+		}
+		pendingEvents.add(event);
+	}
+
+	// publish the events found so far, in order, without holding limitLock while the LimitService's listeners run
+	private void publishPendingEvents() {
+		synchronized(publishLock) {
+			while (true) {
+				LimitEvent event;
+				synchronized(limitLock) {
+					event = pendingEvents.poll();
+				}
+				if (event == null) {
+					return;
+				}
+				limitService.publishEvent(event);
+			}
+		}
+	}
+
+	private static double getExposure(Totals totals, Measure measure) {
+		switch (measure) {
+		case DELTA:
+			return totals.getDelta();
+		case GAMMA:
+			return totals.getGamma();
+		case VEGA:
+			return totals.getVega();
+		case PNL:
+			return totals.getPnL();
+		default:
+			throw new IllegalArgumentException("Unknown measure " + measure);
+		}
+	}
+
+	/**
+	 * Return the exposure of the account's positions on the underlying, where null means all accounts or underlyings
+	 * @param account
+	 * @param underlying
+	 * @param measure
+	 * @return
+	 */
+	public double getExposure(String account, String underlying, Measure measure) {
+		return getExposure(aggregationService.getTotals(account, underlying, null, null), measure);
+	}
+
+	/**
+	 * Return the number of limit checks made
+	 * @return
+	 */
+	public long getCheckCount() {
+		synchronized(limitLock) {
+			return checks;
+		}
+	}
+
+	/**
+	 * Return the number of breaches found
+	 * @return
+	 */
+	public long getBreachCount() {
+		synchronized(limitLock) {
+			return breaches;
+		}
+	}
+
+	/**
+	 * Return the number of recoveries found
+	 * @return
+	 */
+	public long getRecoveryCount() {
+		synchronized(limitLock) {
+			return recoveries;
+		}
+	}
+
+	/**
+	 * Shutdown the engine
+	 */
+	public void shutdown() {
+		Log.getLogger().info("LimitEngine " + getName() + " shutdown");
+		aggregationService.removeListener(aggregationListener);
+		synchronized(limitLock) {
+			limitsByCell.clear();
+			limits.clear();
+			pendingEvents.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized(limitLock) {
+			return "[Limits: " + limits.size() + ", Checks: " + checks + ", Breaches: " + breaches +
+					", Recoveries: " + recoveries + "]";
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.ngray.option.limit;
+
+import java.time.LocalTime;
+
+/**
+ * The breach of a limit, or its recovery, with the exposure which caused it
+ * Instances of this class are immutable.
+ * @author nigelgray
+ *
+ */
+public class LimitEvent {
+
+	public enum Type {
+		BREACH,
+		RECOVERY
+	}
+
+	private final Limit limit;
+	private final Type type;
+	private final double exposure;
+	private final LocalTime timestamp;
+
+	public LimitEvent(Limit limit, Type type, double exposure) {
+		this.limit = limit;
+		this.type = type;
+		this.exposure = exposure;
+		this.timestamp = LocalTime.now();
+	}
+
+	public Limit getLimit() {
+		return limit;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public double getExposure() {
+		return exposure;
+	}
+
+	public LocalTime getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "[Limit: " + limit.getName() + ", Type: " + type + ", Exposure: " + exposure + ", Timestamp: " + timestamp + "]";
+	}
+}
@@ -0,0 +1,74 @@
+package com.ngray.option.limit;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ngray.option.Log;
+import com.ngray.option.limit.Limit.Measure;
+
+/**
+ * Loads limits from a csv file with the header
+ * Name,Account,Underlying,Measure,LowerBound,UpperBound
+ * where an account or underlying of * means all of them, and the measure is one of DELTA, GAMMA, VEGA or PNL.
+ * @author nigelgray
+ *
+ */
+public class LimitLoader {
+
+	public static final String ALL = "*";
+
+	private static final int COLUMNS = 6;
+
+	private LimitLoader() {
+	}
+
+	/**
+	 * Load the limits from the supplied csv file
+	 * @param filename
+	 * @return
+	 * @throws IOException if the file cannot be read or a line is not a valid limit
+	 */
+	public static List<Limit> loadFromFile(String filename) throws IOException {
+		Log.getLogger().info("Loading limits from file " + filename);
+		try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+			return load(reader);
+		}
+	}
+
+	/**
+	 * Load the limits from the reader, skipping the header and blank lines
+	 * @param reader
+	 * @return
+	 * @throws IOException if a line is not a valid limit
+	 */
+	public static List<Limit> load(BufferedReader reader) throws IOException {
+		List<Limit> results = new ArrayList<>();
+		String line = null;
+		// read the header and discard
+		reader.readLine();
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			String[] data = line.split(",");
+			if (data.length != COLUMNS) {
+				throw new IOException("Invalid limit: " + line);
+			}
+			try {
+				results.add(new Limit(data[0].trim(), orAll(data[1]), orAll(data[2]), Measure.valueOf(data[3].trim()),
+						Double.parseDouble(data[4]), Double.parseDouble(data[5])));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Invalid limit: " + line, e);
+			}
+		}
+		return results;
+	}
+
+	private static String orAll(String value) {
+		String trimmed = value.trim();
+		return trimmed.isEmpty() || trimmed.equals(ALL) ? null : trimmed;
+	}
+}
@@ -0,0 +1,27 @@
+package com.ngray.option.limit;
+
+import com.ngray.option.service.Service;
+
+/**
+ * LimitService
+ * Provides limit breach and recovery events keyed by limit name, and all of them under the key ALL_LIMITS
+ * @author nigelgray
+ *
+ */
+public class LimitService extends Service<String, LimitEvent> {
+
+	public static final String ALL_LIMITS = "*";
+
+	public LimitService(String name) {
+		super(name, null);
+	}
+
+	/**
+	 * Publish the event to the listeners to its limit and to all limits
+	 * @param event
+	 */
+	public void publishEvent(LimitEvent event) {
+		publishData(event.getLimit().getName(), event);
+		publishData(ALL_LIMITS, event);
+	}
+}
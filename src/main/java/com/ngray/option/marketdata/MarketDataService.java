@@ -1,6 +1,7 @@
 package com.ngray.option.marketdata;
 
 import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
 import com.ngray.option.marketdata.MarketData.Type;
 import com.ngray.option.service.Service;
 import com.ngray.option.service.ServiceDataSource;
@@ -23,5 +24,16 @@ public class MarketDataService extends Service<FinancialInstrument, MarketData>
 		
 		return super.addListener(instrument, serviceListener);
 	}
+	
+	// the instrument's id is kept for as long as it has listeners
+	@Override
+	protected void onSubscribe(FinancialInstrument instrument) {
+		InstrumentRegistry.retain(instrument);
+	}
+	
+	@Override
+	protected void onUnsubscribe(FinancialInstrument instrument) {
+		InstrumentRegistry.release(instrument);
+	}
 
 }
@@ -0,0 +1,111 @@
+package com.ngray.option.model;
+
+import java.time.LocalDate;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.AmericanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataException;
+import com.ngray.option.marketdata.MarketData.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Model valuing American options with the Barone-Adesi-Whaley approximation.
+ * Market data and pricing contexts are handled exactly as in EuropeanOptionModel.
+ * @author nigelgray
+ *
+ */
+public class AmericanOptionModel implements Model {
+
+	private final PricingContextCache pricingContexts;
+
+	public AmericanOptionModel() {
+		this.pricingContexts = EuropeanOptionModel.getPricingContextCache();
+	}
+
+	@Override
+	public Risk calculateRisk(FinancialInstrument instrument, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
+		if(instrument == null) {
+			throw new ModelException("AmericanOptionModel::calculateRisk called with null FinancialInstrument");
+		}
+
+		if(marketData == null) {
+			throw new ModelException("AmericanOptionModel::calculateRisk called with null MarketData");
+		}
+
+		if (!(instrument instanceof AmericanOption)) {
+			throw new ModelException("AmericanOptionModel can't value security " + instrument.getIdentifier() +
+										" of type " + instrument.getClass());
+		}
+
+		AmericanOption option = (AmericanOption)instrument;
+		try {
+			EuropeanOptionPricingContext context = getPricingContext(option, valueDate);
+
+			MarketData spotMarketData = marketData.getMarketData(option.getUnderlying());
+			MarketData optionPriceOrVol = marketData.getMarketData(option);
+
+			if (spotMarketData.getType() != Type.PRICE) {
+				throw new ModelException("Expected price, got volatility");
+			}
+			double spot = spotMarketData.getMid();
+
+			double volatility = 0.0;
+			double optionPrice = Double.NaN;
+			if (optionPriceOrVol.getType() == Type.VOLATILITY) {
+				volatility = optionPriceOrVol.getMid();
+			} else {
+				optionPrice = optionPriceOrVol.getMid();
+				volatility = calculateImpliedVolatility(option, context, spot, optionPrice);
+			}
+
+			BlackScholesResult result = BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(context.getCallOrPut(), spot, context.getStrike(), volatility,
+					context.getTimeToExpiry(), context.getRiskFreeRate(), context.getDividendYield(), new BlackScholesResult());
+			if (Double.isNaN(optionPrice)) {
+				optionPrice = result.getPrice();
+			}
+			return new Risk(optionPrice, result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+					result.getVanna(), result.getVolga(), result.getCharm(), result.getSpeed(), volatility, optionPrice, spot);
+		} catch (MarketDataException e) {
+			throw new ModelException(e.getMessage());
+		} catch (MissingReferenceDataException e) {
+			throw new ModelException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Return the pricing context of the option for the value date, compiling it if it isn't
+	 * cached or the cached context is stale
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(AmericanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		return pricingContexts.getPricingContext(option, valueDate);
+	}
+
+	@Override
+	public void release(FinancialInstrument instrument) {
+		pricingContexts.remove(instrument);
+	}
+
+	private double calculateImpliedVolatility(AmericanOption option, EuropeanOptionPricingContext context, double spot,
+			double optionPrice) throws ModelException {
+		ImpliedVolatilityResult result = BaroneAdesiWhaleyModel.calcImpliedVolatility(context.getCallOrPut(), spot, context.getStrike(),
+				optionPrice, context.getTimeToExpiry(), context.getRiskFreeRate(), context.getDividendYield(), new ImpliedVolatilityResult());
+		if (result.getStatus() == Status.INVALID_INPUT) {
+			throw new ModelException("Can't calculate implied volatility of " + option.getIdentifier() + " from price " + optionPrice +
+										", spot " + spot + ", time to expiry " + context.getTimeToExpiry());
+		}
+		if (!result.isConverged()) {
+			Log.getLogger().warn("Implied volatility of " + option.getIdentifier() + " from price " + optionPrice + ": " + result);
+		}
+		return result.getVolatility();
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.ngray.option.model;
+
+import java.util.Arrays;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+
+/**
+ * The payoff of an average rate (Asian) call or put, struck against the arithmetic average
+ * of the underlying price over every point of the path
+ * @author nigelgray
+ *
+ */
+public class AverageRateOptionPayoff implements MonteCarloPayoff {
+
+	private final Type callOrPut;
+	private final double strike;
+
+	public AverageRateOptionPayoff(Type callOrPut, double strike) {
+		this.callOrPut = callOrPut;
+		this.strike = strike;
+	}
+
+	@Override
+	public double evaluate(double[] path, double[] gradient) {
+		double sum = 0.0;
+		for (double price : path) {
+			sum += price;
+		}
+		double average = sum/path.length;
+		double payoff = callOrPut == Type.CALL ? average - strike : strike - average;
+		if (payoff <= 0.0) {
+			Arrays.fill(gradient, 0.0);
+			return 0.0;
+		}
+		Arrays.fill(gradient, (callOrPut == Type.CALL ? 1.0 : -1.0)/path.length);
+		return payoff;
+	}
+
+	public Type getCallOrPut() {
+		return callOrPut;
+	}
+
+	public double getStrike() {
+		return strike;
+	}
+}
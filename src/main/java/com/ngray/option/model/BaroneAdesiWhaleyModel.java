@@ -0,0 +1,355 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+/**
+ * Static class encapsulating the Barone-Adesi-Whaley quadratic approximation for
+ * American option pricing and risk.
+ *
+ * The early exercise premium is approximated by A * (S/S*)^q, where the critical price S*
+ * at which immediate exercise becomes optimal is found by Newton's method, so each price costs
+ * one Black-Scholes evaluation plus a few Newton steps. Delta, gamma and speed follow in closed
+ * form from the premium term. Vega, theta, rho and the remaining second order greeks are taken
+ * from finite differences of the price and delta, with every bumped critical price solve seeded
+ * from the unbumped one. Calls on underlyings without a dividend yield and puts at non-positive
+ * interest rates are never exercised early, and are priced as European options.
+ * @author nigelgray
+ *
+ */
+public final class BaroneAdesiWhaleyModel {
+
+	private static final double VOLATILITY_BUMP = 0.001;
+
+	private static final double RATE_BUMP = 0.0001;
+
+	private static final double ONE_DAY = 1.0/365.0;
+
+	private static final int MAX_CRITICAL_PRICE_ITERATIONS = 50;
+
+	private static final double CRITICAL_PRICE_TOLERANCE = 1e-7;
+
+	private static final int MAX_IMPLIED_VOLATILITY_ITERATIONS = 50;
+
+	private static final double IMPLIED_VOLATILITY_TOLERANCE = 1e-12;
+
+	private BaroneAdesiWhaleyModel() {
+	}
+
+	/**
+	 * Return true if an option of the given type may be worth exercising before expiry
+	 * @param callOrPut
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @return
+	 */
+	public static boolean hasEarlyExercisePremium(Type callOrPut, double riskFreeRate, double dividendYield) {
+		return callOrPut == Type.CALL ? dividendYield > 0.0 : riskFreeRate > 0.0;
+	}
+
+	/**
+	 * Calculate the approximate price of an American option
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param volatility
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @return
+	 */
+	public static double calcOptionPrice(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield) {
+
+		BlackScholesResult result = new BlackScholesResult();
+		calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, Double.NaN, result);
+		return result.getPrice();
+	}
+
+	/**
+	 * Calculate the approximate price and greeks of an American option, in the same units as
+	 * BlackScholesModel: vega and rho per 1% move, theta and charm per calendar day
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param volatility
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param result the holder to write the price and greeks into
+	 * @return result
+	 */
+	public static BlackScholesResult calcOptionPriceAndGreeks(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						BlackScholesResult result) {
+
+		if (!hasEarlyExercisePremium(callOrPut, riskFreeRate, dividendYield) && timeToExpiry > 0.0) {
+			return BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+		}
+
+		double criticalPrice = calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, Double.NaN, result);
+		double price = result.getPrice();
+		double delta = result.getDelta();
+		double gamma = result.getGamma();
+		double speed = result.getSpeed();
+
+		BlackScholesResult bumped = new BlackScholesResult();
+		calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility + VOLATILITY_BUMP, timeToExpiry, riskFreeRate, dividendYield, criticalPrice, bumped);
+		double priceVolUp = bumped.getPrice();
+		double deltaVolUp = bumped.getDelta();
+		calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility - VOLATILITY_BUMP, timeToExpiry, riskFreeRate, dividendYield, criticalPrice, bumped);
+		double priceVolDown = bumped.getPrice();
+		double deltaVolDown = bumped.getDelta();
+
+		// a forward difference keeps the bump clear of zero, where early exercise of a put switches off
+		calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate + RATE_BUMP, dividendYield, criticalPrice, bumped);
+		double priceRateUp = bumped.getPrice();
+
+		calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility, timeToExpiry - ONE_DAY, riskFreeRate, dividendYield, criticalPrice, bumped);
+		double priceTomorrow = bumped.getPrice();
+		double deltaTomorrow = bumped.getDelta();
+
+		result.set(
+			price,
+			delta,
+			gamma,
+			0.01 * (priceVolUp - priceVolDown)/(2 * VOLATILITY_BUMP),
+			priceTomorrow - price,
+			0.01 * (priceRateUp - price)/RATE_BUMP);
+		result.setSecondOrder(
+			0.01 * (deltaVolUp - deltaVolDown)/(2 * VOLATILITY_BUMP),
+			0.0001 * (priceVolUp - 2 * price + priceVolDown)/(VOLATILITY_BUMP * VOLATILITY_BUMP),
+			deltaTomorrow - delta,
+			speed);
+		return result;
+	}
+
+	/**
+	 * Solve for the implied volatility of an American option.
+	 *
+	 * Early exercise only adds value, so the European implied volatility of the price is an upper
+	 * bound on the American one. A second estimate comes from the European implied volatility of the
+	 * price less the early exercise premium at that bound, and secant steps from these two points,
+	 * safeguarded by bisection on the bracket, converge in a handful of American price evaluations.
+	 * Options that are never exercised early are solved directly by ImpliedVolatilitySolver.
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param optionPrice
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param result the holder to write the implied volatility, iteration count and status into
+	 * @return result
+	 */
+	public static ImpliedVolatilityResult calcImpliedVolatility(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double optionPrice,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						ImpliedVolatilityResult result) {
+
+		if (!hasEarlyExercisePremium(callOrPut, riskFreeRate, dividendYield)) {
+			return ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+		}
+
+		if (!(spot > 0.0) || !(strike > 0.0) || !(timeToExpiry > 0.0) || Double.isInfinite(spot) || Double.isInfinite(strike) ||
+			Double.isInfinite(timeToExpiry) || !(optionPrice >= 0.0) || Double.isInfinite(optionPrice) ||
+			Double.isNaN(riskFreeRate) || Double.isInfinite(riskFreeRate) || Double.isNaN(dividendYield) || Double.isInfinite(dividendYield)) {
+			result.set(Double.NaN, 0, Status.INVALID_INPUT);
+			return result;
+		}
+
+		double intrinsicValue = callOrPut == Type.CALL ? max(spot - strike, 0.0) : max(strike - spot, 0.0);
+		double maximumValue = callOrPut == Type.CALL ? spot : strike;
+		if (optionPrice <= intrinsicValue) {
+			result.set(ImpliedVolatilitySolver.MIN_VOLATILITY, 0, Status.BELOW_INTRINSIC_VALUE);
+			return result;
+		}
+		if (optionPrice >= maximumValue) {
+			result.set(ImpliedVolatilitySolver.MAX_VOLATILITY, 0, Status.ABOVE_MAXIMUM_VALUE);
+			return result;
+		}
+
+		BlackScholesResult american = new BlackScholesResult();
+		int iterations = 0;
+
+		ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+		double upper = result.isConverged() ? result.getVolatility() : ImpliedVolatilitySolver.MAX_VOLATILITY;
+		double criticalPrice = calcPriceAndSpotGreeks(callOrPut, spot, strike, upper, timeToExpiry, riskFreeRate, dividendYield, Double.NaN, american);
+		++iterations;
+		double previousVolatility = upper;
+		double previousError = american.getPrice() - optionPrice;
+		if (previousError < 0.0 && upper == ImpliedVolatilitySolver.MAX_VOLATILITY) {
+			result.set(ImpliedVolatilitySolver.MAX_VOLATILITY, iterations, Status.ABOVE_MAXIMUM_VALUE);
+			return result;
+		}
+		if (previousError <= 0.0) {
+			// the early exercise premium is lost in rounding, and the European volatility is the answer
+			result.set(upper, iterations, Status.CONVERGED);
+			return result;
+		}
+
+		double earlyExercisePremium = american.getPrice() -
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, upper, timeToExpiry, riskFreeRate, dividendYield, new BlackScholesResult()).getPrice();
+		ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice - earlyExercisePremium, timeToExpiry, riskFreeRate, dividendYield, result);
+		double volatility = result.isConverged() && result.getVolatility() < upper ? result.getVolatility() : 0.5 * upper;
+		double lower = 0.0;
+
+		while (iterations < MAX_IMPLIED_VOLATILITY_ITERATIONS) {
+			criticalPrice = calcPriceAndSpotGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, criticalPrice, american);
+			++iterations;
+			double error = american.getPrice() - optionPrice;
+			if (error == 0.0) {
+				result.set(volatility, iterations, Status.CONVERGED);
+				return result;
+			}
+			if (error > 0.0) {
+				upper = volatility;
+			} else {
+				lower = volatility;
+			}
+
+			double next = error != previousError ?
+					volatility - error * (volatility - previousVolatility)/(error - previousError) : Double.NaN;
+			if (!(next > lower && next < upper)) {
+				next = 0.5 * (lower + upper);
+			}
+			if (abs(next - volatility) <= IMPLIED_VOLATILITY_TOLERANCE * volatility || upper - lower <= IMPLIED_VOLATILITY_TOLERANCE * volatility) {
+				result.set(next, iterations, Status.CONVERGED);
+				return result;
+			}
+			previousVolatility = volatility;
+			previousError = error;
+			volatility = next;
+		}
+		result.set(volatility, iterations, Status.MAX_ITERATIONS_EXCEEDED);
+		return result;
+	}
+
+	/**
+	 * Write the price, delta, gamma and speed of the option into result, leaving the other greeks
+	 * NaN, and return the critical price
+	 */
+	private static double calcPriceAndSpotGreeks(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						double criticalPriceGuess,
+						BlackScholesResult result) {
+
+		if (timeToExpiry <= 0.0) {
+			double intrinsicValue = callOrPut == Type.CALL ? spot - strike : strike - spot;
+			setSpotGreeks(result, max(intrinsicValue, 0.0), intrinsicValue > 0.0 ? (callOrPut == Type.CALL ? 1.0 : -1.0) : 0.0, 0.0, 0.0);
+			return Double.NaN;
+		}
+
+		BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+		if (!hasEarlyExercisePremium(callOrPut, riskFreeRate, dividendYield)) {
+			setSpotGreeks(result, result.getPrice(), result.getDelta(), result.getGamma(), result.getSpeed());
+			return Double.NaN;
+		}
+
+		double sqrtTimeToExpiry = sqrt(timeToExpiry);
+		double volSqrtTime = volatility * sqrtTimeToExpiry;
+		double variance = volatility * volatility;
+		double costOfCarry = riskFreeRate - dividendYield;
+		double discountFactor = exp(-riskFreeRate * timeToExpiry);
+		double dividendFactor = exp(-dividendYield * timeToExpiry);
+		double nMinusOne = 2 * costOfCarry/variance - 1;
+		// M/K = 2r/(variance * (1 - exp(-rT))), which tends to 2/(variance * T) as r goes to zero
+		double rateTime = riskFreeRate * timeToExpiry;
+		double mOverK = 2/(variance * timeToExpiry) * (rateTime == 0.0 ? 1.0 : -rateTime/expm1(-rateTime));
+		double root = sqrt(nMinusOne * nMinusOne + 4 * mOverK);
+		double exponent = callOrPut == Type.CALL ? (-nMinusOne + root)/2 : (-nMinusOne - root)/2;
+
+		double criticalPrice = criticalPriceGuess;
+		if (!(criticalPriceGuess > 0.0) || Double.isInfinite(criticalPriceGuess)) {
+			// the critical price of the perpetual option, interpolated towards the strike for finite expiries
+			double perpetualRoot = sqrt(nMinusOne * nMinusOne + 8 * riskFreeRate/variance);
+			if (callOrPut == Type.CALL) {
+				double perpetualCriticalPrice = strike/(1 - 2/(-nMinusOne + perpetualRoot));
+				double h = -(costOfCarry * timeToExpiry + 2 * volSqrtTime) * strike/(perpetualCriticalPrice - strike);
+				criticalPrice = strike + (perpetualCriticalPrice - strike) * (1 - exp(h));
+			} else {
+				double perpetualCriticalPrice = strike/(1 - 2/(-nMinusOne - perpetualRoot));
+				double h = (costOfCarry * timeToExpiry - 2 * volSqrtTime) * strike/(strike - perpetualCriticalPrice);
+				criticalPrice = perpetualCriticalPrice + (strike - perpetualCriticalPrice) * exp(h);
+			}
+		}
+
+		// Newton's method on the value matching condition, with the coefficient of the premium taken from
+		// smooth pasting. The price uses the coefficient from value matching alone, which makes it stationary
+		// in the critical price, so an error in the critical price only reaches the price at second order.
+		double coefficient = 0.0;
+		for (int i = 0; i < MAX_CRITICAL_PRICE_ITERATIONS; ++i) {
+			double dOne = (log(criticalPrice/strike) + (costOfCarry + variance/2) * timeToExpiry)/volSqrtTime;
+			double dTwo = dOne - volSqrtTime;
+			double next;
+			if (callOrPut == Type.CALL) {
+				double nOne = StandardNormal.cumulativeProbability(dOne);
+				double europeanPrice = criticalPrice * dividendFactor * nOne - strike * discountFactor * StandardNormal.cumulativeProbability(dTwo);
+				coefficient = criticalPrice - strike - europeanPrice;
+				double residual = coefficient - (1 - dividendFactor * nOne) * criticalPrice/exponent;
+				if (abs(residual) <= CRITICAL_PRICE_TOLERANCE * strike) {
+					break;
+				}
+				double slope = dividendFactor * nOne * (1 - 1/exponent) + (1 - dividendFactor * StandardNormal.density(dOne)/volSqrtTime)/exponent;
+				next = criticalPrice - residual/(1 - slope);
+			} else {
+				double nMinusOneD = StandardNormal.cumulativeProbability(-dOne);
+				double europeanPrice = strike * discountFactor * StandardNormal.cumulativeProbability(-dTwo) - criticalPrice * dividendFactor * nMinusOneD;
+				coefficient = strike - criticalPrice - europeanPrice;
+				double residual = coefficient + (1 - dividendFactor * nMinusOneD) * criticalPrice/exponent;
+				if (abs(residual) <= CRITICAL_PRICE_TOLERANCE * strike) {
+					break;
+				}
+				double slope = -dividendFactor * nMinusOneD * (1 - 1/exponent) - (1 + dividendFactor * StandardNormal.density(dOne)/volSqrtTime)/exponent;
+				next = criticalPrice + residual/(1 + slope);
+			}
+			if (!(next > 0.0) || Double.isInfinite(next)) {
+				break;
+			}
+			criticalPrice = next;
+		}
+
+		if (callOrPut == Type.CALL ? spot >= criticalPrice : spot <= criticalPrice) {
+			setSpotGreeks(result, callOrPut == Type.CALL ? spot - strike : strike - spot, callOrPut == Type.CALL ? 1.0 : -1.0, 0.0, 0.0);
+			return criticalPrice;
+		}
+
+		double premium = coefficient * pow(spot/criticalPrice, exponent);
+		setSpotGreeks(result,
+				result.getPrice() + premium,
+				result.getDelta() + exponent * premium/spot,
+				result.getGamma() + exponent * (exponent - 1) * premium/(spot * spot),
+				result.getSpeed() + exponent * (exponent - 1) * (exponent - 2) * premium/(spot * spot * spot));
+		return criticalPrice;
+	}
+
+	private static void setSpotGreeks(BlackScholesResult result, double price, double delta, double gamma, double speed) {
+		result.set(price, delta, gamma, Double.NaN, Double.NaN, Double.NaN);
+		result.setSecondOrder(Double.NaN, Double.NaN, Double.NaN, speed);
+	}
+}
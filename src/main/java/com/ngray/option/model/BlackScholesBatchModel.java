@@ -0,0 +1,148 @@
+package com.ngray.option.model;
+
+import java.util.stream.IntStream;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+/**
+ * Static class pricing an OptionBatch with the Black-Scholes model. Each method runs a flat
+ * loop over the primitive arrays of the batch, reusing a single result holder per loop, so
+ * no objects are created per option. In parallel mode the batch is split into fixed size
+ * chunks evaluated on the common fork-join pool; batches smaller than PARALLEL_THRESHOLD
+ * are always evaluated on the calling thread.
+ * @author nigelgray
+ *
+ */
+public final class BlackScholesBatchModel {
+
+	/**
+	 * Minimum batch size for which parallel evaluation is used
+	 */
+	public static final int PARALLEL_THRESHOLD = 1024;
+
+	private static final int CHUNK_SIZE = 256;
+
+	private BlackScholesBatchModel() {
+	}
+
+	/**
+	 * Calculate the price and greeks of every option in the batch from its volatility
+	 * @param batch
+	 */
+	public static void calcOptionPricesAndGreeks(OptionBatch batch) {
+		calcOptionPricesAndGreeks(batch, false);
+	}
+
+	/**
+	 * Calculate the price and greeks of every option in the batch from its volatility
+	 * @param batch
+	 * @param parallel
+	 */
+	public static void calcOptionPricesAndGreeks(OptionBatch batch, boolean parallel) {
+		if (parallel && batch.size() >= PARALLEL_THRESHOLD) {
+			chunks(batch).parallel().forEach(chunk -> calcOptionPricesAndGreeks(batch, chunkStart(chunk), chunkEnd(batch, chunk)));
+		} else {
+			calcOptionPricesAndGreeks(batch, 0, batch.size());
+		}
+	}
+
+	/**
+	 * Solve for the implied volatility of every option in the batch from its option price, writing
+	 * the volatility, iteration count and status of each solve into the batch
+	 * @param batch
+	 * @return the number of solves that did not converge
+	 */
+	public static int calcImpliedVolatilities(OptionBatch batch) {
+		return calcImpliedVolatilities(batch, false);
+	}
+
+	/**
+	 * Solve for the implied volatility of every option in the batch from its option price, writing
+	 * the volatility, iteration count and status of each solve into the batch
+	 * @param batch
+	 * @param parallel
+	 * @return the number of solves that did not converge
+	 */
+	public static int calcImpliedVolatilities(OptionBatch batch, boolean parallel) {
+		if (parallel && batch.size() >= PARALLEL_THRESHOLD) {
+			return chunks(batch).parallel().map(chunk -> calcImpliedVolatilities(batch, chunkStart(chunk), chunkEnd(batch, chunk))).sum();
+		}
+		return calcImpliedVolatilities(batch, 0, batch.size());
+	}
+
+	private static void calcOptionPricesAndGreeks(OptionBatch batch, int from, int to) {
+		boolean[] call = batch.getCallFlags();
+		double[] spot = batch.getSpot();
+		double[] strike = batch.getStrike();
+		double[] volatility = batch.getVolatility();
+		double[] timeToExpiry = batch.getTimeToExpiry();
+		double[] riskFreeRate = batch.getRiskFreeRate();
+		double[] dividendYield = batch.getDividendYield();
+		double[] price = batch.getPrice();
+		double[] delta = batch.getDelta();
+		double[] gamma = batch.getGamma();
+		double[] vega = batch.getVega();
+		double[] theta = batch.getTheta();
+		double[] rho = batch.getRho();
+		double[] vanna = batch.getVanna();
+		double[] volga = batch.getVolga();
+		double[] charm = batch.getCharm();
+		double[] speed = batch.getSpeed();
+
+		BlackScholesResult result = new BlackScholesResult();
+		for (int i = from; i < to; ++i) {
+			BlackScholesModel.calcOptionPriceAndGreeks(call[i] ? Type.CALL : Type.PUT,
+					spot[i], strike[i], volatility[i], timeToExpiry[i], riskFreeRate[i], dividendYield[i], result);
+			price[i] = result.getPrice();
+			delta[i] = result.getDelta();
+			gamma[i] = result.getGamma();
+			vega[i] = result.getVega();
+			theta[i] = result.getTheta();
+			rho[i] = result.getRho();
+			vanna[i] = result.getVanna();
+			volga[i] = result.getVolga();
+			charm[i] = result.getCharm();
+			speed[i] = result.getSpeed();
+		}
+	}
+
+	private static int calcImpliedVolatilities(OptionBatch batch, int from, int to) {
+		boolean[] call = batch.getCallFlags();
+		double[] spot = batch.getSpot();
+		double[] strike = batch.getStrike();
+		double[] optionPrice = batch.getOptionPrice();
+		double[] timeToExpiry = batch.getTimeToExpiry();
+		double[] riskFreeRate = batch.getRiskFreeRate();
+		double[] dividendYield = batch.getDividendYield();
+		double[] volatility = batch.getVolatility();
+		int[] iterations = batch.getIterations();
+		Status[] status = batch.getStatus();
+
+		int failures = 0;
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		for (int i = from; i < to; ++i) {
+			ImpliedVolatilitySolver.solve(call[i] ? Type.CALL : Type.PUT,
+					spot[i], strike[i], optionPrice[i], timeToExpiry[i], riskFreeRate[i], dividendYield[i], result);
+			volatility[i] = result.getVolatility();
+			iterations[i] = result.getIterations();
+			status[i] = result.getStatus();
+			if (!result.isConverged()) {
+				++failures;
+			}
+		}
+		return failures;
+	}
+
+	private static IntStream chunks(OptionBatch batch) {
+		return IntStream.range(0, (batch.size() + CHUNK_SIZE - 1)/CHUNK_SIZE);
+	}
+
+	private static int chunkStart(int chunk) {
+		return chunk * CHUNK_SIZE;
+	}
+
+	private static int chunkEnd(OptionBatch batch, int chunk) {
+		return Math.min(batch.size(), (chunk + 1) * CHUNK_SIZE);
+	}
+}
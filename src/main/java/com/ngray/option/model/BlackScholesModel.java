@@ -1,7 +1,8 @@
 package com.ngray.option.model;
 
 import static java.lang.Math.*;
-import org.apache.commons.math3.distribution.NormalDistribution;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
 
 /**
  * Static class encapsulating a simple Black-Scholes model for
@@ -57,9 +58,126 @@ public class BlackScholesModel {
 		return strike * exp(-riskFreeRate * timeToExpiry) * cumulativeDistribution(-dTwo) - spot * exp(-dividendYield * timeToExpiry) * cumulativeDistribution(-dOne);	
 	}
 
-	
 	/**
-	 * Calculate the implied volatility of a European call option
+	 * Calculate the theoretical price and greeks of a European option in a single pass, sharing
+	 * d1, d2, the discount factors and the distribution values between them. The values written
+	 * to result are consistent with the individual calcXXX methods of this class.
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param volatility
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param result the holder to write the price and greeks into
+	 * @return result
+	 */
+	public static BlackScholesResult calcOptionPriceAndGreeks(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						BlackScholesResult result) {
+
+		return calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, sqrt(timeToExpiry), riskFreeRate, dividendYield,
+				exp(-riskFreeRate * timeToExpiry), exp(-dividendYield * timeToExpiry), result);
+	}
+
+	/**
+	 * Calculate the theoretical price and greeks of a European option in a single pass, taking the
+	 * strike, time to expiry, rates and discount factors from a compiled pricing context
+	 * @param context
+	 * @param spot
+	 * @param volatility
+	 * @param result the holder to write the price and greeks into
+	 * @return result
+	 */
+	public static BlackScholesResult calcOptionPriceAndGreeks(
+						EuropeanOptionPricingContext context,
+						double spot,
+						double volatility,
+						BlackScholesResult result) {
+
+		return calcOptionPriceAndGreeks(context.getCallOrPut(), spot, context.getStrike(), volatility, context.getTimeToExpiry(),
+				context.getSqrtTimeToExpiry(), context.getRiskFreeRate(), context.getDividendYield(),
+				context.getDiscountFactor(), context.getDividendFactor(), result);
+	}
+
+	private static BlackScholesResult calcOptionPriceAndGreeks(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double volatility,
+						double timeToExpiry,
+						double sqrtTimeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						double discountFactor,
+						double dividendFactor,
+						BlackScholesResult result) {
+
+		double volSqrtTime = volatility * sqrtTimeToExpiry;
+
+		double dOne = (log(spot/strike) + (riskFreeRate - dividendYield + volatility * volatility/2) * timeToExpiry)/volSqrtTime;
+		double dTwo = dOne - volSqrtTime;
+		double densityDOne = normalProbabilityDensity(dOne);
+
+		double forwardValue = spot * dividendFactor;
+		double strikeValue = strike * discountFactor;
+		double gamma = densityDOne * dividendFactor/(spot * volSqrtTime);
+		double vega = 0.01 * forwardValue * sqrtTimeToExpiry * densityDOne;
+		double thetaVolTerm = spot * volatility * densityDOne/(2 * sqrtTimeToExpiry);
+
+		// second order greeks, with vols in the same 1% units as vega and times in calendar days as theta
+		double vanna = -0.01 * dividendFactor * densityDOne * dTwo/volatility;
+		double volga = 0.01 * vega * dOne * dTwo/volatility;
+		double speed = -gamma/spot * (dOne/volSqrtTime + 1);
+		double charmDensityTerm = dividendFactor * densityDOne *
+				(2 * (riskFreeRate - dividendYield) * timeToExpiry - dTwo * volSqrtTime)/(2 * timeToExpiry * volSqrtTime);
+
+		if (callOrPut == Type.CALL) {
+			double nOne = cumulativeDistribution(dOne);
+			double nTwo = cumulativeDistribution(dTwo);
+			double theta = -(thetaVolTerm + riskFreeRate * strikeValue * nTwo - dividendYield * forwardValue * nOne)/365;
+			result.set(
+				forwardValue * nOne - strikeValue * nTwo,
+				nOne * dividendFactor,
+				gamma,
+				vega,
+				theta,
+				0.01 * strikeValue * timeToExpiry * nTwo);
+			result.setSecondOrder(
+				vanna,
+				volga,
+				(dividendYield * dividendFactor * nOne - charmDensityTerm)/365,
+				speed);
+		} else {
+			double nMinusOne = cumulativeDistribution(-dOne);
+			double nMinusTwo = cumulativeDistribution(-dTwo);
+			double theta = (riskFreeRate * strikeValue * nMinusTwo - dividendYield * forwardValue * nMinusOne - thetaVolTerm)/365;
+			result.set(
+				strikeValue * nMinusTwo - forwardValue * nMinusOne,
+				-nMinusOne * dividendFactor,
+				gamma,
+				vega,
+				theta,
+				-0.01 * strikeValue * timeToExpiry * nMinusTwo);
+			result.setSecondOrder(
+				vanna,
+				volga,
+				(-dividendYield * dividendFactor * nMinusOne - charmDensityTerm)/365,
+				speed);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Calculate the implied volatility of a European call option. Prices outside the no-arbitrage
+	 * bounds return the corresponding volatility bound of ImpliedVolatilitySolver.
 	 * @param spot
 	 * @param strike
 	 * @param optionPrice
@@ -76,25 +194,13 @@ public class BlackScholesModel {
 						double riskFreeRate,
 						double dividendYield) {
 		
-		double highVol = 5.0;
-		double lowVol = 0.0;
-		
-		while (Double.compare(highVol - lowVol, 0.0001) > 0) {
-			double volGuess = (highVol+lowVol)/2;
-			double optionPriceGuess = calcCallOptionPrice(spot, strike, volGuess, timeToExpiry, riskFreeRate, dividendYield);
-			double error = optionPriceGuess - optionPrice;
-			if (error > 0.0) {
-				highVol = volGuess;
-			} else {
-				lowVol = volGuess;
-			}
-		}
-		
-		return (highVol + lowVol)/2;
+		return ImpliedVolatilitySolver.solve(Type.CALL, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield,
+				new ImpliedVolatilityResult()).getVolatility();
 	}
 	
 	/**
-	 * Calculate the implied volatility of a European put option
+	 * Calculate the implied volatility of a European put option. Prices outside the no-arbitrage
+	 * bounds return the corresponding volatility bound of ImpliedVolatilitySolver.
 	 * @param spot
 	 * @param strike
 	 * @param optionPrice
@@ -111,20 +217,8 @@ public class BlackScholesModel {
 					double riskFreeRate,
 					double dividendYield) {
 
-		double highVol = 5.0;
-		double lowVol = 0.0;
-		
-		while (highVol - lowVol > 0.0001) {
-			double volGuess = (highVol+lowVol)/2;
-			double error = calcPutOptionPrice(spot, strike, volGuess, timeToExpiry, riskFreeRate, dividendYield) - optionPrice;
-			if (error > 0.0) {
-				highVol = volGuess;
-			} else {
-				lowVol = volGuess;
-			}
-		}
-		
-		return (highVol + lowVol)/2;
+		return ImpliedVolatilitySolver.solve(Type.PUT, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield,
+				new ImpliedVolatilityResult()).getVolatility();
 	}
 	
 	/**
@@ -314,11 +408,11 @@ public class BlackScholesModel {
 	}
 	
 	private static double cumulativeDistribution(double x) {		
-		return new NormalDistribution().cumulativeProbability(x);
+		return StandardNormal.cumulativeProbability(x);
 	}
 	
 	private static double normalProbabilityDensity(double x) {
-		return new NormalDistribution().density(x);
+		return StandardNormal.density(x);
 	}
 	
 	private static double calcDOne(
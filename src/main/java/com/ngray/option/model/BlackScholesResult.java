@@ -0,0 +1,126 @@
+package com.ngray.option.model;
+
+/**
+ * Mutable holder for the price and first and second order greeks of a European option
+ * produced in a single pass by BlackScholesModel.calcOptionPriceAndGreeks. Callers own the holder and may
+ * reuse it across evaluations to avoid allocation on the pricing hot path.
+ * Objects of this type are not thread safe.
+ * @author nigelgray
+ *
+ */
+public class BlackScholesResult {
+
+	private double price;
+	private double delta;
+	private double gamma;
+	private double vega;
+	private double theta;
+	private double rho;
+	private double vanna;
+	private double volga;
+	private double charm;
+	private double speed;
+
+	public BlackScholesResult() {
+		clear();
+	}
+
+	/**
+	 * Reset all values to NaN
+	 */
+	public void clear() {
+		set(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+		setSecondOrder(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+	}
+
+	void set(double price, double delta, double gamma, double vega, double theta, double rho) {
+		this.price = price;
+		this.delta = delta;
+		this.gamma = gamma;
+		this.vega = vega;
+		this.theta = theta;
+		this.rho = rho;
+	}
+
+	void setSecondOrder(double vanna, double volga, double charm, double speed) {
+		this.vanna = vanna;
+		this.volga = volga;
+		this.charm = charm;
+		this.speed = speed;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public double getDelta() {
+		return delta;
+	}
+
+	public double getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Vega per 1% move in volatility
+	 * @return
+	 */
+	public double getVega() {
+		return vega;
+	}
+
+	/**
+	 * Theta per calendar day
+	 * @return
+	 */
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Rho per 1% move in the risk free rate
+	 * @return
+	 */
+	public double getRho() {
+		return rho;
+	}
+
+	/**
+	 * Change in delta per 1% move in volatility
+	 * @return
+	 */
+	public double getVanna() {
+		return vanna;
+	}
+
+	/**
+	 * Change in vega per 1% move in volatility
+	 * @return
+	 */
+	public double getVolga() {
+		return volga;
+	}
+
+	/**
+	 * Change in delta per calendar day
+	 * @return
+	 */
+	public double getCharm() {
+		return charm;
+	}
+
+	/**
+	 * Change in gamma per unit move in the spot price
+	 * @return
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	@Override
+	public String toString() {
+		return "[Price: " + price + ", Delta: " + delta + ", Gamma: " + gamma +
+				", Vega: " + vega + ", Theta: " + theta + ", Rho: " + rho +
+				", Vanna: " + vanna + ", Volga: " + volga + ", Charm: " + charm + ", Speed: " + speed + "]";
+	}
+}
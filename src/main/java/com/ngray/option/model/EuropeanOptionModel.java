@@ -1,24 +1,46 @@
 package com.ngray.option.model;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
-
 
+import com.ngray.option.Log;
 import com.ngray.option.financialinstrument.EuropeanOption;
 import com.ngray.option.financialinstrument.FinancialInstrument;
 import com.ngray.option.ig.refdata.MissingReferenceDataException;
-import com.ngray.option.ig.refdata.OptionReferenceData;
-import com.ngray.option.ig.refdata.OptionReferenceDataMap;
 import com.ngray.option.marketdata.MarketData;
 import com.ngray.option.marketdata.MarketDataCollection;
 import com.ngray.option.marketdata.MarketDataException;
 import com.ngray.option.marketdata.MarketData.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
 import com.ngray.option.risk.Risk;
 
 public class EuropeanOptionModel implements Model {
 
+	// shared by all model instances, so seeds survive any model created outside of EuropeanOption.getModel()
+	private static final ImpliedVolatilitySeedCache impliedVolatilitySeedCache = new ImpliedVolatilitySeedCache();
+	
+	// shared with the other models compiling contexts from the option reference data alone
+	private static final PricingContextCache pricingContexts = new PricingContextCache();
+	
 	public EuropeanOptionModel() {
 	}
+	
+	/**
+	 * Return the cache of the pricing contexts compiled from the option reference data, shared by
+	 * the European, American and Monte Carlo models
+	 * @return
+	 */
+	public static PricingContextCache getPricingContextCache() {
+		return pricingContexts;
+	}
+	
+	/**
+	 * Return the cache of last solved implied volatilities used to seed the implied volatility
+	 * solve for each option price update, and its statistics
+	 * @return
+	 */
+	public static ImpliedVolatilitySeedCache getImpliedVolatilitySeedCache() {
+		return impliedVolatilitySeedCache;
+	}
 
 	@Override
 	public Risk calculateRisk(FinancialInstrument instrument, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
@@ -35,98 +57,71 @@ public class EuropeanOptionModel implements Model {
 										" of type " + instrument.getClass());
 		}
 		
-		EuropeanOption option = (EuropeanOption)instrument;		
-		switch (option.getType()) {
-		case CALL:
-			return calculateRiskForCall(option, marketData, valueDate);
-		case PUT:
-			return calculateRiskForPut(option, marketData, valueDate);
-		default:
-			// will never get here because we can't create an option without a type
-			return null;
-		}
-	}
-
-	private Risk calculateRiskForPut(EuropeanOption option, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
+		EuropeanOption option = (EuropeanOption)instrument;
 		try {
-			double strike = option.getStrike();
-			long daysToExpiry = ChronoUnit.DAYS.between(valueDate, option.getExpiryDate());
-			double timeToExpiry = ((double)daysToExpiry)/365.0;
-			
-			OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(option.getIdentifier());
-			double dividendYield = refData.getDividendYield() ; 
-			double riskFreeRate = refData.getRiskFreeRate();
+			EuropeanOptionPricingContext context = getPricingContext(option, valueDate);
 			
 			MarketData spotMarketData = marketData.getMarketData(option.getUnderlying());
 			MarketData optionPriceOrVol = marketData.getMarketData(option);
 			
 			if (spotMarketData.getType() != Type.PRICE) {
-				throw new ModelException("");
+				throw new ModelException("Expected price, got volatility");
 			}
 			double spot = spotMarketData.getMid();
 			
 			double volatility = 0.0;
-			double optionPrice = 0.0;
+			double optionPrice = Double.NaN;
 			if (optionPriceOrVol.getType() == Type.VOLATILITY) {
 				volatility = optionPriceOrVol.getMid();
-				optionPrice = BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
 			} else {
 				optionPrice = optionPriceOrVol.getMid();
-				 volatility = BlackScholesModel.calcPutOptionImpliedVol(spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield);
+				volatility = calculateImpliedVolatility(option, context, spot, optionPrice);
 			}
 			
-			double delta = BlackScholesModel.calcPutOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double gamma = BlackScholesModel.calcOptionGamma(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double vega = BlackScholesModel.calcOptionVega(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double theta = BlackScholesModel.calcPutOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double rho = BlackScholesModel.calcPutOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			return new Risk(optionPrice, delta, gamma, vega, theta, rho, volatility, optionPrice, spot);
+			BlackScholesResult result = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, new BlackScholesResult());
+			if (Double.isNaN(optionPrice)) {
+				optionPrice = result.getPrice();
+			}
+			return new Risk(optionPrice, result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+					result.getVanna(), result.getVolga(), result.getCharm(), result.getSpeed(), volatility, optionPrice, spot);
 		} catch (MarketDataException e) {
 			throw new ModelException(e.getMessage());
 		} catch (MissingReferenceDataException e) {
 			throw new ModelException(e.getMessage());
 		}
 	}
+	
+	/**
+	 * Return the pricing context of the option for the value date, compiling it if it isn't
+	 * cached or the cached context is stale
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		return pricingContexts.getPricingContext(option, valueDate);
+	}
 
-	private Risk calculateRiskForCall(EuropeanOption option, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
-		try {
-			double strike = option.getStrike();
-			long daysToExpiry = ChronoUnit.DAYS.between(valueDate, option.getExpiryDate());
-			double timeToExpiry = ((double)daysToExpiry)/365.0;
-			
-			OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(option.getIdentifier());
-			double dividendYield = refData.getDividendYield() ; 
-			double riskFreeRate = refData.getRiskFreeRate();
-			
-			MarketData spotMarketData = marketData.getMarketData(option.getUnderlying());
-			MarketData optionPriceOrVol = marketData.getMarketData(option);
-			
-			if (spotMarketData.getType() != Type.PRICE) {
-				throw new ModelException("Expected price, got volatility");
-			}
-			double spot = spotMarketData.getMid();
-			
-			double volatility = 0.0;
-			double optionPrice = 0.0;
-			if (optionPriceOrVol.getType() == Type.VOLATILITY) {
-				volatility = optionPriceOrVol.getMid();
-				optionPrice = BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			} else {
-				optionPrice = optionPriceOrVol.getMid();
-				 volatility = BlackScholesModel.calcCallOptionImpliedVol(spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield);
-			}
-			
-			double delta = BlackScholesModel.calcCallOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double gamma = BlackScholesModel.calcOptionGamma(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double vega = BlackScholesModel.calcOptionVega(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double theta = BlackScholesModel.calcCallOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			double rho = BlackScholesModel.calcCallOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
-			return new Risk(optionPrice, delta, gamma, vega, theta, rho, volatility, optionPrice, spot);
-		} catch (MarketDataException e) {
-			throw new ModelException(e.getMessage());
-		} catch (MissingReferenceDataException e) {
-			throw new ModelException(e.getMessage());
+	@Override
+	public void release(FinancialInstrument instrument) {
+		pricingContexts.remove(instrument);
+		impliedVolatilitySeedCache.remove(instrument.getIdentifier());
+	}
+
+	private double calculateImpliedVolatility(EuropeanOption option, EuropeanOptionPricingContext context, double spot,
+			double optionPrice) throws ModelException {
+		ImpliedVolatilityResult result = impliedVolatilitySeedCache.solve(option.getIdentifier(), context.getCallOrPut(), spot,
+				context.getStrike(), optionPrice, context.getTimeToExpiry(), context.getRiskFreeRate(), context.getDividendYield(),
+				new ImpliedVolatilityResult());
+		if (result.getStatus() == Status.INVALID_INPUT) {
+			throw new ModelException("Can't calculate implied volatility of " + option.getIdentifier() + " from price " + optionPrice +
+										", spot " + spot + ", time to expiry " + context.getTimeToExpiry());
+		}
+		if (!result.isConverged()) {
+			Log.getLogger().warn("Implied volatility of " + option.getIdentifier() + " from price " + optionPrice + ": " + result);
 		}
+		return result.getVolatility();
 	}
 
 }
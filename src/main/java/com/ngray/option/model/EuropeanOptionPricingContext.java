@@ -0,0 +1,141 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+
+/**
+ * The parameters of a European option which don't depend on market data, compiled once per value date
+ * from the option and its reference data: type, strike, time to expiry, rates and the discount and
+ * dividend factors. A context records the value date and the option's own reference data it was compiled
+ * against, so that it can be recompiled when either changes, but not when other options' reference data does.
+ * Options with no reference data, such as hypothetical ones, can be compiled with rates given directly.
+ * Objects of this type are immutable.
+ * @author nigelgray
+ *
+ */
+public class EuropeanOptionPricingContext {
+
+	private final LocalDate valueDate;
+	private final String identifier;
+	// the reference data compiled against, null if the rates were given directly
+	private final OptionReferenceData referenceData;
+	private final Type callOrPut;
+	private final double strike;
+	private final double timeToExpiry;
+	private final double sqrtTimeToExpiry;
+	private final double riskFreeRate;
+	private final double dividendYield;
+	private final double discountFactor;
+	private final double dividendFactor;
+
+	private EuropeanOptionPricingContext(LocalDate valueDate, String identifier, OptionReferenceData referenceData, Type callOrPut,
+			double strike, double timeToExpiry, double riskFreeRate, double dividendYield) {
+		this.valueDate = valueDate;
+		this.identifier = identifier;
+		this.referenceData = referenceData;
+		this.callOrPut = callOrPut;
+		this.strike = strike;
+		this.timeToExpiry = timeToExpiry;
+		this.sqrtTimeToExpiry = sqrt(timeToExpiry);
+		this.riskFreeRate = riskFreeRate;
+		this.dividendYield = dividendYield;
+		this.discountFactor = exp(-riskFreeRate * timeToExpiry);
+		this.dividendFactor = exp(-dividendYield * timeToExpiry);
+	}
+
+	/**
+	 * Compile the pricing context of the option for the given value date
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public static EuropeanOptionPricingContext compile(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(option.getIdentifier());
+		return new EuropeanOptionPricingContext(valueDate, option.getIdentifier(), refData, option.getType(), option.getStrike(),
+				getTimeToExpiry(option, valueDate), refData.getRiskFreeRate(), refData.getDividendYield());
+	}
+
+	/**
+	 * Compile the pricing context of an option with no reference data for the given value date, from the option's
+	 * own fields and the given rates. The context is invalid once reference data is added for the option.
+	 * @param option
+	 * @param valueDate
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @return
+	 */
+	public static EuropeanOptionPricingContext compile(EuropeanOption option, LocalDate valueDate, double riskFreeRate, double dividendYield) {
+		return new EuropeanOptionPricingContext(valueDate, option.getIdentifier(), null, option.getType(), option.getStrike(),
+				getTimeToExpiry(option, valueDate), riskFreeRate, dividendYield);
+	}
+
+	private static double getTimeToExpiry(EuropeanOption option, LocalDate valueDate) {
+		return ((double)ChronoUnit.DAYS.between(valueDate, option.getExpiryDate()))/365.0;
+	}
+
+	/**
+	 * Return true if this context was compiled for the given value date against the option's current reference data
+	 * @param valueDate
+	 * @return
+	 */
+	public boolean isValid(LocalDate valueDate) {
+		return OptionReferenceDataMap.findOptionReferenceData(identifier) == referenceData && this.valueDate.equals(valueDate);
+	}
+
+	public LocalDate getValueDate() {
+		return valueDate;
+	}
+
+	public Type getCallOrPut() {
+		return callOrPut;
+	}
+
+	public double getStrike() {
+		return strike;
+	}
+
+	/**
+	 * Time to expiry in years
+	 * @return
+	 */
+	public double getTimeToExpiry() {
+		return timeToExpiry;
+	}
+
+	public double getSqrtTimeToExpiry() {
+		return sqrtTimeToExpiry;
+	}
+
+	public double getRiskFreeRate() {
+		return riskFreeRate;
+	}
+
+	public double getDividendYield() {
+		return dividendYield;
+	}
+
+	/**
+	 * exp(-riskFreeRate * timeToExpiry)
+	 * @return
+	 */
+	public double getDiscountFactor() {
+		return discountFactor;
+	}
+
+	/**
+	 * exp(-dividendYield * timeToExpiry)
+	 * @return
+	 */
+	public double getDividendFactor() {
+		return dividendFactor;
+	}
+}
@@ -0,0 +1,183 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+/**
+ * Static class solving for the implied volatilities of whole option chains held in an OptionBatch.
+ *
+ * The batch is split into slices of options sharing type, spot, time to expiry, risk free rate and
+ * dividend yield, and each slice is walked in ascending strike order. Each price is first checked against
+ * the last accepted price in the slice: call prices must not rise with strike, put prices must not fall,
+ * and neither may change by more than the discounted strike difference. When a pair fails the check the
+ * next strike decides which of them is wrong: the accepted price is rejected if the next price agrees with
+ * the new one but not with it, and otherwise the new price is. So a single outlier is rejected with status
+ * ARBITRAGE_VIOLATION without being solved, and the strikes beyond it are checked against the last good
+ * price rather than against it. Prices outside their own no-arbitrage bounds are neither checked nor used
+ * to check others. Each remaining solve is seeded with the implied volatility of its nearest solved
+ * neighbour, which is usually within a few vol points.
+ * @author nigelgray
+ *
+ */
+public final class ImpliedVolatilityChainSolver {
+
+	private static final double PRICE_TOLERANCE = 1e-12;
+
+	private ImpliedVolatilityChainSolver() {
+	}
+
+	/**
+	 * Solve for the implied volatility of every option in the batch from its option price, writing the
+	 * volatility, iteration count and status of each solve into the batch. Rejected prices are given
+	 * a volatility of NaN.
+	 * @param batch
+	 * @return the number of options whose solve did not converge
+	 */
+	public static int solve(OptionBatch batch) {
+		int[] order = sortBySliceAndStrike(batch);
+
+		double[] spot = batch.getSpot();
+		double[] strike = batch.getStrike();
+		double[] optionPrice = batch.getOptionPrice();
+		double[] timeToExpiry = batch.getTimeToExpiry();
+		double[] riskFreeRate = batch.getRiskFreeRate();
+		double[] dividendYield = batch.getDividendYield();
+		double[] volatility = batch.getVolatility();
+		int[] iterations = batch.getIterations();
+		Status[] status = batch.getStatus();
+
+		int failures = 0;
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		boolean[] rejected = new boolean[batch.size()];
+		int[] accepted = new int[batch.size()];
+		for (int start = 0, end = 0; start < order.length; start = end) {
+			while (end < order.length && isSameSlice(batch, order[start], order[end])) {
+				++end;
+			}
+			rejectInconsistentPrices(batch, order, start, end, rejected, accepted);
+
+			double seed = Double.NaN;
+			for (int k = start; k < end; ++k) {
+				int i = order[k];
+				if (rejected[i]) {
+					volatility[i] = Double.NaN;
+					iterations[i] = 0;
+					status[i] = Status.ARBITRAGE_VIOLATION;
+					++failures;
+					continue;
+				}
+
+				ImpliedVolatilitySolver.solve(batch.getType(i), spot[i], strike[i], optionPrice[i], timeToExpiry[i],
+						riskFreeRate[i], dividendYield[i], seed, result);
+				int solveIterations = result.getIterations();
+				if (result.getStatus() == Status.MAX_ITERATIONS_EXCEEDED && !Double.isNaN(seed)) {
+					ImpliedVolatilitySolver.solve(batch.getType(i), spot[i], strike[i], optionPrice[i], timeToExpiry[i],
+							riskFreeRate[i], dividendYield[i], result);
+					solveIterations += result.getIterations();
+				}
+
+				volatility[i] = result.getVolatility();
+				iterations[i] = solveIterations;
+				status[i] = result.getStatus();
+				if (result.isConverged()) {
+					seed = result.getVolatility();
+				} else {
+					++failures;
+				}
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Mark the prices of the slice between start and end in the sort order which are inconsistent with the prices of
+	 * their neighbouring strikes as rejected, keeping the accepted prices in the given stack
+	 * @param batch
+	 * @param order
+	 * @param start
+	 * @param end
+	 * @param rejected
+	 * @param accepted
+	 */
+	private static void rejectInconsistentPrices(OptionBatch batch, int[] order, int start, int end, boolean[] rejected, int[] accepted) {
+		int acceptedCount = 0;
+		for (int k = start; k < end; ++k) {
+			int i = order[k];
+			if (!isWithinBounds(batch, i)) {
+				continue;
+			}
+			while (acceptedCount > 0 && !isConsistent(batch, accepted[acceptedCount - 1], i)) {
+				int last = accepted[acceptedCount - 1];
+				int next = nextWithinBounds(batch, order, k + 1, end);
+				if (next >= 0 && !isConsistent(batch, last, next) && isConsistent(batch, i, next)) {
+					rejected[last] = true;
+					--acceptedCount;
+				} else {
+					rejected[i] = true;
+					break;
+				}
+			}
+			if (!rejected[i]) {
+				accepted[acceptedCount++] = i;
+			}
+		}
+	}
+
+	private static int nextWithinBounds(OptionBatch batch, int[] order, int from, int end) {
+		for (int k = from; k < end; ++k) {
+			if (isWithinBounds(batch, order[k])) {
+				return order[k];
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWithinBounds(OptionBatch batch, int i) {
+		return ImpliedVolatilitySolver.checkInputs(batch.getType(i), batch.getSpot()[i], batch.getStrike()[i], batch.getOptionPrice()[i],
+				batch.getTimeToExpiry()[i], batch.getRiskFreeRate()[i], batch.getDividendYield()[i]) == null;
+	}
+
+	private static int[] sortBySliceAndStrike(OptionBatch batch) {
+		boolean[] call = batch.getCallFlags();
+		double[] timeToExpiry = batch.getTimeToExpiry();
+		double[] spot = batch.getSpot();
+		double[] riskFreeRate = batch.getRiskFreeRate();
+		double[] dividendYield = batch.getDividendYield();
+		double[] strike = batch.getStrike();
+		Comparator<Integer> comparator = Comparator.<Integer, Boolean>comparing(i -> call[i])
+				.thenComparingDouble(i -> timeToExpiry[i])
+				.thenComparingDouble(i -> spot[i])
+				.thenComparingDouble(i -> riskFreeRate[i])
+				.thenComparingDouble(i -> dividendYield[i])
+				.thenComparingDouble(i -> strike[i]);
+		return IntStream.range(0, batch.size()).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+	}
+
+	private static boolean isSameSlice(OptionBatch batch, int i, int j) {
+		return batch.getCallFlags()[i] == batch.getCallFlags()[j] &&
+			   batch.getTimeToExpiry()[i] == batch.getTimeToExpiry()[j] &&
+			   batch.getSpot()[i] == batch.getSpot()[j] &&
+			   batch.getRiskFreeRate()[i] == batch.getRiskFreeRate()[j] &&
+			   batch.getDividendYield()[i] == batch.getDividendYield()[j];
+	}
+
+	/**
+	 * Return true if the price of option j is consistent with that of option i on the same slice,
+	 * where the strike of j is at least that of i
+	 * @param batch
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	private static boolean isConsistent(OptionBatch batch, int i, int j) {
+		double[] optionPrice = batch.getOptionPrice();
+		double priceChange = batch.getCallFlags()[i] ? optionPrice[i] - optionPrice[j] : optionPrice[j] - optionPrice[i];
+		double maximumChange = exp(-batch.getRiskFreeRate()[i] * batch.getTimeToExpiry()[i]) * (batch.getStrike()[j] - batch.getStrike()[i]);
+		double tolerance = PRICE_TOLERANCE * max(optionPrice[i], optionPrice[j]);
+		return priceChange >= -tolerance && priceChange <= maximumChange + tolerance;
+	}
+}
@@ -0,0 +1,89 @@
+package com.ngray.option.model;
+
+/**
+ * Mutable holder for the outcome of an implied volatility solve by ImpliedVolatilitySolver.
+ * Callers own the holder and may reuse it across solves.
+ * Objects of this type are not thread safe.
+ * @author nigelgray
+ *
+ */
+public class ImpliedVolatilityResult {
+
+	public enum Status {
+		/**
+		 * The solve converged to machine precision
+		 */
+		CONVERGED,
+		/**
+		 * The option price is at or below its intrinsic value, so no positive volatility reproduces it
+		 */
+		BELOW_INTRINSIC_VALUE,
+		/**
+		 * The option price is at or above the no-arbitrage upper bound, so no finite volatility reproduces it
+		 */
+		ABOVE_MAXIMUM_VALUE,
+		/**
+		 * One or more of the inputs was non-positive or not finite
+		 */
+		INVALID_INPUT,
+		/**
+		 * The price is inconsistent with the price of a neighbouring strike on the same option chain
+		 */
+		ARBITRAGE_VIOLATION,
+		/**
+		 * The iteration limit was reached before the solve converged
+		 */
+		MAX_ITERATIONS_EXCEEDED
+	};
+
+	private double volatility;
+	private int iterations;
+	private Status status;
+
+	public ImpliedVolatilityResult() {
+		clear();
+	}
+
+	/**
+	 * Reset the result to its initial state
+	 */
+	public void clear() {
+		set(Double.NaN, 0, Status.INVALID_INPUT);
+	}
+
+	void set(double volatility, int iterations, Status status) {
+		this.volatility = volatility;
+		this.iterations = iterations;
+		this.status = status;
+	}
+
+	/**
+	 * Return the implied volatility. If the price lies outside the no-arbitrage bounds this
+	 * is the corresponding volatility bound of the solver, and NaN for invalid input.
+	 * @return
+	 */
+	public double getVolatility() {
+		return volatility;
+	}
+
+	/**
+	 * Return the number of option price evaluations used by the solve
+	 * @return
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isConverged() {
+		return status == Status.CONVERGED;
+	}
+
+	@Override
+	public String toString() {
+		return "[Volatility: " + volatility + ", Iterations: " + iterations + ", Status: " + status + "]";
+	}
+}
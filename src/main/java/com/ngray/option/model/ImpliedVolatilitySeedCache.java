@@ -0,0 +1,266 @@
+package com.ngray.option.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+
+/**
+ * Keeps the last converged implied volatility of each instrument, keyed by identifier, and uses it to
+ * seed the next implied volatility solve for the same instrument. On a stream of option prices the
+ * previous tick's volatility is usually within a few vol points of the new one, so a seeded solve
+ * converges in one or two iterations. If a seeded solve fails to converge the solve is repeated
+ * from the solver's own initial estimate.
+ * The cache holds at most its capacity of seeds. When a new seed takes it over capacity, the least recently
+ * used tenth of the seeds are dropped in one pass. Models also drop the seed of an instrument when they
+ * release it, so seeds don't outlive their subscriptions.
+ * Hit rate, iteration count and eviction statistics are kept for monitoring.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class ImpliedVolatilitySeedCache {
+
+	public static final int DEFAULT_CAPACITY = 100000;
+
+	// the last volatility is held in a mutable slot so that updates don't allocate
+	private static class Seed {
+		private volatile double volatility;
+		private volatile long lastUsed;
+
+		Seed(double volatility) {
+			this.volatility = volatility;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+
+	private final int capacity;
+
+	private final Map<String, Seed> seeds;
+
+	private final Object evictionLock = new Object();
+
+	private final LongAdder solves;
+	private final LongAdder hits;
+	private final LongAdder fallbacks;
+	private final LongAdder iterations;
+	private final LongAdder evictions;
+
+	public ImpliedVolatilitySeedCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a cache holding at most the given number of seeds
+	 * @param capacity
+	 */
+	public ImpliedVolatilitySeedCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("ImpliedVolatilitySeedCache capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.seeds = new ConcurrentHashMap<>();
+		this.solves = new LongAdder();
+		this.hits = new LongAdder();
+		this.fallbacks = new LongAdder();
+		this.iterations = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * Solve for the implied volatility of the identified option, seeded with its last converged volatility
+	 * if there is one, and record the result as the seed for the next solve
+	 * @param identifier
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param optionPrice
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param result the holder to write the implied volatility, iteration count and status into
+	 * @return result
+	 */
+	public ImpliedVolatilityResult solve(
+						String identifier,
+						Type callOrPut,
+						double spot,
+						double strike,
+						double optionPrice,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						ImpliedVolatilityResult result) {
+
+		solves.increment();
+		Seed seed = seeds.get(identifier);
+		if (seed != null) {
+			hits.increment();
+			seed.lastUsed = System.nanoTime();
+			ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, seed.volatility, result);
+			iterations.add(result.getIterations());
+			if (result.isConverged()) {
+				seed.volatility = result.getVolatility();
+				return result;
+			}
+			if (result.getStatus() != ImpliedVolatilityResult.Status.MAX_ITERATIONS_EXCEEDED) {
+				// the price is outside its bounds or invalid, which no starting point can fix
+				return result;
+			}
+			fallbacks.increment();
+		}
+
+		ImpliedVolatilitySolver.solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+		iterations.add(result.getIterations());
+		if (result.isConverged()) {
+			if (seed != null) {
+				seed.volatility = result.getVolatility();
+			} else {
+				seeds.put(identifier, new Seed(result.getVolatility()));
+				if (seeds.size() > capacity) {
+					evictLeastRecentlyUsed();
+				}
+			}
+		}
+		return result;
+	}
+
+	// drop the least recently used tenth of the seeds, so that eviction is paid for once per many new seeds
+	private void evictLeastRecentlyUsed() {
+		synchronized(evictionLock) {
+			int size = seeds.size();
+			if (size <= capacity) {
+				return;
+			}
+			long[] lastUsed = new long[size];
+			int count = 0;
+			for (Seed seed : seeds.values()) {
+				if (count == lastUsed.length) {
+					break;
+				}
+				lastUsed[count++] = seed.lastUsed;
+			}
+			Arrays.sort(lastUsed, 0, count);
+			int toEvict = Math.min(count, size - capacity + capacity/10);
+			long threshold = lastUsed[Math.max(0, toEvict - 1)];
+			int before = seeds.size();
+			seeds.values().removeIf(seed -> seed.lastUsed <= threshold);
+			evictions.add(Math.max(0, before - seeds.size()));
+		}
+	}
+
+	/**
+	 * Return the last converged implied volatility of the identified instrument, or NaN if there is none
+	 * @param identifier
+	 * @return
+	 */
+	public double getVolatility(String identifier) {
+		Seed seed = seeds.get(identifier);
+		return seed != null ? seed.volatility : Double.NaN;
+	}
+
+	/**
+	 * Forget the seed for the identified instrument
+	 * @param identifier
+	 */
+	public void remove(String identifier) {
+		seeds.remove(identifier);
+	}
+
+	/**
+	 * Forget all seeds
+	 */
+	public void clear() {
+		seeds.clear();
+	}
+
+	public int size() {
+		return seeds.size();
+	}
+
+	/**
+	 * Return the maximum number of seeds held
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Return the number of seeds dropped to keep within capacity
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Return the total number of solves
+	 * @return
+	 */
+	public long getSolveCount() {
+		return solves.sum();
+	}
+
+	/**
+	 * Return the number of solves which started from a cached seed
+	 * @return
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Return the number of seeded solves which failed to converge and were repeated from the solver's own estimate
+	 * @return
+	 */
+	public long getFallbackCount() {
+		return fallbacks.sum();
+	}
+
+	/**
+	 * Return the total number of solver iterations, including those of fallback solves
+	 * @return
+	 */
+	public long getIterationCount() {
+		return iterations.sum();
+	}
+
+	/**
+	 * Return the fraction of solves which started from a cached seed
+	 * @return
+	 */
+	public double getHitRate() {
+		long solveCount = getSolveCount();
+		return solveCount == 0 ? 0.0 : ((double)getHitCount())/solveCount;
+	}
+
+	/**
+	 * Return the mean number of solver iterations per solve
+	 * @return
+	 */
+	public double getAverageIterations() {
+		long solveCount = getSolveCount();
+		return solveCount == 0 ? 0.0 : ((double)getIterationCount())/solveCount;
+	}
+
+	/**
+	 * Reset the statistics, leaving the seeds in place
+	 */
+	public void resetStatistics() {
+		solves.reset();
+		hits.reset();
+		fallbacks.reset();
+		iterations.reset();
+		evictions.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "[Seeds: " + size() + ", Solves: " + getSolveCount() + ", HitRate: " + getHitRate() +
+				", Fallbacks: " + getFallbackCount() + ", AverageIterations: " + getAverageIterations() +
+				", Evictions: " + getEvictionCount() + "]";
+	}
+}
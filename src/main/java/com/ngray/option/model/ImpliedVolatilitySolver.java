@@ -0,0 +1,286 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+/**
+ * Static class solving for the Black-Scholes implied volatility of a European option price.
+ *
+ * The solve is carried out on the undiscounted, normalised price of the out-of-the-money
+ * option with the same strike (any in-the-money price is converted using put-call parity), as a
+ * function of total volatility s = vol * sqrt(T). Starting from a closed-form Corrado-Miller estimate,
+ * or a caller supplied guess, it takes Halley (second order Householder) steps on the price, or on
+ * the log of the price below the inflection point of the price function where the price is convex.
+ * Every step is safeguarded by a bracket on the root, and falls back to bisection if the step would
+ * leave the bracket or the vega has underflowed. Typically this converges to machine precision in
+ * three or four price evaluations.
+ * @author nigelgray
+ *
+ */
+public final class ImpliedVolatilitySolver {
+
+	/**
+	 * Volatility returned when the price is at or below intrinsic value
+	 */
+	public static final double MIN_VOLATILITY = 0.0001;
+
+	/**
+	 * Volatility returned when the price is at or above its no-arbitrage upper bound
+	 */
+	public static final double MAX_VOLATILITY = 5.0;
+
+	private static final int MAX_ITERATIONS = 100;
+
+	private static final double RELATIVE_TOLERANCE = 4e-15;
+
+	private static final double ONE_OVER_SQRT_TWO_PI = 0.398942280401432677939946059934;
+
+	private static final double SQRT_TWO_PI = 2.506628274631000502415765284811;
+
+	private ImpliedVolatilitySolver() {
+	}
+
+	/**
+	 * Solve for the implied volatility of a European option
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param optionPrice
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param result the holder to write the implied volatility, iteration count and status into
+	 * @return result
+	 */
+	public static ImpliedVolatilityResult solve(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double optionPrice,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						ImpliedVolatilityResult result) {
+		return solve(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield, Double.NaN, result);
+	}
+
+	/**
+	 * Solve for the implied volatility of a European option, starting from the supplied guess. If the
+	 * guess is not a positive finite number the solver's own initial estimate is used instead.
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param optionPrice
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param initialGuess
+	 * @param result the holder to write the implied volatility, iteration count and status into
+	 * @return result
+	 */
+	public static ImpliedVolatilityResult solve(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double optionPrice,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						double initialGuess,
+						ImpliedVolatilityResult result) {
+
+		Status inputStatus = checkInputs(callOrPut, spot, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield);
+		if (inputStatus == Status.INVALID_INPUT) {
+			result.set(Double.NaN, 0, inputStatus);
+			return result;
+		}
+
+		if (inputStatus == Status.BELOW_INTRINSIC_VALUE) {
+			result.set(MIN_VOLATILITY, 0, inputStatus);
+			return result;
+		}
+
+		if (inputStatus == Status.ABOVE_MAXIMUM_VALUE) {
+			result.set(MAX_VOLATILITY, 0, inputStatus);
+			return result;
+		}
+
+		double forward = spot * exp((riskFreeRate - dividendYield) * timeToExpiry);
+		double undiscountedPrice = optionPrice * exp(riskFreeRate * timeToExpiry);
+		double intrinsicValue = callOrPut == Type.CALL ? max(forward - strike, 0.0) : max(strike - forward, 0.0);
+
+		// the out-of-the-money option carries only the time value of the price, and its normalised
+		// price depends on the moneyness only through -|ln(F/K)|
+		double sqrtForwardStrike = sqrt(forward * strike);
+		double normalisedPrice = (undiscountedPrice - intrinsicValue)/sqrtForwardStrike;
+		double moneyness = -abs(log(forward/strike));
+		double sqrtTimeToExpiry = sqrt(timeToExpiry);
+
+		double totalVolatility = isPositive(initialGuess) && !Double.isInfinite(initialGuess) ?
+				initialGuess * sqrtTimeToExpiry : initialTotalVolatility(moneyness, normalisedPrice);
+
+		return solveTotalVolatility(moneyness, normalisedPrice, totalVolatility, sqrtTimeToExpiry, result);
+	}
+
+	/**
+	 * Return the status of a solve which fails on its inputs alone, without iterating, or null if the price
+	 * lies within its no-arbitrage bounds and can be solved
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param optionPrice
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @return
+	 */
+	static Status checkInputs(
+						Type callOrPut,
+						double spot,
+						double strike,
+						double optionPrice,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield) {
+
+		if (!isPositive(spot) || !isPositive(strike) || !isPositive(timeToExpiry) ||
+			!(optionPrice >= 0.0) || Double.isInfinite(optionPrice) ||
+			!isFinite(riskFreeRate) || !isFinite(dividendYield)) {
+			return Status.INVALID_INPUT;
+		}
+
+		double forward = spot * exp((riskFreeRate - dividendYield) * timeToExpiry);
+		double undiscountedPrice = optionPrice * exp(riskFreeRate * timeToExpiry);
+		double intrinsicValue = callOrPut == Type.CALL ? max(forward - strike, 0.0) : max(strike - forward, 0.0);
+		double maximumValue = callOrPut == Type.CALL ? forward : strike;
+
+		if (undiscountedPrice <= intrinsicValue) {
+			return Status.BELOW_INTRINSIC_VALUE;
+		}
+
+		if (undiscountedPrice >= maximumValue) {
+			return Status.ABOVE_MAXIMUM_VALUE;
+		}
+		return null;
+	}
+
+	private static ImpliedVolatilityResult solveTotalVolatility(
+						double moneyness,
+						double normalisedPrice,
+						double totalVolatility,
+						double sqrtTimeToExpiry,
+						ImpliedVolatilityResult result) {
+
+		// the normalised price is convex in total volatility below this point, and concave above it
+		double inflectionPoint = sqrt(2.0 * abs(moneyness));
+		double logNormalisedPrice = log(normalisedPrice);
+		double lower = 0.0;
+		double upper = Double.POSITIVE_INFINITY;
+		double s = totalVolatility;
+		double previousResidual = Double.POSITIVE_INFINITY;
+		boolean previousStepTaken = false;
+
+		for (int iteration = 1; iteration <= MAX_ITERATIONS; ++iteration) {
+			double price = normalisedOutOfTheMoneyPrice(moneyness, s);
+			if (price == normalisedPrice) {
+				result.set(s/sqrtTimeToExpiry, iteration, Status.CONVERGED);
+				return result;
+			}
+
+			// once rounding in the price dominates, the residual of a full step stops shrinking
+			double residual = abs(price - normalisedPrice);
+			if (previousStepTaken && residual >= previousResidual) {
+				result.set(s/sqrtTimeToExpiry, iteration, Status.CONVERGED);
+				return result;
+			}
+			previousResidual = residual;
+
+			if (price > normalisedPrice) {
+				upper = s;
+			} else {
+				lower = s;
+			}
+
+			double vega = ONE_OVER_SQRT_TWO_PI * exp(-0.5 * (moneyness * moneyness/(s * s) + s * s/4.0));
+			double curvature = moneyness * moneyness/(s * s * s) - s/4.0;
+
+			double value;
+			double firstDerivative;
+			double secondDerivative;
+			if (s < inflectionPoint) {
+				value = log(price) - logNormalisedPrice;
+				firstDerivative = vega/price;
+				secondDerivative = firstDerivative * curvature - firstDerivative * firstDerivative;
+			} else {
+				value = price - normalisedPrice;
+				firstDerivative = vega;
+				secondDerivative = vega * curvature;
+			}
+
+			double newtonStep = -value/firstDerivative;
+			double halleyDenominator = 1.0 + 0.5 * newtonStep * secondDerivative/firstDerivative;
+			double step = halleyDenominator > 0.5 ? newtonStep/halleyDenominator : newtonStep;
+			double next = s + step;
+
+			// test before safeguarding, as a step lost in rounding lands on the bracket it just set
+			if (abs(next - s) <= RELATIVE_TOLERANCE * s || upper - lower <= RELATIVE_TOLERANCE * s) {
+				result.set(next/sqrtTimeToExpiry, iteration, Status.CONVERGED);
+				return result;
+			}
+
+			previousStepTaken = next > lower && next < upper;
+			if (!previousStepTaken) {
+				next = Double.isInfinite(upper) ? 2.0 * max(s, inflectionPoint) + 0.1 : 0.5 * (lower + upper);
+			}
+			s = next;
+		}
+
+		result.set(s/sqrtTimeToExpiry, MAX_ITERATIONS, Status.MAX_ITERATIONS_EXCEEDED);
+		return result;
+	}
+
+	/**
+	 * Closed-form Corrado-Miller estimate of total volatility for the out-of-the-money option,
+	 * falling back to the inflection point of the price function where it is not defined
+	 * @param moneyness
+	 * @param normalisedPrice
+	 * @return
+	 */
+	private static double initialTotalVolatility(double moneyness, double normalisedPrice) {
+		double forward = exp(0.5 * moneyness);
+		double strike = exp(-0.5 * moneyness);
+		double halfIntrinsic = 0.5 * (forward - strike);
+		double excess = normalisedPrice - halfIntrinsic;
+		double discriminant = max(excess * excess - (forward - strike) * (forward - strike)/PI, 0.0);
+		double estimate = SQRT_TWO_PI/(forward + strike) * (excess + sqrt(discriminant));
+		if (isPositive(estimate) && !Double.isInfinite(estimate)) {
+			return estimate;
+		}
+		double inflectionPoint = sqrt(2.0 * abs(moneyness));
+		return inflectionPoint > 0.0 ? inflectionPoint : SQRT_TWO_PI * normalisedPrice;
+	}
+
+	/**
+	 * The undiscounted Black price of an out-of-the-money call divided by sqrt(F * K), for moneyness
+	 * ln(F/K) <= 0 and total volatility s
+	 * @param moneyness
+	 * @param s
+	 * @return
+	 */
+	private static double normalisedOutOfTheMoneyPrice(double moneyness, double s) {
+		double dOne = moneyness/s + 0.5 * s;
+		double dTwo = dOne - s;
+		return exp(0.5 * moneyness) * StandardNormal.cumulativeProbability(dOne) -
+			   exp(-0.5 * moneyness) * StandardNormal.cumulativeProbability(dTwo);
+	}
+
+	private static boolean isPositive(double x) {
+		return x > 0.0;
+	}
+
+	private static boolean isFinite(double x) {
+		return !Double.isNaN(x) && !Double.isInfinite(x);
+	}
+}
@@ -9,5 +9,13 @@ import com.ngray.option.risk.Risk;
 public interface Model {
 	
 	public Risk calculateRisk(FinancialInstrument instrument, MarketDataCollection marketData, LocalDate valueDate) throws ModelException;
+	
+	/**
+	 * Called when the instrument is no longer priced, so that anything cached for it can be dropped.
+	 * By default nothing is cached.
+	 * @param instrument
+	 */
+	public default void release(FinancialInstrument instrument) {
+	}
 
 }
@@ -0,0 +1,354 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+
+/**
+ * Monte Carlo engine pricing a MonteCarloPayoff on paths of the underlying simulated under
+ * geometric Brownian motion, optionally with Merton lognormal jumps to stress the book with
+ * fatter tailed dynamics.
+ *
+ * Paths are simulated in antithetic pairs, and the discounted payoff of a European option on the
+ * terminal price can be used as a control variate, its expectation coming from BlackScholesModel
+ * (summed over the number of jumps when jumps are switched on), or the underlying itself, whose
+ * expectation is its discounted forward. Delta, vega, rho and theta are
+ * pathwise estimates from the payoff gradient; gamma applies the likelihood ratio of the first
+ * time step to the pathwise delta, so it is noisier with many time steps.
+ *
+ * The pairs are split into fixed size chunks, each with its own generator split in order from a
+ * generator seeded with the engine's seed, and the chunk sums are combined in chunk order. The
+ * results therefore depend only on the seed and never on how chunks are scheduled, so a parallel
+ * simulation reproduces a sequential one exactly on any number of cores.
+ * Objects of this type are immutable.
+ * @author nigelgray
+ *
+ */
+public class MonteCarloEngine {
+
+	private static final int CHUNK_PAIRS = 1024;
+
+	private static final int SUM_PAYOFF = 0;
+	private static final int SUM_CONTROL = 1;
+	private static final int SUM_PAYOFF_SQUARED = 2;
+	private static final int SUM_CONTROL_SQUARED = 3;
+	private static final int SUM_PAYOFF_CONTROL = 4;
+	private static final int SUM_DELTA = 5;
+	private static final int SUM_GAMMA = 6;
+	private static final int SUM_VEGA = 7;
+	private static final int SUM_RHO = 8;
+	private static final int SUM_EXPIRY_SENSITIVITY = 9;
+	private static final int SUMS = 10;
+
+	private final int paths;
+	private final int timeSteps;
+	private final long seed;
+	private final double jumpIntensity;
+	private final double jumpMean;
+	private final double jumpVolatility;
+
+	/**
+	 * Construct an engine simulating geometric Brownian motion
+	 * @param paths the number of paths, rounded up to an even number for antithetic pairs
+	 * @param timeSteps the number of time steps on each path
+	 * @param seed
+	 */
+	public MonteCarloEngine(int paths, int timeSteps, long seed) {
+		this(paths, timeSteps, seed, 0.0, 0.0, 0.0);
+	}
+
+	/**
+	 * Construct an engine simulating geometric Brownian motion with Merton jumps, the log of each
+	 * jump being normally distributed
+	 * @param paths the number of paths, rounded up to an even number for antithetic pairs
+	 * @param timeSteps the number of time steps on each path
+	 * @param seed
+	 * @param jumpIntensity the expected number of jumps per year
+	 * @param jumpMean the mean of the log of each jump
+	 * @param jumpVolatility the standard deviation of the log of each jump
+	 */
+	public MonteCarloEngine(int paths, int timeSteps, long seed, double jumpIntensity, double jumpMean, double jumpVolatility) {
+		if (paths < 2 || timeSteps < 1) {
+			throw new IllegalArgumentException("MonteCarloEngine: need at least 2 paths and 1 time step, got " + paths + " and " + timeSteps);
+		}
+		if (!(jumpIntensity >= 0.0) || !(jumpVolatility >= 0.0) || Double.isNaN(jumpMean)) {
+			throw new IllegalArgumentException("MonteCarloEngine: invalid jump parameters " + jumpIntensity + ", " + jumpMean + ", " + jumpVolatility);
+		}
+		this.paths = paths + (paths & 1);
+		this.timeSteps = timeSteps;
+		this.seed = seed;
+		this.jumpIntensity = jumpIntensity;
+		this.jumpMean = jumpMean;
+		this.jumpVolatility = jumpVolatility;
+	}
+
+	/**
+	 * Estimate the price and greeks of the payoff
+	 * @param payoff
+	 * @param control the European option used as a control variate, or null for none
+	 * @param spot
+	 * @param volatility the volatility of the diffusion
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 * @param parallel simulate the chunks on the common fork-join pool
+	 * @param result the holder to write the estimates into
+	 * @return result
+	 */
+	public MonteCarloResult simulate(
+						MonteCarloPayoff payoff,
+						VanillaOptionPayoff control,
+						double spot,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						boolean parallel,
+						MonteCarloResult result) {
+
+		if (!(spot > 0.0) || !(volatility > 0.0) || !(timeToExpiry > 0.0) || Double.isNaN(riskFreeRate) || Double.isNaN(dividendYield)) {
+			throw new IllegalArgumentException("MonteCarloEngine: invalid inputs spot " + spot + ", volatility " + volatility +
+												", time to expiry " + timeToExpiry);
+		}
+
+		int pairs = paths/2;
+		int chunks = (pairs + CHUNK_PAIRS - 1)/CHUNK_PAIRS;
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] generators = new SplittableRandom[chunks];
+		for (int chunk = 0; chunk < chunks; ++chunk) {
+			generators[chunk] = root.split();
+		}
+
+		double[][] sums = new double[chunks][SUMS];
+		IntStream range = IntStream.range(0, chunks);
+		(parallel ? range.parallel() : range).forEach(
+				chunk -> simulateChunk(payoff, control, spot, volatility, timeToExpiry, riskFreeRate, dividendYield,
+						generators[chunk], min(CHUNK_PAIRS, pairs - chunk * CHUNK_PAIRS), sums[chunk]));
+
+		double[] total = new double[SUMS];
+		for (double[] chunkSums : sums) {
+			for (int i = 0; i < SUMS; ++i) {
+				total[i] += chunkSums[i];
+			}
+		}
+
+		double meanPayoff = total[SUM_PAYOFF]/pairs;
+		double payoffVariance = total[SUM_PAYOFF_SQUARED]/pairs - meanPayoff * meanPayoff;
+		double price = meanPayoff;
+		double variance = payoffVariance;
+		double coefficient = 0.0;
+		if (control != null) {
+			double meanControl = total[SUM_CONTROL]/pairs;
+			double controlVariance = total[SUM_CONTROL_SQUARED]/pairs - meanControl * meanControl;
+			double covariance = total[SUM_PAYOFF_CONTROL]/pairs - meanPayoff * meanControl;
+			if (controlVariance > 0.0) {
+				coefficient = covariance/controlVariance;
+				price = meanPayoff - coefficient * (meanControl - calcControlValue(control, spot, volatility, timeToExpiry, riskFreeRate, dividendYield));
+				variance = payoffVariance - coefficient * covariance;
+			}
+		}
+
+		result.set(
+			price,
+			pairs > 1 ? sqrt(max(variance, 0.0)/(pairs - 1)) : Double.NaN,
+			total[SUM_DELTA]/pairs,
+			total[SUM_GAMMA]/pairs,
+			0.01 * total[SUM_VEGA]/pairs,
+			-total[SUM_EXPIRY_SENSITIVITY]/pairs/365,
+			0.01 * total[SUM_RHO]/pairs,
+			coefficient,
+			paths);
+		return result;
+	}
+
+	/**
+	 * Return the expected discounted payoff of the control, from Merton's series of Black-Scholes prices
+	 * over the number of jumps, which is just the Black-Scholes price without jumps. A call struck at zero
+	 * is the underlying, worth its discounted forward with or without jumps.
+	 */
+	private double calcControlValue(VanillaOptionPayoff control, double spot, double volatility, double timeToExpiry,
+			double riskFreeRate, double dividendYield) {
+		if (control.getCallOrPut() == Type.CALL && control.getStrike() == 0.0) {
+			return spot * exp(-dividendYield * timeToExpiry);
+		}
+		if (jumpIntensity == 0.0) {
+			return calcBlackScholesPrice(control, spot, volatility, timeToExpiry, riskFreeRate, dividendYield);
+		}
+
+		double meanJump = exp(jumpMean + jumpVolatility * jumpVolatility/2) - 1;
+		double adjustedIntensityTime = jumpIntensity * (1 + meanJump) * timeToExpiry;
+		double weight = exp(-adjustedIntensityTime);
+		double value = 0.0;
+		for (int n = 0; n < 1000; ++n) {
+			double volatilityN = sqrt(volatility * volatility + n * jumpVolatility * jumpVolatility/timeToExpiry);
+			double riskFreeRateN = riskFreeRate - jumpIntensity * meanJump + n * log1p(meanJump)/timeToExpiry;
+			value += weight * calcBlackScholesPrice(control, spot, volatilityN, timeToExpiry, riskFreeRateN, dividendYield);
+			weight *= adjustedIntensityTime/(n + 1);
+			if (n > adjustedIntensityTime && weight < 1e-16) {
+				break;
+			}
+		}
+		return value;
+	}
+
+	private static double calcBlackScholesPrice(VanillaOptionPayoff control, double spot, double volatility, double timeToExpiry,
+			double riskFreeRate, double dividendYield) {
+		return control.getCallOrPut() == Type.CALL ?
+				BlackScholesModel.calcCallOptionPrice(spot, control.getStrike(), volatility, timeToExpiry, riskFreeRate, dividendYield) :
+				BlackScholesModel.calcPutOptionPrice(spot, control.getStrike(), volatility, timeToExpiry, riskFreeRate, dividendYield);
+	}
+
+	private void simulateChunk(
+						MonteCarloPayoff payoff,
+						VanillaOptionPayoff control,
+						double spot,
+						double volatility,
+						double timeToExpiry,
+						double riskFreeRate,
+						double dividendYield,
+						SplittableRandom random,
+						int pairs,
+						double[] sums) {
+
+		double dt = timeToExpiry/timeSteps;
+		double sqrtDt = sqrt(dt);
+		double meanJump = exp(jumpMean + jumpVolatility * jumpVolatility/2) - 1;
+		// the log drift per year, compensated for the jumps so the discounted price stays a martingale
+		double logDrift = riskFreeRate - dividendYield - jumpIntensity * meanJump - volatility * volatility/2;
+		double discountFactor = exp(-riskFreeRate * timeToExpiry);
+		double logSpot = log(spot);
+		double noJumpProbability = exp(-jumpIntensity * dt);
+
+		GaussianGenerator generator = new GaussianGenerator(random);
+		double[] normals = new double[timeSteps];
+		double[] jumpNormals = new double[timeSteps];
+		int[] jumpCounts = new int[timeSteps];
+		double[] path = new double[timeSteps];
+		double[] brownianMotion = new double[timeSteps];
+		double[] gradient = new double[timeSteps];
+		double[] controlGradient = new double[timeSteps];
+
+		for (int pair = 0; pair < pairs; ++pair) {
+			for (int i = 0; i < timeSteps; ++i) {
+				normals[i] = generator.nextGaussian();
+				jumpCounts[i] = jumpIntensity > 0.0 ? generator.nextPoisson(noJumpProbability) : 0;
+				jumpNormals[i] = jumpCounts[i] > 0 ? generator.nextGaussian() : 0.0;
+			}
+
+			double payoffSum = 0.0;
+			double controlSum = 0.0;
+			double delta = 0.0;
+			double gamma = 0.0;
+			double vega = 0.0;
+			double rho = 0.0;
+			double expirySensitivity = 0.0;
+			for (double sign = 1.0; sign >= -1.0; sign -= 2.0) {
+				double logPrice = logSpot;
+				double brownian = 0.0;
+				int jumps = 0;
+				for (int i = 0; i < timeSteps; ++i) {
+					double increment = sign * sqrtDt * normals[i];
+					brownian += increment;
+					logPrice += logDrift * dt + volatility * increment;
+					if (jumpCounts[i] > 0) {
+						logPrice += jumpCounts[i] * jumpMean + sign * sqrt(jumpCounts[i]) * jumpVolatility * jumpNormals[i];
+						jumps += jumpCounts[i];
+					}
+					brownianMotion[i] = brownian;
+					path[i] = exp(logPrice);
+				}
+
+				double value = payoff.evaluate(path, gradient);
+				double spotSensitivity = 0.0;
+				double volatilitySensitivity = 0.0;
+				double rateSensitivity = 0.0;
+				double timeSensitivity = 0.0;
+				for (int i = 0; i < timeSteps; ++i) {
+					double time = (i + 1) * dt;
+					double weightedGradient = gradient[i] * path[i];
+					spotSensitivity += weightedGradient;
+					volatilitySensitivity += weightedGradient * (brownianMotion[i] - volatility * time);
+					rateSensitivity += weightedGradient * time;
+					timeSensitivity += weightedGradient * (logDrift * time + volatility * brownianMotion[i]/2)/timeToExpiry;
+				}
+
+				payoffSum += discountFactor * value;
+				delta += discountFactor * spotSensitivity/spot;
+				gamma += discountFactor * spotSensitivity/(spot * spot) * (brownianMotion[0]/(volatility * dt) - 1);
+				vega += discountFactor * volatilitySensitivity;
+				rho += discountFactor * (rateSensitivity - timeToExpiry * value);
+				// the jump counts depend on the time to expiry only through their likelihood
+				expirySensitivity += discountFactor * (timeSensitivity - riskFreeRate * value + value * (jumps/timeToExpiry - jumpIntensity));
+				if (control != null) {
+					controlSum += discountFactor * control.evaluate(path, controlGradient);
+				}
+			}
+
+			// each antithetic pair counts as a single sample
+			payoffSum /= 2;
+			controlSum /= 2;
+			sums[SUM_PAYOFF] += payoffSum;
+			sums[SUM_CONTROL] += controlSum;
+			sums[SUM_PAYOFF_SQUARED] += payoffSum * payoffSum;
+			sums[SUM_CONTROL_SQUARED] += controlSum * controlSum;
+			sums[SUM_PAYOFF_CONTROL] += payoffSum * controlSum;
+			sums[SUM_DELTA] += delta/2;
+			sums[SUM_GAMMA] += gamma/2;
+			sums[SUM_VEGA] += vega/2;
+			sums[SUM_RHO] += rho/2;
+			sums[SUM_EXPIRY_SENSITIVITY] += expirySensitivity/2;
+		}
+	}
+
+	/**
+	 * Standard normal and Poisson variates from a SplittableRandom, the normals by the Marsaglia polar method
+	 */
+	private static final class GaussianGenerator {
+
+		private final SplittableRandom random;
+		private double spare;
+		private boolean hasSpare;
+
+		GaussianGenerator(SplittableRandom random) {
+			this.random = random;
+			this.hasSpare = false;
+		}
+
+		double nextGaussian() {
+			if (hasSpare) {
+				hasSpare = false;
+				return spare;
+			}
+			double u;
+			double v;
+			double s;
+			do {
+				u = 2 * random.nextDouble() - 1;
+				v = 2 * random.nextDouble() - 1;
+				s = u * u + v * v;
+			} while (s >= 1.0 || s == 0.0);
+			double factor = sqrt(-2 * log(s)/s);
+			spare = v * factor;
+			hasSpare = true;
+			return u * factor;
+		}
+
+		/**
+		 * Return a Poisson variate by multiplying uniforms, which is quick for the small means of a single time step
+		 * @param expMinusMean exp(-mean)
+		 * @return
+		 */
+		int nextPoisson(double expMinusMean) {
+			int count = 0;
+			double product = random.nextDouble();
+			while (product > expMinusMean) {
+				++count;
+				product *= random.nextDouble();
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.ngray.option.model;
+
+import java.time.LocalDate;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataException;
+import com.ngray.option.marketdata.MarketData.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Model valuing European options by simulation with a MonteCarloEngine, using the terminal price
+ * of the underlying, whose expectation is its discounted forward, as the control variate. Option prices are converted to volatilities with
+ * Black-Scholes, so with jumps switched on the engine prices the book under the same diffusion
+ * plus the jumps, which makes it a stress rather than a calibrated valuation. Only the first order
+ * greeks are estimated. The simulation runs on the common fork-join pool.
+ * @author nigelgray
+ *
+ */
+public class MonteCarloModel implements Model {
+
+	private final MonteCarloEngine engine;
+
+	private final PricingContextCache pricingContexts;
+
+	public MonteCarloModel(MonteCarloEngine engine) {
+		this.engine = engine;
+		this.pricingContexts = EuropeanOptionModel.getPricingContextCache();
+	}
+
+	public MonteCarloEngine getEngine() {
+		return engine;
+	}
+
+	@Override
+	public Risk calculateRisk(FinancialInstrument instrument, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
+		if(instrument == null) {
+			throw new ModelException("MonteCarloModel::calculateRisk called with null FinancialInstrument");
+		}
+
+		if(marketData == null) {
+			throw new ModelException("MonteCarloModel::calculateRisk called with null MarketData");
+		}
+
+		if (!(instrument instanceof EuropeanOption) || ((EuropeanOption)instrument).getExerciseStyle() == ExerciseStyle.AMERICAN) {
+			throw new ModelException("MonteCarloModel can't value security " + instrument.getIdentifier() +
+										" of type " + instrument.getClass());
+		}
+
+		EuropeanOption option = (EuropeanOption)instrument;
+		try {
+			EuropeanOptionPricingContext context = getPricingContext(option, valueDate);
+			if (!(context.getTimeToExpiry() > 0.0)) {
+				throw new ModelException("MonteCarloModel can't value expired option " + option.getIdentifier());
+			}
+
+			MarketData spotMarketData = marketData.getMarketData(option.getUnderlying());
+			MarketData optionPriceOrVol = marketData.getMarketData(option);
+
+			if (spotMarketData.getType() != Type.PRICE) {
+				throw new ModelException("Expected price, got volatility");
+			}
+			double spot = spotMarketData.getMid();
+
+			double volatility = 0.0;
+			double optionPrice = Double.NaN;
+			if (optionPriceOrVol.getType() == Type.VOLATILITY) {
+				volatility = optionPriceOrVol.getMid();
+			} else {
+				optionPrice = optionPriceOrVol.getMid();
+				volatility = calculateImpliedVolatility(option, context, spot, optionPrice);
+			}
+
+			VanillaOptionPayoff payoff = new VanillaOptionPayoff(context.getCallOrPut(), context.getStrike());
+			MonteCarloResult result = engine.simulate(payoff, VanillaOptionPayoff.underlying(), spot, volatility, context.getTimeToExpiry(),
+					context.getRiskFreeRate(), context.getDividendYield(), true, new MonteCarloResult());
+			Log.getLogger().debug("MonteCarloModel: " + option.getIdentifier() + " " + result);
+			if (Double.isNaN(optionPrice)) {
+				optionPrice = result.getPrice();
+			}
+			return new Risk(result.getPrice(), result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+					volatility, optionPrice, spot);
+		} catch (MarketDataException e) {
+			throw new ModelException(e.getMessage());
+		} catch (MissingReferenceDataException e) {
+			throw new ModelException(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new ModelException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Return the pricing context of the option for the value date, compiling it if it isn't
+	 * cached or the cached context is stale
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		return pricingContexts.getPricingContext(option, valueDate);
+	}
+
+	@Override
+	public void release(FinancialInstrument instrument) {
+		pricingContexts.remove(instrument);
+		EuropeanOptionModel.getImpliedVolatilitySeedCache().remove(instrument.getIdentifier());
+	}
+
+	private double calculateImpliedVolatility(EuropeanOption option, EuropeanOptionPricingContext context, double spot,
+			double optionPrice) throws ModelException {
+		ImpliedVolatilityResult result = EuropeanOptionModel.getImpliedVolatilitySeedCache().solve(option.getIdentifier(),
+				context.getCallOrPut(), spot, context.getStrike(), optionPrice, context.getTimeToExpiry(), context.getRiskFreeRate(),
+				context.getDividendYield(), new ImpliedVolatilityResult());
+		if (result.getStatus() == Status.INVALID_INPUT) {
+			throw new ModelException("Can't calculate implied volatility of " + option.getIdentifier() + " from price " + optionPrice +
+										", spot " + spot + ", time to expiry " + context.getTimeToExpiry());
+		}
+		if (!result.isConverged()) {
+			Log.getLogger().warn("Implied volatility of " + option.getIdentifier() + " from price " + optionPrice + ": " + result);
+		}
+		return result.getVolatility();
+	}
+
+}
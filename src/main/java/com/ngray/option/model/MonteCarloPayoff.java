@@ -0,0 +1,20 @@
+package com.ngray.option.model;
+
+/**
+ * A payoff on a simulated path of the underlying, for pricing with MonteCarloEngine.
+ * Implementations must be stateless, as a single payoff is evaluated concurrently by
+ * every simulation thread.
+ * @author nigelgray
+ *
+ */
+public interface MonteCarloPayoff {
+
+	/**
+	 * Return the undiscounted payoff of the path, and write its derivative with respect to
+	 * each point of the path into gradient, for pathwise greeks
+	 * @param path the underlying price at the end of each time step, the last being at expiry
+	 * @param gradient the same length as path
+	 * @return
+	 */
+	public double evaluate(double[] path, double[] gradient);
+}
@@ -0,0 +1,117 @@
+package com.ngray.option.model;
+
+/**
+ * Mutable holder for the price and greeks estimated by a MonteCarloEngine simulation, in the
+ * same units as BlackScholesResult: vega and rho per 1% move, theta per calendar day.
+ * Callers own the holder and may reuse it across simulations.
+ * Objects of this type are not thread safe.
+ * @author nigelgray
+ *
+ */
+public class MonteCarloResult {
+
+	private double price;
+	private double standardError;
+	private double delta;
+	private double gamma;
+	private double vega;
+	private double theta;
+	private double rho;
+	private double controlVariateCoefficient;
+	private int paths;
+
+	public MonteCarloResult() {
+		clear();
+	}
+
+	/**
+	 * Reset the result to its initial state
+	 */
+	public void clear() {
+		set(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0);
+	}
+
+	void set(double price, double standardError, double delta, double gamma, double vega, double theta, double rho,
+			double controlVariateCoefficient, int paths) {
+		this.price = price;
+		this.standardError = standardError;
+		this.delta = delta;
+		this.gamma = gamma;
+		this.vega = vega;
+		this.theta = theta;
+		this.rho = rho;
+		this.controlVariateCoefficient = controlVariateCoefficient;
+		this.paths = paths;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	/**
+	 * Return the standard error of the price estimate
+	 * @return
+	 */
+	public double getStandardError() {
+		return standardError;
+	}
+
+	public double getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Return the gamma, from the likelihood ratio of the first time step applied to the pathwise delta
+	 * @return
+	 */
+	public double getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Vega per 1% move in volatility
+	 * @return
+	 */
+	public double getVega() {
+		return vega;
+	}
+
+	/**
+	 * Theta per calendar day
+	 * @return
+	 */
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Rho per 1% move in the risk free rate
+	 * @return
+	 */
+	public double getRho() {
+		return rho;
+	}
+
+	/**
+	 * Return the coefficient of the control variate estimated from the simulation, zero if none was used
+	 * @return
+	 */
+	public double getControlVariateCoefficient() {
+		return controlVariateCoefficient;
+	}
+
+	/**
+	 * Return the number of paths simulated, including antithetic paths
+	 * @return
+	 */
+	public int getPaths() {
+		return paths;
+	}
+
+	@Override
+	public String toString() {
+		return "[Price: " + price + ", Standard Error: " + standardError + ", Delta: " + delta + ", Gamma: " + gamma +
+				", Vega: " + vega + ", Theta: " + theta + ", Rho: " + rho +
+				", Control Variate Coefficient: " + controlVariateCoefficient + ", Paths: " + paths + "]";
+	}
+}
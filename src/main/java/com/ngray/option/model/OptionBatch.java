@@ -0,0 +1,231 @@
+package com.ngray.option.model;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+/**
+ * Structure-of-arrays container for pricing a batch of European options with
+ * BlackScholesBatchModel. Each input and output is held in its own primitive array,
+ * indexed by position in the batch, and the arrays are returned directly so that
+ * callers can fill and read them without copying.
+ * Objects of this type are not thread safe.
+ * @author nigelgray
+ *
+ */
+public class OptionBatch {
+
+	private final int size;
+
+	// inputs
+	private final boolean[] call;
+	private final double[] spot;
+	private final double[] strike;
+	private final double[] volatility;
+	private final double[] timeToExpiry;
+	private final double[] riskFreeRate;
+	private final double[] dividendYield;
+	private final double[] optionPrice;
+
+	// outputs
+	private final double[] price;
+	private final double[] delta;
+	private final double[] gamma;
+	private final double[] vega;
+	private final double[] theta;
+	private final double[] rho;
+	private final double[] vanna;
+	private final double[] volga;
+	private final double[] charm;
+	private final double[] speed;
+	private final int[] iterations;
+	private final Status[] status;
+
+	/**
+	 * Construct a batch able to hold size options
+	 * @param size
+	 */
+	public OptionBatch(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("OptionBatch: negative size " + size);
+		}
+		this.size = size;
+		this.call = new boolean[size];
+		this.spot = new double[size];
+		this.strike = new double[size];
+		this.volatility = new double[size];
+		this.timeToExpiry = new double[size];
+		this.riskFreeRate = new double[size];
+		this.dividendYield = new double[size];
+		this.optionPrice = new double[size];
+		this.price = new double[size];
+		this.delta = new double[size];
+		this.gamma = new double[size];
+		this.vega = new double[size];
+		this.theta = new double[size];
+		this.rho = new double[size];
+		this.vanna = new double[size];
+		this.volga = new double[size];
+		this.charm = new double[size];
+		this.speed = new double[size];
+		this.iterations = new int[size];
+		this.status = new Status[size];
+	}
+
+	/**
+	 * Set the inputs for the option at index
+	 * @param index
+	 * @param callOrPut
+	 * @param spot
+	 * @param strike
+	 * @param volatility
+	 * @param timeToExpiry
+	 * @param riskFreeRate
+	 * @param dividendYield
+	 */
+	public void set(int index, Type callOrPut, double spot, double strike, double volatility, double timeToExpiry,
+			double riskFreeRate, double dividendYield) {
+		this.call[index] = callOrPut == Type.CALL;
+		this.spot[index] = spot;
+		this.strike[index] = strike;
+		this.volatility[index] = volatility;
+		this.timeToExpiry[index] = timeToExpiry;
+		this.riskFreeRate[index] = riskFreeRate;
+		this.dividendYield[index] = dividendYield;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Type getType(int index) {
+		return call[index] ? Type.CALL : Type.PUT;
+	}
+
+	/**
+	 * Call/put flags, true for a call
+	 * @return
+	 */
+	public boolean[] getCallFlags() {
+		return call;
+	}
+
+	public double[] getSpot() {
+		return spot;
+	}
+
+	public double[] getStrike() {
+		return strike;
+	}
+
+	/**
+	 * Volatilities, an input to pricing and the output of an implied volatility solve
+	 * @return
+	 */
+	public double[] getVolatility() {
+		return volatility;
+	}
+
+	public double[] getTimeToExpiry() {
+		return timeToExpiry;
+	}
+
+	public double[] getRiskFreeRate() {
+		return riskFreeRate;
+	}
+
+	public double[] getDividendYield() {
+		return dividendYield;
+	}
+
+	/**
+	 * Market option prices, the input to an implied volatility solve
+	 * @return
+	 */
+	public double[] getOptionPrice() {
+		return optionPrice;
+	}
+
+	public double[] getPrice() {
+		return price;
+	}
+
+	public double[] getDelta() {
+		return delta;
+	}
+
+	public double[] getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Vegas per 1% move in volatility
+	 * @return
+	 */
+	public double[] getVega() {
+		return vega;
+	}
+
+	/**
+	 * Thetas per calendar day
+	 * @return
+	 */
+	public double[] getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Rhos per 1% move in the risk free rate
+	 * @return
+	 */
+	public double[] getRho() {
+		return rho;
+	}
+
+	/**
+	 * Vannas, the change in delta per 1% move in volatility
+	 * @return
+	 */
+	public double[] getVanna() {
+		return vanna;
+	}
+
+	/**
+	 * Volgas, the change in vega per 1% move in volatility
+	 * @return
+	 */
+	public double[] getVolga() {
+		return volga;
+	}
+
+	/**
+	 * Charms, the change in delta per calendar day
+	 * @return
+	 */
+	public double[] getCharm() {
+		return charm;
+	}
+
+	/**
+	 * Speeds, the change in gamma per unit move in the spot price
+	 * @return
+	 */
+	public double[] getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Iteration counts of the last implied volatility solve
+	 * @return
+	 */
+	public int[] getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Statuses of the last implied volatility solve
+	 * @return
+	 */
+	public Status[] getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,110 @@
+package com.ngray.option.model;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+
+/**
+ * Caches the compiled pricing context of each option a model values, recompiling it when it is stale.
+ * Contexts are keyed by the option itself, whose equality covers its identifier, strike, type, exercise style
+ * and expiry, so different options sharing an identifier never share a context. A context is dropped when
+ * a model releases the option, and the contexts of expired options are dropped on the first use of
+ * each new value date. The European, American and Monte Carlo models share one cache, from
+ * EuropeanOptionModel.getPricingContextCache, as they compile the same context for an option from its
+ * reference data - a release by any of them drops it for all, and the next use recompiles it.
+ * VolatilitySurfaceModel holds a cache of its own, as it compiles contexts for options without reference data.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class PricingContextCache {
+
+	/**
+	 * Compiles the context of an option which isn't cached
+	 */
+	public interface Compiler {
+		public EuropeanOptionPricingContext compile(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException;
+	}
+
+	private final Map<EuropeanOption, EuropeanOptionPricingContext> contexts;
+
+	// the last value date expired contexts were dropped for
+	private volatile LocalDate evictionDate;
+
+	public PricingContextCache() {
+		this.contexts = new ConcurrentHashMap<>();
+		this.evictionDate = null;
+	}
+
+	/**
+	 * Return the pricing context of the option for the value date, compiling it from the option's reference
+	 * data if it isn't cached or the cached context is stale
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		return getPricingContext(option, valueDate, EuropeanOptionPricingContext::compile);
+	}
+
+	/**
+	 * Return the pricing context of the option for the value date, compiling it with the given compiler
+	 * if it isn't cached or the cached context is stale
+	 * @param option
+	 * @param valueDate
+	 * @param compiler
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(EuropeanOption option, LocalDate valueDate, Compiler compiler)
+			throws MissingReferenceDataException {
+		if (!valueDate.equals(evictionDate)) {
+			evictExpired(valueDate);
+		}
+		EuropeanOptionPricingContext context = contexts.get(option);
+		if (context == null || !context.isValid(valueDate)) {
+			context = compiler.compile(option, valueDate);
+			contexts.put(option, context);
+		}
+		return context;
+	}
+
+	/**
+	 * Drop the context of the instrument, if it is an option with one
+	 * @param instrument
+	 */
+	public void remove(FinancialInstrument instrument) {
+		if (instrument instanceof EuropeanOption) {
+			contexts.remove(instrument);
+		}
+	}
+
+	/**
+	 * Drop the contexts of the options which expired before the value date
+	 * @param valueDate
+	 */
+	public void evictExpired(LocalDate valueDate) {
+		evictionDate = valueDate;
+		contexts.keySet().removeIf(option -> option.getExpiryDate().isBefore(valueDate));
+	}
+
+	/**
+	 * Return the number of contexts cached
+	 * @return
+	 */
+	public int size() {
+		return contexts.size();
+	}
+
+	/**
+	 * Drop all the contexts
+	 */
+	public void clear() {
+		contexts.clear();
+	}
+}
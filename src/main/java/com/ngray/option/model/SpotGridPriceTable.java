@@ -0,0 +1,212 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+import java.time.LocalDate;
+
+/**
+ * Price and greeks of a European option tabulated on a uniform grid of spot prices, for a fixed
+ * pricing context and volatility. Between grid points the price, delta, gamma, vega and theta are
+ * cubic Hermite interpolated, using their analytic spot derivatives (delta, gamma, speed, vanna and
+ * charm) as the slopes, and the remaining greeks are linearly interpolated. Revaluing at a new spot
+ * is then a handful of reads from two adjacent grid nodes, which are stored next to each other.
+ * The grid is centred on the spot it was built at and spans a number of standard deviations of the
+ * terminal spot either side. The worst interpolation errors of price and delta, measured against the
+ * exact values at the interval midpoints when the table is built, are reported with the table.
+ * Objects of this type are immutable.
+ * @author nigelgray
+ *
+ */
+public class SpotGridPriceTable {
+
+	// layout of the values of each grid node in the table array
+	private static final int PRICE = 0;
+	private static final int DELTA = 1;
+	private static final int GAMMA = 2;
+	private static final int SPEED = 3;
+	private static final int VEGA = 4;
+	private static final int VANNA = 5;
+	private static final int THETA = 6;
+	private static final int CHARM = 7;
+	private static final int RHO = 8;
+	private static final int VOLGA = 9;
+	private static final int STRIDE = 10;
+
+	private final EuropeanOptionPricingContext context;
+	private final double volatility;
+	private final double lowerSpot;
+	private final double upperSpot;
+	private final double spacing;
+	private final double inverseSpacing;
+	private final int points;
+	private final double[] table;
+	private final double priceInterpolationError;
+	private final double deltaInterpolationError;
+
+	private SpotGridPriceTable(EuropeanOptionPricingContext context, double volatility, double lowerSpot, double upperSpot, int points) {
+		this.context = context;
+		this.volatility = volatility;
+		this.lowerSpot = lowerSpot;
+		this.upperSpot = upperSpot;
+		this.points = points;
+		this.spacing = (upperSpot - lowerSpot)/(points - 1);
+		this.inverseSpacing = 1.0/spacing;
+		this.table = new double[points * STRIDE];
+
+		BlackScholesResult result = new BlackScholesResult();
+		for (int i = 0; i < points; ++i) {
+			BlackScholesModel.calcOptionPriceAndGreeks(context, lowerSpot + i * spacing, volatility, result);
+			int node = i * STRIDE;
+			table[node + PRICE] = result.getPrice();
+			table[node + DELTA] = result.getDelta();
+			table[node + GAMMA] = result.getGamma();
+			table[node + SPEED] = result.getSpeed();
+			table[node + VEGA] = result.getVega();
+			table[node + VANNA] = result.getVanna();
+			table[node + THETA] = result.getTheta();
+			table[node + CHARM] = result.getCharm();
+			table[node + RHO] = result.getRho();
+			table[node + VOLGA] = result.getVolga();
+		}
+
+		// Hermite interpolation errs most near the middle of an interval
+		double maxPriceError = 0.0;
+		double maxDeltaError = 0.0;
+		BlackScholesResult interpolated = new BlackScholesResult();
+		for (int i = 0; i < points - 1; ++i) {
+			double spot = lowerSpot + (i + 0.5) * spacing;
+			BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, result);
+			interpolate(spot, interpolated);
+			maxPriceError = max(maxPriceError, abs(interpolated.getPrice() - result.getPrice()));
+			maxDeltaError = max(maxDeltaError, abs(interpolated.getDelta() - result.getDelta()));
+		}
+		this.priceInterpolationError = maxPriceError;
+		this.deltaInterpolationError = maxDeltaError;
+	}
+
+	/**
+	 * Build a table of the option described by the pricing context at the given volatility, on a grid of
+	 * points spot prices spanning widthInStandardDeviations standard deviations of the terminal spot either
+	 * side of spot
+	 * @param context
+	 * @param spot
+	 * @param volatility
+	 * @param points
+	 * @param widthInStandardDeviations
+	 * @return
+	 * @throws ModelException if the inputs can't define a grid
+	 */
+	public static SpotGridPriceTable build(EuropeanOptionPricingContext context, double spot, double volatility,
+			int points, double widthInStandardDeviations) throws ModelException {
+		if (points < 2 || !(widthInStandardDeviations > 0.0)) {
+			throw new ModelException("SpotGridPriceTable needs at least 2 points and a positive width, got " +
+										points + " points and width " + widthInStandardDeviations);
+		}
+		if (!(spot > 0.0) || !(volatility > 0.0) || !(context.getTimeToExpiry() > 0.0) || Double.isInfinite(spot)) {
+			throw new ModelException("Can't tabulate option prices at spot " + spot + ", volatility " + volatility +
+										", time to expiry " + context.getTimeToExpiry());
+		}
+		double width = widthInStandardDeviations * volatility * context.getSqrtTimeToExpiry();
+		return new SpotGridPriceTable(context, volatility, spot * exp(-width), spot * exp(width), points);
+	}
+
+	/**
+	 * Return true if spot lies on the grid of this table
+	 * @param spot
+	 * @return
+	 */
+	public boolean contains(double spot) {
+		return spot >= lowerSpot && spot <= upperSpot;
+	}
+
+	/**
+	 * Return true if this table was built for the given value date against the current reference data
+	 * @param valueDate
+	 * @return
+	 */
+	public boolean isValid(LocalDate valueDate) {
+		return context.isValid(valueDate);
+	}
+
+	/**
+	 * Interpolate the price and greeks at the given spot, which must lie on the grid
+	 * @param spot
+	 * @param result the holder to write the price and greeks into
+	 * @return result
+	 */
+	public BlackScholesResult interpolate(double spot, BlackScholesResult result) {
+		double position = (spot - lowerSpot) * inverseSpacing;
+		// the upper end of the grid belongs to the last interval
+		int i = min((int)position, points - 2);
+		double t = position - i;
+		double t2 = t * t;
+		double t3 = t2 * t;
+		double h00 = 2 * t3 - 3 * t2 + 1;
+		double h01 = 1 - h00;
+		double h10 = (t3 - 2 * t2 + t) * spacing;
+		double h11 = (t3 - t2) * spacing;
+		double u = 1 - t;
+
+		int lower = i * STRIDE;
+		int upper = lower + STRIDE;
+		result.set(
+			h00 * table[lower + PRICE] + h10 * table[lower + DELTA] + h01 * table[upper + PRICE] + h11 * table[upper + DELTA],
+			h00 * table[lower + DELTA] + h10 * table[lower + GAMMA] + h01 * table[upper + DELTA] + h11 * table[upper + GAMMA],
+			h00 * table[lower + GAMMA] + h10 * table[lower + SPEED] + h01 * table[upper + GAMMA] + h11 * table[upper + SPEED],
+			h00 * table[lower + VEGA] + h10 * table[lower + VANNA] + h01 * table[upper + VEGA] + h11 * table[upper + VANNA],
+			h00 * table[lower + THETA] + h10 * table[lower + CHARM] + h01 * table[upper + THETA] + h11 * table[upper + CHARM],
+			u * table[lower + RHO] + t * table[upper + RHO]);
+		result.setSecondOrder(
+			u * table[lower + VANNA] + t * table[upper + VANNA],
+			u * table[lower + VOLGA] + t * table[upper + VOLGA],
+			u * table[lower + CHARM] + t * table[upper + CHARM],
+			u * table[lower + SPEED] + t * table[upper + SPEED]);
+		return result;
+	}
+
+	public EuropeanOptionPricingContext getPricingContext() {
+		return context;
+	}
+
+	/**
+	 * Return the volatility the table was built at
+	 * @return
+	 */
+	public double getVolatility() {
+		return volatility;
+	}
+
+	public double getLowerSpot() {
+		return lowerSpot;
+	}
+
+	public double getUpperSpot() {
+		return upperSpot;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	/**
+	 * Return the largest absolute error of the interpolated price at the interval midpoints
+	 * @return
+	 */
+	public double getPriceInterpolationError() {
+		return priceInterpolationError;
+	}
+
+	/**
+	 * Return the largest absolute error of the interpolated delta at the interval midpoints
+	 * @return
+	 */
+	public double getDeltaInterpolationError() {
+		return deltaInterpolationError;
+	}
+
+	@Override
+	public String toString() {
+		return "[Volatility: " + volatility + ", Spot: " + lowerSpot + " - " + upperSpot + ", Points: " + points +
+				", PriceInterpolationError: " + priceInterpolationError + ", DeltaInterpolationError: " + deltaInterpolationError + "]";
+	}
+}
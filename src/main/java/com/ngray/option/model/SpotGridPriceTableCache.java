@@ -0,0 +1,202 @@
+package com.ngray.option.model;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Keeps a SpotGridPriceTable for each European option, keyed by the option itself as PricingContextCache keys
+ * its contexts, so that the option can be revalued on a move in its underlying by interpolation rather than a
+ * full model evaluation. The table of an option is dropped when it is no longer priced. A table is
+ * rebuilt from a full valuation only when the volatility has moved by more than the volatility tolerance
+ * since it was built, the spot has left its grid, or the value date or reference data have changed.
+ * Interpolated values therefore carry the table's interpolation error plus up to vega times the
+ * volatility tolerance.
+ * Lookup, interpolation and rebuild statistics are kept for monitoring.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class SpotGridPriceTableCache {
+
+	public static final int DEFAULT_POINTS = 65;
+	public static final double DEFAULT_WIDTH_IN_STANDARD_DEVIATIONS = 4.0;
+	public static final double DEFAULT_VOLATILITY_TOLERANCE = 0.0005;
+
+	private final int points;
+	private final double widthInStandardDeviations;
+	private final double volatilityTolerance;
+
+	private final Map<EuropeanOption, SpotGridPriceTable> tables;
+
+	private final LongAdder lookups;
+	private final LongAdder interpolations;
+	private final LongAdder rebuilds;
+
+	public SpotGridPriceTableCache() {
+		this(DEFAULT_POINTS, DEFAULT_WIDTH_IN_STANDARD_DEVIATIONS, DEFAULT_VOLATILITY_TOLERANCE);
+	}
+
+	/**
+	 * Create a cache of tables with the given number of grid points, each spanning widthInStandardDeviations
+	 * standard deviations of the terminal spot either side of the spot it's built at
+	 * @param points
+	 * @param widthInStandardDeviations
+	 * @param volatilityTolerance the move in volatility which forces a table to be rebuilt
+	 */
+	public SpotGridPriceTableCache(int points, double widthInStandardDeviations, double volatilityTolerance) {
+		this.points = points;
+		this.widthInStandardDeviations = widthInStandardDeviations;
+		this.volatilityTolerance = volatilityTolerance;
+		this.tables = new ConcurrentHashMap<>();
+		this.lookups = new LongAdder();
+		this.interpolations = new LongAdder();
+		this.rebuilds = new LongAdder();
+	}
+
+	/**
+	 * Revalue the option at the given spot by interpolation in its table. Returns null if the option has
+	 * no table usable at this spot and value date, in which case the caller should fall back to a full
+	 * valuation and pass the result to update.
+	 * @param option
+	 * @param spot
+	 * @param valueDate
+	 * @return
+	 */
+	public Risk calculateRisk(EuropeanOption option, double spot, LocalDate valueDate) {
+		lookups.increment();
+		SpotGridPriceTable table = tables.get(option);
+		if (table == null || !table.contains(spot) || !table.isValid(valueDate)) {
+			return null;
+		}
+		interpolations.increment();
+		BlackScholesResult result = table.interpolate(spot, new BlackScholesResult());
+		return new Risk(result.getPrice(), result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+				result.getVanna(), result.getVolga(), result.getCharm(), result.getSpeed(),
+				table.getVolatility(), result.getPrice(), spot);
+	}
+
+	/**
+	 * Bring the option's table up to date with a full valuation at the given spot and volatility, rebuilding
+	 * it if there is none, the volatility has moved by more than the tolerance, the spot is off the grid
+	 * or the table is stale. Options which can't be tabulated, such as expired options, are left without a table.
+	 * @param option
+	 * @param spot
+	 * @param volatility
+	 * @param valueDate
+	 * @return the option's table, or null if it has none
+	 */
+	public SpotGridPriceTable update(EuropeanOption option, double spot, double volatility, LocalDate valueDate) {
+		SpotGridPriceTable table = tables.get(option);
+		if (table != null && table.contains(spot) && table.isValid(valueDate) &&
+				Math.abs(table.getVolatility() - volatility) <= volatilityTolerance) {
+			return table;
+		}
+
+		try {
+			EuropeanOptionPricingContext context = EuropeanOptionPricingContext.compile(option, valueDate);
+			table = SpotGridPriceTable.build(context, spot, volatility, points, widthInStandardDeviations);
+			rebuilds.increment();
+			Log.getLogger().debug("SpotGridPriceTableCache: rebuilt table for " + option.getIdentifier() + " " + table);
+			tables.put(option, table);
+			return table;
+		} catch (ModelException | MissingReferenceDataException e) {
+			Log.getLogger().debug("SpotGridPriceTableCache: can't tabulate " + option.getIdentifier() + ": " + e.getMessage());
+			tables.remove(option);
+			return null;
+		}
+	}
+
+	/**
+	 * Return the current table of the option, or null if there is none
+	 * @param option
+	 * @return
+	 */
+	public SpotGridPriceTable getTable(EuropeanOption option) {
+		return tables.get(option);
+	}
+
+	/**
+	 * Drop the table of the instrument, if it is an option with one
+	 * @param instrument
+	 */
+	public void remove(FinancialInstrument instrument) {
+		if (instrument instanceof EuropeanOption) {
+			tables.remove(instrument);
+		}
+	}
+
+	/**
+	 * Forget all tables
+	 */
+	public void clear() {
+		tables.clear();
+	}
+
+	public int size() {
+		return tables.size();
+	}
+
+	/**
+	 * Return the number of revaluations attempted by interpolation
+	 * @return
+	 */
+	public long getLookupCount() {
+		return lookups.sum();
+	}
+
+	/**
+	 * Return the number of revaluations served by interpolation
+	 * @return
+	 */
+	public long getInterpolationCount() {
+		return interpolations.sum();
+	}
+
+	/**
+	 * Return the number of tables built
+	 * @return
+	 */
+	public long getRebuildCount() {
+		return rebuilds.sum();
+	}
+
+	/**
+	 * Return the fraction of attempted revaluations served by interpolation
+	 * @return
+	 */
+	public double getHitRate() {
+		long lookupCount = getLookupCount();
+		return lookupCount == 0 ? 0.0 : ((double)getInterpolationCount())/lookupCount;
+	}
+
+	/**
+	 * Return the largest price interpolation error of the current tables
+	 * @return
+	 */
+	public double getMaxPriceInterpolationError() {
+		return tables.values().stream().mapToDouble(SpotGridPriceTable::getPriceInterpolationError).max().orElse(0.0);
+	}
+
+	/**
+	 * Reset the statistics, leaving the tables in place
+	 */
+	public void resetStatistics() {
+		lookups.reset();
+		interpolations.reset();
+		rebuilds.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "[Tables: " + size() + ", Lookups: " + getLookupCount() + ", HitRate: " + getHitRate() +
+				", Rebuilds: " + getRebuildCount() + ", MaxPriceInterpolationError: " + getMaxPriceInterpolationError() + "]";
+	}
+}
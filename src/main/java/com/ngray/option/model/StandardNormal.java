@@ -0,0 +1,164 @@
+package com.ngray.option.model;
+
+import static java.lang.Math.*;
+
+/**
+ * Allocation-free cumulative distribution and density functions for the standard
+ * normal distribution, used on the pricing hot path in place of commons-math's
+ * NormalDistribution (which must be instantiated for each evaluation).
+ *
+ * The cumulative distribution uses W. J. Cody's rational Chebyshev approximations
+ * ("Rational Chebyshev Approximations for the Error Function", Math. Comp. 1969),
+ * which are accurate to full double precision across the whole real line.
+ * @author nigelgray
+ *
+ */
+public final class StandardNormal {
+
+	private static final double ONE_OVER_SQRT_TWO_PI = 0.398942280401432677939946059934;
+
+	private static final double SQRT_32 = 5.656854249492380195206754896838;
+
+	/**
+	 * Below this |x| the central approximation is used
+	 */
+	private static final double CENTRAL_LIMIT = 0.67448975;
+
+	/**
+	 * Beyond this |x| the tail probability underflows to zero in double precision
+	 */
+	private static final double TAIL_LIMIT = 38.5;
+
+	// coefficients for |x| <= 0.67448975
+	private static final double[] A = {
+			2.2352520354606839287,
+			161.02823106855587881,
+			1067.6894854603709582,
+			18154.981253343561249,
+			0.065682337918207449113
+	};
+	private static final double[] B = {
+			47.20258190468824187,
+			976.09855173777669322,
+			10260.932208618978205,
+			45507.789335026729956
+	};
+
+	// coefficients for 0.67448975 < |x| <= sqrt(32)
+	private static final double[] C = {
+			0.39894151208813466764,
+			8.8831497943883759412,
+			93.506656132177855979,
+			597.27027639480026226,
+			2494.5375852903726711,
+			6848.1904505362823326,
+			11602.651437647350124,
+			9842.7148383839780218,
+			1.0765576773720192317e-8
+	};
+	private static final double[] D = {
+			22.266688044328115691,
+			235.38790178262499861,
+			1519.377599407554805,
+			6485.558298266760755,
+			18615.571640885098091,
+			34900.952721145977266,
+			38912.003286093271411,
+			19685.429676859990727
+	};
+
+	// coefficients for |x| > sqrt(32)
+	private static final double[] P = {
+			0.21589853405795699,
+			0.1274011611602473639,
+			0.022235277870649807,
+			0.001421619193227893466,
+			2.9112874951168792e-5,
+			0.02307344176494017303
+	};
+	private static final double[] Q = {
+			1.28426009614491121,
+			0.468238212480865118,
+			0.0659881378689285515,
+			0.00378239633202758244,
+			7.29751555083966205e-5
+	};
+
+	private StandardNormal() {
+	}
+
+	/**
+	 * Return the probability that a standard normal random variable is less than or equal to x
+	 * @param x
+	 * @return
+	 */
+	public static double cumulativeProbability(double x) {
+		if (Double.isNaN(x)) {
+			return Double.NaN;
+		}
+
+		double y = abs(x);
+		if (y <= CENTRAL_LIMIT) {
+			double xnum = 0.0;
+			double xden = 0.0;
+			if (y > 1.1e-16) {
+				double xsq = x * x;
+				xnum = A[4] * xsq;
+				xden = xsq;
+				for (int i = 0; i < 3; ++i) {
+					xnum = (xnum + A[i]) * xsq;
+					xden = (xden + B[i]) * xsq;
+				}
+			}
+			return 0.5 + x * (xnum + A[3]) / (xden + B[3]);
+		}
+
+		if (y >= TAIL_LIMIT) {
+			return x > 0 ? 1.0 : 0.0;
+		}
+
+		double tail;
+		if (y <= SQRT_32) {
+			double xnum = C[8] * y;
+			double xden = y;
+			for (int i = 0; i < 7; ++i) {
+				xnum = (xnum + C[i]) * y;
+				xden = (xden + D[i]) * y;
+			}
+			tail = gaussianTail(y, (xnum + C[7]) / (xden + D[7]));
+		} else {
+			double xsq = 1.0 / (x * x);
+			double xnum = P[5] * xsq;
+			double xden = xsq;
+			for (int i = 0; i < 4; ++i) {
+				xnum = (xnum + P[i]) * xsq;
+				xden = (xden + Q[i]) * xsq;
+			}
+			double temp = xsq * (xnum + P[4]) / (xden + Q[4]);
+			tail = gaussianTail(y, (ONE_OVER_SQRT_TWO_PI - temp) / y);
+		}
+
+		return x > 0 ? 1.0 - tail : tail;
+	}
+
+	/**
+	 * Return the density of the standard normal distribution at x
+	 * @param x
+	 * @return
+	 */
+	public static double density(double x) {
+		return ONE_OVER_SQRT_TWO_PI * exp(-0.5 * x * x);
+	}
+
+	/**
+	 * Evaluate exp(-y^2/2) * factor, splitting y^2 to avoid cancellation error in the exponent
+	 * @param y
+	 * @param factor
+	 * @return
+	 */
+	private static double gaussianTail(double y, double factor) {
+		double ySixteenths = floor(y * 16.0) / 16.0;
+		double delta = (y - ySixteenths) * (y + ySixteenths);
+		return exp(-ySixteenths * ySixteenths * 0.5) * exp(-delta * 0.5) * factor;
+	}
+}
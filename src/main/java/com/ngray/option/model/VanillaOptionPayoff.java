@@ -0,0 +1,50 @@
+package com.ngray.option.model;
+
+import java.util.Arrays;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+
+/**
+ * The payoff of a European call or put, which depends only on the last point of the path
+ * @author nigelgray
+ *
+ */
+public class VanillaOptionPayoff implements MonteCarloPayoff {
+
+	private final Type callOrPut;
+	private final double strike;
+
+	public VanillaOptionPayoff(Type callOrPut, double strike) {
+		this.callOrPut = callOrPut;
+		this.strike = strike;
+	}
+
+	/**
+	 * Return the payoff of the underlying itself at expiry, a call struck at zero, whose expected discounted
+	 * value is the discounted forward under any dynamics keeping the discounted price a martingale
+	 * @return
+	 */
+	public static VanillaOptionPayoff underlying() {
+		return new VanillaOptionPayoff(Type.CALL, 0.0);
+	}
+
+	@Override
+	public double evaluate(double[] path, double[] gradient) {
+		Arrays.fill(gradient, 0.0);
+		int last = path.length - 1;
+		double payoff = callOrPut == Type.CALL ? path[last] - strike : strike - path[last];
+		if (payoff <= 0.0) {
+			return 0.0;
+		}
+		gradient[last] = callOrPut == Type.CALL ? 1.0 : -1.0;
+		return payoff;
+	}
+
+	public Type getCallOrPut() {
+		return callOrPut;
+	}
+
+	public double getStrike() {
+		return strike;
+	}
+}
@@ -0,0 +1,179 @@
+package com.ngray.option.model;
+
+import java.time.LocalDate;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketData.Type;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataException;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.volatilitysurface.VolatilitySurface;
+import com.ngray.option.volatilitysurface.VolatilitySurfaceException;
+
+/**
+ * Model valuing European options with Black-Scholes at an implied volatility read from a VolatilitySurface,
+ * at the option's days to expiry and the offset of its strike from the at-the-money strike, rather than
+ * solved from a quote. Only the underlying price is needed from the market data, so options with no
+ * market of their own, such as hypothetical strikes and expiries, can be valued, with or without reference data
+ * of their own. Whole batches of options
+ * are valued by reading their volatilities from the surface in one pass and pricing them with
+ * BlackScholesBatchModel.
+ * @author nigelgray
+ *
+ */
+public class VolatilitySurfaceModel implements Model {
+
+	private final VolatilitySurface volatilitySurface;
+
+	private final PricingContextCache pricingContexts;
+
+	public VolatilitySurfaceModel(VolatilitySurface volatilitySurface) {
+		this.volatilitySurface = volatilitySurface;
+		this.pricingContexts = new PricingContextCache();
+	}
+
+	public VolatilitySurface getVolatilitySurface() {
+		return volatilitySurface;
+	}
+
+	/**
+	 * Value the option, taking its volatility from the surface at the offset of its strike from the
+	 * underlying price, which stands in for the at-the-money strike
+	 */
+	@Override
+	public Risk calculateRisk(FinancialInstrument instrument, MarketDataCollection marketData, LocalDate valueDate) throws ModelException {
+		if(instrument == null) {
+			throw new ModelException("VolatilitySurfaceModel::calculateRisk called with null FinancialInstrument");
+		}
+
+		if(marketData == null) {
+			throw new ModelException("VolatilitySurfaceModel::calculateRisk called with null MarketData");
+		}
+
+		if (!(instrument instanceof EuropeanOption) || ((EuropeanOption)instrument).getExerciseStyle() == ExerciseStyle.AMERICAN) {
+			throw new ModelException("VolatilitySurfaceModel can't value security " + instrument.getIdentifier() +
+										" of type " + instrument.getClass());
+		}
+
+		EuropeanOption option = (EuropeanOption)instrument;
+		try {
+			EuropeanOptionPricingContext context = getPricingContext(option, valueDate);
+			MarketData spotMarketData = marketData.getMarketData(option.getUnderlying());
+			if (spotMarketData.getType() != Type.PRICE) {
+				throw new ModelException("Expected price, got volatility");
+			}
+			double spot = spotMarketData.getMid();
+			double daysToExpiry = context.getTimeToExpiry() * 365.0;
+			double strikeOffset = context.getStrike() - spot;
+			if (!volatilitySurface.isValidPoint(daysToExpiry, strikeOffset)) {
+				throw new ModelException("VolatilitySurfaceModel: " + option.getIdentifier() + " is off volatility surface " +
+											volatilitySurface.getUniqueId() + " at daysToExpiry=" + daysToExpiry + ", strikeOffset=" + strikeOffset);
+			}
+			double volatility = volatilitySurface.getImpliedVolatility(daysToExpiry, strikeOffset);
+
+			BlackScholesResult result = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, new BlackScholesResult());
+			return new Risk(result.getPrice(), result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+					result.getVanna(), result.getVolga(), result.getCharm(), result.getSpeed(), volatility, result.getPrice(), spot);
+		} catch (MarketDataException | MissingReferenceDataException | VolatilitySurfaceException e) {
+			throw new ModelException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Read the volatility of every option in the batch from the surface, at its days to expiry and the offset of
+	 * its strike from atmStrike, then calculate its price and greeks. Options off the surface are left with NaN
+	 * volatilities, prices and greeks.
+	 * @param batch
+	 * @param atmStrike
+	 * @return the number of options off the surface
+	 * @throws ModelException
+	 */
+	public int calcOptionPricesAndGreeks(OptionBatch batch, double atmStrike) throws ModelException {
+		double[] strike = batch.getStrike();
+		double[] strikeOffsets = new double[batch.size()];
+		for (int i = 0; i < strikeOffsets.length; ++i) {
+			strikeOffsets[i] = strike[i] - atmStrike;
+		}
+		return calcOptionPricesAndGreeks(batch, strikeOffsets);
+	}
+
+	/**
+	 * Read the volatility of every option in the batch from the surface, at its days to expiry and the offset of
+	 * its strike from its underlying price, which stands in for the at-the-money strike, then calculate its price
+	 * and greeks. Options off the surface are left with NaN volatilities, prices and greeks.
+	 * @param batch
+	 * @return the number of options off the surface
+	 * @throws ModelException
+	 */
+	public int calcOptionPricesAndGreeks(OptionBatch batch) throws ModelException {
+		double[] spot = batch.getSpot();
+		double[] strike = batch.getStrike();
+		double[] strikeOffsets = new double[batch.size()];
+		for (int i = 0; i < strikeOffsets.length; ++i) {
+			strikeOffsets[i] = strike[i] - spot[i];
+		}
+		return calcOptionPricesAndGreeks(batch, strikeOffsets);
+	}
+
+	private int calcOptionPricesAndGreeks(OptionBatch batch, double[] strikeOffsets) throws ModelException {
+		double[] timeToExpiry = batch.getTimeToExpiry();
+		double[] daysToExpiry = new double[batch.size()];
+		for (int i = 0; i < daysToExpiry.length; ++i) {
+			daysToExpiry[i] = timeToExpiry[i] * 365.0;
+		}
+		try {
+			int invalidPoints = volatilitySurface.getImpliedVolatilities(daysToExpiry, strikeOffsets, batch.getVolatility());
+			BlackScholesBatchModel.calcOptionPricesAndGreeks(batch, true);
+			return invalidPoints;
+		} catch (VolatilitySurfaceException e) {
+			throw new ModelException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Return the pricing context of the option for the value date, compiling it if it isn't
+	 * cached or the cached context is stale. An option with no reference data of its own takes
+	 * the rates of another option on its underlying, preferring one with the same expiry, or zero
+	 * rates if there is none.
+	 * @param option
+	 * @param valueDate
+	 * @return
+	 * @throws MissingReferenceDataException
+	 */
+	public EuropeanOptionPricingContext getPricingContext(EuropeanOption option, LocalDate valueDate) throws MissingReferenceDataException {
+		return pricingContexts.getPricingContext(option, valueDate, (toCompile, date) -> {
+			if (OptionReferenceDataMap.findOptionReferenceData(toCompile.getIdentifier()) != null) {
+				return EuropeanOptionPricingContext.compile(toCompile, date);
+			}
+			OptionReferenceData rates = findRates(toCompile);
+			return rates != null ?
+					EuropeanOptionPricingContext.compile(toCompile, date, rates.getRiskFreeRate(), rates.getDividendYield()) :
+					EuropeanOptionPricingContext.compile(toCompile, date, 0.0, 0.0);
+		});
+	}
+
+	@Override
+	public void release(FinancialInstrument instrument) {
+		pricingContexts.remove(instrument);
+	}
+
+	// the reference data of an option on the same underlying, preferring the same expiry, or null if there is none
+	private static OptionReferenceData findRates(EuropeanOption option) {
+		OptionReferenceData result = null;
+		for (OptionReferenceData refData : OptionReferenceDataMap.getOptionReferenceData(option.getUnderlying())) {
+			if (refData.getExpiryDate().equals(option.getExpiryDate())) {
+				return refData;
+			}
+			if (result == null) {
+				result = refData;
+			}
+		}
+		return result;
+	}
+}
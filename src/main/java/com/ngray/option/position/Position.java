@@ -4,6 +4,8 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import com.ngray.option.Log;
 import com.ngray.option.financialinstrument.EuropeanOption;
@@ -41,6 +43,12 @@ public class Position {
 	
 	private LocalTime timestamp;
 	
+	// supplies the risk on a single contract when the position's risk is stale, null otherwise
+	private final AtomicReference<Supplier<Risk>> staleRisk = new AtomicReference<>();
+	
+	// true from the position risk being marked stale until it is next updated
+	private volatile boolean riskStale;
+	
 	/**
 	 * Construct a position object from the supplied IGPosition
 	 * @param igPosition
@@ -151,6 +159,7 @@ public class Position {
 	public void updatePositionRisk(Risk riskOnPositionOfSizeOne) {
 		Log.getLogger().info("Position: " + getId() + " updating risk...");
 		positionRisk = riskOnPositionOfSizeOne.multiply(getPositionSize());
+		riskStale = false;
 		Log.getLogger().debug(positionRisk);
 		setTimestamp(LocalTime.now());
 	}
@@ -272,12 +281,46 @@ public class Position {
 	}
 
 	/**
-	 * Get the risk for this position
+	 * Get the risk for this position, first updating it if it is stale. The supplier of stale risk may instead
+	 * request the risk and return null, in which case the last risk is returned, and the position is updated
+	 * when the risk arrives.
 	 * @return
 	 */
 	public Risk getPositionRisk() {
+		Supplier<Risk> riskOnOneContract = staleRisk.getAndSet(null);
+		if (riskOnOneContract != null) {
+			Risk risk = riskOnOneContract.get();
+			if (risk != null) {
+				updatePositionRisk(risk);
+			}
+		}
 		return positionRisk;
 	}
+	
+	/**
+	 * Mark the position risk stale, to be updated from the risk on a single contract supplied when it is next read
+	 * @param riskOnOneContract
+	 */
+	public void markRiskStale(Supplier<Risk> riskOnOneContract) {
+		riskStale = true;
+		staleRisk.set(riskOnOneContract);
+	}
+	
+	/**
+	 * Get the last risk for this position, without updating it if it is stale
+	 * @return
+	 */
+	public Risk getLastPositionRisk() {
+		return positionRisk;
+	}
+	
+	/**
+	 * Return true if the position risk has been marked stale and not updated since
+	 * @return
+	 */
+	public boolean isRiskStale() {
+		return riskStale;
+	}
 
 	public IGPosition getIgPosition() {
 		return igPosition;
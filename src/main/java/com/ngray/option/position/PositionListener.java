@@ -11,4 +11,13 @@ public interface PositionListener {
 	public void onDeletePosition(Position position);
 	
 	public void onUpdatePosition(Position position);
+	
+	/**
+	 * Called in place of onPositionRiskUpdate when the position's risk becomes stale in a lazy RiskService.
+	 * Reading the risk with getPositionRisk requests it, and getLastPositionRisk gives the last value without
+	 * doing so. By default stale risk is ignored.
+	 * @param position
+	 */
+	public default void onPositionRiskStale(Position position) {
+	}
 }
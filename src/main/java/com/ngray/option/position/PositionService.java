@@ -4,10 +4,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.ngray.option.Log;
@@ -15,6 +23,7 @@ import com.ngray.option.financialinstrument.EuropeanOption;
 import com.ngray.option.financialinstrument.FinancialInstrument;
 import com.ngray.option.ig.Session;
 import com.ngray.option.ig.SessionException;
+import com.ngray.option.ig.position.IGPosition;
 import com.ngray.option.ig.position.IGPositionList;
 import com.ngray.option.ig.position.IGPositionUpdate;
 import com.ngray.option.ig.refdata.MissingReferenceDataException;
@@ -22,6 +31,7 @@ import com.ngray.option.marketdata.MarketData;
 import com.ngray.option.marketdata.MarketDataListener;
 import com.ngray.option.marketdata.MarketDataService;
 import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskBatchListener;
 import com.ngray.option.risk.RiskListener;
 import com.ngray.option.risk.RiskService;
 import com.ngray.option.service.ServiceListener;
@@ -42,6 +52,9 @@ public class PositionService {
 	
 	private final Map<FinancialInstrument, List<PositionListener>> listenersByUnderlying = new HashMap<>();
 	
+	// listeners to every position, notified before the listeners to each position
+	private final List<PositionListener> allPositionListeners = new ArrayList<>();
+	
 	private final Session session;
 	
 	private final RiskService riskService;
@@ -53,6 +66,11 @@ public class PositionService {
 	
 	private final Map<Position, RiskListener> riskListeners;
 	
+	private final Map<Position, RiskBatchListener> riskBatchListeners;
+	
+	// whether positions subscribe to risk in batches, collected over the RiskService's batch window
+	private volatile boolean batchRisk;
+	
 	// a position may have more than one market data listener if its underlying is a derivative
 	// need a separate lock here as we need to synchronize non-atomic operations
 	private final Object marketDataListenerLock = new Object();
@@ -60,6 +78,12 @@ public class PositionService {
 
 	private PositionRiskView positionRiskView;
 	
+	// the number of threads building positions and their initial risk in initialize
+	private volatile int initializationThreads;
+	
+	// the time taken by each phase of initialize, in milliseconds
+	private final Map<String, Long> initializationTimings;
+	
 	public PositionService(String name, Session session, RiskService riskService, MarketDataService marketDataService, PositionUpdateService positionUpdateService) {
 		Log.getLogger().info("Creating PositionService " + name);
 		this.name = name;
@@ -69,7 +93,11 @@ public class PositionService {
 		this.marketDataService = marketDataService;
 		this.positionUpdateService = positionUpdateService;
 		this.riskListeners = new ConcurrentHashMap<>();
+		this.riskBatchListeners = new ConcurrentHashMap<>();
+		this.batchRisk = false;
 		this.marketDataListeners = new HashMap<>();
+		this.initializationThreads = Runtime.getRuntime().availableProcessors();
+		this.initializationTimings = new LinkedHashMap<>();
 	}
 	
 	public String getName() {
@@ -77,21 +105,140 @@ public class PositionService {
 		
 	}
 	
+	/**
+	 * Load the account's positions, building them and their initial risk in parallel, then subscribe them
+	 * all to market data and risk. The time taken by each phase is logged, and available from
+	 * getInitializationTimings.
+	 * @throws SessionException
+	 */
 	public void initialize() throws SessionException {
 		Log.getLogger().info("Initializing PositionService " + getName());
+		long start = System.nanoTime();
 		IGPositionList positionList = session.getPositions();
-		positionList.getPositions().forEach(igPos -> {
-			try {
-				Log.getLogger().info("PositionService " + getName() + ": adding position " + igPos.getPositionDetail().getDealId());
-				positions.put(igPos.getPositionDetail().getDealId(), new Position(igPos));
-			} catch (MissingReferenceDataException e) {
-				Log.getLogger().error(e.getMessage(), e);
-			}
-		} );
+		long fetched = System.nanoTime();
+		
+		List<Position> newPositions = createPositions(positionList.getPositions());
+		synchronized(positionsLock) {
+			newPositions.forEach(position -> positions.put(position.getId(), position));
+		}
+		long built = System.nanoTime();
 		
 		subscribeAllToMarketDataService(marketDataService);
 		subscribeAllToRiskService(riskService);
 		subscribeToPositionUpdateService(positionUpdateService);
+		long subscribed = System.nanoTime();
+		
+		synchronized(initializationTimings) {
+			initializationTimings.clear();
+			initializationTimings.put("Fetch", TimeUnit.NANOSECONDS.toMillis(fetched - start));
+			initializationTimings.put("Build", TimeUnit.NANOSECONDS.toMillis(built - fetched));
+			initializationTimings.put("Subscribe", TimeUnit.NANOSECONDS.toMillis(subscribed - built));
+			initializationTimings.put("Total", TimeUnit.NANOSECONDS.toMillis(subscribed - start));
+			Log.getLogger().info("PositionService " + getName() + ": initialized " + newPositions.size() + " positions on " +
+									initializationThreads + " threads, timings (ms) " + initializationTimings);
+		}
+	}
+	
+	/**
+	 * Build positions from the IG positions, with their initial PnL and risk, in parallel on a pool of
+	 * initializationThreads threads. Positions lacking reference data are logged and left out.
+	 * @param igPositions
+	 * @return the positions built, in the order of igPositions
+	 */
+	protected List<Position> createPositions(List<IGPosition> igPositions) {
+		List<Position> result = new ArrayList<>();
+		int threads = Math.min(initializationThreads, igPositions.size());
+		if (threads <= 1) {
+			igPositions.forEach(igPos -> {
+				Position position = createPosition(igPos);
+				if (position != null) {
+					result.add(position);
+				}
+			});
+			return result;
+		}
+		
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, getName() + "-init-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Callable<Position>> tasks = new ArrayList<>();
+			igPositions.forEach(igPos -> tasks.add(() -> createPosition(igPos)));
+			for (Future<Position> future : executor.invokeAll(tasks)) {
+				try {
+					Position position = future.get();
+					if (position != null) {
+						result.add(position);
+					}
+				} catch (ExecutionException e) {
+					Log.getLogger().error("PositionService " + getName() + ": failed to build position", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Log.getLogger().error("PositionService " + getName() + ": interrupted building positions", e);
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+	
+	private Position createPosition(IGPosition igPos) {
+		try {
+			Log.getLogger().info("PositionService " + getName() + ": adding position " + igPos.getPositionDetail().getDealId());
+			return new Position(igPos);
+		} catch (MissingReferenceDataException e) {
+			Log.getLogger().error(e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Set whether positions subscribed from now on take their risk in batches, collected over the RiskService's
+	 * batch window, so a position whose instrument ticks many times within the window is updated once, with its
+	 * latest risk. Batched risk is computed as it changes even in a lazy RiskService. Defaults to false.
+	 * @param batchRisk
+	 */
+	public void setBatchRisk(boolean batchRisk) {
+		this.batchRisk = batchRisk;
+	}
+	
+	/**
+	 * Return true if positions subscribe to risk in batches
+	 * @return
+	 */
+	public boolean isBatchRisk() {
+		return batchRisk;
+	}
+	
+	/**
+	 * Set the number of threads building positions and their initial risk in initialize - defaults to
+	 * the number of processors
+	 * @param initializationThreads
+	 */
+	public void setInitializationThreads(int initializationThreads) {
+		this.initializationThreads = Math.max(1, initializationThreads);
+	}
+	
+	/**
+	 * Return the number of threads building positions and their initial risk in initialize
+	 * @return
+	 */
+	public int getInitializationThreads() {
+		return initializationThreads;
+	}
+	
+	/**
+	 * Return the time taken by each phase of the last initialize, in milliseconds, keyed by phase
+	 * @return
+	 */
+	public Map<String, Long> getInitializationTimings() {
+		synchronized(initializationTimings) {
+			return new LinkedHashMap<>(initializationTimings);
+		}
 	}
 
 	public List<Position> getPositions() {
@@ -206,6 +353,7 @@ public class PositionService {
 				List<PositionListener> positionListeners = getListeners(newPosition.getUnderlying());
 				// if its a new underlying, by definition there will be no pre-existing listeners
 				if(positionListeners.isEmpty()) {
+					new ArrayList<>(allPositionListeners).forEach(listener -> listener.onOpenPosition(newPosition));
 					if (getView() != null) {
 						getView().onPositionInNewUnderlying(newPosition);
 					}
@@ -226,6 +374,22 @@ public class PositionService {
 		Log.getLogger().info("Position " + position.getId() + ": subcribing to RiskService " + riskService.getName());
 		FinancialInstrument instrument = position.getInstrument();
 		
+		if (batchRisk) {
+			RiskBatchListener riskBatchListener = riskService.addRiskBatchListener(instrument, batch -> {
+				Risk risk = batch.get(instrument);
+				if (risk == null) {
+					Log.getLogger().warn("RiskBatchListener::onRiskBatch called without instrument: " + instrument + ", update ignored");
+					return;
+				}
+				position.updatePositionRisk(risk);
+				notifyRiskUpdateListeners(position);
+			});
+			
+			// keep track so we can unsubscribe when the position closes
+			riskBatchListeners.put(position, riskBatchListener);
+			return;
+		}
+		
 		RiskListener riskListener = 
 			riskService.addRiskListener(instrument, new RiskListener() {
 
@@ -239,7 +403,14 @@ public class PositionService {
 					
 					position.updatePositionRisk(risk);
 					notifyRiskUpdateListeners(position);
-				}	
+				}
+				
+				@Override
+				public void onRiskStale(FinancialInstrument thisInstrument) {
+					// in lazy mode the risk is only computed when something reads the position's risk
+					position.markRiskStale(() -> riskService.requestRisk(instrument));
+					notifyRiskStaleListeners(position);
+				}
 			});
 		
 		// keep track so we can unsubscribe when the position closes
@@ -298,8 +469,14 @@ public class PositionService {
 	
 	protected void unsubscribeFromRiskService(Position deletedPosition, RiskService riskService) {
 		Log.getLogger().info("PositionService " + getName() + ": unsubcribing from risk service for deleted position "  + deletedPosition.getId());
-		riskService.removeRiskListener(deletedPosition.getInstrument(), riskListeners.get(deletedPosition));
-		riskListeners.remove(deletedPosition);
+		RiskListener riskListener = riskListeners.remove(deletedPosition);
+		if (riskListener != null) {
+			riskService.removeRiskListener(deletedPosition.getInstrument(), riskListener);
+		}
+		RiskBatchListener riskBatchListener = riskBatchListeners.remove(deletedPosition);
+		if (riskBatchListener != null) {
+			riskService.removeRiskBatchListener(deletedPosition.getInstrument(), riskBatchListener);
+		}
 	}
 
 	protected void unsubscribeFromMarketDataService(Position deletedPosition, MarketDataService marketDataService) {
@@ -335,6 +512,34 @@ public class PositionService {
 			}});	
 	}
 
+	/**
+	 * Add a listener to every position, including positions opened later
+	 * @param listener
+	 * @return
+	 */
+	public PositionListener addListener(PositionListener listener) {
+		Log.getLogger().info("PositionService " + getName() + ": adding subscription for all positions");
+		if (listener == null) return null;
+		
+		synchronized(listenerLock) {
+			allPositionListeners.add(listener);
+		}
+		return listener;
+	}
+	
+	/**
+	 * Remove a listener to every position
+	 * @param listener
+	 */
+	public void removeListener(PositionListener listener) {
+		Log.getLogger().info("PositionService " + getName() + ": removing subscription for all positions");
+		if (listener == null) return;
+		
+		synchronized(listenerLock) {
+			allPositionListeners.remove(listener);
+		}
+	}
+	
 	public PositionListener addListener(Position position, PositionListener listener) {
 		Log.getLogger().info("PositionService " + getName() + ": adding subscription for " + position.getId());
 		if (position == null || listener == null) return null;
@@ -389,18 +594,23 @@ public class PositionService {
 		}
 	}
 	
-	protected void notifyPnLUpdateListeners(Position position) {
-		Log.getLogger().info("PositionService " + getName() + ": notifying PnL subscriptions to " + position);
-		if (position == null) return;
-		
-		List<PositionListener> listenersCopy = null;
+	// the listeners to every position followed by the listeners to this position
+	private List<PositionListener> getListenersCopy(Position position) {
 		synchronized(listenerLock) {
+			List<PositionListener> listenersCopy = new ArrayList<>(allPositionListeners);
 			if (listeners.containsKey(position.getId())) {
-				listenersCopy = new ArrayList<>(listeners.get(position.getId()));
+				listenersCopy.addAll(listeners.get(position.getId()));
 			}
+			return listenersCopy;
 		}
+	}
+	
+	protected void notifyPnLUpdateListeners(Position position) {
+		Log.getLogger().info("PositionService " + getName() + ": notifying PnL subscriptions to " + position);
+		if (position == null) return;
 		
-		if (listenersCopy != null) {
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
 			listenersCopy.forEach(listener -> listener.onPositionPnLUpdate(position));
 		}
 	}
@@ -409,15 +619,19 @@ public class PositionService {
 		Log.getLogger().info("PositionService " + getName() + ": notifying risk subscriptions to " + position);
 		if (position == null) return;
 		
-		List<PositionListener> listenersCopy = null;
-		synchronized(listenerLock) {
-			if (listeners.containsKey(position.getId())) {
-				listenersCopy = new ArrayList<>(listeners.get(position.getId()));
-			}
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
+			listenersCopy.forEach(listener -> listener.onPositionRiskUpdate(position));
 		}
+	}
+
+	protected void notifyRiskStaleListeners(Position position) {
+		Log.getLogger().info("PositionService " + getName() + ": notifying risk subscriptions to " + position + " of stale risk");
+		if (position == null) return;
 		
-		if (listenersCopy != null) {
-			listenersCopy.forEach(listener -> listener.onPositionRiskUpdate(position));
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
+			listenersCopy.forEach(listener -> listener.onPositionRiskStale(position));
 		}
 	}
 
@@ -425,14 +639,8 @@ public class PositionService {
 		Log.getLogger().info("PositionService " + getName() + ": notifying update position subscriptions to " + position);
 		if (position == null) return;
 		
-		List<PositionListener> listenersCopy = null;
-		synchronized(listenerLock) {
-			if (listeners.containsKey(position.getId())) {
-				listenersCopy = new ArrayList<>(listeners.get(position.getId()));
-			}
-		}
-		
-		if (listenersCopy != null) {
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
 			listenersCopy.forEach(listener -> listener.onUpdatePosition(position));
 		}	
 	}
@@ -441,14 +649,8 @@ public class PositionService {
 		Log.getLogger().info("PositionService " + getName() + ": notifying open position subscriptions to " + position);
 		if (position == null) return;
 		
-		List<PositionListener> listenersCopy = null;
-		synchronized(listenerLock) {
-			if (listeners.containsKey(position.getId())) {
-				listenersCopy = new ArrayList<>(listeners.get(position.getId()));
-			}
-		}
-		
-		if (listenersCopy != null) {
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
 			listenersCopy.forEach(listener -> listener.onOpenPosition(position));
 		}
 	}
@@ -457,14 +659,8 @@ public class PositionService {
 		Log.getLogger().info("PositionService " + getName() + ": notifying delete position subscriptions to " + position);
 		if (position == null) return;
 		
-		List<PositionListener> listenersCopy = null;
-		synchronized(listenerLock) {
-			if (listeners.containsKey(position.getId())) {
-				listenersCopy = new ArrayList<>(listeners.get(position.getId()));
-			}
-		}
-		
-		if (listenersCopy != null) {
+		List<PositionListener> listenersCopy = getListenersCopy(position);
+		if (!listenersCopy.isEmpty()) {
 			listenersCopy.forEach(listener -> listener.onDeletePosition(position));
 		}
 	}
@@ -473,6 +669,7 @@ public class PositionService {
 		Log.getLogger().info("PositionService " + getName() + " shutdown");
 		synchronized(listenerLock) {
 			listeners.clear();
+			allPositionListeners.clear();
 		}
 	}
 
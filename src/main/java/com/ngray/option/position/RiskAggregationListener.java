@@ -0,0 +1,25 @@
+package com.ngray.option.position;
+
+import com.ngray.option.position.RiskAggregationService.Totals;
+
+/**
+ * Listens to the totals of a RiskAggregationService, which are passed to it after each position event
+ * for every level of aggregation the position contributes to. Listeners are called outside the service's lock,
+ * so the totals of concurrent events may arrive out of order - a listener needing the latest totals reads them
+ * with getTotals.
+ * @author nigelgray
+ *
+ */
+public interface RiskAggregationListener {
+
+	/**
+	 * Called with the totals over the positions with the given account, underlying, expiry and call or put,
+	 * where null means all values of a dimension
+	 * @param account
+	 * @param underlying
+	 * @param expiry
+	 * @param callOrPut
+	 * @param totals
+	 */
+	public void onTotalsUpdate(String account, String underlying, String expiry, String callOrPut, Totals totals);
+}
@@ -0,0 +1,492 @@
+package com.ngray.option.position;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Maintains running totals of PnL and risk over positions by account, underlying, expiry month and
+ * call or put, fed by the events of one or more PositionServices. Each position contributes to the totals
+ * of every combination of its own values and "all" in each dimension, so totals at any level of aggregation
+ * are a single lookup. When a position is updated only the difference between its new and previous
+ * contribution is applied, so an update costs the same however many positions are held. PnL and risk
+ * which are not yet known contribute zero. Positions whose risk is stale in a lazy RiskService keep
+ * contributing their last risk, without it being computed, and are counted in the totals as stale.
+ * RiskAggregationListeners are passed the totals each position event changes, once the lock is released.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class RiskAggregationService {
+
+	public enum Dimension {
+		ACCOUNT,
+		UNDERLYING,
+		EXPIRY,
+		CALL_PUT
+	}
+
+	// the value of the expiry and call/put dimensions for positions in instruments other than options
+	public static final String NONE = "None";
+
+	private static final int DIMENSIONS = Dimension.values().length;
+	private static final int CELLS_PER_POSITION = 1 << DIMENSIONS;
+
+	private static final int COUNT = 0;
+	private static final int STALE = 1;
+	private static final int PNL = 2;
+	private static final int DELTA = 3;
+	private static final int GAMMA = 4;
+	private static final int VEGA = 5;
+	private static final int THETA = 6;
+	private static final int RHO = 7;
+	private static final int VALUES = 8;
+
+	/**
+	 * Totals of PnL and risk over the positions at a level of aggregation
+	 */
+	public static class Totals {
+		private final long positionCount;
+		private final long staleCount;
+		private final double pnl;
+		private final double delta;
+		private final double gamma;
+		private final double vega;
+		private final double theta;
+		private final double rho;
+
+		private Totals(double[] values) {
+			this.positionCount = Math.round(values[COUNT]);
+			this.staleCount = Math.round(values[STALE]);
+			this.pnl = values[PNL];
+			this.delta = values[DELTA];
+			this.gamma = values[GAMMA];
+			this.vega = values[VEGA];
+			this.theta = values[THETA];
+			this.rho = values[RHO];
+		}
+
+		public long getPositionCount() {
+			return positionCount;
+		}
+
+		/**
+		 * Return the number of positions contributing their last risk while it is stale
+		 * @return
+		 */
+		public long getStaleCount() {
+			return staleCount;
+		}
+
+		public double getPnL() {
+			return pnl;
+		}
+
+		public double getDelta() {
+			return delta;
+		}
+
+		public double getGamma() {
+			return gamma;
+		}
+
+		public double getVega() {
+			return vega;
+		}
+
+		public double getTheta() {
+			return theta;
+		}
+
+		public double getRho() {
+			return rho;
+		}
+
+		@Override
+		public String toString() {
+			return "[Positions: " + positionCount + ", Stale: " + staleCount + ", PnL: " + pnl + ", Delta: " + delta + ", Gamma: " + gamma +
+					", Vega: " + vega + ", Theta: " + theta + ", Rho: " + rho + "]";
+		}
+	}
+
+	// the cells a position contributes to, and what it contributed to them
+	private static class Contribution {
+		private final List<List<String>> cells;
+		private final double[] values;
+
+		Contribution(List<List<String>> cells, double[] values) {
+			this.cells = cells;
+			this.values = values;
+		}
+	}
+
+	private final String name;
+
+	private final Object aggregationLock = new Object();
+
+	// totals keyed by account, underlying, expiry and call/put, with null meaning all
+	private final Map<List<String>, double[]> cells;
+
+	// contributions keyed by account and position id
+	private final Map<List<String>, Contribution> contributions;
+
+	private final Map<String, PositionService> positionServices;
+	private final Map<String, PositionListener> positionListeners;
+
+	private final List<RiskAggregationListener> listeners;
+
+	private long updates;
+
+	public RiskAggregationService(String name) {
+		Log.getLogger().info("Constructing RiskAggregationService " + name);
+		this.name = name;
+		this.cells = new HashMap<>();
+		this.contributions = new HashMap<>();
+		this.positionServices = new HashMap<>();
+		this.positionListeners = new HashMap<>();
+		this.listeners = new CopyOnWriteArrayList<>();
+		this.updates = 0;
+	}
+
+	/**
+	 * Return the name of this service
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Add a listener to the totals changed by each position event
+	 * @param listener
+	 */
+	public void addListener(RiskAggregationListener listener) {
+		if (listener != null) {
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Remove a listener to the totals
+	 * @param listener
+	 */
+	public void removeListener(RiskAggregationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Aggregate the positions of the PositionService under the given account, starting with the positions
+	 * it already holds
+	 * @param account
+	 * @param positionService
+	 */
+	public void subscribe(String account, PositionService positionService) {
+		Log.getLogger().info("RiskAggregationService " + getName() + ": subscribing to PositionService " + positionService.getName() +
+								" for account " + account);
+		if (account == null || positionService == null) return;
+
+		PositionListener listener = new PositionListener() {
+
+			@Override
+			public void onPositionRiskUpdate(Position position) {
+				updatePosition(account, position);
+			}
+
+			@Override
+			public void onPositionPnLUpdate(Position position) {
+				updatePosition(account, position);
+			}
+
+			@Override
+			public void onOpenPosition(Position position) {
+				updatePosition(account, position);
+			}
+
+			@Override
+			public void onDeletePosition(Position position) {
+				removePosition(account, position);
+			}
+
+			@Override
+			public void onUpdatePosition(Position position) {
+				updatePosition(account, position);
+			}
+
+			@Override
+			public void onPositionRiskStale(Position position) {
+				updatePosition(account, position);
+			}
+		};
+
+		synchronized(aggregationLock) {
+			if (positionListeners.containsKey(account)) {
+				Log.getLogger().warn("RiskAggregationService " + getName() + ": already subscribed for account " + account);
+				return;
+			}
+			positionServices.put(account, positionService);
+			positionListeners.put(account, listener);
+		}
+		positionService.addListener(listener);
+		positionService.getPositions().forEach(position -> updatePosition(account, position));
+	}
+
+	/**
+	 * Stop aggregating the positions of the account, and remove them from the totals
+	 * @param account
+	 */
+	public void unsubscribe(String account) {
+		Log.getLogger().info("RiskAggregationService " + getName() + ": unsubscribing account " + account);
+		PositionService positionService;
+		PositionListener listener;
+		synchronized(aggregationLock) {
+			positionService = positionServices.remove(account);
+			listener = positionListeners.remove(account);
+		}
+		if (positionService != null) {
+			positionService.removeListener(listener);
+			positionService.getPositions().forEach(position -> removePosition(account, position));
+		}
+	}
+
+	/**
+	 * Apply the difference between the position's current PnL and risk and its last contribution to the totals
+	 * @param account
+	 * @param position
+	 */
+	public void updatePosition(String account, Position position) {
+		if (account == null || position == null) return;
+
+		List<String> positionKey = Arrays.asList(account, position.getId());
+		Map<List<String>, Totals> updatedTotals = listeners.isEmpty() ? null : new LinkedHashMap<>();
+		synchronized(aggregationLock) {
+			++updates;
+			// read under the lock, so concurrent updates of a position can't leave its older values as its contribution
+			double[] values = getValues(position);
+			Contribution contribution = contributions.get(positionKey);
+			if (contribution == null) {
+				contribution = new Contribution(getCells(account, position), new double[VALUES]);
+				contributions.put(positionKey, contribution);
+				values[COUNT] = 1.0;
+			} else {
+				values[COUNT] = 0.0;
+			}
+
+			double[] difference = new double[VALUES];
+			difference[COUNT] = values[COUNT];
+			for (int i = STALE; i < VALUES; ++i) {
+				difference[i] = values[i] - contribution.values[i];
+				contribution.values[i] = values[i];
+			}
+			add(contribution.cells, difference, updatedTotals);
+		}
+		notifyListeners(updatedTotals);
+	}
+
+	/**
+	 * Remove the position's contribution from the totals
+	 * @param account
+	 * @param position
+	 */
+	public void removePosition(String account, Position position) {
+		if (account == null || position == null) return;
+
+		Map<List<String>, Totals> updatedTotals = listeners.isEmpty() ? null : new LinkedHashMap<>();
+		synchronized(aggregationLock) {
+			++updates;
+			Contribution contribution = contributions.remove(Arrays.asList(account, position.getId()));
+			if (contribution != null) {
+				double[] difference = new double[VALUES];
+				difference[COUNT] = -1.0;
+				for (int i = STALE; i < VALUES; ++i) {
+					difference[i] = -contribution.values[i];
+				}
+				add(contribution.cells, difference, updatedTotals);
+			}
+		}
+		notifyListeners(updatedTotals);
+	}
+
+	// must be called holding aggregationLock - the new totals of each cell are put in updatedTotals, unless it is null
+	private void add(List<List<String>> positionCells, double[] difference, Map<List<String>, Totals> updatedTotals) {
+		for (List<String> cell : positionCells) {
+			double[] totals = cells.computeIfAbsent(cell, key -> new double[VALUES]);
+			for (int i = 0; i < VALUES; ++i) {
+				totals[i] += difference[i];
+			}
+			// drop empty cells, and the rounding error left in them
+			if (totals[COUNT] < 0.5) {
+				cells.remove(cell);
+				totals = new double[VALUES];
+			}
+			if (updatedTotals != null) {
+				updatedTotals.put(cell, new Totals(totals));
+			}
+		}
+	}
+
+	private void notifyListeners(Map<List<String>, Totals> updatedTotals) {
+		if (updatedTotals == null) return;
+
+		updatedTotals.forEach((cell, totals) -> listeners.forEach(
+				listener -> listener.onTotalsUpdate(cell.get(0), cell.get(1), cell.get(2), cell.get(3), totals)));
+	}
+
+	private static double[] getValues(Position position) {
+		double[] values = new double[VALUES];
+		Risk risk = position.getLastPositionRisk();
+		values[STALE] = position.isRiskStale() ? 1.0 : 0.0;
+		values[PNL] = orZero(position.getPositionPnL());
+		if (risk != null) {
+			values[DELTA] = orZero(risk.getDelta());
+			values[GAMMA] = orZero(risk.getGamma());
+			values[VEGA] = orZero(risk.getVega());
+			values[THETA] = orZero(risk.getTheta());
+			values[RHO] = orZero(risk.getRho());
+		}
+		return values;
+	}
+
+	private static double orZero(double value) {
+		return Double.isNaN(value) ? 0.0 : value;
+	}
+
+	// every combination of the position's value and all in each dimension
+	private static List<List<String>> getCells(String account, Position position) {
+		String[] values = { account, getUnderlying(position), getExpiry(position), getCallOrPut(position) };
+		List<List<String>> positionCells = new ArrayList<>(CELLS_PER_POSITION);
+		for (int mask = 0; mask < CELLS_PER_POSITION; ++mask) {
+			String[] cell = new String[DIMENSIONS];
+			for (int dimension = 0; dimension < DIMENSIONS; ++dimension) {
+				cell[dimension] = (mask & (1 << dimension)) != 0 ? values[dimension] : null;
+			}
+			positionCells.add(Arrays.asList(cell));
+		}
+		return positionCells;
+	}
+
+	private static String getUnderlying(Position position) {
+		FinancialInstrument underlying = position.getUnderlying();
+		return underlying != null ? underlying.getIdentifier() : position.getInstrument().getIdentifier();
+	}
+
+	/**
+	 * Return the expiry bucket of the position - the month of expiry of an option, NONE otherwise
+	 * @param position
+	 * @return
+	 */
+	public static String getExpiry(Position position) {
+		if (position.getInstrument() instanceof EuropeanOption) {
+			return YearMonth.from(((EuropeanOption)position.getInstrument()).getExpiryDate()).toString();
+		}
+		return NONE;
+	}
+
+	/**
+	 * Return CALL or PUT for an option position, NONE otherwise
+	 * @param position
+	 * @return
+	 */
+	public static String getCallOrPut(Position position) {
+		if (position.getInstrument() instanceof EuropeanOption) {
+			return ((EuropeanOption)position.getInstrument()).getType().name();
+		}
+		return NONE;
+	}
+
+	/**
+	 * Return the totals over all positions
+	 * @return
+	 */
+	public Totals getTotals() {
+		return getTotals(null, null, null, null);
+	}
+
+	/**
+	 * Return the totals over the positions with the given account, underlying identifier, expiry month
+	 * (as yyyy-MM) and CALL or PUT, where null means all values of a dimension
+	 * @param account
+	 * @param underlying
+	 * @param expiry
+	 * @param callOrPut
+	 * @return
+	 */
+	public Totals getTotals(String account, String underlying, String expiry, String callOrPut) {
+		synchronized(aggregationLock) {
+			double[] totals = cells.get(Arrays.asList(account, underlying, expiry, callOrPut));
+			return new Totals(totals != null ? totals : new double[VALUES]);
+		}
+	}
+
+	/**
+	 * Return the totals for each value of the given dimension, over all values of the others
+	 * @param dimension
+	 * @return
+	 */
+	public Map<String, Totals> getTotals(Dimension dimension) {
+		Map<String, Totals> result = new HashMap<>();
+		synchronized(aggregationLock) {
+			cells.forEach((cell, totals) -> {
+				for (int i = 0; i < DIMENSIONS; ++i) {
+					if ((cell.get(i) != null) != (i == dimension.ordinal())) {
+						return;
+					}
+				}
+				result.put(cell.get(dimension.ordinal()), new Totals(totals));
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Return the number of positions aggregated
+	 * @return
+	 */
+	public int getPositionCount() {
+		synchronized(aggregationLock) {
+			return contributions.size();
+		}
+	}
+
+	/**
+	 * Return the number of position events applied
+	 * @return
+	 */
+	public long getUpdateCount() {
+		synchronized(aggregationLock) {
+			return updates;
+		}
+	}
+
+	/**
+	 * Shutdown the service
+	 */
+	public void shutdown() {
+		Log.getLogger().info("RiskAggregationService " + getName() + " shutdown");
+		Map<String, PositionService> services;
+		synchronized(aggregationLock) {
+			services = new HashMap<>(positionServices);
+		}
+		services.keySet().forEach(this::unsubscribe);
+		synchronized(aggregationLock) {
+			cells.clear();
+			contributions.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized(aggregationLock) {
+			return "[Positions: " + contributions.size() + ", Cells: " + cells.size() + ", Updates: " + updates + "]";
+		}
+	}
+}
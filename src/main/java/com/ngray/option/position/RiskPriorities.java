@@ -0,0 +1,299 @@
+package com.ngray.option.position;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.risk.Risk;
+
+/**
+ * Assigns instruments to the urgency bands of a ConflatingExecutor recalculating their risk, by the
+ * materiality of the positions held in them and whether they are shown in the UI. The materiality of a
+ * position is the size of its vega plus the PnL of its gamma over a 1% move in the underlying, both taken
+ * from the position risk, so it is in the currency of the position. An instrument's materiality is the sum
+ * over its positions, and an underlying's also includes the positions in its derivatives, as its updates
+ * trigger their recalculation. Visible instruments, and instruments on visible underlyings, are always in
+ * band 0, and the rest are in the first band whose materiality threshold they reach, or the last band.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class RiskPriorities implements ToIntFunction<FinancialInstrument> {
+
+	// the underlying move over which the PnL of gamma is measured, as a fraction of its price
+	private static final double GAMMA_MOVE = 0.01;
+
+	// what a position contributes to the materiality of its instrument and underlying
+	private static class Contribution {
+		private final FinancialInstrument instrument;
+		private final FinancialInstrument underlying;
+		private double materiality;
+
+		Contribution(FinancialInstrument instrument, FinancialInstrument underlying) {
+			this.instrument = instrument;
+			this.underlying = underlying;
+		}
+	}
+
+	private final String name;
+
+	// the least materiality of each band but the last, most urgent first
+	private final double[] thresholds;
+
+	private final Object priorityLock = new Object();
+
+	private final Map<FinancialInstrument, Double> materiality;
+
+	private final Map<String, Contribution> contributions;
+
+	// the number of views showing each instrument or underlying
+	private final Map<FinancialInstrument, Integer> visible;
+
+	private final Map<PositionService, PositionListener> positionListeners;
+
+	/**
+	 * Create with the given materiality thresholds, in descending order, giving one more band than thresholds
+	 * @param name
+	 * @param materialityThresholds
+	 */
+	public RiskPriorities(String name, double... materialityThresholds) {
+		Log.getLogger().info("Constructing RiskPriorities " + name + " with thresholds " + Arrays.toString(materialityThresholds));
+		this.name = name;
+		this.thresholds = materialityThresholds.clone();
+		this.materiality = new ConcurrentHashMap<>();
+		this.contributions = new HashMap<>();
+		this.visible = new ConcurrentHashMap<>();
+		this.positionListeners = new HashMap<>();
+	}
+
+	/**
+	 * Return the name of this object
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the number of bands
+	 * @return
+	 */
+	public int getBandCount() {
+		return thresholds.length + 1;
+	}
+
+	/**
+	 * Track the materiality of the positions of the PositionService, starting with those it already holds
+	 * @param positionService
+	 */
+	public void subscribe(PositionService positionService) {
+		Log.getLogger().info("RiskPriorities " + getName() + ": subscribing to PositionService " + positionService.getName());
+		PositionListener listener = new PositionListener() {
+
+			@Override
+			public void onPositionRiskUpdate(Position position) {
+				updatePosition(position);
+			}
+
+			@Override
+			public void onPositionPnLUpdate(Position position) {
+			}
+
+			@Override
+			public void onOpenPosition(Position position) {
+				updatePosition(position);
+			}
+
+			@Override
+			public void onDeletePosition(Position position) {
+				removePosition(position);
+			}
+
+			@Override
+			public void onUpdatePosition(Position position) {
+				updatePosition(position);
+			}
+		};
+
+		synchronized(priorityLock) {
+			if (positionListeners.containsKey(positionService)) {
+				return;
+			}
+			positionListeners.put(positionService, listener);
+		}
+		positionService.addListener(listener);
+		positionService.getPositions().forEach(this::updatePosition);
+	}
+
+	/**
+	 * Stop tracking the positions of the PositionService, and drop their materiality
+	 * @param positionService
+	 */
+	public void unsubscribe(PositionService positionService) {
+		Log.getLogger().info("RiskPriorities " + getName() + ": unsubscribing from PositionService " + positionService.getName());
+		PositionListener listener;
+		synchronized(priorityLock) {
+			listener = positionListeners.remove(positionService);
+		}
+		if (listener != null) {
+			positionService.removeListener(listener);
+			positionService.getPositions().forEach(this::removePosition);
+		}
+	}
+
+	/**
+	 * Update the materiality of the position
+	 * @param position
+	 */
+	public void updatePosition(Position position) {
+		if (position == null) return;
+
+		double positionMateriality = getMateriality(position);
+		synchronized(priorityLock) {
+			Contribution contribution = contributions.computeIfAbsent(position.getId(),
+					id -> new Contribution(position.getInstrument(), position.getUnderlying()));
+			add(contribution, positionMateriality - contribution.materiality);
+			contribution.materiality = positionMateriality;
+		}
+	}
+
+	/**
+	 * Remove the materiality of the position
+	 * @param position
+	 */
+	public void removePosition(Position position) {
+		if (position == null) return;
+
+		synchronized(priorityLock) {
+			Contribution contribution = contributions.remove(position.getId());
+			if (contribution != null) {
+				add(contribution, -contribution.materiality);
+			}
+		}
+	}
+
+	// must be called holding priorityLock
+	private void add(Contribution contribution, double difference) {
+		add(contribution.instrument, difference);
+		if (contribution.underlying != null && !contribution.underlying.equals(contribution.instrument)) {
+			add(contribution.underlying, difference);
+		}
+	}
+
+	// must be called holding priorityLock
+	private void add(FinancialInstrument instrument, double difference) {
+		double total = materiality.getOrDefault(instrument, 0.0) + difference;
+		// drop the rounding error left when the last position goes
+		if (total <= 1e-9) {
+			materiality.remove(instrument);
+		} else {
+			materiality.put(instrument, total);
+		}
+	}
+
+	/**
+	 * Return the materiality of a position - the size of its vega plus the PnL of its gamma over a 1% move in
+	 * the underlying, or zero if its risk is not yet known. Stale risk is not computed, as the last is good enough.
+	 * @param position
+	 * @return
+	 */
+	public static double getMateriality(Position position) {
+		Risk risk = position.getLastPositionRisk();
+		if (risk == null) {
+			return 0.0;
+		}
+		double vega = Math.abs(risk.getVega());
+		double move = GAMMA_MOVE * risk.getUnderlyingPrice();
+		double gammaPnL = 0.5 * Math.abs(risk.getGamma()) * move * move;
+		return (Double.isNaN(vega) ? 0.0 : vega) + (Double.isNaN(gammaPnL) ? 0.0 : gammaPnL);
+	}
+
+	/**
+	 * Return the materiality of the positions in the instrument, and in its derivatives if it is an underlying
+	 * @param instrument
+	 * @return
+	 */
+	public double getMateriality(FinancialInstrument instrument) {
+		return materiality.getOrDefault(instrument, 0.0);
+	}
+
+	/**
+	 * Mark the instrument, or all instruments on an underlying, as shown or no longer shown by a view.
+	 * Each view showing an instrument should mark it visible once, and not visible once when it closes.
+	 * @param instrument
+	 * @param isVisible
+	 */
+	public void setVisible(FinancialInstrument instrument, boolean isVisible) {
+		if (instrument == null) return;
+
+		visible.compute(instrument, (key, count) -> {
+			int newCount = (count != null ? count : 0) + (isVisible ? 1 : -1);
+			return newCount > 0 ? newCount : null;
+		});
+	}
+
+	/**
+	 * Return true if the instrument or its underlying is shown by a view
+	 * @param instrument
+	 * @return
+	 */
+	public boolean isVisible(FinancialInstrument instrument) {
+		if (visible.isEmpty()) {
+			return false;
+		}
+		FinancialInstrument underlying = instrument.getUnderlying();
+		return visible.containsKey(instrument) || (underlying != null && visible.containsKey(underlying));
+	}
+
+	/**
+	 * Return the band of the instrument, 0 being the most urgent
+	 * @param instrument
+	 * @return
+	 */
+	public int getBand(FinancialInstrument instrument) {
+		if (isVisible(instrument)) {
+			return 0;
+		}
+		double instrumentMateriality = getMateriality(instrument);
+		for (int band = 0; band < thresholds.length; ++band) {
+			if (instrumentMateriality >= thresholds[band]) {
+				return band;
+			}
+		}
+		return thresholds.length;
+	}
+
+	@Override
+	public int applyAsInt(FinancialInstrument instrument) {
+		return getBand(instrument);
+	}
+
+	/**
+	 * Stop tracking all positions
+	 */
+	public void shutdown() {
+		Log.getLogger().info("RiskPriorities " + getName() + " shutdown");
+		Map<PositionService, PositionListener> listeners;
+		synchronized(priorityLock) {
+			listeners = new HashMap<>(positionListeners);
+		}
+		listeners.keySet().forEach(this::unsubscribe);
+		synchronized(priorityLock) {
+			contributions.clear();
+			materiality.clear();
+		}
+		visible.clear();
+	}
+
+	@Override
+	public String toString() {
+		synchronized(priorityLock) {
+			return "[Name: " + name + ", Positions: " + contributions.size() + ", Instruments: " + materiality.size() +
+					", Visible: " + visible.size() + "]";
+		}
+	}
+}
@@ -0,0 +1,383 @@
+package com.ngray.option.risk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentArray;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
+
+/**
+ * A RiskCache storing the risk fields of each instrument in a flat primitive array, at a dense slot
+ * assigned to the instrument when its risk is first inserted, rather than as Risk objects in a map.
+ * Callers holding an instrument's slot write and read its risk without hashing the instrument or
+ * allocating. Each slot is guarded by a sequence lock: writers make its version odd while they
+ * write, and readers retry until they read the same even version before and after the fields, so
+ * they see a consistent snapshot without locking. Fields are held as the raw bits of doubles in
+ * an AtomicLongArray, whose volatile accesses give the ordering the sequence lock relies on.
+ * Removing the risk of an instrument, or releasing it from the InstrumentRegistry, frees its slot for reuse,
+ * so callers should not write or read a slot after either. Risk inserted by instrument goes in under its id, as
+ * in the base class, and inserting risk by id checks that the slot still belongs to the instrument once it holds
+ * the slot's write lock, so an insert racing the slot being freed never leaves risk in a free slot, nor writes
+ * over the next instrument assigned it.
+ * RiskService publishes into the cache by id, so its risk is written through the slots, but reads of Risk
+ * objects, by RiskService and through it by positions, still build a Risk from the slot - only callers
+ * holding a slot read it without allocating.
+ * The capacity is fixed - instruments beyond it are stored in the map of the base class.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class DenseRiskCache extends RiskCache {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	// field offsets, in the order of the arguments of the full Risk constructor
+	public static final int VALUE = 0;
+	public static final int DELTA = 1;
+	public static final int GAMMA = 2;
+	public static final int VEGA = 3;
+	public static final int THETA = 4;
+	public static final int RHO = 5;
+	public static final int VANNA = 6;
+	public static final int VOLGA = 7;
+	public static final int CHARM = 8;
+	public static final int SPEED = 9;
+	public static final int IMPLIED_VOLATILITY = 10;
+	public static final int PRICE = 11;
+	public static final int UNDERLYING_PRICE = 12;
+	public static final int FIELDS = 13;
+
+	// each slot also holds whether it has risk, after its fields
+	private static final int PRESENT = FIELDS;
+	private static final int STRIDE = FIELDS + 1;
+
+	private final int capacity;
+
+	// slots keyed by InstrumentRegistry id
+	private final InstrumentArray<Integer> slots;
+
+	private final FinancialInstrument[] instruments;
+
+	// the InstrumentRegistry id of the instrument assigned each slot plus one, zero while the slot is free
+	private final AtomicIntegerArray owners;
+
+	private int slotCount;
+
+	// the next slot never yet assigned
+	private int nextSlot;
+
+	// slots freed by removing their instrument's risk, reused before any unassigned slot, guarded by this
+	private final Deque<Integer> freeSlots;
+
+	// the version of each slot, odd while being written
+	private final AtomicLongArray versions;
+
+	private final AtomicLongArray fields;
+
+	// the buffer of getRisk's reads, so that they allocate only the Risk they return
+	private static final ThreadLocal<double[]> readBuffer = ThreadLocal.withInitial(() -> new double[FIELDS]);
+
+	// frees the slot of each instrument released from the InstrumentRegistry, held here as the registry holds it weakly
+	private final InstrumentRegistry.ReleaseListener releaseListener;
+
+	public DenseRiskCache(String name) {
+		this(name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a cache with room for the given number of instruments
+	 * @param name
+	 * @param capacity
+	 */
+	public DenseRiskCache(String name, int capacity) {
+		super(name);
+		this.capacity = capacity;
+		this.slots = new InstrumentArray<>();
+		this.instruments = new FinancialInstrument[capacity];
+		this.owners = new AtomicIntegerArray(capacity);
+		this.slotCount = 0;
+		this.nextSlot = 0;
+		this.freeSlots = new ArrayDeque<>();
+		this.versions = new AtomicLongArray(capacity);
+		this.fields = new AtomicLongArray(capacity * STRIDE);
+		this.releaseListener = this::freeSlot;
+		InstrumentRegistry.addReleaseListener(releaseListener);
+	}
+
+	/**
+	 * Return the number of instruments the cache has room for
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Return the number of slots assigned, excluding freed slots
+	 * @return
+	 */
+	public synchronized int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Return the slot of the instrument, assigning one if it has none, or -1 if the cache is full
+	 * @param instrument
+	 * @return
+	 */
+	public int getSlot(FinancialInstrument instrument) {
+		return getSlot(instrument.getInstrumentId(), instrument);
+	}
+
+	private int getSlot(int id, FinancialInstrument instrument) {
+		Integer slot = slots.get(id);
+		if (slot != null) {
+			return slot;
+		}
+		synchronized(this) {
+			slot = slots.get(id);
+			if (slot == null) {
+				if (slotCount == capacity) {
+					return -1;
+				}
+				slot = freeSlots.isEmpty() ? nextSlot++ : freeSlots.poll();
+				++slotCount;
+				instruments[slot] = instrument;
+				owners.set(slot, id + 1);
+				slots.put(id, slot);
+				if (slotCount == capacity) {
+					Log.getLogger().warn("DenseRiskCache " + getName() + ": full at " + capacity + " instruments");
+				}
+			}
+			return slot;
+		}
+	}
+
+	/**
+	 * Return the instrument at the slot
+	 * @param slot
+	 * @return
+	 */
+	public synchronized FinancialInstrument getInstrument(int slot) {
+		return instruments[slot];
+	}
+
+	/**
+	 * Write the risk of the instrument at the slot
+	 */
+	public void write(int slot, double value, double delta, double gamma, double vega, double theta, double rho,
+			double vanna, double volga, double charm, double speed,
+			double impliedVolatility, double price, double underlyingPrice) {
+		long version = beginWrite(slot);
+		setFields(slot, value, delta, gamma, vega, theta, rho, vanna, volga, charm, speed, impliedVolatility, price, underlyingPrice);
+		versions.set(slot, version + 2);
+	}
+
+	private void setFields(int slot, double value, double delta, double gamma, double vega, double theta, double rho,
+			double vanna, double volga, double charm, double speed,
+			double impliedVolatility, double price, double underlyingPrice) {
+		int offset = slot * STRIDE;
+		fields.lazySet(offset + VALUE, Double.doubleToRawLongBits(value));
+		fields.lazySet(offset + DELTA, Double.doubleToRawLongBits(delta));
+		fields.lazySet(offset + GAMMA, Double.doubleToRawLongBits(gamma));
+		fields.lazySet(offset + VEGA, Double.doubleToRawLongBits(vega));
+		fields.lazySet(offset + THETA, Double.doubleToRawLongBits(theta));
+		fields.lazySet(offset + RHO, Double.doubleToRawLongBits(rho));
+		fields.lazySet(offset + VANNA, Double.doubleToRawLongBits(vanna));
+		fields.lazySet(offset + VOLGA, Double.doubleToRawLongBits(volga));
+		fields.lazySet(offset + CHARM, Double.doubleToRawLongBits(charm));
+		fields.lazySet(offset + SPEED, Double.doubleToRawLongBits(speed));
+		fields.lazySet(offset + IMPLIED_VOLATILITY, Double.doubleToRawLongBits(impliedVolatility));
+		fields.lazySet(offset + PRICE, Double.doubleToRawLongBits(price));
+		fields.lazySet(offset + UNDERLYING_PRICE, Double.doubleToRawLongBits(underlyingPrice));
+		fields.lazySet(offset + PRESENT, 1L);
+	}
+
+	/**
+	 * Write the risk of the instrument at the slot
+	 * @param slot
+	 * @param risk
+	 */
+	public void write(int slot, Risk risk) {
+		write(slot, risk.getValue(), risk.getDelta(), risk.getGamma(), risk.getVega(), risk.getTheta(), risk.getRho(),
+				risk.getVanna(), risk.getVolga(), risk.getCharm(), risk.getSpeed(),
+				risk.getImpliedVolatility(), risk.getPrice(), risk.getUnderlyingPrice());
+	}
+
+	// wait for any other writer to finish, then make the version odd, returning the even version it was
+	private long beginWrite(int slot) {
+		while (true) {
+			long version = versions.get(slot);
+			if ((version & 1L) == 0L && versions.compareAndSet(slot, version, version + 1)) {
+				return version;
+			}
+			Thread.yield();
+		}
+	}
+
+	// write the risk at the slot if it still belongs to the instrument id, returning false if it was freed meanwhile
+	private boolean write(int slot, int id, Risk risk) {
+		long version = beginWrite(slot);
+		if (owners.get(slot) != id + 1) {
+			versions.set(slot, version);
+			return false;
+		}
+		setFields(slot, risk.getValue(), risk.getDelta(), risk.getGamma(), risk.getVega(), risk.getTheta(), risk.getRho(),
+				risk.getVanna(), risk.getVolga(), risk.getCharm(), risk.getSpeed(),
+				risk.getImpliedVolatility(), risk.getPrice(), risk.getUnderlyingPrice());
+		versions.set(slot, version + 2);
+		return true;
+	}
+
+	/**
+	 * Read a consistent snapshot of the risk at the slot into out, indexed by the field offsets,
+	 * scaled by the multiplier as Risk.multiply would scale it
+	 * @param slot
+	 * @param multiplier
+	 * @param out
+	 * @return false if the slot has no risk
+	 */
+	public boolean read(int slot, double multiplier, double[] out) {
+		int offset = slot * STRIDE;
+		boolean present;
+		while (true) {
+			long version = versions.get(slot);
+			if ((version & 1L) != 0L) {
+				Thread.yield();
+				continue;
+			}
+			present = fields.get(offset + PRESENT) != 0L;
+			for (int i = 0; i < FIELDS; ++i) {
+				out[i] = Double.longBitsToDouble(fields.get(offset + i));
+			}
+			if (versions.get(slot) == version) {
+				break;
+			}
+		}
+		if (!present) {
+			return false;
+		}
+		// imp vol and prices don't scale with position size
+		for (int i = VALUE; i <= SPEED; ++i) {
+			out[i] *= multiplier;
+		}
+		return true;
+	}
+
+	/**
+	 * Read a consistent snapshot of the risk at the slot into out, indexed by the field offsets
+	 * @param slot
+	 * @param out
+	 * @return false if the slot has no risk
+	 */
+	public boolean read(int slot, double[] out) {
+		return read(slot, 1.0, out);
+	}
+
+	/**
+	 * Read a single field of the risk at the slot
+	 * @param slot
+	 * @param field
+	 * @return
+	 */
+	public double read(int slot, int field) {
+		return Double.longBitsToDouble(fields.get(slot * STRIDE + field));
+	}
+
+	/**
+	 * Return the version of the slot, which increases with every write - zero if it has not been written since it was assigned
+	 * @param slot
+	 * @return
+	 */
+	public long getVersion(int slot) {
+		return versions.get(slot);
+	}
+
+	// free the slot of the instrument id, returning false if it has none
+	private boolean freeSlot(int id) {
+		synchronized(this) {
+			Integer slot = slots.remove(id);
+			if (slot == null) {
+				return false;
+			}
+			// the version restarts at zero for the next instrument assigned the slot
+			beginWrite(slot);
+			owners.set(slot, 0);
+			fields.lazySet(slot * STRIDE + PRESENT, 0L);
+			versions.set(slot, 0L);
+			instruments[slot] = null;
+			freeSlots.add(slot);
+			--slotCount;
+			return true;
+		}
+	}
+
+	@Override
+	public Risk getRisk(FinancialInstrument instrument) {
+		Integer slot = slots.get(instrument);
+		if (slot == null) {
+			return super.getRisk(instrument);
+		}
+		return readRisk(slot);
+	}
+
+	private Risk readRisk(int slot) {
+		double[] out = readBuffer.get();
+		if (!read(slot, out)) {
+			return null;
+		}
+		return new Risk(out[VALUE], out[DELTA], out[GAMMA], out[VEGA], out[THETA], out[RHO],
+				out[VANNA], out[VOLGA], out[CHARM], out[SPEED],
+				out[IMPLIED_VOLATILITY], out[PRICE], out[UNDERLYING_PRICE]);
+	}
+
+	@Override
+	public void insertRisk(int id, Risk risk) {
+		while (true) {
+			Integer slot = slots.get(id);
+			if (slot == null) {
+				// only assigning a slot needs the instrument
+				FinancialInstrument instrument = InstrumentRegistry.getInstrument(id);
+				if (instrument == null) {
+					return;
+				}
+				slot = getSlot(id, instrument);
+				if (slot < 0) {
+					super.insertRisk(id, risk);
+					return;
+				}
+			}
+			if (write(slot, id, risk)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove the risk of the instrument id and free its slot, which reads as having no risk until it is reassigned
+	 */
+	@Override
+	public void removeRisk(int id) {
+		if (!freeSlot(id)) {
+			super.removeRisk(id);
+		}
+	}
+
+	@Override
+	public Risk getRisk(int id) {
+		Integer slot = slots.get(id);
+		if (slot == null) {
+			return super.getRisk(id);
+		}
+		return readRisk(slot);
+	}
+
+	@Override
+	public String toString() {
+		return "[Name: " + getName() + ", Slots: " + getSlotCount() + ", Capacity: " + capacity + "]";
+	}
+}
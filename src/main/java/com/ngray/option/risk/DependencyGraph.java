@@ -0,0 +1,313 @@
+package com.ngray.option.risk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ngray.option.Log;
+
+/**
+ * An acyclic graph of nodes, such as options, whose values are calculated from other nodes, such as their
+ * underlyings. When a node changes, every node depending on it directly or transitively is marked dirty,
+ * and the dirty nodes are taken in one pass in topological order - each after all of its inputs - so each
+ * is recalculated once per pass however many of its inputs changed since the last one. Dependencies which
+ * would create a cycle are rejected. Marking and recalculation statistics are kept for monitoring.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ * @param <N>
+ */
+public class DependencyGraph<N> {
+
+	// the nodes each node depends on, and the nodes depending on it
+	private final Map<N, Set<N>> inputs;
+	private final Map<N, Set<N>> dependents;
+
+	// the length of the longest path from a node to a node with no inputs, null when the graph has changed
+	private Map<N, Integer> ranks;
+
+	private final Set<N> dirty;
+
+	private long changes;
+	private long marked;
+	private long conflated;
+	private long passes;
+	private long taken;
+
+	public DependencyGraph() {
+		this.inputs = new HashMap<>();
+		this.dependents = new HashMap<>();
+		this.ranks = null;
+		this.dirty = new LinkedHashSet<>();
+	}
+
+	/**
+	 * Add a dependency of the dependent node on the input node, unless it would create a cycle
+	 * @param input
+	 * @param dependent
+	 * @return false if the dependency would create a cycle
+	 */
+	public synchronized boolean addDependency(N input, N dependent) {
+		if (input == null || dependent == null) return false;
+
+		if (input.equals(dependent) || reaches(dependent, input)) {
+			Log.getLogger().warn("DependencyGraph: dependency of " + dependent + " on " + input + " would create a cycle, ignored");
+			return false;
+		}
+		if (dependents.computeIfAbsent(input, node -> new HashSet<>()).add(dependent)) {
+			inputs.computeIfAbsent(dependent, node -> new HashSet<>()).add(input);
+			ranks = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the dependency of the dependent node on the input node
+	 * @param input
+	 * @param dependent
+	 */
+	public synchronized void removeDependency(N input, N dependent) {
+		if (input == null || dependent == null) return;
+
+		if (remove(dependents, input, dependent)) {
+			remove(inputs, dependent, input);
+			ranks = null;
+		}
+	}
+
+	/**
+	 * Remove the node and all its dependencies
+	 * @param node
+	 */
+	public synchronized void removeNode(N node) {
+		if (node == null) return;
+
+		Set<N> nodeInputs = inputs.remove(node);
+		if (nodeInputs != null) {
+			nodeInputs.forEach(input -> remove(dependents, input, node));
+		}
+		Set<N> nodeDependents = dependents.remove(node);
+		if (nodeDependents != null) {
+			nodeDependents.forEach(dependent -> remove(inputs, dependent, node));
+		}
+		dirty.remove(node);
+		ranks = null;
+	}
+
+	private static <N> boolean remove(Map<N, Set<N>> edges, N from, N to) {
+		Set<N> nodes = edges.get(from);
+		if (nodes == null || !nodes.remove(to)) {
+			return false;
+		}
+		if (nodes.isEmpty()) {
+			edges.remove(from);
+		}
+		return true;
+	}
+
+	// true if there is a path from the node to the target along dependencies
+	private boolean reaches(N node, N target) {
+		Deque<N> stack = new ArrayDeque<>();
+		Set<N> visited = new HashSet<>();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			N next = stack.pop();
+			if (next.equals(target)) {
+				return true;
+			}
+			if (visited.add(next)) {
+				dependents.getOrDefault(next, Collections.emptySet()).forEach(stack::push);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return true if the node has any dependencies or dependents
+	 * @param node
+	 * @return
+	 */
+	public synchronized boolean contains(N node) {
+		return inputs.containsKey(node) || dependents.containsKey(node);
+	}
+
+	/**
+	 * Return the number of nodes with any dependencies or dependents
+	 * @return
+	 */
+	public synchronized int size() {
+		Set<N> nodes = new HashSet<>(inputs.keySet());
+		nodes.addAll(dependents.keySet());
+		return nodes.size();
+	}
+
+	/**
+	 * Return the nodes depending directly on the node
+	 * @param node
+	 * @return
+	 */
+	public synchronized Set<N> getDependents(N node) {
+		return new HashSet<>(dependents.getOrDefault(node, Collections.emptySet()));
+	}
+
+	/**
+	 * Return the nodes the node depends on directly
+	 * @param node
+	 * @return
+	 */
+	public synchronized Set<N> getInputs(N node) {
+		return new HashSet<>(inputs.getOrDefault(node, Collections.emptySet()));
+	}
+
+	/**
+	 * Mark every node depending directly or transitively on the changed node dirty
+	 * @param changed
+	 * @return the number of nodes newly marked dirty - zero if they were all dirty already
+	 */
+	public synchronized int markChanged(N changed) {
+		if (changed == null) return 0;
+
+		++changes;
+		int newlyDirty = 0;
+		Deque<N> stack = new ArrayDeque<>();
+		Set<N> visited = new HashSet<>();
+		dependents.getOrDefault(changed, Collections.emptySet()).forEach(stack::push);
+		while (!stack.isEmpty()) {
+			N node = stack.pop();
+			if (!visited.add(node)) {
+				continue;
+			}
+			if (dirty.add(node)) {
+				++newlyDirty;
+			} else {
+				++conflated;
+			}
+			dependents.getOrDefault(node, Collections.emptySet()).forEach(stack::push);
+		}
+		marked += newlyDirty;
+		return newlyDirty;
+	}
+
+	/**
+	 * Take the dirty nodes in topological order, each after all of its inputs, leaving no node dirty
+	 * @return
+	 */
+	public synchronized List<N> takeDirty() {
+		if (dirty.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		Map<N, Integer> nodeRanks = getRanks();
+		List<N> nodes = new ArrayList<>(dirty);
+		nodes.sort(Comparator.comparingInt(node -> nodeRanks.getOrDefault(node, 0)));
+		dirty.clear();
+		++passes;
+		taken += nodes.size();
+		return nodes;
+	}
+
+	/**
+	 * Return the number of dirty nodes
+	 * @return
+	 */
+	public synchronized int getDirtyCount() {
+		return dirty.size();
+	}
+
+	// compute the ranks of all nodes if the graph has changed since they were last computed
+	private Map<N, Integer> getRanks() {
+		if (ranks == null) {
+			ranks = new HashMap<>();
+			inputs.keySet().forEach(this::rank);
+		}
+		return ranks;
+	}
+
+	private int rank(N node) {
+		Integer rank = ranks.get(node);
+		if (rank == null) {
+			int maxInputRank = -1;
+			for (N input : inputs.getOrDefault(node, Collections.emptySet())) {
+				maxInputRank = Math.max(maxInputRank, rank(input));
+			}
+			rank = maxInputRank + 1;
+			ranks.put(node, rank);
+		}
+		return rank;
+	}
+
+	/**
+	 * Return the number of changes marked
+	 * @return
+	 */
+	public synchronized long getChangeCount() {
+		return changes;
+	}
+
+	/**
+	 * Return the number of times a node was marked dirty
+	 * @return
+	 */
+	public synchronized long getMarkedCount() {
+		return marked;
+	}
+
+	/**
+	 * Return the number of times a node already dirty was marked again before it was taken
+	 * @return
+	 */
+	public synchronized long getConflatedCount() {
+		return conflated;
+	}
+
+	/**
+	 * Return the number of passes which took dirty nodes
+	 * @return
+	 */
+	public synchronized long getPassCount() {
+		return passes;
+	}
+
+	/**
+	 * Return the number of dirty nodes taken for recalculation
+	 * @return
+	 */
+	public synchronized long getTakenCount() {
+		return taken;
+	}
+
+	/**
+	 * Reset the statistics
+	 */
+	public synchronized void resetStatistics() {
+		changes = 0;
+		marked = 0;
+		conflated = 0;
+		passes = 0;
+		taken = 0;
+	}
+
+	/**
+	 * Remove all nodes
+	 */
+	public synchronized void clear() {
+		inputs.clear();
+		dependents.clear();
+		dirty.clear();
+		ranks = null;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "[Nodes: " + size() + ", Dirty: " + dirty.size() + ", Changes: " + changes +
+				", Marked: " + marked + ", Conflated: " + conflated + ", Passes: " + passes + ", Taken: " + taken + "]";
+	}
+}
@@ -0,0 +1,11 @@
+package com.ngray.option.risk;
+
+/**
+ * A RiskListener which is pushed computed risk on every change to its instruments' inputs,
+ * even when the RiskService is in lazy mode
+ * @author nigelgray
+ *
+ */
+public interface EagerRiskListener extends RiskListener {
+
+}
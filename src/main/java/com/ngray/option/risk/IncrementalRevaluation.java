@@ -0,0 +1,283 @@
+package com.ngray.option.risk;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.marketdata.MarketData;
+
+/**
+ * Revalues options on small market moves from a Taylor expansion of their last full valuation, instead
+ * of a full model evaluation. The expansion is in delta, gamma and theta in the underlying price and
+ * the days between the value dates of the full valuation and the update, so that it estimates what a full
+ * revaluation at the same value date would give, with the move in implied volatility taken from the option
+ * price left unexplained by them divided by vega. Greeks are rolled forward with the second order greeks where the model supplies them.
+ * An update is fully revalued when the underlying has moved by more than the spot threshold or the implied
+ * volatility by more than the volatility threshold since the last full valuation, or after a fixed number
+ * of updates. Each full revaluation is compared with the expansion's estimate to measure its error.
+ * Update, full revaluation and error statistics are kept for monitoring.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class IncrementalRevaluation {
+
+	public static final double DEFAULT_MAX_RELATIVE_SPOT_MOVE = 0.002;
+	public static final double DEFAULT_MAX_VOLATILITY_MOVE = 0.0025;
+	public static final int DEFAULT_FULL_REVALUATION_INTERVAL = 20;
+
+	// the last full valuation of an instrument, and the number of updates expanded from it
+	private static class Anchor {
+		private final Risk risk;
+		private final LocalDate valueDate;
+		private final AtomicInteger updates;
+
+		Anchor(Risk risk, LocalDate valueDate) {
+			this.risk = risk;
+			this.valueDate = valueDate;
+			this.updates = new AtomicInteger();
+		}
+	}
+
+	private final double maxRelativeSpotMove;
+	private final double maxVolatilityMove;
+	private final int fullRevaluationInterval;
+
+	private final Map<FinancialInstrument, Anchor> anchors;
+
+	private final LongAdder updates;
+	private final LongAdder fullRevaluations;
+	private final LongAdder comparisons;
+	private final DoubleAccumulator maxValueError;
+	private final DoubleAccumulator maxDeltaError;
+	private final DoubleAccumulator maxVolatilityError;
+
+	public IncrementalRevaluation() {
+		this(DEFAULT_MAX_RELATIVE_SPOT_MOVE, DEFAULT_MAX_VOLATILITY_MOVE, DEFAULT_FULL_REVALUATION_INTERVAL);
+	}
+
+	/**
+	 * Create an incremental revaluation with the given thresholds
+	 * @param maxRelativeSpotMove the largest move in the underlying price, relative to its price at the last full valuation, to expand over
+	 * @param maxVolatilityMove the largest move in implied volatility to expand over
+	 * @param fullRevaluationInterval the number of updates after which an instrument is fully revalued regardless of the moves
+	 */
+	public IncrementalRevaluation(double maxRelativeSpotMove, double maxVolatilityMove, int fullRevaluationInterval) {
+		this.maxRelativeSpotMove = maxRelativeSpotMove;
+		this.maxVolatilityMove = maxVolatilityMove;
+		this.fullRevaluationInterval = fullRevaluationInterval;
+		this.anchors = new ConcurrentHashMap<>();
+		this.updates = new LongAdder();
+		this.fullRevaluations = new LongAdder();
+		this.comparisons = new LongAdder();
+		this.maxValueError = new DoubleAccumulator(Math::max, 0.0);
+		this.maxDeltaError = new DoubleAccumulator(Math::max, 0.0);
+		this.maxVolatilityError = new DoubleAccumulator(Math::max, 0.0);
+	}
+
+	/**
+	 * Revalue the instrument from its last full valuation, given the new underlying price and the instrument's
+	 * own price or implied volatility, at the value date. Returns null if the update must be fully revalued, in which
+	 * case the caller should pass the full valuation to recordFullRevaluation.
+	 * @param instrument
+	 * @param underlyingPrice
+	 * @param marketData
+	 * @param valueDate
+	 * @return
+	 */
+	public Risk revalue(FinancialInstrument instrument, MarketData underlyingPrice, MarketData marketData, LocalDate valueDate) {
+		updates.increment();
+		Anchor anchor = anchors.get(instrument);
+		if (anchor == null || anchor.updates.incrementAndGet() >= fullRevaluationInterval) {
+			return null;
+		}
+		Risk risk = expand(anchor, underlyingPrice, marketData, valueDate);
+		if (risk == null) {
+			return null;
+		}
+		Risk base = anchor.risk;
+		if (Math.abs(risk.getUnderlyingPrice() - base.getUnderlyingPrice()) > maxRelativeSpotMove * base.getUnderlyingPrice() ||
+				Math.abs(risk.getImpliedVolatility() - base.getImpliedVolatility()) > maxVolatilityMove) {
+			return null;
+		}
+		return risk;
+	}
+
+	/**
+	 * Record a full valuation of the instrument at the value date, which becomes the base of its subsequent expansions,
+	 * and measure the error the expansion from the previous full valuation would have made
+	 * @param instrument
+	 * @param underlyingPrice
+	 * @param marketData
+	 * @param risk
+	 * @param valueDate
+	 */
+	public void recordFullRevaluation(FinancialInstrument instrument, MarketData underlyingPrice, MarketData marketData, Risk risk, LocalDate valueDate) {
+		fullRevaluations.increment();
+		Anchor anchor = anchors.get(instrument);
+		if (anchor != null) {
+			Risk estimate = expand(anchor, underlyingPrice, marketData, valueDate);
+			if (estimate != null && !Double.isNaN(risk.getValue())) {
+				comparisons.increment();
+				maxValueError.accumulate(Math.abs(estimate.getValue() - risk.getValue()));
+				maxDeltaError.accumulate(Math.abs(estimate.getDelta() - risk.getDelta()));
+				maxVolatilityError.accumulate(Math.abs(estimate.getImpliedVolatility() - risk.getImpliedVolatility()));
+			}
+		}
+
+		if (isExpandable(risk)) {
+			anchors.put(instrument, new Anchor(risk, valueDate));
+		} else {
+			anchors.remove(instrument);
+		}
+	}
+
+	/**
+	 * Forget the last full valuation of the instrument
+	 * @param instrument
+	 */
+	public void remove(FinancialInstrument instrument) {
+		anchors.remove(instrument);
+	}
+
+	/**
+	 * Forget all full valuations
+	 */
+	public void clear() {
+		anchors.clear();
+	}
+
+	private static boolean isExpandable(Risk risk) {
+		return Double.isFinite(risk.getValue()) && Double.isFinite(risk.getUnderlyingPrice()) && Double.isFinite(risk.getImpliedVolatility()) &&
+				Double.isFinite(risk.getDelta()) && Double.isFinite(risk.getGamma()) && Double.isFinite(risk.getTheta()) && risk.getVega() > 0.0;
+	}
+
+	// second order greeks the model doesn't supply are taken as zero
+	private static double orZero(double greek) {
+		return Double.isNaN(greek) ? 0.0 : greek;
+	}
+
+	private static Risk expand(Anchor anchor, MarketData underlyingPrice, MarketData marketData, LocalDate valueDate) {
+		if (underlyingPrice.getType() != MarketData.Type.PRICE) {
+			return null;
+		}
+		Risk base = anchor.risk;
+		double spot = underlyingPrice.getMid();
+		double dS = spot - base.getUnderlyingPrice();
+		// theta is per day
+		double dT = ChronoUnit.DAYS.between(anchor.valueDate, valueDate);
+		double vanna = orZero(base.getVanna());
+		double volga = orZero(base.getVolga());
+		double charm = orZero(base.getCharm());
+		double speed = orZero(base.getSpeed());
+		double carry = base.getValue() + base.getDelta() * dS + 0.5 * base.getGamma() * dS * dS + base.getTheta() * dT;
+
+		// the vol greeks are per 1% move
+		double dVol;
+		double value;
+		double price;
+		if (marketData.getType() == MarketData.Type.PRICE) {
+			price = marketData.getMid();
+			value = price;
+			dVol = (price - carry)/base.getVega();
+		} else {
+			dVol = 100.0 * (marketData.getMid() - base.getImpliedVolatility());
+			value = carry + base.getVega() * dVol + 0.5 * volga * dVol * dVol + vanna * dS * dVol;
+			price = value;
+		}
+		if (!Double.isFinite(value) || !Double.isFinite(dVol)) {
+			return null;
+		}
+
+		return new Risk(
+				value,
+				base.getDelta() + base.getGamma() * dS + vanna * dVol,
+				base.getGamma() + speed * dS,
+				base.getVega() + vanna * dS + volga * dVol,
+				base.getTheta() + charm * dS,
+				base.getRho(),
+				base.getVanna(), base.getVolga(), base.getCharm(), base.getSpeed(),
+				base.getImpliedVolatility() + dVol/100.0, price, spot);
+	}
+
+	/**
+	 * Return the number of updates offered for incremental revaluation
+	 * @return
+	 */
+	public long getUpdateCount() {
+		return updates.sum();
+	}
+
+	/**
+	 * Return the number of full revaluations
+	 * @return
+	 */
+	public long getFullRevaluationCount() {
+		return fullRevaluations.sum();
+	}
+
+	/**
+	 * Return the fraction of updates which were fully revalued
+	 * @return
+	 */
+	public double getFullRevaluationRate() {
+		long updateCount = getUpdateCount();
+		return updateCount == 0 ? 0.0 : Math.min(1.0, ((double)getFullRevaluationCount())/updateCount);
+	}
+
+	/**
+	 * Return the number of full revaluations compared with the estimate of an expansion
+	 * @return
+	 */
+	public long getComparisonCount() {
+		return comparisons.sum();
+	}
+
+	/**
+	 * Return the largest difference in value between a full revaluation and its expansion estimate
+	 * @return
+	 */
+	public double getMaxValueError() {
+		return maxValueError.get();
+	}
+
+	/**
+	 * Return the largest difference in delta between a full revaluation and its expansion estimate
+	 * @return
+	 */
+	public double getMaxDeltaError() {
+		return maxDeltaError.get();
+	}
+
+	/**
+	 * Return the largest difference in implied volatility between a full revaluation and its expansion estimate
+	 * @return
+	 */
+	public double getMaxVolatilityError() {
+		return maxVolatilityError.get();
+	}
+
+	/**
+	 * Reset the statistics, leaving the full valuations in place
+	 */
+	public void resetStatistics() {
+		updates.reset();
+		fullRevaluations.reset();
+		comparisons.reset();
+		maxValueError.reset();
+		maxDeltaError.reset();
+		maxVolatilityError.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "[Updates: " + getUpdateCount() + ", FullRevaluationRate: " + getFullRevaluationRate() +
+				", MaxValueError: " + getMaxValueError() + ", MaxDeltaError: " + getMaxDeltaError() +
+				", MaxVolatilityError: " + getMaxVolatilityError() + "]";
+	}
+}
@@ -17,6 +17,12 @@ public class Risk {
 	private final double rho;
 	private final double impliedVolatility;
 	
+	// second order greeks, NaN where the model doesn't supply them
+	private final double vanna;
+	private final double volga;
+	private final double charm;
+	private final double speed;
+	
 	// data used to calculate this risk
 	private final double price;
 	private final double underlyingPrice;
@@ -29,17 +35,31 @@ public class Risk {
 		this.theta = theta;
 		this.rho = rho;
 		this.impliedVolatility = impliedVolatility;
+		this.vanna = Double.NaN;
+		this.volga = Double.NaN;
+		this.charm = Double.NaN;
+		this.speed = Double.NaN;
 		this.price = Double.NaN;
 		this.underlyingPrice = Double.NaN;
 	}
 	
 	public Risk(double value, double delta, double gamma, double vega, double theta, double rho, double impliedVolatility, double price, double underlyingPrice) {
+		this(value, delta, gamma, vega, theta, rho, Double.NaN, Double.NaN, Double.NaN, Double.NaN, impliedVolatility, price, underlyingPrice);
+	}
+	
+	public Risk(double value, double delta, double gamma, double vega, double theta, double rho,
+				double vanna, double volga, double charm, double speed,
+				double impliedVolatility, double price, double underlyingPrice) {
 		this.value = value;
 		this.delta = delta;
 		this.gamma = gamma;
 		this.vega = vega;
 		this.theta = theta;
 		this.rho = rho;
+		this.vanna = vanna;
+		this.volga = volga;
+		this.charm = charm;
+		this.speed = speed;
 		this.impliedVolatility = impliedVolatility;
 		this.price = price;
 		this.underlyingPrice = underlyingPrice;
@@ -53,6 +73,10 @@ public class Risk {
 		this.theta = Double.NaN;
 		this.rho = Double.NaN;
 		this.impliedVolatility = Double.NaN;
+		this.vanna = Double.NaN;
+		this.volga = Double.NaN;
+		this.charm = Double.NaN;
+		this.speed = Double.NaN;
 		this.price = Double.NaN;
 		this.underlyingPrice = Double.NaN;
 	}
@@ -64,8 +88,12 @@ public class Risk {
 		double vega = getVega() * N;
 		double rho = getRho() * N;
 		double theta = getTheta() * N;
+		double vanna = getVanna() * N;
+		double volga = getVolga() * N;
+		double charm = getCharm() * N;
+		double speed = getSpeed() * N;
 		// imp vol and prices don't scale with position size
-		return new Risk(value, delta, gamma, vega, theta, rho, getImpliedVolatility(), getPrice(), getUnderlyingPrice());
+		return new Risk(value, delta, gamma, vega, theta, rho, vanna, volga, charm, speed, getImpliedVolatility(), getPrice(), getUnderlyingPrice());
 	}
 
 	public double getValue() {
@@ -96,6 +124,38 @@ public class Risk {
 		return impliedVolatility;
 	}
 	
+	/**
+	 * Change in delta per 1% move in implied volatility
+	 * @return
+	 */
+	public double getVanna() {
+		return vanna;
+	}
+	
+	/**
+	 * Change in vega per 1% move in implied volatility
+	 * @return
+	 */
+	public double getVolga() {
+		return volga;
+	}
+	
+	/**
+	 * Change in delta per calendar day
+	 * @return
+	 */
+	public double getCharm() {
+		return charm;
+	}
+	
+	/**
+	 * Change in gamma per unit move in the underlying price
+	 * @return
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+	
 	@Override
 	public String toString() {
 		String s = "\n\nRisk"  +
@@ -107,6 +167,10 @@ public class Risk {
 				   "\nVega:\t" + getVega() +
 				   "\nTheta:\t" + getTheta() +
 				   "\nRho:\t" + getRho() + 
+				   "\nVanna:\t" + getVanna() +
+				   "\nVolga:\t" + getVolga() +
+				   "\nCharm:\t" + getCharm() +
+				   "\nSpeed:\t" + getSpeed() +
 				   "\n====================================\n\n";
 		return s;
 				   
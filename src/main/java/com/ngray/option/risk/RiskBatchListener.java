@@ -0,0 +1,16 @@
+package com.ngray.option.risk;
+
+import java.util.Map;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+
+public interface RiskBatchListener {
+	
+	/**
+	 * Called with the latest risk of every subscribed instrument updated since the last batch.
+	 * The map is unmodifiable.
+	 * @param batch
+	 */
+	public void onRiskBatch(Map<FinancialInstrument, Risk> batch);
+
+}
@@ -0,0 +1,239 @@
+package com.ngray.option.risk;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+
+/**
+ * Collects risk updates over a publication window and delivers the latest risk of every instrument
+ * updated in the window as one batch, when the window closes. The window opens with the first update
+ * after a batch is delivered, so a quiet instrument is delivered within one window of its update.
+ * Batches are delivered on a single timer thread. With a window of zero each update is instead delivered
+ * immediately on the thread publishing it, in a batch with any others published meanwhile. Batches are
+ * delivered one at a time, in the order they were collected, whichever thread delivers them, so a batch
+ * never overwrites the newer risk of a later one. Update, batch and conflation statistics are kept for monitoring.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class RiskBatchPublisher {
+
+	private final String name;
+
+	private final Consumer<Map<FinancialInstrument, Risk>> delivery;
+
+	private final Object batchLock = new Object();
+
+	// held while taking a batch and delivering it, so batches are delivered in the order they were taken
+	private final Object deliveryLock = new Object();
+
+	private Map<FinancialInstrument, Risk> pending;
+
+	private boolean scheduled;
+
+	private volatile long windowMillis;
+
+	private ScheduledExecutorService timer;
+
+	private boolean isShutdown;
+
+	private final LongAdder updates;
+	private final LongAdder batches;
+	private final LongAdder conflated;
+	private final LongAccumulator maxBatchSize;
+
+	/**
+	 * Create a publisher delivering batches to the given consumer, with a window of zero
+	 * @param name
+	 * @param delivery
+	 */
+	public RiskBatchPublisher(String name, Consumer<Map<FinancialInstrument, Risk>> delivery) {
+		this.name = name;
+		this.delivery = delivery;
+		this.pending = new HashMap<>();
+		this.scheduled = false;
+		this.windowMillis = 0;
+		this.isShutdown = false;
+		this.updates = new LongAdder();
+		this.batches = new LongAdder();
+		this.conflated = new LongAdder();
+		this.maxBatchSize = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Return the name of this publisher
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the publication window in milliseconds
+	 * @return
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * Set the publication window in milliseconds - zero delivers each update immediately
+	 * @param windowMillis
+	 */
+	public void setWindowMillis(long windowMillis) {
+		Log.getLogger().info("RiskBatchPublisher " + getName() + ": window set to " + windowMillis + "ms");
+		this.windowMillis = Math.max(0, windowMillis);
+		if (this.windowMillis == 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * Add the risk of the instrument to the current batch, replacing any earlier risk of the instrument in it
+	 * @param instrument
+	 * @param risk
+	 */
+	public void publish(FinancialInstrument instrument, Risk risk) {
+		if (instrument == null || risk == null) return;
+
+		updates.increment();
+		long window = windowMillis;
+		synchronized(batchLock) {
+			if (isShutdown) {
+				return;
+			}
+			if (pending.put(instrument, risk) != null) {
+				conflated.increment();
+			}
+			if (window != 0 && !scheduled) {
+				scheduled = true;
+				getTimer().schedule(this::flush, window, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (window == 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * Deliver the current batch now, if it isn't empty
+	 */
+	public void flush() {
+		synchronized(deliveryLock) {
+			Map<FinancialInstrument, Risk> batch;
+			synchronized(batchLock) {
+				if (pending.isEmpty()) {
+					scheduled = false;
+					return;
+				}
+				batch = pending;
+				pending = new HashMap<>();
+				scheduled = false;
+			}
+			deliver(batch);
+		}
+	}
+
+	private void deliver(Map<FinancialInstrument, Risk> batch) {
+		batches.increment();
+		maxBatchSize.accumulate(batch.size());
+		try {
+			delivery.accept(batch);
+		} catch (RuntimeException e) {
+			Log.getLogger().error("RiskBatchPublisher " + getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	// must be called holding batchLock
+	private ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, getName() + "-batch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+
+	/**
+	 * Return the number of updates published
+	 * @return
+	 */
+	public long getUpdateCount() {
+		return updates.sum();
+	}
+
+	/**
+	 * Return the number of batches delivered
+	 * @return
+	 */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/**
+	 * Return the number of updates replaced by a later update of the same instrument in the same batch
+	 * @return
+	 */
+	public long getConflatedCount() {
+		return conflated.sum();
+	}
+
+	/**
+	 * Return the number of instruments in the largest batch delivered
+	 * @return
+	 */
+	public long getMaxBatchSize() {
+		return maxBatchSize.get();
+	}
+
+	/**
+	 * Return the average number of instruments in a batch
+	 * @return
+	 */
+	public double getAverageBatchSize() {
+		long batchCount = getBatchCount();
+		return batchCount == 0 ? 0.0 : ((double)(getUpdateCount() - getConflatedCount()))/batchCount;
+	}
+
+	/**
+	 * Reset the statistics
+	 */
+	public void resetStatistics() {
+		updates.reset();
+		batches.reset();
+		conflated.reset();
+		maxBatchSize.reset();
+	}
+
+	/**
+	 * Shutdown the publisher, dropping the current batch
+	 */
+	public void shutdown() {
+		Log.getLogger().info("RiskBatchPublisher " + getName() + ": shutdown");
+		synchronized(batchLock) {
+			pending = new HashMap<>();
+			scheduled = false;
+			isShutdown = true;
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[Window: " + getWindowMillis() + "ms, Updates: " + getUpdateCount() + ", Batches: " + getBatchCount() +
+				", Conflated: " + getConflatedCount() + ", MaxBatchSize: " + getMaxBatchSize() + "]";
+	}
+}
@@ -1,10 +1,9 @@
 package com.ngray.option.risk;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import com.ngray.option.Log;
 import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentArray;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
 
 public class RiskCache {
 	/**
@@ -14,14 +13,31 @@ public class RiskCache {
 	private final String name;
 	
 	/**
-	 * The map storing the market data
+	 * The array storing the risk, indexed by InstrumentRegistry id
+	 */
+	private final InstrumentArray<Risk> cache;
+	
+	/**
+	 * The ids of the instruments retained by inserting their risk, released when it is removed,
+	 * guarded by retainLock
 	 */
-	private final Map<FinancialInstrument, Risk> cache;
+	private final InstrumentArray<Boolean> retained;
+	
+	private final Object retainLock = new Object();
+	
+	/**
+	 * Drops the risk left under the id of each instrument released from the InstrumentRegistry,
+	 * held here as the registry holds it weakly
+	 */
+	private final InstrumentRegistry.ReleaseListener releaseListener;
 	
 	public RiskCache(String name) {
 		Log.getLogger().info("Constructing RiskCache " + name);
 		this.name = name;
-		this.cache = new ConcurrentHashMap<>();
+		this.cache = new InstrumentArray<>();
+		this.retained = new InstrumentArray<>();
+		this.releaseListener = cache::remove;
+		InstrumentRegistry.addReleaseListener(releaseListener);
 	}
 	
 	/**
@@ -33,22 +49,39 @@ public class RiskCache {
 	}
 	
 	/**
-	 * Insert the specified risk object in the cache, with key instrument
+	 * Insert the specified risk object in the cache, with key instrument. The instrument is retained in the
+	 * InstrumentRegistry, once however often its risk is inserted, until its risk is removed with removeRisk.
 	 * @param instrument
 	 * @param marketData
 	 */
 	public void insertRisk(FinancialInstrument instrument, Risk risk) {
 		Log.getLogger().info("RiskCache " + getName() + ": insert " + instrument + risk);
-		cache.put(instrument, risk);
+		synchronized(retainLock) {
+			int id = InstrumentRegistry.retain(instrument);
+			if (retained.put(id, Boolean.TRUE) != null) {
+				InstrumentRegistry.release(instrument);
+			}
+			insertRisk(id, risk);
+		}
 	}
 	
 	/**
-	 * Remove the specified instrument and its risk from the risk cache
+	 * Remove the specified instrument and its risk from the risk cache, releasing the instrument if
+	 * inserting its risk retained it
 	 * @param instrument
 	 */
 	public void removeRisk(FinancialInstrument instrument) {
 		Log.getLogger().info("RiskCache " + getName() + ": remove: " + instrument);
-		cache.remove(instrument);
+		synchronized(retainLock) {
+			int id = InstrumentRegistry.findId(instrument);
+			if (id < 0) {
+				return;
+			}
+			removeRisk(id);
+			if (retained.remove(id) != null) {
+				InstrumentRegistry.release(instrument);
+			}
+		}
 	}
 	
 	/**
@@ -61,4 +94,32 @@ public class RiskCache {
 		Log.getLogger().info("RiskCache " + getName() + ": get " + instrument);
 		return cache.get(instrument);
 	}
+	
+	/**
+	 * Insert the specified risk object in the cache, with key the InstrumentRegistry id of the instrument,
+	 * which the caller should hold retained until it removes the risk
+	 * @param id
+	 * @param risk
+	 */
+	public void insertRisk(int id, Risk risk) {
+		cache.put(id, risk);
+	}
+	
+	/**
+	 * Remove the risk of the instrument with the specified InstrumentRegistry id
+	 * @param id
+	 */
+	public void removeRisk(int id) {
+		cache.remove(id);
+	}
+	
+	/**
+	 * Get the cached risk for the instrument with the specified InstrumentRegistry id.
+	 * Will return null if the entry is not present.
+	 * @param id
+	 * @return
+	 */
+	public Risk getRisk(int id) {
+		return cache.get(id);
+	}
 }
@@ -0,0 +1,19 @@
+package com.ngray.option.risk;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.service.ServiceDataPublisher;
+
+/**
+ * The publisher a RiskService subscribes to a risk data source with. Besides publishing risk, the data source
+ * can mark risk stale when it can no longer provide it, such as when a worker process calculating it has failed.
+ * @author nigelgray
+ *
+ */
+public interface RiskDataPublisher extends ServiceDataPublisher<FinancialInstrument, Risk> {
+
+	/**
+	 * Mark the risk of the instrument stale until the data source next publishes it
+	 * @param instrument
+	 */
+	public void publishStale(FinancialInstrument instrument);
+}
@@ -5,5 +5,14 @@ import com.ngray.option.financialinstrument.FinancialInstrument;
 public interface RiskListener {
 	
 	public void onRiskUpdate(FinancialInstrument instrument, Risk risk);
+	
+	/**
+	 * Called by a RiskService in lazy mode, in place of onRiskUpdate, when the risk of the instrument becomes
+	 * stale following a change to its inputs. The risk is computed when it is next read from the service
+	 * with getRisk. By default stale risk is ignored.
+	 * @param instrument
+	 */
+	public default void onRiskStale(FinancialInstrument instrument) {
+	}
 
 }
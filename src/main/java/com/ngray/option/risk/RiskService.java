@@ -2,17 +2,27 @@ package com.ngray.option.risk;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import com.ngray.option.Log;
 import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
 import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentArray;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
 import com.ngray.option.marketdata.MarketData;
 import com.ngray.option.marketdata.MarketDataCollection;
 import com.ngray.option.marketdata.MarketDataListener;
 import com.ngray.option.marketdata.MarketDataService;
 import com.ngray.option.model.ModelException;
+import com.ngray.option.model.SpotGridPriceTable;
+import com.ngray.option.model.SpotGridPriceTableCache;
+import com.ngray.option.service.ConflatingExecutor;
+import com.ngray.option.service.ServiceDataSource;
 import com.ngray.option.service.ServiceException;
 
 /**
@@ -26,25 +36,200 @@ public class RiskService {
 	
 	private final Object riskListenerLock = new Object();
 	
-	private final Map<FinancialInstrument, List<RiskListener>> riskListeners;
+	// listeners indexed by the InstrumentRegistry ids of the instruments they subscribe to
+	private final InstrumentArray<List<RiskListener>> riskListeners;
+	
+	// batch listeners indexed by the InstrumentRegistry ids of the instruments they subscribe to, the number of
+	// instruments with any, and whether there are any
+	private final InstrumentArray<List<RiskBatchListener>> riskBatchListeners;
+	
+	private int riskBatchInstrumentCount;
+	
+	private volatile boolean hasRiskBatchListeners;
+	
+	private final RiskBatchPublisher batchPublisher;
 	
 	private final MarketDataService marketDataService;
 	
 	private final LocalDate valueDate;
 
 	private Map<FinancialInstrument, MarketDataListener> marketDataListeners;
+	
+	// spot grid price tables used to revalue European options on underlying ticks, null if not enabled
+	private final SpotGridPriceTableCache priceTables;
+	
+	// options with risk subscriptions keyed on their underlyings, recalculated when the underlyings tick
+	private final DependencyGraph<FinancialInstrument> dependencyGraph;
+	
+	private final Map<FinancialInstrument, MarketDataListener> underlyingListeners;
+	
+	// expansion of options' last full valuations over small market moves, null if not enabled
+	private final IncrementalRevaluation incrementalRevaluation;
+	
+	// pool recalculating risk off the market data threads, keeping only the latest update per instrument, null if not enabled
+	private final ConflatingExecutor<FinancialInstrument> computeExecutor;
+	
+	// the latest own market data of each instrument not yet priced on the compute executor
+	private final InstrumentArray<MarketData> pendingMarketData;
+	
+	// source of risk calculated elsewhere, such as in worker processes, null if risk is calculated by this service
+	private final ServiceDataSource<FinancialInstrument, Risk> riskDataSource;
+	
+	// the instruments subscribed to on the risk data source
+	private final InstrumentArray<Boolean> riskDataSubscriptions;
+	
+	// publishes the risk from the risk data source, and marks it stale when the data source loses it
+	private final RiskDataPublisher riskDataPublisher = new RiskDataPublisher() {
+
+		@Override
+		public void publish(FinancialInstrument instrument, Risk risk) {
+			publishRisk(instrument, risk);
+		}
+
+		@Override
+		public void publishStale(FinancialInstrument instrument) {
+			if (instrument != null) {
+				markStale(instrument, null);
+			}
+		}
+	};
+	
+	// in lazy mode risk is only computed on changes to its inputs for instruments with eager listeners,
+	// and otherwise marked stale, then computed when next read
+	private volatile boolean lazy;
+	
+	// the instruments with eager or batch listeners, which are computed on every change even in lazy mode
+	private final InstrumentArray<Boolean> eagerInstruments;
+	
+	// the inputs of stale risk, replaced on each change until the risk is next read
+	private final InstrumentArray<StaleRisk> staleRisk;
+	
+	// orders the memoization of stale risk computed by readers
+	private final Object staleRiskLock = new Object();
+	
+	private final LongAdder staleCount = new LongAdder();
+	private final LongAdder lazyCalculationCount = new LongAdder();
+	
+	// the market data to compute stale risk from, or null to recalculate it from the latest market data
+	private static class StaleRisk {
+		private final MarketData marketData;
+		
+		StaleRisk(MarketData marketData) {
+			this.marketData = marketData;
+		}
+	}
 
 	/**
 	 * Create a Risk data service with the specified name
 	 * @param name
 	 */
 	public RiskService(String name, MarketDataService marketDataService, LocalDate valueDate) {
+		this(name, marketDataService, valueDate, null);
+	}
+	
+	/**
+	 * Create a Risk data service with the specified name which, if priceTables is not null, also revalues
+	 * European options whenever their underlying ticks, by interpolation in spot grid price tables.
+	 * Option price updates are still fully revalued, and bring the tables up to date.
+	 * @param name
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param priceTables
+	 */
+	public RiskService(String name, MarketDataService marketDataService, LocalDate valueDate, SpotGridPriceTableCache priceTables) {
+		this(name, marketDataService, valueDate, priceTables, null);
+	}
+	
+	/**
+	 * Create a Risk data service with the specified name which, if incrementalRevaluation is not null, revalues
+	 * options on small market moves from a Taylor expansion of their last full valuation, and optionally
+	 * uses spot grid price tables as above
+	 * @param name
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param priceTables
+	 * @param incrementalRevaluation
+	 */
+	public RiskService(String name, MarketDataService marketDataService, LocalDate valueDate, SpotGridPriceTableCache priceTables,
+			IncrementalRevaluation incrementalRevaluation) {
+		this(name, marketDataService, valueDate, priceTables, incrementalRevaluation, null);
+	}
+	
+	/**
+	 * Create a Risk data service with the specified name which, if computeExecutor is not null, recalculates risk
+	 * on the executor rather than on the thread delivering the market data. Updates to an instrument arriving while
+	 * its previous recalculation is still pending replace it, so only the latest is recalculated. Every recalculation
+	 * is keyed by the instrument recalculated, whether following an update to its own price or to its underlying's,
+	 * so it is never recalculated concurrently and neither kind of update replaces the other. The service shuts
+	 * the executor down when it is shut down.
+	 * @param name
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param priceTables
+	 * @param incrementalRevaluation
+	 * @param computeExecutor
+	 */
+	public RiskService(String name, MarketDataService marketDataService, LocalDate valueDate, SpotGridPriceTableCache priceTables,
+			IncrementalRevaluation incrementalRevaluation, ConflatingExecutor<FinancialInstrument> computeExecutor) {
+		this(marketDataService, valueDate, priceTables, incrementalRevaluation, computeExecutor, new RiskCache(name));
+	}
+	
+	/**
+	 * Create a Risk data service publishing into the given cache, such as a DenseRiskCache, and taking its name
+	 * from the cache, configured as above
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param priceTables
+	 * @param incrementalRevaluation
+	 * @param computeExecutor
+	 * @param cache
+	 */
+	public RiskService(MarketDataService marketDataService, LocalDate valueDate, SpotGridPriceTableCache priceTables,
+			IncrementalRevaluation incrementalRevaluation, ConflatingExecutor<FinancialInstrument> computeExecutor, RiskCache cache) {
+		this(marketDataService, valueDate, priceTables, incrementalRevaluation, computeExecutor, cache, null);
+	}
+	
+	/**
+	 * Create a Risk data service publishing into the given cache which, if riskDataSource is not null, subscribes to
+	 * the risk of instruments on the data source, such as a ShardedRiskDataSource calculating it in worker processes,
+	 * rather than calculating it from market data itself. Risk from the data source is published to listeners as
+	 * if calculated here, but is neither lazy nor recalculated by this service, which leaves the remaining arguments unused.
+	 * Risk the data source marks stale, having lost it, is recalculated here from the latest market data if read before
+	 * the data source publishes it again.
+	 * The data source is started with this service, and shut down with it.
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param priceTables
+	 * @param incrementalRevaluation
+	 * @param computeExecutor
+	 * @param cache
+	 * @param riskDataSource
+	 */
+	public RiskService(MarketDataService marketDataService, LocalDate valueDate, SpotGridPriceTableCache priceTables,
+			IncrementalRevaluation incrementalRevaluation, ConflatingExecutor<FinancialInstrument> computeExecutor, RiskCache cache,
+			ServiceDataSource<FinancialInstrument, Risk> riskDataSource) {
+		String name = cache.getName();
 		Log.getLogger().info("Constructing RiskService: " + name);
-		this.cache = new RiskCache(name);
-		this.riskListeners = new HashMap<>();
+		this.cache = cache;
+		this.riskListeners = new InstrumentArray<>();
+		this.riskBatchListeners = new InstrumentArray<>();
+		this.riskBatchInstrumentCount = 0;
+		this.hasRiskBatchListeners = false;
+		this.batchPublisher = new RiskBatchPublisher(name, this::notifyRiskBatchListeners);
 		this.marketDataService = marketDataService;
 		this.valueDate = valueDate;
 		this.marketDataListeners = new HashMap<>();
+		this.priceTables = priceTables;
+		this.dependencyGraph = new DependencyGraph<>();
+		this.underlyingListeners = new HashMap<>();
+		this.incrementalRevaluation = incrementalRevaluation;
+		this.computeExecutor = computeExecutor;
+		this.pendingMarketData = new InstrumentArray<>();
+		this.lazy = false;
+		this.eagerInstruments = new InstrumentArray<>();
+		this.staleRisk = new InstrumentArray<>();
+		this.riskDataSource = riskDataSource;
+		this.riskDataSubscriptions = new InstrumentArray<>();
 	}
 	
 	/**
@@ -69,23 +254,12 @@ public class RiskService {
 			if (!riskListeners.containsKey(instrument)) {
 				Log.getLogger().debug("RiskService " + getName() + ": creating new subscription list for instrument " + instrument);
 				riskListeners.put(instrument, new ArrayList<>());
-				
-				MarketDataListener marketDataListener = 
-						(MarketDataListener)marketDataService.addListener(instrument, new MarketDataListener() {
-
-							@Override
-							public void onUpdate(FinancialInstrument instrument, MarketData marketData) {
-								publishRisk(instrument, calculateRisk(instrument, marketData));
-							}
-							
-						});
-				
-				marketDataListeners.put(instrument, marketDataListener);
-				
+				subscribe(instrument);
 			}
 			
 			Log.getLogger().debug("RiskService " + getName() + ": adding subscription to list for " + instrument);
 			riskListeners.get(instrument).add(riskListener);
+			updateEager(instrument);
 		}
 		
 		return riskListener;
@@ -103,47 +277,608 @@ public class RiskService {
 		synchronized(riskListenerLock) {
 			if (riskListeners.containsKey(instrument)) {
 				riskListeners.get(instrument).remove(riskListener);
+				boolean last = riskListeners.get(instrument).isEmpty();
+				if (last) {
+					riskListeners.remove(instrument);
+				}
+				// before unsubscribing, which may release the instrument's id
+				updateEager(instrument);
+				if (last) {
+					unsubscribe(instrument);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add a batch listener for risk on the specified instrument. Updates to all the instruments the listener
+	 * subscribes to are delivered together, in batches collected over the batch window.
+	 * @param instrument
+	 * @param riskBatchListener
+	 * @return
+	 */
+	public RiskBatchListener addRiskBatchListener(FinancialInstrument instrument, RiskBatchListener riskBatchListener) {
+		Log.getLogger().info("RiskService " + getName() + ": adding batch subscription for " + instrument);
+		if (instrument == null || riskBatchListener == null) return null;
+		
+		synchronized(riskListenerLock) {
+			if (!riskBatchListeners.containsKey(instrument)) {
+				riskBatchListeners.put(instrument, new ArrayList<>());
+				++riskBatchInstrumentCount;
+				subscribe(instrument);
 			}
+			riskBatchListeners.get(instrument).add(riskBatchListener);
+			hasRiskBatchListeners = true;
+			updateEager(instrument);
+		}
+		
+		return riskBatchListener;
+	}
+	
+	/**
+	 * Remove a batch listener for risk on the specified instrument
+	 * @param instrument
+	 * @param riskBatchListener
+	 */
+	public void removeRiskBatchListener(FinancialInstrument instrument, RiskBatchListener riskBatchListener) {
+		Log.getLogger().info("RiskService " + getName() + ": removing batch subscription for " + instrument);
+		if (instrument == null || riskBatchListener == null) return;
+		
+		synchronized(riskListenerLock) {
+			if (riskBatchListeners.containsKey(instrument)) {
+				riskBatchListeners.get(instrument).remove(riskBatchListener);
+				boolean last = riskBatchListeners.get(instrument).isEmpty();
+				if (last) {
+					riskBatchListeners.remove(instrument);
+					--riskBatchInstrumentCount;
+				}
+				// before unsubscribing, which may release the instrument's id
+				updateEager(instrument);
+				if (last) {
+					unsubscribe(instrument);
+				}
+			}
+			hasRiskBatchListeners = riskBatchInstrumentCount > 0;
+		}
+	}
+	
+	/**
+	 * Set the window over which risk updates are collected into batches for batch listeners, in milliseconds.
+	 * The default of zero delivers each update to them immediately, in a batch of its own.
+	 * @param windowMillis
+	 */
+	public void setBatchWindow(long windowMillis) {
+		batchPublisher.setWindowMillis(windowMillis);
+	}
+	
+	/**
+	 * Return the publisher collecting risk updates into batches for batch listeners
+	 * @return
+	 */
+	public RiskBatchPublisher getBatchPublisher() {
+		return batchPublisher;
+	}
+	
+	// subscribe to the market data of the instrument, or its risk on the risk data source, unless already subscribed -
+	// must be called holding riskListenerLock
+	private void subscribe(FinancialInstrument instrument) {
+		if (riskDataSource != null) {
+			if (riskDataSubscriptions.put(instrument, Boolean.TRUE) == null) {
+				InstrumentRegistry.retain(instrument);
+				riskDataSource.addSubscription(instrument, riskDataPublisher);
+			}
+			return;
+		}
+		
+		if (marketDataListeners.containsKey(instrument)) {
+			return;
+		}
+		
+		InstrumentRegistry.retain(instrument);
+		MarketDataListener marketDataListener = 
+				(MarketDataListener)marketDataService.addListener(instrument, new MarketDataListener() {
+
+					@Override
+					public void onUpdate(FinancialInstrument instrument, MarketData marketData) {
+						if (isLazy(instrument)) {
+							markStale(instrument, marketData);
+						} else if (computeExecutor != null) {
+							int id = InstrumentRegistry.findId(instrument);
+							if (id < 0) {
+								// delivered after the instrument was unsubscribed
+								return;
+							}
+							pendingMarketData.put(id, marketData);
+							computeExecutor.submit(instrument, () -> recalculatePending(instrument));
+						} else {
+							publishRisk(instrument, calculateRisk(instrument, marketData));
+						}
+					}
+					
+				});
+		
+		marketDataListeners.put(instrument, marketDataListener);
+		
+		if (instrument instanceof EuropeanOption) {
+			addDependentOption((EuropeanOption)instrument);
+		}
+	}
+	
+	// if we have no more risk subscriptions, we no longer need the market data - must be called holding riskListenerLock
+	private void unsubscribe(FinancialInstrument instrument) {
+		if (riskListeners.containsKey(instrument) || riskBatchListeners.containsKey(instrument)) {
+			return;
+		}
+		
+		if (riskDataSource != null) {
+			if (riskDataSubscriptions.remove(instrument) != null) {
+				riskDataSource.removeSubscription(instrument);
+				staleRisk.remove(instrument);
+				cache.removeRisk(instrument);
+				InstrumentRegistry.release(instrument);
+			}
+			return;
+		}
+		
+		if (!marketDataListeners.containsKey(instrument)) {
+			return;
+		}
+		
+		marketDataService.removeListener(instrument, marketDataListeners.remove(instrument));
+		staleRisk.remove(instrument);
+		
+		if (instrument instanceof EuropeanOption) {
+			removeDependentOption((EuropeanOption)instrument);
+		}
+		if (incrementalRevaluation != null) {
+			incrementalRevaluation.remove(instrument);
+		}
+		if (computeExecutor != null) {
+			computeExecutor.remove(instrument);
+			pendingMarketData.remove(instrument);
+		}
+		if (instrument.getModel() != null) {
+			instrument.getModel().release(instrument);
+		}
+		if (priceTables != null) {
+			// released with the model's cached state for the option
+			priceTables.remove(instrument);
+		}
+		cache.removeRisk(instrument);
+		InstrumentRegistry.release(instrument);
+	}
+	
+	/**
+	 * Return the cache holding the latest risk published by this service
+	 * @return
+	 */
+	public RiskCache getRiskCache() {
+		return cache;
+	}
+	
+	/**
+	 * Return the source of risk calculated outside this service, or null if risk is calculated by this service
+	 * @return
+	 */
+	public ServiceDataSource<FinancialInstrument, Risk> getRiskDataSource() {
+		return riskDataSource;
+	}
+	
+	/**
+	 * Start the risk data source, if any
+	 */
+	public void start() {
+		Log.getLogger().info("RiskService " + getName() + ": start");
+		if (riskDataSource != null) {
+			riskDataSource.start();
+		}
+	}
+	
+	/**
+	 * Return the spot grid price tables of this service, or null if it doesn't use them
+	 * @return
+	 */
+	public SpotGridPriceTableCache getPriceTables() {
+		return priceTables;
+	}
+	
+	/**
+	 * Return the incremental revaluation of this service, or null if it doesn't use it
+	 * @return
+	 */
+	public IncrementalRevaluation getIncrementalRevaluation() {
+		return incrementalRevaluation;
+	}
+	
+	/**
+	 * Return the executor recalculating risk for this service, or null if risk is recalculated on the market data threads
+	 * @return
+	 */
+	public ConflatingExecutor<FinancialInstrument> getComputeExecutor() {
+		return computeExecutor;
+	}
+	
+	/**
+	 * Return the graph of instruments recalculated when their inputs change
+	 * @return
+	 */
+	public DependencyGraph<FinancialInstrument> getDependencyGraph() {
+		return dependencyGraph;
+	}
+	
+	private boolean isTabulated(FinancialInstrument instrument) {
+		return priceTables != null && instrument instanceof EuropeanOption &&
+				((EuropeanOption)instrument).getExerciseStyle() == ExerciseStyle.EUROPEAN;
+	}
+	
+	// must be called holding riskListenerLock
+	private void addDependentOption(EuropeanOption option) {
+		FinancialInstrument underlying = option.getUnderlying();
+		if (!underlyingListeners.containsKey(underlying)) {
+			Log.getLogger().debug("RiskService " + getName() + ": subscribing to underlying " + underlying + " for option revaluation");
+			MarketDataListener underlyingListener = 
+					(MarketDataListener)marketDataService.addListener(underlying, new MarketDataListener() {
+
+						@Override
+						public void onUpdate(FinancialInstrument underlying, MarketData marketData) {
+							onUnderlyingUpdate(underlying, marketData);
+						}
+						
+					});
 			
-			// if we have no more risk subscriptions, we no longer need the market data
-			if (riskListeners.get(instrument).isEmpty()) {
-				marketDataService.removeListener(instrument, marketDataListeners.remove(instrument));
-				riskListeners.remove(instrument);
+			underlyingListeners.put(underlying, underlyingListener);
+		}
+		dependencyGraph.addDependency(underlying, option);
+	}
+	
+	// must be called holding riskListenerLock
+	private void removeDependentOption(EuropeanOption option) {
+		FinancialInstrument underlying = option.getUnderlying();
+		dependencyGraph.removeNode(option);
+		if (!dependencyGraph.contains(underlying) && underlyingListeners.containsKey(underlying)) {
+			marketDataService.removeListener(underlying, underlyingListeners.remove(underlying));
+		}
+	}
+	
+	/**
+	 * Mark the options on the underlying dirty following an update to its price, and recalculate them
+	 * unless a recalculation is already due. On the compute executor each option is recalculated under its own key,
+	 * so never concurrently with a recalculation following its own tick, which could publish an older result last.
+	 * Options depend on nothing but their own and their underlying's prices, so there is no order between them to keep.
+	 * @param underlying
+	 * @param marketData
+	 */
+	protected void onUnderlyingUpdate(FinancialInstrument underlying, MarketData marketData) {
+		if (dependencyGraph.markChanged(underlying) == 0) {
+			return;
+		}
+		
+		if (computeExecutor == null) {
+			recalculateDependents();
+			return;
+		}
+		for (FinancialInstrument instrument : dependencyGraph.takeDirty()) {
+			if (isLazy(instrument)) {
+				markStale(instrument, null);
+			} else {
+				computeExecutor.submit(instrument, () -> recalculatePending(instrument));
+			}
+		}
+	}
+	
+	/**
+	 * Recalculate and publish the risk of an instrument on the compute executor, from its own latest market data if
+	 * not yet priced, and otherwise from the latest market data of its inputs. Both kinds of update submit this same
+	 * task, so conflating one with the other loses neither.
+	 * @param instrument
+	 */
+	private void recalculatePending(FinancialInstrument instrument) {
+		MarketData marketData = pendingMarketData.remove(instrument);
+		if (marketData != null) {
+			publishRisk(instrument, calculateRisk(instrument, marketData));
+		} else {
+			publishRisk(instrument, recalculateRisk(instrument));
+		}
+	}
+	
+	/**
+	 * Recalculate and publish the risk of every instrument marked dirty by a change to its inputs, in topological order
+	 */
+	protected void recalculateDependents() {
+		for (FinancialInstrument instrument : dependencyGraph.takeDirty()) {
+			if (isLazy(instrument)) {
+				markStale(instrument, null);
+			} else {
+				publishRisk(instrument, recalculateRisk(instrument));
+			}
+		}
+	}
+	
+	/**
+	 * Recalculate the risk of an instrument following a change to its inputs from the latest market data. Tabulated
+	 * options are revalued by interpolation where possible. Otherwise options are revalued in full, holding the volatility
+	 * of their last table or valuation, as their own price is stale relative to the new underlying price. 
+	 * Returns null if there is no market data yet.
+	 * @param instrument
+	 * @return
+	 */
+	protected Risk recalculateRisk(FinancialInstrument instrument) {
+		try {
+			if (!(instrument instanceof EuropeanOption)) {
+				return calculateRisk(instrument, marketDataService.getData(instrument));
+			}
+			
+			EuropeanOption option = (EuropeanOption)instrument;
+			if (isTabulated(option)) {
+				MarketData underlyingPrice = marketDataService.getData(option.getUnderlying());
+				if (underlyingPrice.getType() == MarketData.Type.PRICE) {
+					Risk risk = priceTables.calculateRisk(option, underlyingPrice.getMid(), valueDate);
+					if (risk != null) {
+						return risk;
+					}
+				}
+			}
+			return calculateRisk(option, getHeldVolatility(option));
+		} catch (ServiceException e) {
+			Log.getLogger().debug("RiskService " + getName() + ": no market data yet for " + instrument);
+			return null;
+		}
+	}
+	
+	private MarketData getHeldVolatility(EuropeanOption option) throws ServiceException {
+		SpotGridPriceTable table = priceTables != null ? priceTables.getTable(option) : null;
+		if (table != null) {
+			return new MarketData(option.getIdentifier(), table.getVolatility(), MarketData.Type.VOLATILITY);
+		}
+		Risk risk = cache.getRisk(option);
+		if (risk != null && risk.getImpliedVolatility() > 0.0) {
+			return new MarketData(option.getIdentifier(), risk.getImpliedVolatility(), MarketData.Type.VOLATILITY);
+		}
+		return marketDataService.getData(option);
+	}
+	
+	/**
+	 * Set lazy mode. In lazy mode a change to the inputs of an instrument's risk marks it stale rather than
+	 * computing it, unless the instrument has eager or batch listeners. Its other listeners are told it is stale,
+	 * and it is computed when next read with getRisk, then memoized until its inputs change again.
+	 * @param lazy
+	 */
+	public void setLazy(boolean lazy) {
+		Log.getLogger().info("RiskService " + getName() + ": lazy mode " + (lazy ? "on" : "off"));
+		this.lazy = lazy;
+	}
+	
+	/**
+	 * Return true if the service is in lazy mode
+	 * @return
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	private boolean isLazy(FinancialInstrument instrument) {
+		return lazy && eagerInstruments.get(instrument) == null;
+	}
+	
+	// must be called holding riskListenerLock
+	private void updateEager(FinancialInstrument instrument) {
+		List<RiskListener> listeners = riskListeners.get(instrument);
+		boolean eager = riskBatchListeners.containsKey(instrument) ||
+				(listeners != null && listeners.stream().anyMatch(listener -> listener instanceof EagerRiskListener));
+		if (eager) {
+			eagerInstruments.put(instrument, Boolean.TRUE);
+		} else {
+			eagerInstruments.remove(instrument);
+		}
+	}
+	
+	/**
+	 * Mark the risk of the instrument stale, to be computed from the given market data when next read, or
+	 * recalculated from the latest market data if it is null. A change to other inputs, with null market data,
+	 * keeps the instrument's own market data pending from an earlier change, which is newer than any it was valued at.
+	 * Listeners are told when the risk becomes stale, but not again until it has been read.
+	 * Changes arriving after the instrument was unsubscribed, and its id released, are ignored.
+	 * @param instrument
+	 * @param marketData
+	 */
+	protected void markStale(FinancialInstrument instrument, MarketData marketData) {
+		int id = InstrumentRegistry.findId(instrument);
+		if (id < 0) {
+			return;
+		}
+		staleCount.increment();
+		// the pending entry is always replaced, so a read under way with older inputs doesn't memoize its result
+		StaleRisk previous = staleRisk.merge(id, new StaleRisk(marketData),
+				(pending, update) -> update.marketData == null && pending.marketData != null ? new StaleRisk(pending.marketData) : update);
+		if (previous == null) {
+			notifyRiskStale(instrument);
+		}
+	}
+	
+	/**
+	 * Return the latest risk of the instrument, or null if there is none. In lazy mode stale risk is computed
+	 * first, and kept until the instrument's inputs next change.
+	 * @param instrument
+	 * @return
+	 */
+	public Risk getRisk(FinancialInstrument instrument) {
+		if (instrument == null) return null;
+		
+		int id = InstrumentRegistry.findId(instrument);
+		if (id < 0) {
+			return null;
+		}
+		StaleRisk stale = staleRisk.get(id);
+		if (stale == null) {
+			return cache.getRisk(id);
+		}
+		
+		Risk risk = stale.marketData != null ? calculateRisk(instrument, stale.marketData) : recalculateRisk(instrument);
+		lazyCalculationCount.increment();
+		if (risk == null) {
+			return cache.getRisk(id);
+		}
+		synchronized(staleRiskLock) {
+			// keep the risk only if its inputs are still the latest - the remove fails if they changed since
+			if (staleRisk.get(id) == stale) {
+				cache.insertRisk(id, risk);
+				staleRisk.remove(id, stale);
 			}
 		}
+		return risk;
+	}
+	
+	/**
+	 * Return the latest risk of the instrument as getRisk does, except that with a compute executor stale risk
+	 * is computed on the executor rather than by the caller. Then null is returned, and the listeners to the
+	 * instrument are notified of the risk when it is computed, or told it is stale again if its inputs
+	 * changed meanwhile.
+	 * @param instrument
+	 * @return
+	 */
+	public Risk requestRisk(FinancialInstrument instrument) {
+		if (instrument == null) return null;
+		
+		if (computeExecutor == null || !isStale(instrument)) {
+			return getRisk(instrument);
+		}
+		computeExecutor.submit(instrument, () -> calculateStaleRisk(instrument));
+		return null;
+	}
+	
+	private void calculateStaleRisk(FinancialInstrument instrument) {
+		if (!isStale(instrument)) {
+			return;
+		}
+		Risk risk = getRisk(instrument);
+		if (risk == null) {
+			return;
+		}
+		if (isStale(instrument)) {
+			notifyRiskStale(instrument);
+		} else {
+			notifyRiskListeners(instrument, risk);
+		}
 	}
 	
 	/**
-	 * Notify all listeners of a risk update on the given instrument
+	 * Return true if the risk of the instrument is stale, and will be computed when next read
 	 * @param instrument
+	 * @return
+	 */
+	public boolean isStale(FinancialInstrument instrument) {
+		return staleRisk.get(instrument) != null;
+	}
+	
+	/**
+	 * Return the number of changes to inputs which marked risk stale rather than computing it
+	 * @return
 	 */
-	protected void notifyRiskListeners(FinancialInstrument instrument) {
+	public long getStaleCount() {
+		return staleCount.sum();
+	}
+	
+	/**
+	 * Return the number of times stale risk has been computed on reading it
+	 * @return
+	 */
+	public long getLazyCalculationCount() {
+		return lazyCalculationCount.sum();
+	}
+	
+	/**
+	 * Notify the listeners to the instrument that its risk is stale
+	 * @param instrument
+	 */
+	protected void notifyRiskStale(FinancialInstrument instrument) {
+		Log.getLogger().info("RiskService " + getName() + ": notifying subscriptions to " + instrument + " of stale risk");
+		List<RiskListener> listenersCopy = null;
+		synchronized(riskListenerLock) {
+			List<RiskListener> listeners = riskListeners.get(instrument);
+			if (listeners != null) {
+				listenersCopy = new ArrayList<>(listeners);
+			}
+		}
+		
+		if (listenersCopy != null) {
+			listenersCopy.forEach(listener -> listener.onRiskStale(instrument));
+		}
+	}
+	
+	/**
+	 * Notify all listeners of a risk update on the given instrument, passing each the risk published rather than
+	 * reading it back from the cache, which for a DenseRiskCache would build a new Risk for every listener
+	 * @param instrument
+	 * @param risk
+	 */
+	protected void notifyRiskListeners(FinancialInstrument instrument, Risk risk) {
 		Log.getLogger().info("RiskService " + getName() + ": notifying subscriptions to " + instrument);
 		if (instrument == null) return;
 		
+		int id = InstrumentRegistry.findId(instrument);
+		if (id < 0) {
+			return;
+		}
 		List<RiskListener> listenersCopy = null;
 		synchronized(riskListenerLock) {
-			if (riskListeners.containsKey(instrument)) {
-				listenersCopy = new ArrayList<>(riskListeners.get(instrument));
+			List<RiskListener> listeners = riskListeners.get(id);
+			if (listeners != null) {
+				listenersCopy = new ArrayList<>(listeners);
 			}
 		}
 		
 		if (listenersCopy != null) {
-			listenersCopy.forEach(listener -> listener.onRiskUpdate(instrument, cache.getRisk(instrument)));
+			listenersCopy.forEach(listener -> listener.onRiskUpdate(instrument, risk));
 		}
 	}
 	
+	/**
+	 * Notify the batch listeners of the instruments in a batch of risk updates, each with the updates of the
+	 * instruments it subscribes to
+	 * @param batch
+	 */
+	protected void notifyRiskBatchListeners(Map<FinancialInstrument, Risk> batch) {
+		Log.getLogger().info("RiskService " + getName() + ": notifying batch subscriptions to " + batch.size() + " instruments");
+		Map<RiskBatchListener, Map<FinancialInstrument, Risk>> listenerBatches = new IdentityHashMap<>();
+		synchronized(riskListenerLock) {
+			batch.forEach((instrument, risk) -> {
+				List<RiskBatchListener> listeners = riskBatchListeners.get(instrument);
+				if (listeners != null) {
+					listeners.forEach(listener -> listenerBatches.computeIfAbsent(listener, l -> new HashMap<>()).put(instrument, risk));
+				}
+			});
+		}
+		
+		listenerBatches.forEach((listener, listenerBatch) -> listener.onRiskBatch(Collections.unmodifiableMap(listenerBatch)));
+	}
+	
 	/**
 	 * Publish risk for the given instrument - the service will notify all registered listeners for
-	 * that piece of risk.
+	 * that piece of risk. Risk published after the instrument was unsubscribed, and its id released, is dropped.
 	 * @param instrument
 	 * @param risk
 	 */
 	public void publishRisk(FinancialInstrument instrument, Risk risk) {
 		Log.getLogger().info("RiskService " + getName() + ": publish: " + instrument + risk);
 		if (instrument == null || risk == null) return;
-		cache.insertRisk(instrument, risk);
-		notifyRiskListeners(instrument);
+		int id = InstrumentRegistry.findId(instrument);
+		if (id < 0) {
+			Log.getLogger().debug("RiskService " + getName() + ": dropping risk of unsubscribed " + instrument);
+			return;
+		}
+		if (staleRisk.get(id) != null) {
+			// risk left stale from lazy mode is superseded
+			synchronized(staleRiskLock) {
+				staleRisk.remove(id);
+				cache.insertRisk(id, risk);
+			}
+		} else {
+			cache.insertRisk(id, risk);
+		}
+		notifyRiskListeners(instrument, risk);
+		if (hasRiskBatchListeners) {
+			batchPublisher.publish(instrument, risk);
+		}
 	}
 		
 	protected Risk calculateRisk(FinancialInstrument instrument, MarketData marketData) {	
@@ -152,14 +887,29 @@ public class RiskService {
 			Map<FinancialInstrument, MarketData> map = new HashMap<>();
 			map.put(instrument, marketData);
 			
+			MarketData underlyingPrice = null;
 			if (instrument instanceof EuropeanOption) {
 				EuropeanOption option = (EuropeanOption) instrument;
-				MarketData underlyingPrice = marketDataService.getData(option.getUnderlying()); 
+				underlyingPrice = marketDataService.getData(option.getUnderlying()); 
 				map.put(option.getUnderlying(), underlyingPrice);
+				
+				if (incrementalRevaluation != null) {
+					Risk risk = incrementalRevaluation.revalue(instrument, underlyingPrice, marketData, valueDate);
+					if (risk != null) {
+						return risk;
+					}
+				}
 			}
 		
 			MarketDataCollection marketDataCollection = new MarketDataCollection(map);
-			return instrument.getModel().calculateRisk(instrument, marketDataCollection, valueDate);
+			Risk risk = instrument.getModel().calculateRisk(instrument, marketDataCollection, valueDate);
+			if (incrementalRevaluation != null && underlyingPrice != null) {
+				incrementalRevaluation.recordFullRevaluation(instrument, underlyingPrice, marketData, risk, valueDate);
+			}
+			if (isTabulated(instrument)) {
+				priceTables.update((EuropeanOption)instrument, risk.getUnderlyingPrice(), risk.getImpliedVolatility(), valueDate);
+			}
+			return risk;
 		} catch (ModelException | ServiceException e) {
 			Log.getLogger().error("RiskService " + getName() + ": " + e.getMessage(), e);
 			return new Risk();
@@ -174,6 +924,25 @@ public class RiskService {
 		synchronized(riskListenerLock) {
 			marketDataListeners.clear();
 			riskListeners.clear();
+			riskBatchListeners.clear();
+			riskBatchInstrumentCount = 0;
+			hasRiskBatchListeners = false;
+			underlyingListeners.clear();
+			dependencyGraph.clear();
+			eagerInstruments.clear();
+			staleRisk.clear();
+			pendingMarketData.clear();
+			riskDataSubscriptions.clear();
+		}
+		batchPublisher.shutdown();
+		if (riskDataSource != null) {
+			riskDataSource.shutdown();
+		}
+		if (computeExecutor != null) {
+			computeExecutor.shutdown();
+		}
+		if (incrementalRevaluation != null) {
+			incrementalRevaluation.clear();
 		}
 	}
 }
@@ -0,0 +1,201 @@
+package com.ngray.option.risk.shard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.AmericanOption;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.risk.Risk;
+
+/**
+ * The binary protocol between a ShardedRiskDataSource and its RiskWorkers. Each frame is a one byte type
+ * followed by fixed width big-endian fields, with instruments referred to by the InstrumentRegistry ids of
+ * the main process, so a tick is 30 bytes and a risk update 109. A worker is told of each instrument once,
+ * underlyings before their options, before it is sent market data for it or subscribed to its risk.
+ * @author nigelgray
+ *
+ */
+final class RiskWireProtocol {
+
+	// worker to main process, once on connecting: int shard
+	static final byte HELLO = 1;
+
+	// main process to worker: int id, UTF identifier
+	static final byte DEFINE_SECURITY = 2;
+
+	// main process to worker: int id, UTF identifier, int underlying id, double strike, long expiry epoch day, byte type,
+	// byte exercise style, double dividend yield, double risk free rate - NaN if there is no reference data
+	static final byte DEFINE_OPTION = 3;
+
+	// main process to worker: int id
+	static final byte SUBSCRIBE = 4;
+
+	// main process to worker: int id
+	static final byte UNSUBSCRIBE = 5;
+
+	// main process to worker: int id, byte type, double mid, double bid, double offer
+	static final byte MARKET_DATA = 6;
+
+	// worker to main process: int id, then the 13 doubles of the risk
+	static final byte RISK = 7;
+
+	// main process to worker
+	static final byte SHUTDOWN = 8;
+
+	private RiskWireProtocol() {
+	}
+
+	static void writeHello(DataOutputStream out, int shard) throws IOException {
+		out.writeByte(HELLO);
+		out.writeInt(shard);
+	}
+
+	/**
+	 * Write the definition of the instrument, whose underlying, if an option, must already be defined
+	 * @param out
+	 * @param id
+	 * @param instrument
+	 * @throws IOException
+	 */
+	static void writeDefinition(DataOutputStream out, int id, FinancialInstrument instrument) throws IOException {
+		if (instrument instanceof EuropeanOption) {
+			EuropeanOption option = (EuropeanOption)instrument;
+			out.writeByte(DEFINE_OPTION);
+			out.writeInt(id);
+			out.writeUTF(option.getIdentifier());
+			out.writeInt(option.getUnderlying().getInstrumentId());
+			out.writeDouble(option.getStrike());
+			out.writeLong(option.getExpiryDate().toEpochDay());
+			out.writeByte(option.getType().ordinal());
+			out.writeByte(option.getExerciseStyle().ordinal());
+			double dividendYield = Double.NaN;
+			double riskFreeRate = Double.NaN;
+			try {
+				OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(option.getIdentifier());
+				dividendYield = refData.getDividendYield();
+				riskFreeRate = refData.getRiskFreeRate();
+			} catch (MissingReferenceDataException e) {
+				Log.getLogger().warn("No reference data to send to worker for " + option.getIdentifier());
+			}
+			out.writeDouble(dividendYield);
+			out.writeDouble(riskFreeRate);
+		} else {
+			out.writeByte(DEFINE_SECURITY);
+			out.writeInt(id);
+			out.writeUTF(instrument.getIdentifier());
+		}
+	}
+
+	/**
+	 * Read the definition of an instrument, after its frame type, and add it to the instruments by id. The reference
+	 * data of an option is added to the OptionReferenceDataMap of this process.
+	 * @param in
+	 * @param frameType
+	 * @param instruments
+	 * @return
+	 * @throws IOException
+	 */
+	static FinancialInstrument readDefinition(DataInputStream in, byte frameType, Map<Integer, FinancialInstrument> instruments) throws IOException {
+		int id = in.readInt();
+		String identifier = in.readUTF();
+		FinancialInstrument instrument;
+		if (frameType == DEFINE_OPTION) {
+			FinancialInstrument underlying = instruments.get(in.readInt());
+			if (!(underlying instanceof Security)) {
+				throw new IOException("Option " + identifier + " defined before its underlying");
+			}
+			double strike = in.readDouble();
+			LocalDate expiryDate = LocalDate.ofEpochDay(in.readLong());
+			EuropeanOption.Type type = EuropeanOption.Type.values()[in.readByte()];
+			ExerciseStyle exerciseStyle = ExerciseStyle.values()[in.readByte()];
+			double dividendYield = in.readDouble();
+			double riskFreeRate = in.readDouble();
+			if (exerciseStyle == ExerciseStyle.AMERICAN) {
+				instrument = new AmericanOption(identifier, (Security)underlying, strike, expiryDate, type);
+			} else {
+				instrument = new EuropeanOption(identifier, (Security)underlying, strike, expiryDate, type);
+			}
+			if (!Double.isNaN(dividendYield) && !Double.isNaN(riskFreeRate)) {
+				OptionReferenceDataMap.insert(identifier, new OptionReferenceData(identifier, (Security)underlying, strike, expiryDate,
+						type, dividendYield, riskFreeRate, exerciseStyle));
+			}
+		} else {
+			instrument = new Security(identifier);
+		}
+		instruments.put(id, instrument);
+		return instrument;
+	}
+
+	static void writeId(DataOutputStream out, byte frameType, int id) throws IOException {
+		out.writeByte(frameType);
+		out.writeInt(id);
+	}
+
+	static void writeMarketData(DataOutputStream out, int id, MarketData marketData) throws IOException {
+		out.writeByte(MARKET_DATA);
+		out.writeInt(id);
+		out.writeByte(marketData.getType().ordinal());
+		out.writeDouble(marketData.getMid());
+		out.writeDouble(marketData.getBid());
+		out.writeDouble(marketData.getOffer());
+	}
+
+	/**
+	 * Read market data for the instrument, after its id
+	 * @param in
+	 * @param instrument
+	 * @return
+	 * @throws IOException
+	 */
+	static MarketData readMarketData(DataInputStream in, FinancialInstrument instrument) throws IOException {
+		MarketData.Type type = MarketData.Type.values()[in.readByte()];
+		double mid = in.readDouble();
+		double bid = in.readDouble();
+		double offer = in.readDouble();
+		if (Double.isNaN(bid) || Double.isNaN(offer)) {
+			return new MarketData(instrument.getIdentifier(), mid, type);
+		}
+		return new MarketData(instrument.getIdentifier(), bid, offer, type);
+	}
+
+	static void writeRisk(DataOutputStream out, int id, Risk risk) throws IOException {
+		out.writeByte(RISK);
+		out.writeInt(id);
+		out.writeDouble(risk.getValue());
+		out.writeDouble(risk.getDelta());
+		out.writeDouble(risk.getGamma());
+		out.writeDouble(risk.getVega());
+		out.writeDouble(risk.getTheta());
+		out.writeDouble(risk.getRho());
+		out.writeDouble(risk.getVanna());
+		out.writeDouble(risk.getVolga());
+		out.writeDouble(risk.getCharm());
+		out.writeDouble(risk.getSpeed());
+		out.writeDouble(risk.getImpliedVolatility());
+		out.writeDouble(risk.getPrice());
+		out.writeDouble(risk.getUnderlyingPrice());
+	}
+
+	/**
+	 * Read a risk update, after its id
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static Risk readRisk(DataInputStream in) throws IOException {
+		return new Risk(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+				in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+				in.readDouble(), in.readDouble(), in.readDouble());
+	}
+}
@@ -0,0 +1,179 @@
+package com.ngray.option.risk.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+import com.ngray.option.service.ConflatingExecutor;
+
+/**
+ * A worker process calculating the risk of one shard of the instruments of a ShardedRiskDataSource.
+ * The worker connects back to the main process, and runs an ordinary RiskService fed by the market data
+ * the main process forwards to it, sending back the risk of the instruments it is subscribed to.
+ * Underlying ticks recalculate the options on them within the worker, as every option is placed on the
+ * shard of its underlying.
+ * @author nigelgray
+ *
+ */
+public class RiskWorker {
+
+	private final int shard;
+
+	private final MarketDataService marketDataService;
+
+	private final RiskService riskService;
+
+	// instruments keyed by the InstrumentRegistry ids of the main process
+	private final Map<Integer, FinancialInstrument> instruments;
+
+	private final Map<Integer, RiskListener> riskListeners;
+
+	private DataOutputStream out;
+
+	/**
+	 * Create a worker for the given shard, calculating risk on the given number of threads
+	 * @param shard
+	 * @param valueDate
+	 * @param threads
+	 */
+	public RiskWorker(int shard, LocalDate valueDate, int threads) {
+		Log.getLogger().info("Constructing RiskWorker " + shard);
+		this.shard = shard;
+		this.marketDataService = new MarketDataService("MarketData-Worker" + shard, null);
+		ConflatingExecutor<FinancialInstrument> computeExecutor = new ConflatingExecutor<>("RiskCompute-Worker" + shard, threads);
+		this.riskService = new RiskService("Worker" + shard, marketDataService, valueDate, null, null, computeExecutor);
+		this.instruments = new HashMap<>();
+		this.riskListeners = new HashMap<>();
+	}
+
+	/**
+	 * Serve the main process over the socket until it sends shutdown or disconnects
+	 * @param socket
+	 * @throws IOException
+	 */
+	public void run(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		synchronized(out) {
+			RiskWireProtocol.writeHello(out, shard);
+			out.flush();
+		}
+
+		try {
+			while (true) {
+				byte frameType = in.readByte();
+				switch (frameType) {
+				case RiskWireProtocol.DEFINE_SECURITY:
+				case RiskWireProtocol.DEFINE_OPTION:
+					RiskWireProtocol.readDefinition(in, frameType, instruments);
+					break;
+				case RiskWireProtocol.SUBSCRIBE:
+					subscribe(in.readInt());
+					break;
+				case RiskWireProtocol.UNSUBSCRIBE:
+					unsubscribe(in.readInt());
+					break;
+				case RiskWireProtocol.MARKET_DATA:
+					FinancialInstrument instrument = getInstrument(in.readInt());
+					marketDataService.publishData(instrument, RiskWireProtocol.readMarketData(in, instrument));
+					break;
+				case RiskWireProtocol.SHUTDOWN:
+					Log.getLogger().info("RiskWorker " + shard + ": shutdown requested");
+					return;
+				default:
+					throw new IOException("Unknown frame type " + frameType);
+				}
+			}
+		} catch (EOFException e) {
+			Log.getLogger().info("RiskWorker " + shard + ": main process disconnected");
+		} finally {
+			shutdown();
+		}
+	}
+
+	private FinancialInstrument getInstrument(int id) throws IOException {
+		FinancialInstrument instrument = instruments.get(id);
+		if (instrument == null) {
+			throw new IOException("Undefined instrument id " + id);
+		}
+		return instrument;
+	}
+
+	private void subscribe(int id) throws IOException {
+		if (riskListeners.containsKey(id)) {
+			return;
+		}
+		RiskListener listener = (instrument, risk) -> sendRisk(id, risk);
+		riskListeners.put(id, listener);
+		riskService.addRiskListener(getInstrument(id), listener);
+	}
+
+	private void unsubscribe(int id) throws IOException {
+		RiskListener listener = riskListeners.remove(id);
+		if (listener != null) {
+			riskService.removeRiskListener(getInstrument(id), listener);
+		}
+	}
+
+	private void sendRisk(int id, Risk risk) {
+		if (risk == null) return;
+
+		try {
+			synchronized(out) {
+				RiskWireProtocol.writeRisk(out, id, risk);
+				out.flush();
+			}
+		} catch (IOException e) {
+			Log.getLogger().error("RiskWorker " + shard + ": error sending risk: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Shutdown the worker
+	 */
+	public void shutdown() {
+		Log.getLogger().info("RiskWorker " + shard + " shutdown");
+		riskService.shutdown();
+		marketDataService.shutdown();
+	}
+
+	/**
+	 * Entry-point. Arguments are:
+	 * 1. the loopback port of the main process
+	 * 2. the shard of this worker
+	 * 3. the value date
+	 * 4. the number of threads calculating risk
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length != 4) {
+			Log.getLogger().fatal("Usage: <port> <shard> <valuedate> <threads>");
+			System.exit(1);
+		}
+
+		int port = Integer.parseInt(args[0]);
+		RiskWorker worker = new RiskWorker(Integer.parseInt(args[1]), LocalDate.parse(args[2]), Integer.parseInt(args[3]));
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			worker.run(socket);
+		} catch (IOException e) {
+			Log.getLogger().fatal("RiskWorker " + args[1] + ": " + e.getMessage(), e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
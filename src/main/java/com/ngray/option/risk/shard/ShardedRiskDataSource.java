@@ -0,0 +1,663 @@
+package com.ngray.option.risk.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentArray;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataListener;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskDataPublisher;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+import com.ngray.option.service.ServiceDataPublisher;
+import com.ngray.option.service.ServiceDataSource;
+import com.ngray.option.service.ServiceException;
+
+/**
+ * A source of risk calculated in worker processes on this host, for a RiskService whose book is too large
+ * to reprice in one process. Instruments are partitioned by underlying, each underlying and the options on it
+ * being placed on the least loaded worker when first subscribed to. The market data of subscribed instruments
+ * and their underlyings is forwarded to their worker, which sends back their risk, published on one thread per
+ * worker. Workers connect back to this process over loopback sockets, speaking the RiskWireProtocol. Frames are
+ * queued for a writer thread per worker, so the market data threads never block on a socket.
+ * The workers are launched on start, or on the first subscription if earlier, and are not restarted if they fail.
+ * When a worker fails its instruments are marked stale, if subscribed to by a RiskDataPublisher, and placed on
+ * the remaining workers. With no worker left, or if none could be started, risk is calculated in this process.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ */
+public class ShardedRiskDataSource implements ServiceDataSource<FinancialInstrument, Risk> {
+
+	// the shard of instruments whose risk is calculated in this process
+	public static final int IN_PROCESS = -2;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	// writes a frame to a worker
+	private interface FrameWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	// a worker process and the connection to it
+	private class Shard {
+		private final int index;
+		private final Process process;
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		// frames waiting for the writer thread
+		private final BlockingQueue<FrameWriter> frames;
+		private Thread writer;
+
+		// false once the worker has failed or been shut down
+		private volatile boolean alive;
+
+		// the instruments defined to the worker by id, guarded by the data source's lock
+		private final Map<Integer, FinancialInstrument> defined;
+		private int instrumentCount;
+
+		Shard(int index, Process process, Socket socket, DataInputStream in) throws IOException {
+			this.index = index;
+			this.process = process;
+			this.socket = socket;
+			this.in = in;
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.frames = new LinkedBlockingQueue<>();
+			this.alive = true;
+			this.defined = new HashMap<>();
+			this.instrumentCount = 0;
+		}
+
+		void start() {
+			Thread reader = new Thread(this::read, getName() + "-worker-" + index);
+			reader.setDaemon(true);
+			reader.start();
+			writer = new Thread(this::write, getName() + "-worker-" + index + "-writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		// queue the frame for the writer thread, unless the worker has failed
+		void send(FrameWriter frame) {
+			if (alive) {
+				frames.add(frame);
+			}
+		}
+
+		// write queued frames, flushing whenever the queue is drained
+		void write() {
+			try {
+				while (true) {
+					frames.take().write(out);
+					if (frames.isEmpty()) {
+						out.flush();
+					}
+				}
+			} catch (IOException e) {
+				onShardFailure(this, "error writing: " + e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void read() {
+			try {
+				while (true) {
+					byte frameType = in.readByte();
+					if (frameType != RiskWireProtocol.RISK) {
+						throw new IOException("Unexpected frame type " + frameType);
+					}
+					int id = in.readInt();
+					Risk risk = RiskWireProtocol.readRisk(in);
+					riskCount.increment();
+					ServiceDataPublisher<FinancialInstrument, Risk> publisher = publishers.get(id);
+					if (publisher != null) {
+						publisher.publish(InstrumentRegistry.getInstrument(id), risk);
+					}
+				}
+			} catch (IOException e) {
+				onShardFailure(this, e.getMessage());
+			}
+		}
+
+		// stop the writer, discarding any frames still queued, and close the connection
+		void close() {
+			alive = false;
+			frames.clear();
+			if (writer != null) {
+				writer.interrupt();
+			}
+			closeQuietly(socket);
+		}
+	}
+
+	// a subscription to the market data of an instrument, forwarded to its worker
+	private static class Forward {
+		private final MarketDataListener listener;
+		private int count;
+
+		Forward(MarketDataListener listener) {
+			this.listener = listener;
+			this.count = 1;
+		}
+	}
+
+	private final String name;
+
+	private final MarketDataService marketDataService;
+
+	private final LocalDate valueDate;
+
+	private final int shardCount;
+
+	private final int threadsPerWorker;
+
+	private final Object shardLock = new Object();
+
+	private Shard[] shards;
+
+	private volatile boolean running;
+
+	private final InstrumentArray<ServiceDataPublisher<FinancialInstrument, Risk>> publishers;
+
+	// the shard of each subscribed instrument calculated by a worker
+	private final InstrumentArray<Shard> placements;
+
+	// the shard of each underlying with subscriptions on a worker, and the number of subscriptions of each underlying
+	private final Map<FinancialInstrument, Shard> underlyingShards;
+	private final Map<FinancialInstrument, Integer> underlyingCounts;
+
+	private final Map<FinancialInstrument, Forward> forwards;
+
+	// calculates the risk of instruments with no worker to go to, created when first needed
+	private RiskService inProcessRiskService;
+	private final InstrumentArray<RiskListener> inProcessListeners;
+
+	private final LongAdder marketDataCount = new LongAdder();
+	private final LongAdder riskCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+
+	/**
+	 * Create a data source calculating risk in the given number of worker processes, each with an equal share
+	 * of this host's processors
+	 * @param name
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param shardCount
+	 */
+	public ShardedRiskDataSource(String name, MarketDataService marketDataService, LocalDate valueDate, int shardCount) {
+		this(name, marketDataService, valueDate, shardCount, Math.max(1, Runtime.getRuntime().availableProcessors() / shardCount));
+	}
+
+	/**
+	 * Create a data source calculating risk in the given number of worker processes, each on the given number of threads
+	 * @param name
+	 * @param marketDataService
+	 * @param valueDate
+	 * @param shardCount
+	 * @param threadsPerWorker
+	 */
+	public ShardedRiskDataSource(String name, MarketDataService marketDataService, LocalDate valueDate, int shardCount, int threadsPerWorker) {
+		Log.getLogger().info("Constructing ShardedRiskDataSource " + name + " with " + shardCount + " workers of " + threadsPerWorker + " threads");
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("ShardedRiskDataSource needs at least one worker");
+		}
+		this.name = name;
+		this.marketDataService = marketDataService;
+		this.valueDate = valueDate;
+		this.shardCount = shardCount;
+		this.threadsPerWorker = threadsPerWorker;
+		this.shards = null;
+		this.running = false;
+		this.publishers = new InstrumentArray<>();
+		this.placements = new InstrumentArray<>();
+		this.underlyingShards = new HashMap<>();
+		this.underlyingCounts = new HashMap<>();
+		this.forwards = new HashMap<>();
+		this.inProcessRiskService = null;
+		this.inProcessListeners = new InstrumentArray<>();
+	}
+
+	/**
+	 * Return the name of this data source
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the number of worker processes
+	 * @return
+	 */
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Launch the worker processes and wait for them to connect. If they cannot be started, risk is calculated in this process.
+	 */
+	@Override
+	public void start() {
+		synchronized(shardLock) {
+			if (shards != null) {
+				return;
+			}
+			Log.getLogger().info("ShardedRiskDataSource " + getName() + ": starting " + shardCount + " workers");
+			running = true;
+			Process[] processes = new Process[shardCount];
+			Shard[] connected = new Shard[shardCount];
+			try (ServerSocket serverSocket = new ServerSocket(0, shardCount, InetAddress.getLoopbackAddress())) {
+				serverSocket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+				for (int i = 0; i < shardCount; ++i) {
+					processes[i] = launchWorker(i, serverSocket.getLocalPort());
+				}
+				for (int i = 0; i < shardCount; ++i) {
+					Socket socket = serverSocket.accept();
+					socket.setTcpNoDelay(true);
+					DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+					if (in.readByte() != RiskWireProtocol.HELLO) {
+						throw new IOException("Worker did not identify itself");
+					}
+					int index = in.readInt();
+					connected[index] = new Shard(index, processes[index], socket, in);
+				}
+			} catch (IOException | RuntimeException e) {
+				Log.getLogger().error("ShardedRiskDataSource " + getName() + ": failed to start workers, calculating risk in process: " +
+						e.getMessage(), e);
+				for (int i = 0; i < shardCount; ++i) {
+					if (connected[i] != null) {
+						closeQuietly(connected[i].socket);
+					}
+					if (processes[i] != null) {
+						processes[i].destroyForcibly();
+					}
+				}
+				// don't relaunch on every subscription
+				shards = new Shard[0];
+				return;
+			}
+
+			shards = connected;
+			for (Shard shard : shards) {
+				shard.start();
+			}
+		}
+	}
+
+	/**
+	 * Launch the worker process of the shard, which connects back to the given loopback port. By default
+	 * the worker runs in a JVM like this one, with the same class path.
+	 * @param shard
+	 * @param port
+	 * @return
+	 * @throws IOException
+	 */
+	protected Process launchWorker(int shard, int port) throws IOException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), RiskWorker.class.getName(),
+				Integer.toString(port), Integer.toString(shard), valueDate.toString(), Integer.toString(threadsPerWorker));
+		builder.inheritIO();
+		return builder.start();
+	}
+
+	/**
+	 * Subscribe to the risk of the instrument, calculated by the worker of its underlying, or in this process if no worker is alive
+	 * @param instrument
+	 * @param publisher
+	 */
+	@Override
+	public void addSubscription(FinancialInstrument instrument, ServiceDataPublisher<FinancialInstrument, Risk> publisher) {
+		Log.getLogger().info("ShardedRiskDataSource " + getName() + ": adding subscription for " + instrument);
+		if (instrument == null || publisher == null) return;
+
+		start();
+		synchronized(shardLock) {
+			if (!running) {
+				Log.getLogger().error("ShardedRiskDataSource " + getName() + ": shut down, cannot subscribe to " + instrument);
+				return;
+			}
+			if (publishers.put(instrument.getInstrumentId(), publisher) != null) {
+				return;
+			}
+			underlyingCounts.merge(getUnderlying(instrument), 1, Integer::sum);
+			place(instrument, publisher);
+		}
+	}
+
+	/**
+	 * Unsubscribe from the risk of the instrument
+	 * @param instrument
+	 */
+	@Override
+	public void removeSubscription(FinancialInstrument instrument) {
+		Log.getLogger().info("ShardedRiskDataSource " + getName() + ": removing subscription for " + instrument);
+		if (instrument == null) return;
+
+		synchronized(shardLock) {
+			int id = InstrumentRegistry.findId(instrument);
+			if (id < 0 || publishers.remove(id) == null || !running) {
+				return;
+			}
+
+			FinancialInstrument underlying = getUnderlying(instrument);
+			Shard shard = placements.remove(id);
+			if (shard != null) {
+				shard.send(out -> RiskWireProtocol.writeId(out, RiskWireProtocol.UNSUBSCRIBE, id));
+				--shard.instrumentCount;
+				unforwardAll(instrument);
+			}
+			RiskListener inProcessListener = inProcessListeners.remove(id);
+			if (inProcessListener != null) {
+				inProcessRiskService.removeRiskListener(instrument, inProcessListener);
+			}
+
+			if (underlyingCounts.merge(underlying, -1, Integer::sum) == 0) {
+				underlyingCounts.remove(underlying);
+				underlyingShards.remove(underlying);
+			}
+		}
+	}
+
+	private static FinancialInstrument getUnderlying(FinancialInstrument instrument) {
+		FinancialInstrument underlying = instrument.getUnderlying();
+		return underlying != null ? underlying : instrument;
+	}
+
+	// place the instrument on the worker of its underlying, or the least loaded worker alive, or in this process
+	// if none is - must be called holding shardLock
+	private void place(FinancialInstrument instrument, ServiceDataPublisher<FinancialInstrument, Risk> publisher) {
+		FinancialInstrument underlying = getUnderlying(instrument);
+		Shard shard = underlyingShards.get(underlying);
+		if (shard == null) {
+			for (Shard candidate : shards) {
+				if (candidate.alive && (shard == null || candidate.instrumentCount < shard.instrumentCount)) {
+					shard = candidate;
+				}
+			}
+			if (shard == null) {
+				calculateInProcess(instrument, publisher);
+				return;
+			}
+			underlyingShards.put(underlying, shard);
+		}
+
+		int id = instrument.getInstrumentId();
+		Shard target = shard;
+		placements.put(id, target);
+		++target.instrumentCount;
+		define(target, instrument);
+		target.send(out -> RiskWireProtocol.writeId(out, RiskWireProtocol.SUBSCRIBE, id));
+		forward(target, underlying);
+		if (!underlying.equals(instrument)) {
+			forward(target, instrument);
+		}
+	}
+
+	// calculate the risk of the instrument on a RiskService in this process - must be called holding shardLock
+	private void calculateInProcess(FinancialInstrument instrument, ServiceDataPublisher<FinancialInstrument, Risk> publisher) {
+		Log.getLogger().warn("ShardedRiskDataSource " + getName() + ": no worker alive, calculating risk of " + instrument + " in process");
+		if (inProcessRiskService == null) {
+			inProcessRiskService = new RiskService(getName() + "-InProcess", marketDataService, valueDate);
+			inProcessRiskService.start();
+		}
+		RiskListener listener = (key, risk) -> publisher.publish(key, risk);
+		inProcessListeners.put(instrument, listener);
+		inProcessRiskService.addRiskListener(instrument, listener);
+	}
+
+	/**
+	 * Called on the reader or writer thread of a worker when the connection to it fails. The instruments of the worker
+	 * are marked stale, then placed on the remaining workers, or calculated in this process if there are none.
+	 * @param shard
+	 * @param reason
+	 */
+	private void onShardFailure(Shard shard, String reason) {
+		List<FinancialInstrument> instruments = new ArrayList<>();
+		List<RiskDataPublisher> stalePublishers = new ArrayList<>();
+		synchronized(shardLock) {
+			if (!running || !shard.alive) {
+				return;
+			}
+			Log.getLogger().error("ShardedRiskDataSource " + getName() + ": lost worker " + shard.index + ": " + reason);
+			failureCount.increment();
+			shard.close();
+			shard.process.destroyForcibly();
+
+			placements.forEach((instrument, placement) -> {
+				if (placement == shard) {
+					instruments.add(instrument);
+				}
+			});
+			for (FinancialInstrument instrument : instruments) {
+				placements.remove(instrument);
+				unforwardAll(instrument);
+				ServiceDataPublisher<FinancialInstrument, Risk> publisher = publishers.get(instrument);
+				stalePublishers.add(publisher instanceof RiskDataPublisher ? (RiskDataPublisher)publisher : null);
+			}
+			underlyingShards.values().removeIf(placement -> placement == shard);
+			shard.instrumentCount = 0;
+			shard.defined.clear();
+		}
+
+		// tell the subscribers outside the lock, as they may read the risk
+		for (int i = 0; i < instruments.size(); ++i) {
+			if (stalePublishers.get(i) != null) {
+				stalePublishers.get(i).publishStale(instruments.get(i));
+			}
+		}
+
+		synchronized(shardLock) {
+			if (!running) {
+				return;
+			}
+			for (FinancialInstrument instrument : instruments) {
+				ServiceDataPublisher<FinancialInstrument, Risk> publisher = publishers.get(instrument);
+				// unless unsubscribed, or placed again by a subscription made meanwhile
+				if (publisher != null && !placements.containsKey(instrument) && !inProcessListeners.containsKey(instrument)) {
+					place(instrument, publisher);
+				}
+			}
+		}
+	}
+
+	// define the instrument to the worker, after its underlying - must be called holding shardLock
+	private void define(Shard shard, FinancialInstrument instrument) {
+		if (instrument instanceof EuropeanOption) {
+			define(shard, ((EuropeanOption)instrument).getUnderlying());
+		}
+		int id = instrument.getInstrumentId();
+		// an id freed by the InstrumentRegistry may be reused for another instrument, which replaces it on the worker
+		if (!instrument.equals(shard.defined.get(id))) {
+			shard.defined.put(id, instrument);
+			shard.send(out -> RiskWireProtocol.writeDefinition(out, id, instrument));
+		}
+	}
+
+	// forward the market data of the instrument to the worker, starting with the latest - must be called holding shardLock
+	private void forward(Shard shard, FinancialInstrument instrument) {
+		Forward existing = forwards.get(instrument);
+		if (existing != null) {
+			++existing.count;
+			return;
+		}
+
+		int id = instrument.getInstrumentId();
+		MarketDataListener listener = (key, marketData) -> sendMarketData(shard, id, marketData);
+		forwards.put(instrument, new Forward(listener));
+		marketDataService.addListener(instrument, listener);
+		try {
+			sendMarketData(shard, id, marketDataService.getData(instrument));
+		} catch (ServiceException e) {
+			Log.getLogger().debug("ShardedRiskDataSource " + getName() + ": no market data yet for " + instrument);
+		}
+	}
+
+	// stop forwarding the market data of the instrument and its underlying for one subscription - must be called holding shardLock
+	private void unforwardAll(FinancialInstrument instrument) {
+		FinancialInstrument underlying = getUnderlying(instrument);
+		unforward(underlying);
+		if (!underlying.equals(instrument)) {
+			unforward(instrument);
+		}
+	}
+
+	// must be called holding shardLock
+	private void unforward(FinancialInstrument instrument) {
+		Forward forward = forwards.get(instrument);
+		if (forward != null && --forward.count == 0) {
+			forwards.remove(instrument);
+			marketDataService.removeListener(instrument, forward.listener);
+		}
+	}
+
+	private void sendMarketData(Shard shard, int id, MarketData marketData) {
+		if (marketData == null || !shard.alive) return;
+
+		marketDataCount.increment();
+		shard.send(out -> RiskWireProtocol.writeMarketData(out, id, marketData));
+	}
+
+	/**
+	 * Return the worker calculating the risk of the instrument, IN_PROCESS if it is calculated in this process,
+	 * or -1 if it is not subscribed to
+	 * @param instrument
+	 * @return
+	 */
+	public int getShard(FinancialInstrument instrument) {
+		synchronized(shardLock) {
+			Shard shard = placements.get(instrument);
+			if (shard != null) {
+				return shard.index;
+			}
+			return inProcessListeners.containsKey(instrument) ? IN_PROCESS : -1;
+		}
+	}
+
+	/**
+	 * Return the number of workers alive
+	 * @return
+	 */
+	public int getLiveShardCount() {
+		synchronized(shardLock) {
+			int count = 0;
+			if (shards != null) {
+				for (Shard shard : shards) {
+					if (shard.alive) {
+						++count;
+					}
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Return the number of market data updates forwarded to workers
+	 * @return
+	 */
+	public long getMarketDataCount() {
+		return marketDataCount.sum();
+	}
+
+	/**
+	 * Return the number of risk updates received from workers
+	 * @return
+	 */
+	public long getRiskCount() {
+		return riskCount.sum();
+	}
+
+	/**
+	 * Return the number of workers which have failed
+	 * @return
+	 */
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	/**
+	 * Stop the workers, waiting briefly for them to exit before killing them
+	 */
+	@Override
+	public void shutdown() {
+		Log.getLogger().info("ShardedRiskDataSource " + getName() + " shutdown");
+		Shard[] stopping;
+		RiskService stoppingRiskService;
+		synchronized(shardLock) {
+			running = false;
+			forwards.forEach((instrument, forward) -> marketDataService.removeListener(instrument, forward.listener));
+			forwards.clear();
+			publishers.clear();
+			placements.clear();
+			underlyingShards.clear();
+			underlyingCounts.clear();
+			inProcessListeners.clear();
+			stoppingRiskService = inProcessRiskService;
+			inProcessRiskService = null;
+			stopping = shards != null ? shards.clone() : new Shard[0];
+			for (Shard shard : stopping) {
+				shard.send(out -> out.writeByte(RiskWireProtocol.SHUTDOWN));
+			}
+		}
+
+		// nothing is sent to the workers once the source is no longer running, so they are waited on without the lock
+		if (stoppingRiskService != null) {
+			stoppingRiskService.shutdown();
+		}
+		for (Shard shard : stopping) {
+			try {
+				if (!shard.process.waitFor(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					Log.getLogger().warn("ShardedRiskDataSource " + getName() + ": killing worker " + shard.index);
+					shard.process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				shard.process.destroyForcibly();
+			}
+			shard.close();
+		}
+	}
+
+	private void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			Log.getLogger().debug("ShardedRiskDataSource " + getName() + ": error closing socket: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized(shardLock) {
+			return "[Name: " + name + ", Shards: " + shardCount + ", Failures: " + getFailureCount() + ", Underlyings: " +
+					underlyingShards.size() + ", MarketData: " + getMarketDataCount() + ", Risk: " + getRiskCount() + "]";
+		}
+	}
+}
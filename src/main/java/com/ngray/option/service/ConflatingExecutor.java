@@ -0,0 +1,441 @@
+package com.ngray.option.service;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import com.ngray.option.Log;
+
+/**
+ * Executes tasks keyed by K on a fixed pool of threads, keeping at most one pending task per key.
+ * A task submitted while an earlier task for the same key is still pending replaces it, so when
+ * updates for a key arrive faster than they can be processed the intermediate ones are dropped and
+ * only the latest is run. Tasks for the same key never run concurrently and run in submission order,
+ * and a key with a pending task goes to the back of the queue after each run, so a busy key can't
+ * starve the others. The queue holds at most one entry per key, so submit never blocks.
+ * Optionally keys are assigned to urgency bands, each with a target latency, and queued keys run
+ * earliest deadline first, the deadline being the time the key's task became pending plus the target
+ * latency of its band. Urgent keys overtake the rest under load, yet a key in a lax band is delayed by
+ * no more than its target latency while there is capacity to meet the deadlines.
+ * Submission, execution and conflation statistics are kept for monitoring, with the staleness of tasks
+ * when they run - the time since their key's task became pending - kept per band.
+ * This class is thread safe.
+ * @author nigelgray
+ *
+ * @param <K>
+ */
+public class ConflatingExecutor<K> {
+
+	// the pending task of a key, whether the key is queued or running, and since when it has had a pending task.
+	// A removed key's slot is kept until its run completes, so a task submitted meanwhile waits for it, then
+	// the slot is retired, and submissions finding a retired slot make a new one.
+	private static class Slot<K> {
+		private final K key;
+		private Runnable pending;
+		private boolean scheduled;
+		private long pendingSince;
+		private int band;
+		private boolean removed;
+		private boolean retired;
+
+		Slot(K key) {
+			this.key = key;
+		}
+	}
+
+	// a queued key, ordered by deadline and then by arrival when the queue is prioritized
+	private static class Run implements Runnable, Comparable<Run> {
+		private final Runnable run;
+		private final long deadline;
+		private final long sequence;
+
+		Run(Runnable run, long deadline, long sequence) {
+			this.run = run;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			run.run();
+		}
+
+		@Override
+		public int compareTo(Run rhs) {
+			int result = Long.compare(deadline, rhs.deadline);
+			return result != 0 ? result : Long.compare(sequence, rhs.sequence);
+		}
+	}
+
+	private final String name;
+
+	private final ThreadPoolExecutor executor;
+
+	private final Map<K, Slot<K>> slots;
+
+	// the urgency band of each key, 0 being the most urgent, or null to run keys in arrival order
+	private final ToIntFunction<K> bands;
+
+	// the target latency of each band, in nanoseconds
+	private final long[] bandLatencies;
+
+	private final AtomicLong sequence;
+
+	private final LongAdder submitted;
+	private final LongAdder executed;
+	private final LongAdder conflated;
+	private final LongAdder failed;
+
+	// per band statistics of the staleness of tasks when they run
+	private final LongAdder[] bandRuns;
+	private final LongAdder[] bandStaleness;
+	private final LongAccumulator[] bandMaxStaleness;
+	private final LongAdder[] bandLateRuns;
+
+	/**
+	 * Create a named executor with the given number of threads
+	 * @param name
+	 * @param threads
+	 */
+	public ConflatingExecutor(String name, int threads) {
+		this(name, threads, null, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a named executor with the given number of threads, running queued keys earliest deadline first,
+	 * where keys are assigned bands by the given function and the target latency of each band is given in
+	 * milliseconds, most urgent first. Bands out of range are treated as the nearest band.
+	 * @param name
+	 * @param threads
+	 * @param bands
+	 * @param bandLatencyMillis
+	 */
+	public ConflatingExecutor(String name, int threads, ToIntFunction<K> bands, long... bandLatencyMillis) {
+		Log.getLogger().info("Constructing ConflatingExecutor " + name + " with " + threads + " threads" +
+								(bands != null ? " and " + bandLatencyMillis.length + " priority bands" : ""));
+		if (bandLatencyMillis.length == 0) {
+			throw new IllegalArgumentException("ConflatingExecutor " + name + ": at least one band is required");
+		}
+		this.name = name;
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		BlockingQueue<Runnable> queue = bands != null ? new PriorityBlockingQueue<>() : new LinkedBlockingQueue<>();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, threadFactory);
+		this.slots = new ConcurrentHashMap<>();
+		this.bands = bands;
+		this.bandLatencies = new long[bandLatencyMillis.length];
+		this.bandRuns = new LongAdder[bandLatencyMillis.length];
+		this.bandStaleness = new LongAdder[bandLatencyMillis.length];
+		this.bandMaxStaleness = new LongAccumulator[bandLatencyMillis.length];
+		this.bandLateRuns = new LongAdder[bandLatencyMillis.length];
+		for (int band = 0; band < bandLatencyMillis.length; ++band) {
+			this.bandLatencies[band] = bandLatencyMillis[band] == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(bandLatencyMillis[band]);
+			this.bandRuns[band] = new LongAdder();
+			this.bandStaleness[band] = new LongAdder();
+			this.bandMaxStaleness[band] = new LongAccumulator(Long::max, 0L);
+			this.bandLateRuns[band] = new LongAdder();
+		}
+		this.sequence = new AtomicLong();
+		this.submitted = new LongAdder();
+		this.executed = new LongAdder();
+		this.conflated = new LongAdder();
+		this.failed = new LongAdder();
+	}
+
+	/**
+	 * Return the name of this executor
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Submit a task for the given key, replacing its pending task if it has one
+	 * @param key
+	 * @param task
+	 */
+	public void submit(K key, Runnable task) {
+		if (key == null || task == null) return;
+
+		submitted.increment();
+		while (true) {
+			Slot<K> slot = slots.computeIfAbsent(key, Slot::new);
+			boolean schedule;
+			synchronized(slot) {
+				if (slot.retired) {
+					continue;
+				}
+				slot.removed = false;
+				if (slot.pending != null) {
+					conflated.increment();
+				} else {
+					slot.pendingSince = System.nanoTime();
+				}
+				slot.pending = task;
+				schedule = !slot.scheduled;
+				slot.scheduled = true;
+			}
+
+			if (schedule) {
+				schedule(slot);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Drop the pending task of the given key, if it has one, and forget the key once any running task for it completes.
+	 * A task for the key submitted before then runs after the running task, as usual.
+	 * @param key
+	 */
+	public void remove(K key) {
+		if (key == null) return;
+
+		Slot<K> slot = slots.get(key);
+		if (slot != null) {
+			synchronized(slot) {
+				slot.pending = null;
+				slot.removed = true;
+				if (!slot.scheduled) {
+					retire(slot);
+				}
+			}
+		}
+	}
+
+	// must be called holding the slot's lock
+	private void retire(Slot<K> slot) {
+		slot.retired = true;
+		slots.remove(slot.key, slot);
+	}
+
+	private void schedule(Slot<K> slot) {
+		long deadline = 0L;
+		if (bands != null) {
+			int band = Math.max(0, Math.min(bandLatencies.length - 1, bands.applyAsInt(slot.key)));
+			synchronized(slot) {
+				slot.band = band;
+				deadline = bandLatencies[band] == Long.MAX_VALUE ? Long.MAX_VALUE : slot.pendingSince + bandLatencies[band];
+			}
+		}
+		try {
+			executor.execute(new Run(() -> run(slot), deadline, sequence.getAndIncrement()));
+		} catch (RuntimeException e) {
+			// the executor has been shut down
+			Log.getLogger().warn("ConflatingExecutor " + getName() + ": rejected task: " + e.getMessage());
+			synchronized(slot) {
+				slot.pending = null;
+				slot.scheduled = false;
+				if (slot.removed) {
+					retire(slot);
+				}
+			}
+		}
+	}
+
+	private void run(Slot<K> slot) {
+		Runnable task;
+		long pendingSince;
+		int band;
+		synchronized(slot) {
+			task = slot.pending;
+			slot.pending = null;
+			pendingSince = slot.pendingSince;
+			band = slot.band;
+		}
+
+		try {
+			if (task != null) {
+				long staleness = System.nanoTime() - pendingSince;
+				bandRuns[band].increment();
+				bandStaleness[band].add(staleness);
+				bandMaxStaleness[band].accumulate(staleness);
+				if (staleness > bandLatencies[band]) {
+					bandLateRuns[band].increment();
+				}
+				executed.increment();
+				task.run();
+			}
+		} catch (RuntimeException e) {
+			failed.increment();
+			Log.getLogger().error("ConflatingExecutor " + getName() + ": " + e.getMessage(), e);
+		} finally {
+			boolean reschedule;
+			synchronized(slot) {
+				reschedule = slot.pending != null;
+				slot.scheduled = reschedule;
+				if (!reschedule && slot.removed) {
+					retire(slot);
+				}
+			}
+			if (reschedule) {
+				schedule(slot);
+			}
+		}
+	}
+
+	/**
+	 * Return the number of keys with a pending or running task, or removed while running
+	 * @return
+	 */
+	public int getKeyCount() {
+		return slots.size();
+	}
+
+	/**
+	 * Return the number of keys queued to run
+	 * @return
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Return the number of tasks currently running
+	 * @return
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Return the total number of tasks submitted
+	 * @return
+	 */
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	/**
+	 * Return the number of tasks run
+	 * @return
+	 */
+	public long getExecutedCount() {
+		return executed.sum();
+	}
+
+	/**
+	 * Return the number of pending tasks replaced by a later task for the same key before they ran
+	 * @return
+	 */
+	public long getConflatedCount() {
+		return conflated.sum();
+	}
+
+	/**
+	 * Return the number of tasks which threw an exception
+	 * @return
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * Return the number of urgency bands
+	 * @return
+	 */
+	public int getBandCount() {
+		return bandLatencies.length;
+	}
+
+	/**
+	 * Return the number of tasks run in the band
+	 * @param band
+	 * @return
+	 */
+	public long getRunCount(int band) {
+		return bandRuns[band].sum();
+	}
+
+	/**
+	 * Return the mean staleness of tasks in the band when they ran, in milliseconds
+	 * @param band
+	 * @return
+	 */
+	public double getMeanStalenessMillis(int band) {
+		long runs = bandRuns[band].sum();
+		return runs == 0 ? 0.0 : bandStaleness[band].sum() / (runs * 1e6);
+	}
+
+	/**
+	 * Return the greatest staleness of a task in the band when it ran, in milliseconds
+	 * @param band
+	 * @return
+	 */
+	public double getMaxStalenessMillis(int band) {
+		return bandMaxStaleness[band].get() / 1e6;
+	}
+
+	/**
+	 * Return the number of tasks in the band which ran later than the band's target latency
+	 * @param band
+	 * @return
+	 */
+	public long getLateCount(int band) {
+		return bandLateRuns[band].sum();
+	}
+
+	/**
+	 * Reset the statistics
+	 */
+	public void resetStatistics() {
+		submitted.reset();
+		executed.reset();
+		conflated.reset();
+		failed.reset();
+		for (int band = 0; band < bandLatencies.length; ++band) {
+			bandRuns[band].reset();
+			bandStaleness[band].reset();
+			bandMaxStaleness[band].reset();
+			bandLateRuns[band].reset();
+		}
+	}
+
+	/**
+	 * Shutdown the executor - pending tasks are dropped, running tasks complete
+	 */
+	public void shutdown() {
+		Log.getLogger().info("ConflatingExecutor " + getName() + ": shutdown");
+		executor.shutdownNow();
+		slots.clear();
+	}
+
+	/**
+	 * Wait for the executor to terminate after shutdown
+	 * @param timeout
+	 * @param unit
+	 * @return true if the executor terminated
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		String result = "[Name: " + name + ", QueueDepth: " + getQueueDepth() + ", Submitted: " + getSubmittedCount() +
+				", Executed: " + getExecutedCount() + ", Conflated: " + getConflatedCount() + ", Failed: " + getFailedCount();
+		if (bands != null) {
+			for (int band = 0; band < bandLatencies.length; ++band) {
+				result += ", Band" + band + ": [Runs: " + getRunCount(band) + ", MeanStaleness: " + getMeanStalenessMillis(band) +
+						", MaxStaleness: " + getMaxStalenessMillis(band) + ", Late: " + getLateCount(band) + "]";
+			}
+		}
+		return result + "]";
+	}
+}
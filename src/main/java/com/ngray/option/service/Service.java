@@ -83,6 +83,7 @@ public class Service<K, V> {
 			if (!listeners.containsKey(key)) {
 				Log.getLogger().debug("Service " + getName() + ": creating new subscription list for " + key);
 				listeners.put(key, new ArrayList<>());
+				onSubscribe(key);
 				
 				if (dataSource != null) {
 					// as we now have a listener for the given key, we need to add a publisher to the data source
@@ -118,10 +119,26 @@ public class Service<K, V> {
 				if (dataSource != null) {
 					dataSource.removeSubscription(key);
 				}
+				onUnsubscribe(key);
 			}
 		}
 	}
 	
+	/**
+	 * Called holding the listener lock when the first listener for the key is added
+	 * @param key
+	 */
+	protected void onSubscribe(K key) {
+	}
+	
+	/**
+	 * Called holding the listener lock when the last listener for the key is removed, after the data source
+	 * subscription is removed
+	 * @param key
+	 */
+	protected void onUnsubscribe(K key) {
+	}
+	
 	/**
 	 * Get the current value for the given key
 	 * @param key
@@ -158,7 +175,9 @@ public class Service<K, V> {
 	 */
 	public void start() {
 		Log.getLogger().info("Service " + getName() + ": start");
-		dataSource.start();
+		if (dataSource != null) {
+			dataSource.start();
+		}
 	}
 	
 	/**
@@ -167,7 +186,9 @@ public class Service<K, V> {
 	public void shutdown() {
 		Log.getLogger().info("Service " + getName() + ": shutdown");
 		listeners.clear();
-		dataSource.shutdown();
+		if (dataSource != null) {
+			dataSource.shutdown();
+		}
 	}
 	
 	/**
@@ -0,0 +1,70 @@
+package com.ngray.option.ui;
+
+import java.awt.Component;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.position.RiskPriorities;
+
+/**
+ * Marks an instrument visible in RiskPriorities while a component showing it is on screen. The component
+ * stops showing when its internal frame, or any frame containing it, is iconified, hidden or closed, and
+ * shows again when it is restored, so the instrument's risk is urgent only while it can be seen.
+ * @author nigelgray
+ *
+ */
+public class InstrumentVisibility implements HierarchyListener {
+
+	private final RiskPriorities priorities;
+
+	private final FinancialInstrument instrument;
+
+	private boolean visible;
+
+	public InstrumentVisibility(RiskPriorities priorities, FinancialInstrument instrument) {
+		this.priorities = priorities;
+		this.instrument = instrument;
+		this.visible = false;
+	}
+
+	/**
+	 * Follow whether the component is showing
+	 * @param component
+	 */
+	public void attach(Component component) {
+		component.addHierarchyListener(this);
+		setShowing(component.isShowing());
+	}
+
+	/**
+	 * Stop following the component, and mark the instrument no longer visible
+	 * @param component
+	 */
+	public void detach(Component component) {
+		component.removeHierarchyListener(this);
+		setShowing(false);
+	}
+
+	@Override
+	public void hierarchyChanged(HierarchyEvent e) {
+		if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+			setShowing(e.getComponent().isShowing());
+		}
+	}
+
+	/**
+	 * Mark the instrument visible or not, once for each change in whether it is showing
+	 * @param showing
+	 */
+	public synchronized void setShowing(boolean showing) {
+		if (showing != visible) {
+			visible = showing;
+			priorities.setVisible(instrument, showing);
+		}
+	}
+
+	public synchronized boolean isShowing() {
+		return visible;
+	}
+}
@@ -18,7 +18,9 @@ import javax.swing.JTable;
 import javax.swing.table.TableModel;
 
 import com.ngray.option.Log;
+import com.ngray.option.financialinstrument.AmericanOption;
 import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
 import com.ngray.option.financialinstrument.Security;
 import com.ngray.option.ig.refdata.OptionReferenceData;
 import com.ngray.option.ig.refdata.OptionReferenceDataMap;
@@ -214,7 +216,11 @@ public class OptionLadderDialog {
 									.collect(Collectors.toList());
 		
 		filteredRefData.forEach(refData -> {
-			options.add(new EuropeanOption(refData.getOptionName(), underlyingSelected, refData.getStrike(), expirySelected, refData.getCallOrPut()));
+			if (refData.getExerciseStyle() == ExerciseStyle.AMERICAN) {
+				options.add(new AmericanOption(refData.getOptionName(), underlyingSelected, refData.getStrike(), expirySelected, refData.getCallOrPut()));
+			} else {
+				options.add(new EuropeanOption(refData.getOptionName(), underlyingSelected, refData.getStrike(), expirySelected, refData.getCallOrPut()));
+			}
 		});
 		
 		return options;
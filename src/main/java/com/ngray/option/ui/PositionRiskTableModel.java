@@ -134,6 +134,7 @@ public class PositionRiskTableModel extends AbstractTableModel implements Positi
 	}
 	
 	private double[] calculateTotalRisk() {
+		// the total is summed from the rows shown, so it always agrees with them
 		double[] result = new double[] {0,0,0,0,0};
 		for (int i = 0; i < data.length - 1; ++i) {		
 			result[0] += (double)data[i][DELTA_COL];
@@ -172,6 +173,12 @@ public class PositionRiskTableModel extends AbstractTableModel implements Positi
 		}
 	}
 	
+	@Override
+	public void onPositionRiskStale(Position position) {
+		// reading the risk of a position on show computes it, or requests it if calculated on an executor
+		onPositionRiskUpdate(position);
+	}
+	
 	@Override
 	public void onOpenPosition(Position position) {
 		synchronized(lock) {		
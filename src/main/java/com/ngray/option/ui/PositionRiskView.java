@@ -125,12 +125,21 @@ public class PositionRiskView {
 		RiskEngine.getPositionService().addListener(underlying, model);
 		JTable table = new JTable(model);
 		JScrollPane pane = new JScrollPane(table);
+		// the underlying's risk is urgent only while its table is on screen
+		InstrumentVisibility visibility = RiskEngine.getRiskPriorities() != null ?
+				new InstrumentVisibility(RiskEngine.getRiskPriorities(), underlying) : null;
+		if (visibility != null) {
+			visibility.attach(pane);
+		}
 
 		InternalFrameListener listener = new InternalFrameAdapter() {
 			@Override
 			public void internalFrameClosed(InternalFrameEvent e) {
 				Log.getLogger().debug("JInternalFrame closed event received");
 				RiskEngine.getPositionService().removeListener(underlying, model);
+				if (visibility != null) {
+					visibility.detach(pane);
+				}
 				e.getInternalFrame().removeInternalFrameListener(this);
 			}
 		};
@@ -44,6 +44,7 @@ public class ScenarioDefinitionDialog {
 	private JTextField baseCase;
 	private JTextField increment;
 	private JTextField range;
+	private JTextField errorBound;
 	private JButton run;
 	private JButton cancel;
 	
@@ -108,6 +109,15 @@ public class ScenarioDefinitionDialog {
 	
 					}}
 				);
+		
+		errorBound.getDocument().addDocumentListener(
+				new DocumentAdapter() {
+					@Override
+					public void update(DocumentEvent e) {
+						onEditErrorBound();
+	
+					}}
+				);
 			
 		run.addActionListener(
 				event -> onRun()
@@ -146,11 +156,15 @@ public class ScenarioDefinitionDialog {
 		range = new JTextField();
 		range.setText(Double.toString(PRICE_RANGE_DEFAULT));
 		
+		// blank leaves every point fully repriced
+		JLabel errorBoundLabel = new JLabel("Approximation Error Bound:");
+		errorBound = new JTextField();
+		
 		run = new JButton("Run");
 		cancel = new JButton("Cancel");
 		run.setEnabled(false);
 		
-		dialog.setLayout(new MigLayout("", "[][][]", "[][][][][][][]"));
+		dialog.setLayout(new MigLayout("", "[][][]", "[][][][][][][][][]"));
 		dialog.add(underlyingLabel, "Cell 0 0,span,grow");
 		dialog.add(underlying, "Cell 0 1,span,grow");
 		dialog.add(typeLabel, "Cell 0 2,span,grow");
@@ -161,8 +175,10 @@ public class ScenarioDefinitionDialog {
 		dialog.add(baseCase, "Cell 0 5,grow");
 		dialog.add(increment, "Cell 1 5,grow");
 		dialog.add(range, "Cell 2 5,grow");
-		dialog.add(run, "Cell 1 6");
-		dialog.add(cancel, "Cell 2 6");
+		dialog.add(errorBoundLabel, "Cell 0 6,span,grow");
+		dialog.add(errorBound, "Cell 0 7,span,grow");
+		dialog.add(run, "Cell 1 8");
+		dialog.add(cancel, "Cell 2 8");
 		dialog.pack();
 		
 	}
@@ -200,6 +216,14 @@ public class ScenarioDefinitionDialog {
 		validate();
 	}
 
+	private void onEditErrorBound() {
+		Log.getLogger().debug("ScenarioDefinitionDialog::onEditErrorBound");
+		String text = errorBound.getText().trim();
+		double errorBoundValue = text.isEmpty() ? Double.NaN : Double.parseDouble(text);
+		scenarioDefinition.setApproximationErrorBound(errorBoundValue);
+		validate();
+	}
+
 	private void onRun() {
 		Log.getLogger().debug("ScenarioDefinitionDialog::onRun");
 		runScenario();
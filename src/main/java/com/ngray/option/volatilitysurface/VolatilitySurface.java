@@ -2,7 +2,9 @@ package com.ngray.option.volatilitysurface;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.math3.analysis.BivariateFunction;
@@ -14,11 +16,12 @@ import com.ngray.option.financialinstrument.EuropeanOption.Type;
 import com.ngray.option.ig.refdata.MissingReferenceDataException;
 import com.ngray.option.ig.refdata.OptionReferenceData;
 import com.ngray.option.ig.refdata.OptionReferenceDataMap;
-import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.ImpliedVolatilityChainSolver;
+import com.ngray.option.model.OptionBatch;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
 import com.ngray.option.mongo.MongoConstants;
 import com.ngray.option.mongo.MongoObject;
 import com.ngray.option.mongo.Price.SnapshotType;
-import com.ngray.option.volatilitysurface.VolatilitySurfaceDataSet.OptionData;
 
 /**
  * This class builds an interpolating function from the supplied times to expiry,
@@ -55,6 +58,10 @@ public class VolatilitySurface implements MongoObject {
 	private double[] daysToExpiry;
 	private double[][] impliedVolatilities;
 	
+	// grid points whose prices were rejected by the chain checks, which are given volatilities interpolated
+	// along their expiry from the accepted points either side rather than left at zero
+	private boolean[][] rejectedVolatilities;
+	
 	// used when calculating IVs from a data set, not used for anything else
 	private Map<Double, Integer> daysToExpiryIndices;
 	private Map<Double, Integer> strikeOffsetIndices;
@@ -83,6 +90,7 @@ public class VolatilitySurface implements MongoObject {
 		this.daysToExpiry = daysToExpiry.clone();
 		this.strikeOffsets = strikeOffsets.clone();
 		this.impliedVolatilities = impliedVolatilities.clone();
+		this.rejectedVolatilities = new boolean[daysToExpiry.length][strikeOffsets.length];
 		buildInterpolationFunction();
 	}
 	/**
@@ -124,6 +132,44 @@ public class VolatilitySurface implements MongoObject {
 		return interpolationFunction.value(daysToExpiry, strikeOffset);
 	}
 	
+	/**
+	 * Get the implied volatilities at a batch of daysToExpiry, strikeOffset coordinates, checking the
+	 * interpolation function and reading the axis bounds once for the whole batch. Points outside the
+	 * ranges of the data are set to NaN.
+	 * @param daysToExpiry
+	 * @param strikeOffsets
+	 * @param impliedVolatilities the array to write the implied volatilities into
+	 * @return the number of points outside the ranges of the data
+	 * @throws VolatilitySurfaceException
+	 */
+	public int getImpliedVolatilities(double[] daysToExpiry, double[] strikeOffsets, double[] impliedVolatilities) throws VolatilitySurfaceException {
+		if (interpolationFunction == null) {
+			throw new VolatilitySurfaceException("VolatilitySurface: null interpolation function, build may have failed");
+		}
+		if (strikeOffsets.length != daysToExpiry.length || impliedVolatilities.length < daysToExpiry.length) {
+			throw new VolatilitySurfaceException("VolatilitySurface: mismatched batch lengths " + daysToExpiry.length + ", " +
+													strikeOffsets.length + ", " + impliedVolatilities.length);
+		}
+		
+		BivariateFunction function = interpolationFunction;
+		double minDaysToExpiry = getMinDaysToExpiry();
+		double maxDaysToExpiry = getMaxDaysToExpiry();
+		double minStrikeOffset = getMinStrikeOffset();
+		double maxStrikeOffset = getMaxStrikeOffset();
+		int invalidPoints = 0;
+		for (int i = 0; i < daysToExpiry.length; ++i) {
+			// written so that NaN coordinates are invalid
+			if (daysToExpiry[i] >= minDaysToExpiry && daysToExpiry[i] <= maxDaysToExpiry &&
+				strikeOffsets[i] >= minStrikeOffset && strikeOffsets[i] <= maxStrikeOffset) {
+				impliedVolatilities[i] = function.value(daysToExpiry[i], strikeOffsets[i]);
+			} else {
+				impliedVolatilities[i] = Double.NaN;
+				++invalidPoints;
+			}
+		}
+		return invalidPoints;
+	}
+	
 	/**
 	 * Return true if the specified point is within the ranges of the data
 	 * from which the vol surface is built
@@ -176,44 +222,100 @@ public class VolatilitySurface implements MongoObject {
 
 	private void buildImpliedVolatityGrid(VolatilitySurfaceDataSet dataSet) {
 		impliedVolatilities = new double[daysToExpiry.length][strikeOffsets.length];
+		rejectedVolatilities = new boolean[daysToExpiry.length][strikeOffsets.length];
+		boolean[][] solved = new boolean[daysToExpiry.length][strikeOffsets.length];
+		
+		// gather the inputs of every option into a single batch, then solve each chain in strike order
+		List<String> optionIds = new ArrayList<>();
+		List<Integer> gridRows = new ArrayList<>();
+		List<Integer> gridColumns = new ArrayList<>();
+		List<OptionReferenceData> refDataList = new ArrayList<>();
+		List<Double> timesToExpiry = new ArrayList<>();
+		List<Double> underlyingPrices = new ArrayList<>();
+		List<Double> optionPrices = new ArrayList<>();
 		dataSet.getUnderlyingIdentifiers().forEach(
 				underlyingId -> dataSet.getOptionData(underlyingId).forEach(
 						optionData -> {
 							try {
-								calculateImpliedVolatility(
-										underlyingId,
-										dataSet.getUnderlyingPrice(underlyingId).getPrice(snapshotType),
-										optionData,
-										dataSet.getOptionPrice(optionData.getOptionId()).getPrice(snapshotType),
-										dataSet.getDefinition().getCallOrPut());
+								OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(optionData.getOptionId());
+								long daysToExpiry = calculateDaysToExpiry(getValueDate(), refData.getExpiryDate());
+								optionIds.add(optionData.getOptionId());
+								gridRows.add(daysToExpiryIndices.get(Double.valueOf(daysToExpiry)));
+								gridColumns.add(strikeOffsetIndices.get((Double)optionData.getAtmOffset()));
+								refDataList.add(refData);
+								timesToExpiry.add(((double)daysToExpiry)/365.0);
+								underlyingPrices.add(dataSet.getUnderlyingPrice(underlyingId).getPrice(snapshotType));
+								optionPrices.add(dataSet.getOptionPrice(optionData.getOptionId()).getPrice(snapshotType));
 							} catch (MissingReferenceDataException e) {
 								Log.getLogger().error(e.getMessage(), e);
 							}
 						}
 				)
 			);
-	}
-
-	private void calculateImpliedVolatility(String underlyingId, double underlyingPrice, OptionData optionData,
-			double optionPrice, Type callOrPut) throws MissingReferenceDataException {
 		
-		OptionReferenceData refData = OptionReferenceDataMap.getOptionReferenceData(optionData.getOptionId());
+		Type callOrPut = dataSet.getDefinition().getCallOrPut();
+		OptionBatch batch = new OptionBatch(optionIds.size());
+		for (int k = 0; k < batch.size(); ++k) {
+			OptionReferenceData refData = refDataList.get(k);
+			batch.set(k, callOrPut, underlyingPrices.get(k), refData.getStrike(), Double.NaN, timesToExpiry.get(k),
+					refData.getRiskFreeRate(), refData.getDividendYield());
+			batch.getOptionPrice()[k] = optionPrices.get(k);
+		}
+		
+		ImpliedVolatilityChainSolver.solve(batch);
 		
-		double strike = refData.getStrike();
-		long daysToExpiry = calculateDaysToExpiry(getValueDate(), refData.getExpiryDate());
-		double timeToExpiry = ((double)daysToExpiry)/365.0;
-		double riskFreeRate = refData.getRiskFreeRate();
-		double dividendYield = refData.getDividendYield();
-		double impliedVol = 0.0;
-		if (callOrPut == Type.CALL) {
-			impliedVol = BlackScholesModel.calcCallOptionImpliedVol(underlyingPrice, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield);
-		} else {
-			impliedVol = BlackScholesModel.calcPutOptionImpliedVol(underlyingPrice, strike, optionPrice, timeToExpiry, riskFreeRate, dividendYield);
+		for (int k = 0; k < batch.size(); ++k) {
+			if (batch.getStatus()[k] != Status.CONVERGED) {
+				Log.getLogger().warn("Implied volatility of " + optionIds.get(k) + " from price " + batch.getOptionPrice()[k] +
+						": [Volatility: " + batch.getVolatility()[k] + ", Iterations: " + batch.getIterations()[k] +
+						", Status: " + batch.getStatus()[k] + "]");
+			}
+			// prices rejected by the chain checks have no volatility, and are filled in from their neighbours below
+			if (Double.isNaN(batch.getVolatility()[k])) {
+				rejectedVolatilities[gridRows.get(k)][gridColumns.get(k)] = true;
+			} else {
+				impliedVolatilities[gridRows.get(k)][gridColumns.get(k)] = batch.getVolatility()[k];
+				solved[gridRows.get(k)][gridColumns.get(k)] = true;
+			}
 		}
 		
-		int i = daysToExpiryIndices.get(Double.valueOf(daysToExpiry));
-		int j = strikeOffsetIndices.get((Double)optionData.getAtmOffset());
-		impliedVolatilities[i][j] = impliedVol;
+		for (int row = 0; row < impliedVolatilities.length; ++row) {
+			fillRejectedVolatilities(impliedVolatilities[row], rejectedVolatilities[row], solved[row]);
+		}
+	}
+	
+	/**
+	 * Set the volatility of each rejected point of an expiry by linear interpolation in strike offset between the
+	 * nearest solved points either side, or to that of the nearest solved point beyond the last one
+	 * @param volatilities
+	 * @param rejected
+	 * @param solved
+	 */
+	private void fillRejectedVolatilities(double[] volatilities, boolean[] rejected, boolean[] solved) {
+		for (int column = 0; column < volatilities.length; ++column) {
+			if (!rejected[column]) {
+				continue;
+			}
+			int lower = column - 1;
+			while (lower >= 0 && !solved[lower]) {
+				--lower;
+			}
+			int upper = column + 1;
+			while (upper < volatilities.length && !solved[upper]) {
+				++upper;
+			}
+			if (lower >= 0 && upper < volatilities.length) {
+				double weight = (strikeOffsets[column] - strikeOffsets[lower])/(strikeOffsets[upper] - strikeOffsets[lower]);
+				volatilities[column] = (1.0 - weight) * volatilities[lower] + weight * volatilities[upper];
+			} else if (lower >= 0) {
+				volatilities[column] = volatilities[lower];
+			} else if (upper < volatilities.length) {
+				volatilities[column] = volatilities[upper];
+			} else {
+				Log.getLogger().warn("VolatilitySurface " + getUniqueId() + ": no accepted volatility on the expiry of rejected strike offset " +
+						strikeOffsets[column]);
+			}
+		}
 	}
 
 	private long calculateDaysToExpiry(LocalDate valueDate, LocalDate expiryDate) {
@@ -245,6 +347,17 @@ public class VolatilitySurface implements MongoObject {
 		return impliedVolatilities.clone();
 	}
 
+	/**
+	 * Return true if the price at the given grid point was rejected by the chain checks, so its volatility
+	 * was interpolated from its neighbours on the same expiry
+	 * @param expiryIndex
+	 * @param strikeOffsetIndex
+	 * @return
+	 */
+	public boolean isRejected(int expiryIndex, int strikeOffsetIndex) {
+		return rejectedVolatilities[expiryIndex][strikeOffsetIndex];
+	}
+
 	public double[] getStrikeOffsets() {
 		return strikeOffsets.clone();
 	}
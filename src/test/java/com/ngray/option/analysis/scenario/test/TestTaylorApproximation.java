@@ -0,0 +1,141 @@
+package com.ngray.option.analysis.scenario.test;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import com.ngray.option.analysis.scenario.ScenarioDefinition;
+import com.ngray.option.analysis.scenario.TaylorApproximation;
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.EuropeanOptionPricingContext;
+import com.ngray.option.risk.Risk;
+
+public class TestTaylorApproximation {
+
+	private final Security underlying = new Security("TaylorUnderlying");
+	private final LocalDate valueDate = LocalDate.of(2017, 05, 16);
+	private final double baseSpot = 7275.0;
+	private final double baseVolatility = 0.15;
+	private final double errorBound = 0.5;
+
+	private EuropeanOptionPricingContext getContext(Type callOrPut, double strike) {
+		return getContext(callOrPut, strike, LocalDate.of(2017, 06, 16));
+	}
+
+	private EuropeanOptionPricingContext getContext(Type callOrPut, double strike, LocalDate expiryDate) {
+		EuropeanOption option = new EuropeanOption("TaylorOption", underlying, strike, expiryDate, callOrPut);
+		return EuropeanOptionPricingContext.compile(option, valueDate, 0.01, 0.0);
+	}
+
+	@Test
+	public void testSmallShifts() {
+		System.out.println("\nTesting Taylor approximation against full revaluation for small shifts...");
+		for (Type callOrPut : Type.values()) {
+			for (double strike : new double[] { 7000.0, 7275.0, 7500.0 }) {
+				EuropeanOptionPricingContext context = getContext(callOrPut, strike);
+				TaylorApproximation approximation = new TaylorApproximation(context, baseSpot, baseVolatility);
+				for (double dS = -50.0; dS <= 50.0; dS += 10.0) {
+					for (double dVol = -0.01; dVol <= 0.01; dVol += 0.005) {
+						double spot = baseSpot + dS;
+						double volatility = baseVolatility + dVol;
+						Risk risk = approximation.approximate(spot, volatility, errorBound);
+						assertNotNull(risk);
+						BlackScholesResult full = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, new BlackScholesResult());
+						double error = Math.abs(risk.getValue() - full.getPrice());
+						assertTrue(error <= approximation.getErrorEstimate(spot, volatility) + 1e-9);
+						assertTrue(error <= errorBound);
+						assertEquals(full.getDelta(), risk.getDelta(), 0.001);
+						assertEquals(full.getGamma(), risk.getGamma(), 5e-5);
+						assertEquals(full.getVega(), risk.getVega(), 0.05);
+						assertEquals(spot, risk.getUnderlyingPrice(), 0.0);
+						assertEquals(volatility, risk.getImpliedVolatility(), 0.0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLargeShifts() {
+		System.out.println("\nTesting Taylor approximation falls back to full revaluation for large shifts...");
+		for (Type callOrPut : Type.values()) {
+			EuropeanOptionPricingContext context = getContext(callOrPut, 7275.0);
+			TaylorApproximation approximation = new TaylorApproximation(context, baseSpot, baseVolatility);
+			double[][] shifts = { { 500.0, 0.0 }, { -500.0, 0.0 }, { 300.0, -0.05 }, { -300.0, 0.05 } };
+			for (double[] shift : shifts) {
+				double spot = baseSpot + shift[0];
+				double volatility = baseVolatility + shift[1];
+				BlackScholesResult full = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility, new BlackScholesResult());
+				double secondOrderError = Math.abs(approximation.approximate(spot, volatility, Double.POSITIVE_INFINITY).getValue() - full.getPrice());
+				System.out.println("Shift " + shift[0] + "/" + shift[1] + ": error " + secondOrderError +
+						", estimate " + approximation.getErrorEstimate(spot, volatility));
+				// the expansion is too far out here, and the estimate says so
+				assertTrue(secondOrderError > errorBound);
+				assertTrue(secondOrderError <= approximation.getErrorEstimate(spot, volatility));
+				assertNull(approximation.approximate(spot, volatility, errorBound));
+			}
+		}
+	}
+
+	@Test
+	public void testShortDatedShifts() {
+		System.out.println("\nTesting Taylor approximation error bound for short dated options...");
+		for (int days : new int[] { 1, 3 }) {
+			for (Type callOrPut : Type.values()) {
+				for (double strike : new double[] { 7000.0, 7200.0, 7275.0, 7400.0, 7600.0 }) {
+					for (double volatility : new double[] { 0.08, 0.15 }) {
+						EuropeanOptionPricingContext context = getContext(callOrPut, strike, valueDate.plusDays(days));
+						TaylorApproximation approximation = new TaylorApproximation(context, baseSpot, volatility);
+						int approximated = 0;
+						for (int i = -50; i <= 50; ++i) {
+							for (double dVol : new double[] { -0.01, 0.0, 0.01 }) {
+								// shifts of up to 10% either way
+								double spot = baseSpot * (1.0 + i * 0.002);
+								Risk risk = approximation.approximate(spot, volatility + dVol, errorBound);
+								if (risk == null) {
+									continue;
+								}
+								++approximated;
+								BlackScholesResult full = BlackScholesModel.calcOptionPriceAndGreeks(context, spot, volatility + dVol, new BlackScholesResult());
+								double error = Math.abs(risk.getValue() - full.getPrice());
+								assertTrue(error <= approximation.getErrorEstimate(spot, volatility + dVol));
+								assertTrue(error <= errorBound);
+							}
+						}
+						// the base point itself is always approximated
+						assertTrue(approximated > 0);
+					}
+				}
+			}
+		}
+
+		// a one day out of the money put whose third derivatives peak between the base point and the shift
+		EuropeanOptionPricingContext context = getContext(Type.PUT, 7400.0, valueDate.plusDays(1));
+		TaylorApproximation approximation = new TaylorApproximation(context, baseSpot, 0.08);
+		BlackScholesResult full = BlackScholesModel.calcOptionPriceAndGreeks(context, 7365.0, 0.08, new BlackScholesResult());
+		double secondOrderError = Math.abs(approximation.approximate(7365.0, 0.08, Double.POSITIVE_INFINITY).getValue() - full.getPrice());
+		System.out.println("Short dated put: error " + secondOrderError + ", estimate " + approximation.getErrorEstimate(7365.0, 0.08));
+		assertTrue(secondOrderError > errorBound);
+		assertTrue(secondOrderError <= approximation.getErrorEstimate(7365.0, 0.08));
+		assertNull(approximation.approximate(7365.0, 0.08, errorBound));
+	}
+
+	@Test
+	public void testScenarioDefinitionErrorBound() {
+		System.out.println("\nTesting ScenarioDefinition approximation error bound...");
+		ScenarioDefinition definition = new ScenarioDefinition(underlying, ScenarioDefinition.Type.UNDERLYING, 10.0, baseSpot, 100.0);
+		assertTrue(Double.isNaN(definition.getApproximationErrorBound()));
+		assertTrue(definition.validate());
+		definition.setApproximationErrorBound(errorBound);
+		assertTrue(definition.validate());
+		assertEquals(errorBound, definition.copy().getApproximationErrorBound(), 0.0);
+		definition.setApproximationErrorBound(-1.0);
+		assertFalse(definition.validate());
+	}
+}
@@ -0,0 +1,180 @@
+package com.ngray.option.financialinstrument.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentArray;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskCache;
+
+public class TestInstrumentRegistry {
+
+	@Test
+	public void testRegistry() throws InterruptedException {
+		System.out.println("\nTesting InstrumentRegistry...");
+		Security security = new Security("TestInstrumentRegistry.Security");
+		Security equal = new Security("TestInstrumentRegistry.Security");
+		Security other = new Security("TestInstrumentRegistry.Other");
+
+		assertEquals(-1, InstrumentRegistry.findId(security));
+		int id = security.getInstrumentId();
+		assertEquals(id, InstrumentRegistry.getId(security));
+		assertEquals(id, InstrumentRegistry.findId(equal));
+		assertEquals(id, equal.getInstrumentId());
+		assertNotEquals(id, other.getInstrumentId());
+		assertSame(security, InstrumentRegistry.getInstrument(id));
+		assertSame(security, InstrumentRegistry.intern(equal));
+		assertNull(InstrumentRegistry.getInstrument(-1));
+		assertNull(InstrumentRegistry.getInstrument(Integer.MAX_VALUE));
+
+		// concurrent registration of the same instruments gives each one id
+		int before = InstrumentRegistry.size();
+		int threads = 4;
+		int instruments = 3000;
+		Set<Integer> ids = ConcurrentHashMap.newKeySet();
+		List<Thread> registrars = new ArrayList<>();
+		CountDownLatch start = new CountDownLatch(1);
+		for (int t = 0; t < threads; ++t) {
+			registrars.add(new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < instruments; ++i) {
+					ids.add(new Security("TestInstrumentRegistry." + i).getInstrumentId());
+				}
+			}));
+		}
+		registrars.forEach(Thread::start);
+		start.countDown();
+		for (Thread registrar : registrars) {
+			registrar.join();
+		}
+		System.out.println("Registered " + InstrumentRegistry.size() + " instruments");
+		assertEquals(instruments, ids.size());
+		assertEquals(before + instruments, InstrumentRegistry.size());
+		for (int registered : ids) {
+			FinancialInstrument instrument = InstrumentRegistry.getInstrument(registered);
+			assertNotNull(instrument);
+			assertEquals(registered, InstrumentRegistry.findId(new Security(instrument.getIdentifier())));
+		}
+	}
+
+	@Test
+	public void testRetainAndRelease() {
+		System.out.println("\nTesting InstrumentRegistry retain and release...");
+		Security security = new Security("TestInstrumentRegistry.Retained");
+		Security equal = new Security("TestInstrumentRegistry.Retained");
+		int id = InstrumentRegistry.retain(security);
+		assertEquals(id, InstrumentRegistry.retain(equal));
+		assertEquals(id, equal.getInstrumentId());
+		int size = InstrumentRegistry.size();
+		int free = InstrumentRegistry.getFreeIdCount();
+
+		// the id is kept until every retention is released
+		InstrumentRegistry.release(security);
+		assertSame(security, InstrumentRegistry.getInstrument(id));
+		InstrumentRegistry.release(equal);
+		assertNull(InstrumentRegistry.getInstrument(id));
+		assertEquals(-1, InstrumentRegistry.findId(security));
+		assertEquals(-1, InstrumentRegistry.findId(equal));
+		assertEquals(size - 1, InstrumentRegistry.size());
+		assertEquals(free + 1, InstrumentRegistry.getFreeIdCount());
+
+		// releasing again, or releasing an instrument never retained, does nothing
+		InstrumentRegistry.release(security);
+		Security unretained = new Security("TestInstrumentRegistry.Unretained");
+		int unretainedId = unretained.getInstrumentId();
+		InstrumentRegistry.release(unretained);
+		assertSame(unretained, InstrumentRegistry.getInstrument(unretainedId));
+
+		// an instance remembering its freed id is registered afresh, and is not reused while there are fresh ids
+		int newId = equal.getInstrumentId();
+		assertNotEquals(id, newId);
+		assertSame(equal, InstrumentRegistry.getInstrument(newId));
+		assertEquals(newId, security.getInstrumentId());
+
+		// entries left under a freed id are not passed to forEach
+		InstrumentArray<String> array = new InstrumentArray<>();
+		Security stale = new Security("TestInstrumentRegistry.Stale");
+		InstrumentRegistry.retain(stale);
+		array.put(stale, "stale");
+		InstrumentRegistry.release(stale);
+		List<FinancialInstrument> keys = new ArrayList<>();
+		array.forEach((instrument, value) -> keys.add(instrument));
+		assertTrue(keys.isEmpty());
+	}
+
+	@Test
+	public void testInstrumentArrayGrows() {
+		System.out.println("\nTesting InstrumentArray grows beyond its initial ids...");
+		InstrumentArray<String> array = new InstrumentArray<>();
+		int id = InstrumentRegistry.CHUNK_SIZE * InstrumentRegistry.CHUNK_SIZE + 5;
+		assertNull(array.get(id));
+		assertNull(array.put(id, "beyond"));
+		assertNull(array.put(0, "first"));
+		assertEquals("beyond", array.get(id));
+		assertEquals("first", array.get(0));
+		assertEquals("beyond", array.remove(id));
+		assertNull(array.get(id));
+	}
+
+	@Test
+	public void testIdKeyedCaches() {
+		System.out.println("\nTesting id keyed caches...");
+		Security security = new Security("TestInstrumentRegistry.Cached");
+		Security equal = new Security("TestInstrumentRegistry.Cached");
+		Security unregistered = new Security("TestInstrumentRegistry.Unregistered");
+
+		InstrumentArray<String> array = new InstrumentArray<>();
+		assertNull(array.get(security));
+		assertNull(array.put(security, "first"));
+		assertEquals("first", array.put(equal, "second"));
+		assertEquals("second", array.get(security.getInstrumentId()));
+		assertNull(array.get(unregistered));
+		assertFalse(array.containsKey(unregistered));
+		List<FinancialInstrument> keys = new ArrayList<>();
+		array.forEach((instrument, value) -> keys.add(instrument));
+		assertEquals(1, keys.size());
+		assertSame(security, keys.get(0));
+		assertEquals("second", array.remove(equal));
+		assertNull(array.get(security));
+		assertEquals(-1, InstrumentRegistry.findId(unregistered));
+
+		RiskCache riskCache = new RiskCache("Test");
+		Risk risk = new Risk();
+		riskCache.insertRisk(security.getInstrumentId(), risk);
+		assertSame(risk, riskCache.getRisk(equal));
+		riskCache.removeRisk(equal.getInstrumentId());
+		assertNull(riskCache.getRisk(security));
+
+		// risk left under an id is dropped when the id is released
+		Security released = new Security("TestInstrumentRegistry.Released");
+		int releasedId = InstrumentRegistry.retain(released);
+		riskCache.insertRisk(releasedId, risk);
+		InstrumentRegistry.release(released);
+		assertNull(riskCache.getRisk(releasedId));
+
+		// risk inserted by instrument retains it, once however often, until the risk is removed
+		Security inserted = new Security("TestInstrumentRegistry.Inserted");
+		riskCache.insertRisk(inserted, risk);
+		riskCache.insertRisk(inserted, risk);
+		int insertedId = InstrumentRegistry.findId(inserted);
+		assertTrue(insertedId >= 0);
+		assertSame(risk, riskCache.getRisk(insertedId));
+		riskCache.removeRisk(inserted);
+		assertNull(riskCache.getRisk(inserted));
+		assertEquals(-1, InstrumentRegistry.findId(inserted));
+	}
+}
@@ -0,0 +1,214 @@
+package com.ngray.option.limit.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.limit.Limit;
+import com.ngray.option.limit.Limit.Measure;
+import com.ngray.option.limit.LimitEngine;
+import com.ngray.option.limit.LimitEvent;
+import com.ngray.option.limit.LimitLoader;
+import com.ngray.option.limit.LimitService;
+import com.ngray.option.position.Position;
+import com.ngray.option.position.PositionListener;
+import com.ngray.option.position.PositionService;
+import com.ngray.option.position.RiskAggregationService;
+import com.ngray.option.risk.Risk;
+
+public class TestLimitEngine {
+
+	private static Security createSecurity(String identifier) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		when(security.getUnderlying()).thenReturn(security);
+		return security;
+	}
+
+	private static EuropeanOption createOption(String identifier, Security underlying) {
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn(identifier);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 12, 15));
+		when(option.getType()).thenReturn(EuropeanOption.Type.CALL);
+		return option;
+	}
+
+	// risk on one contract with the given delta and vega
+	private static Risk createRisk(double delta, double vega) {
+		return new Risk(1.0, delta, 0.01, vega, -0.1, 0.1, 0.15, 1.0, 100.0);
+	}
+
+	@Test
+	public void testBreachAndRecovery() {
+		System.out.println("\nTesting LimitEngine breach and recovery...");
+		Security ftse = createSecurity("FTSE");
+		Security dax = createSecurity("DAX");
+		EuropeanOption call = createOption("CALL", ftse);
+
+		LimitService limitService = new LimitService("TestLimits");
+		List<LimitEvent> events = new CopyOnWriteArrayList<>();
+		limitService.addListener(LimitService.ALL_LIMITS, (key, event) -> events.add(event));
+		RiskAggregationService aggregationService = new RiskAggregationService("Test");
+		LimitEngine engine = new LimitEngine("Test", aggregationService, limitService);
+		engine.addLimit(new Limit("FTSE delta", "ACC1", "FTSE", Measure.DELTA, 10.0));
+		engine.addLimit(new Limit("Book vega", null, null, Measure.VEGA, 0.0, 100.0));
+
+		Position callPosition = new Position("CALL1", call, 20.0, 5.0);
+		callPosition.updatePositionRisk(createRisk(0.4, 2.0));
+		Position daxPosition = new Position("DAX1", dax, 1.0, 100.0);
+		daxPosition.updatePositionRisk(createRisk(1.0, 0.0));
+		aggregationService.updatePosition("ACC1", callPosition);
+		aggregationService.updatePosition("ACC2", daxPosition);
+		assertEquals(8.0, engine.getExposure("ACC1", "FTSE", Measure.DELTA), 1e-9);
+		assertEquals(9.0, engine.getExposure(null, null, Measure.DELTA), 1e-9);
+		assertEquals(1.0, engine.getExposure("ACC2", null, Measure.DELTA), 1e-9);
+		assertTrue(events.isEmpty());
+
+		// only the difference is applied, and crossing a bound publishes one breach
+		callPosition.updatePositionRisk(createRisk(0.6, 2.0));
+		aggregationService.updatePosition("ACC1", callPosition);
+		aggregationService.updatePosition("ACC1", callPosition);
+		assertEquals(12.0, engine.getExposure("ACC1", "FTSE", Measure.DELTA), 1e-9);
+		assertEquals(1, events.size());
+		assertEquals(LimitEvent.Type.BREACH, events.get(0).getType());
+		assertEquals("FTSE delta", events.get(0).getLimit().getName());
+		assertEquals(12.0, events.get(0).getExposure(), 1e-9);
+		assertEquals(1, engine.getBreachedLimits().size());
+
+		// closing the position recovers the limit
+		aggregationService.removePosition("ACC1", callPosition);
+		assertEquals(0.0, engine.getExposure("ACC1", "FTSE", Measure.DELTA), 1e-9);
+		assertEquals(1.0, engine.getExposure(null, null, Measure.DELTA), 1e-9);
+		assertEquals(2, events.size());
+		assertEquals(LimitEvent.Type.RECOVERY, events.get(1).getType());
+
+		// a limit breached when added is published at once
+		engine.addLimit(new Limit("DAX delta", "ACC2", "DAX", Measure.DELTA, -0.5, 0.5));
+		assertEquals(3, events.size());
+		assertEquals(LimitEvent.Type.BREACH, events.get(2).getType());
+		System.out.println(engine);
+		assertEquals(2, engine.getBreachCount());
+		assertEquals(1, engine.getRecoveryCount());
+
+		// once shut down the engine no longer hears the aggregation
+		engine.shutdown();
+		aggregationService.updatePosition("ACC1", callPosition);
+		assertEquals(3, events.size());
+		aggregationService.shutdown();
+		limitService.shutdown();
+	}
+
+	@Test
+	public void testSubscribe() {
+		System.out.println("\nTesting LimitEngine subscribe...");
+		Security ftse = createSecurity("FTSE");
+		Position position = new Position("FTSE1", ftse, 2.0, 100.0);
+		position.updatePositionRisk(createRisk(1.0, 0.0));
+		PositionService positionService = mock(PositionService.class);
+		when(positionService.getName()).thenReturn("TestPositions");
+		when(positionService.getPositions()).thenReturn(Arrays.asList(position));
+
+		LimitService limitService = new LimitService("TestLimits");
+		List<LimitEvent> events = new CopyOnWriteArrayList<>();
+		limitService.addListener("FTSE delta", (key, event) -> events.add(event));
+		RiskAggregationService aggregationService = new RiskAggregationService("Test");
+		LimitEngine engine = new LimitEngine("Test", aggregationService, limitService);
+		engine.addLimit(new Limit("FTSE delta", null, "FTSE", Measure.DELTA, 3.0));
+
+		// positions already held are counted at once, and later ones through the listener
+		aggregationService.subscribe("ACC1", positionService);
+		ArgumentCaptor<PositionListener> listener = ArgumentCaptor.forClass(PositionListener.class);
+		verify(positionService).addListener(listener.capture());
+		assertEquals(2.0, engine.getExposure("ACC1", "FTSE", Measure.DELTA), 1e-9);
+
+		Position another = new Position("FTSE2", ftse, 2.0, 100.0);
+		another.updatePositionRisk(createRisk(1.0, 0.0));
+		listener.getValue().onOpenPosition(another);
+		assertEquals(4.0, engine.getExposure(null, "FTSE", Measure.DELTA), 1e-9);
+		assertEquals(1, events.size());
+		listener.getValue().onDeletePosition(another);
+		assertEquals(2, events.size());
+		assertEquals(LimitEvent.Type.RECOVERY, events.get(1).getType());
+
+		// unsubscribing removes the account's positions
+		aggregationService.unsubscribe("ACC1");
+		verify(positionService).removeListener(listener.getValue());
+		assertEquals(0.0, engine.getExposure(null, null, Measure.DELTA), 1e-9);
+		engine.shutdown();
+		aggregationService.shutdown();
+		limitService.shutdown();
+	}
+
+	@Test
+	public void testPublishOutsideLock() throws Exception {
+		System.out.println("\nTesting LimitEngine publishes without holding its lock...");
+		Security ftse = createSecurity("FTSE");
+		LimitService limitService = new LimitService("TestLimits");
+		RiskAggregationService aggregationService = new RiskAggregationService("Test");
+		LimitEngine engine = new LimitEngine("Test", aggregationService, limitService);
+		engine.addLimit(new Limit("FTSE delta", null, "FTSE", Measure.DELTA, 1.0));
+
+		// a listener reading the engine from another thread would deadlock if the lock were held
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		List<Integer> breachedCounts = new CopyOnWriteArrayList<>();
+		limitService.addListener(LimitService.ALL_LIMITS, (key, event) -> {
+			Future<Integer> breached = reader.submit(() -> engine.getBreachedLimits().size());
+			try {
+				breachedCounts.add(breached.get(5, TimeUnit.SECONDS));
+			} catch (Exception e) {
+				fail("Engine locked while publishing: " + e);
+			}
+		});
+
+		Position position = new Position("FTSE1", ftse, 2.0, 100.0);
+		position.updatePositionRisk(createRisk(1.0, 0.0));
+		aggregationService.updatePosition("ACC1", position);
+		assertEquals(Arrays.asList(1), breachedCounts);
+		reader.shutdown();
+		engine.shutdown();
+		aggregationService.shutdown();
+		limitService.shutdown();
+	}
+
+	@Test
+	public void testLoadLimits() throws IOException {
+		System.out.println("\nTesting LimitLoader...");
+		String csv = "Name,Account,Underlying,Measure,LowerBound,UpperBound\n" +
+					"FTSE delta,ACC1,FTSE,DELTA,-10.0,10.0\n" +
+					"\n" +
+					"Book vega,*,*,VEGA,0.0,100.0\n";
+		List<Limit> limits = LimitLoader.load(new BufferedReader(new StringReader(csv)));
+		System.out.println(limits);
+		assertEquals(2, limits.size());
+		assertEquals("ACC1", limits.get(0).getAccount());
+		assertEquals("FTSE", limits.get(0).getUnderlying());
+		assertEquals(-10.0, limits.get(0).getLowerBound(), 0.0);
+		assertNull(limits.get(1).getAccount());
+		assertNull(limits.get(1).getUnderlying());
+		assertEquals(Measure.VEGA, limits.get(1).getMeasure());
+
+		try {
+			LimitLoader.load(new BufferedReader(new StringReader("Header\nBad,*,*,THETA,0.0,1.0\n")));
+			fail("Loaded a limit on an unknown measure");
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BaroneAdesiWhaleyModel;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.ImpliedVolatilityResult;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+public class TestBaroneAdesiWhaleyModel {
+
+	private final double strike = 100.0;
+
+	/**
+	 * Reference price of an American option from a Cox-Ross-Rubinstein binomial tree
+	 */
+	private static double calcBinomialTreePrice(Type callOrPut, double spot, double strike, double volatility, double timeToExpiry,
+			double riskFreeRate, double dividendYield, int steps) {
+		double dt = timeToExpiry/steps;
+		double up = Math.exp(volatility * Math.sqrt(dt));
+		double probability = (Math.exp((riskFreeRate - dividendYield) * dt) - 1/up)/(up - 1/up);
+		double discountFactor = Math.exp(-riskFreeRate * dt);
+		double sign = callOrPut == Type.CALL ? 1.0 : -1.0;
+
+		// spot at node i of step j is spot * up^(j - 2i)
+		double[] powers = new double[2 * steps + 1];
+		for (int k = 0; k <= 2 * steps; ++k) {
+			powers[k] = spot * Math.pow(up, k - steps);
+		}
+		double[] values = new double[steps + 1];
+		for (int i = 0; i <= steps; ++i) {
+			values[i] = Math.max(sign * (powers[2 * steps - 2 * i] - strike), 0.0);
+		}
+		for (int j = steps - 1; j >= 0; --j) {
+			for (int i = 0; i <= j; ++i) {
+				double continuationValue = discountFactor * (probability * values[i] + (1 - probability) * values[i + 1]);
+				values[i] = Math.max(continuationValue, sign * (powers[steps + j - 2 * i] - strike));
+			}
+		}
+		return values[0];
+	}
+
+	@Test
+	public void testEuropeanLimit() {
+		System.out.println("\nTesting Barone-Adesi-Whaley without early exercise...");
+		BlackScholesResult american = new BlackScholesResult();
+		BlackScholesResult european = new BlackScholesResult();
+		// calls without a dividend yield and puts at zero rates are never exercised early
+		BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(Type.CALL, 95.0, strike, 0.25, 0.5, 0.03, 0.0, american);
+		BlackScholesModel.calcOptionPriceAndGreeks(Type.CALL, 95.0, strike, 0.25, 0.5, 0.03, 0.0, european);
+		assertEquals(european.toString(), american.toString());
+		BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(Type.PUT, 95.0, strike, 0.25, 0.5, 0.0, 0.02, american);
+		BlackScholesModel.calcOptionPriceAndGreeks(Type.PUT, 95.0, strike, 0.25, 0.5, 0.0, 0.02, european);
+		assertEquals(european.toString(), american.toString());
+
+		// otherwise the American option is worth at least the European and its intrinsic value
+		for (double spot = 70.0; spot <= 130.0; spot += 5.0) {
+			double price = BaroneAdesiWhaleyModel.calcOptionPrice(Type.PUT, spot, strike, 0.25, 0.5, 0.05, 0.01);
+			assertTrue(price >= BlackScholesModel.calcPutOptionPrice(spot, strike, 0.25, 0.5, 0.05, 0.01));
+			assertTrue(price >= Math.max(strike - spot, 0.0));
+		}
+	}
+
+	@Test
+	public void testAgainstBinomialTree() {
+		System.out.println("\nTesting Barone-Adesi-Whaley against a binomial tree...");
+		int steps = 500;
+		double maxError = 0.0;
+		double maxEuropeanError = 0.0;
+		long approximationTime = 0;
+		long treeTime = 0;
+		for (Type callOrPut : Type.values()) {
+			for (double spot = 80.0; spot <= 120.0; spot += 10.0) {
+				for (double volatility : new double[] { 0.15, 0.3 }) {
+					for (double timeToExpiry : new double[] { 0.25, 0.5 }) {
+						for (double riskFreeRate : new double[] { 0.01, 0.05 }) {
+							for (double dividendYield : new double[] { 0.0, 0.03 }) {
+								long start = System.nanoTime();
+								double price = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+								approximationTime += System.nanoTime() - start;
+
+								// averaging consecutive step counts damps the odd-even oscillation of the tree
+								start = System.nanoTime();
+								double treePrice = 0.5 * (calcBinomialTreePrice(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, steps) +
+														  calcBinomialTreePrice(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, steps + 1));
+								treeTime += System.nanoTime() - start;
+
+								double europeanPrice = callOrPut == Type.CALL ?
+										BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield) :
+										BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+								maxError = Math.max(maxError, Math.abs(price - treePrice));
+								maxEuropeanError = Math.max(maxEuropeanError, Math.abs(europeanPrice - treePrice));
+							}
+						}
+					}
+				}
+			}
+		}
+		System.out.println("Max error = " + maxError + ", max error of European price = " + maxEuropeanError);
+		System.out.println("Approximation time = " + approximationTime/1000 + "us, binomial tree time = " + treeTime/1000 + "us");
+		assertTrue(maxError < 0.1);
+		assertTrue(maxEuropeanError > 1.0);
+	}
+
+	@Test
+	public void testGreeks() {
+		System.out.println("\nTesting Barone-Adesi-Whaley greeks...");
+		double volatility = 0.25;
+		double timeToExpiry = 0.5;
+		double riskFreeRate = 0.05;
+		double dividendYield = 0.03;
+		double dS = 0.01;
+		double dVol = 0.0001;
+		BlackScholesResult result = new BlackScholesResult();
+		for (Type callOrPut : Type.values()) {
+			for (double spot = 85.0; spot <= 125.0; spot += 10.0) {
+				BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+				System.out.println(callOrPut + " " + spot + ": " + result);
+				double price = result.getPrice();
+				double priceUp = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot + dS, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+				double priceDown = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot - dS, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+				assertEquals((priceUp - priceDown)/(2 * dS), result.getDelta(), 1e-6);
+				assertEquals((priceUp - 2 * price + priceDown)/(dS * dS), result.getGamma(), 1e-5);
+
+				double priceVolUp = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot, strike, volatility + dVol, timeToExpiry, riskFreeRate, dividendYield);
+				double priceVolDown = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot, strike, volatility - dVol, timeToExpiry, riskFreeRate, dividendYield);
+				assertEquals(0.01 * (priceVolUp - priceVolDown)/(2 * dVol), result.getVega(), 1e-5);
+
+				double priceTomorrow = BaroneAdesiWhaleyModel.calcOptionPrice(callOrPut, spot, strike, volatility, timeToExpiry - 1.0/365.0, riskFreeRate, dividendYield);
+				assertEquals(priceTomorrow - price, result.getTheta(), 1e-10);
+			}
+		}
+
+		// deep in the money puts are exercised immediately
+		BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(Type.PUT, 60.0, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+		assertEquals(40.0, result.getPrice(), 1e-12);
+		assertEquals(-1.0, result.getDelta(), 0.0);
+		assertEquals(0.0, result.getGamma(), 0.0);
+	}
+
+	@Test
+	public void testImpliedVolatility() {
+		System.out.println("\nTesting Barone-Adesi-Whaley implied volatility...");
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		BlackScholesResult greeks = new BlackScholesResult();
+		int solves = 0;
+		int totalIterations = 0;
+		for (Type callOrPut : Type.values()) {
+			for (double spot = 80.0; spot <= 120.0; spot += 5.0) {
+				for (double volatility : new double[] { 0.1, 0.2, 0.4 }) {
+					for (double riskFreeRate : new double[] { 0.0, 0.02, 0.08 }) {
+						for (double dividendYield : new double[] { 0.0, 0.04 }) {
+							BaroneAdesiWhaleyModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, 0.5, riskFreeRate, dividendYield, greeks);
+							// prices that hardly move with volatility don't determine it
+							if (greeks.getVega() < 1e-3) {
+								continue;
+							}
+							BaroneAdesiWhaleyModel.calcImpliedVolatility(callOrPut, spot, strike, greeks.getPrice(), 0.5, riskFreeRate, dividendYield, result);
+							assertEquals(Status.CONVERGED, result.getStatus());
+							assertEquals(volatility, result.getVolatility(), 1e-8);
+							++solves;
+							totalIterations += result.getIterations();
+						}
+					}
+				}
+			}
+		}
+		System.out.println("Average iterations = " + ((double)totalIterations)/solves);
+
+		// a put in the exercise region is worth its intrinsic value at any low enough volatility
+		BaroneAdesiWhaleyModel.calcImpliedVolatility(Type.PUT, 60.0, strike, 40.0, 0.5, 0.05, 0.0, result);
+		assertEquals(Status.BELOW_INTRINSIC_VALUE, result.getStatus());
+		BaroneAdesiWhaleyModel.calcImpliedVolatility(Type.PUT, 60.0, strike, strike, 0.5, 0.05, 0.0, result);
+		assertEquals(Status.ABOVE_MAXIMUM_VALUE, result.getStatus());
+		BaroneAdesiWhaleyModel.calcImpliedVolatility(Type.PUT, -1.0, strike, 10.0, 0.5, 0.05, 0.0, result);
+		assertEquals(Status.INVALID_INPUT, result.getStatus());
+	}
+}
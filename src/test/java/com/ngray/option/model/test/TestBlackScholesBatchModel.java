@@ -0,0 +1,86 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BlackScholesBatchModel;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.OptionBatch;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+public class TestBlackScholesBatchModel {
+
+	private final double riskFreeRate = 0.01;
+	private final double dividendYield = 0.02;
+
+	private OptionBatch createBatch(int size) {
+		OptionBatch batch = new OptionBatch(size);
+		for (int i = 0; i < size; ++i) {
+			Type callOrPut = i % 2 == 0 ? Type.CALL : Type.PUT;
+			double strike = 60.0 + 80.0 * i/size;
+			double volatility = 0.1 + 0.4 * (i % 7)/7.0;
+			double timeToExpiry = 0.1 + (i % 5) * 0.25;
+			batch.set(i, callOrPut, 100.0, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+		}
+		return batch;
+	}
+
+	private void assertMatchesSingleOptionPricing(OptionBatch batch) {
+		BlackScholesResult result = new BlackScholesResult();
+		for (int i = 0; i < batch.size(); ++i) {
+			BlackScholesModel.calcOptionPriceAndGreeks(batch.getType(i), batch.getSpot()[i], batch.getStrike()[i], batch.getVolatility()[i],
+					batch.getTimeToExpiry()[i], batch.getRiskFreeRate()[i], batch.getDividendYield()[i], result);
+			assertEquals(result.getPrice(), batch.getPrice()[i], 0.0);
+			assertEquals(result.getDelta(), batch.getDelta()[i], 0.0);
+			assertEquals(result.getGamma(), batch.getGamma()[i], 0.0);
+			assertEquals(result.getVega(), batch.getVega()[i], 0.0);
+			assertEquals(result.getTheta(), batch.getTheta()[i], 0.0);
+			assertEquals(result.getRho(), batch.getRho()[i], 0.0);
+		}
+	}
+
+	@Test
+	public void testCalcOptionPricesAndGreeks() {
+		System.out.println("\nTesting batch pricing against single option pricing...");
+		OptionBatch batch = createBatch(100);
+		BlackScholesBatchModel.calcOptionPricesAndGreeks(batch);
+		assertMatchesSingleOptionPricing(batch);
+	}
+
+	@Test
+	public void testCalcOptionPricesAndGreeksParallel() {
+		System.out.println("\nTesting parallel batch pricing against single option pricing...");
+		OptionBatch batch = createBatch(4 * BlackScholesBatchModel.PARALLEL_THRESHOLD + 17);
+		BlackScholesBatchModel.calcOptionPricesAndGreeks(batch, true);
+		assertMatchesSingleOptionPricing(batch);
+	}
+
+	@Test
+	public void testCalcImpliedVolatilities() {
+		System.out.println("\nTesting batch implied vol round trip...");
+		OptionBatch batch = createBatch(2 * BlackScholesBatchModel.PARALLEL_THRESHOLD);
+		BlackScholesBatchModel.calcOptionPricesAndGreeks(batch);
+		double[] volatilities = batch.getVolatility().clone();
+		System.arraycopy(batch.getPrice(), 0, batch.getOptionPrice(), 0, batch.size());
+		Arrays.fill(batch.getVolatility(), Double.NaN);
+
+		BlackScholesBatchModel.calcImpliedVolatilities(batch, true);
+		int checked = 0;
+		for (int i = 0; i < batch.size(); ++i) {
+			// skip prices with too little time value to determine the vol
+			if (batch.getVega()[i] < 1e-4) {
+				continue;
+			}
+			assertEquals(Status.CONVERGED, batch.getStatus()[i]);
+			assertEquals(volatilities[i], batch.getVolatility()[i], 1e-8);
+			++checked;
+		}
+		System.out.println("Checked " + checked + " of " + batch.size());
+		assertTrue(checked > batch.size()/2);
+	}
+}
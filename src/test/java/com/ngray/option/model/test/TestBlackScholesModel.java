@@ -3,7 +3,9 @@ package com.ngray.option.model.test;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
 import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
 
 public class TestBlackScholesModel {
 
@@ -173,4 +175,62 @@ public class TestBlackScholesModel {
 		assertTrue(Math.abs(atmPutRho - rho) < 0.0001);
 	}
 
+	@Test
+	public void testCalcOptionPriceAndGreeks() {
+		System.out.println("\nTesting fused price and greeks...");
+		BlackScholesResult result = new BlackScholesResult();
+		double[] spots = { 0.8 * atmSpot, atmSpot, 1.2 * atmSpot };
+		for (double spot : spots) {
+			BlackScholesModel.calcOptionPriceAndGreeks(Type.CALL, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+			System.out.println("Call = " + result);
+			assertEquals(BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getPrice(), 1e-9);
+			assertEquals(BlackScholesModel.calcCallOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getDelta(), 1e-12);
+			assertEquals(BlackScholesModel.calcOptionGamma(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getGamma(), 1e-12);
+			assertEquals(BlackScholesModel.calcOptionVega(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getVega(), 1e-9);
+			assertEquals(BlackScholesModel.calcCallOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getTheta(), 1e-9);
+			assertEquals(BlackScholesModel.calcCallOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getRho(), 1e-9);
+			
+			BlackScholesModel.calcOptionPriceAndGreeks(Type.PUT, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+			System.out.println("Put = " + result);
+			assertEquals(BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getPrice(), 1e-9);
+			assertEquals(BlackScholesModel.calcPutOptionDelta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getDelta(), 1e-12);
+			assertEquals(BlackScholesModel.calcOptionGamma(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getGamma(), 1e-12);
+			assertEquals(BlackScholesModel.calcOptionVega(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getVega(), 1e-9);
+			assertEquals(BlackScholesModel.calcPutOptionTheta(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getTheta(), 1e-9);
+			assertEquals(BlackScholesModel.calcPutOptionRho(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield), result.getRho(), 1e-9);
+		}
+	}
+
+	@Test
+	public void testCalcSecondOrderGreeks() {
+		System.out.println("\nTesting second order greeks against finite differences...");
+		BlackScholesResult result = new BlackScholesResult();
+		BlackScholesResult up = new BlackScholesResult();
+		BlackScholesResult down = new BlackScholesResult();
+		double dS = 0.01;
+		double dVol = 0.0001;
+		double dT = 1.0/365.0;
+		double[] spots = { 0.8 * atmSpot, atmSpot, 1.2 * atmSpot };
+		for (Type callOrPut : Type.values()) {
+			for (double spot : spots) {
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, result);
+				System.out.println(callOrPut + " = " + result);
+				
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot + dS, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, up);
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot - dS, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, down);
+				assertEquals((up.getGamma() - down.getGamma())/(2 * dS), result.getSpeed(), 1e-9);
+				
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility + dVol, timeToExpiry, riskFreeRate, dividendYield, up);
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility - dVol, timeToExpiry, riskFreeRate, dividendYield, down);
+				// vol greeks are per 1% move
+				assertEquals(0.01 * (up.getDelta() - down.getDelta())/(2 * dVol), result.getVanna(), 1e-6);
+				assertEquals(0.01 * (up.getVega() - down.getVega())/(2 * dVol), result.getVolga(), 1e-6);
+				
+				// charm is the change in delta as a calendar day passes
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry - dT, riskFreeRate, dividendYield, up);
+				BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry + dT, riskFreeRate, dividendYield, down);
+				assertEquals((up.getDelta() - down.getDelta())/2, result.getCharm(), 1e-7);
+			}
+		}
+	}
 }
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.time.LocalDate;
 import org.junit.Test;
 
+import com.ngray.option.financialinstrument.AmericanOption;
 import com.ngray.option.financialinstrument.EuropeanOption;
 import com.ngray.option.financialinstrument.EuropeanOption.Type;
 import com.ngray.option.ig.refdata.MissingReferenceDataException;
@@ -15,7 +16,9 @@ import com.ngray.option.marketdata.MarketData;
 import com.ngray.option.marketdata.MarketDataCollection;
 import com.ngray.option.marketdata.MarketDataException;
 import com.ngray.option.model.EuropeanOptionModel;
+import com.ngray.option.model.EuropeanOptionPricingContext;
 import com.ngray.option.model.ModelException;
+import com.ngray.option.model.PricingContextCache;
 import com.ngray.option.risk.Risk;
 
 import static org.mockito.Mockito.*;
@@ -91,4 +94,103 @@ public class TestEuropeanOptionModel {
 		verify(option, atLeast(1)).getUnderlying();		
 	}
 
+	@Test
+	public void testPricingContextCache() throws MarketDataException, ModelException {
+		System.out.println("Testing EuropeanOptionModel pricing context cache...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+		
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 06, 16));
+		when(option.getStrike()).thenReturn(7275.0);
+		when(option.getType()).thenReturn(Type.CALL);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getIdentifier()).thenReturn("ContextOption");
+		
+		OptionReferenceDataMap.insert(
+				"ContextOption",
+				new OptionReferenceData("ContextOption", underlying, 7275.0, LocalDate.of(2017, 06, 16), Type.CALL, 0.0, 0.0)
+				);
+		
+		MarketDataCollection marketData = mock(MarketDataCollection.class);
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("Underlying", 7275.0, MarketData.Type.PRICE));
+		when(marketData.getMarketData(option)).thenReturn(new MarketData("ContextOption", 0.1, MarketData.Type.VOLATILITY));
+		
+		EuropeanOptionModel model = new EuropeanOptionModel();
+		LocalDate valueDate = LocalDate.of(2017, 05, 16);
+		Risk first = model.calculateRisk(option, marketData, valueDate);
+		Risk second = model.calculateRisk(option, marketData, valueDate);
+		assertEquals(first.getValue(), second.getValue(), 0.0);
+		verify(option, times(1)).getStrike();
+		verify(option, times(1)).getExpiryDate();
+		
+		// a new value date recompiles the context
+		Risk nextDay = model.calculateRisk(option, marketData, valueDate.plusDays(1));
+		assertTrue(nextDay.getValue() < first.getValue());
+		verify(option, times(2)).getStrike();
+		
+		// as does a change to the reference data
+		OptionReferenceDataMap.insert(
+				"ContextOption",
+				new OptionReferenceData("ContextOption", underlying, 7275.0, LocalDate.of(2017, 06, 16), Type.CALL, 0.0, 0.05)
+				);
+		Risk newRate = model.calculateRisk(option, marketData, valueDate.plusDays(1));
+		assertTrue(newRate.getValue() > nextDay.getValue());
+		verify(option, times(3)).getStrike();
+	}
+
+	@Test
+	public void testPricingContextCacheEviction() throws MissingReferenceDataException {
+		System.out.println("Testing PricingContextCache keys and eviction...");
+		Security underlying = new Security("EvictionUnderlying");
+		LocalDate expiry = LocalDate.of(2017, 06, 16);
+		OptionReferenceDataMap.insert(
+				"EvictionOption",
+				new OptionReferenceData("EvictionOption", underlying, 7275.0, expiry, Type.CALL, 0.0, 0.0)
+				);
+
+		// options sharing an identifier don't share a context
+		EuropeanOption european = new EuropeanOption("EvictionOption", underlying, 7275.0, expiry, Type.CALL);
+		EuropeanOption american = new AmericanOption("EvictionOption", underlying, 7275.0, expiry, Type.CALL);
+		EuropeanOption otherStrike = new EuropeanOption("EvictionOption", underlying, 7300.0, expiry, Type.CALL);
+		PricingContextCache cache = new PricingContextCache();
+		LocalDate valueDate = LocalDate.of(2017, 05, 16);
+		EuropeanOptionPricingContext context = cache.getPricingContext(european, valueDate);
+		assertSame(context, cache.getPricingContext(european, valueDate));
+		assertNotSame(context, cache.getPricingContext(american, valueDate));
+		assertEquals(7300.0, cache.getPricingContext(otherStrike, valueDate).getStrike(), 0.0);
+		assertEquals(3, cache.size());
+
+		// released options are dropped
+		cache.remove(american);
+		assertEquals(2, cache.size());
+
+		// as are expired options, on the first use of a later value date
+		EuropeanOption later = new EuropeanOption("EvictionOption", underlying, 7275.0, expiry.plusMonths(1), Type.CALL);
+		cache.getPricingContext(later, expiry.plusDays(1));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testReleaseDropsImpliedVolatilitySeed() throws MarketDataException, ModelException {
+		System.out.println("Testing EuropeanOptionModel release drops the implied vol seed...");
+		Security underlying = new Security("SeedUnderlying");
+		LocalDate expiry = LocalDate.of(2017, 06, 16);
+		OptionReferenceDataMap.insert(
+				"SeedOption",
+				new OptionReferenceData("SeedOption", underlying, 7275.0, expiry, Type.CALL, 0.0, 0.0)
+				);
+		EuropeanOption option = new EuropeanOption("SeedOption", underlying, 7275.0, expiry, Type.CALL);
+
+		MarketDataCollection marketData = mock(MarketDataCollection.class);
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("SeedUnderlying", 7275.0, MarketData.Type.PRICE));
+		when(marketData.getMarketData(option)).thenReturn(new MarketData("SeedOption", 78.5080, MarketData.Type.PRICE));
+
+		EuropeanOptionModel model = new EuropeanOptionModel();
+		model.calculateRisk(option, marketData, LocalDate.of(2017, 05, 16));
+		assertFalse(Double.isNaN(EuropeanOptionModel.getImpliedVolatilitySeedCache().getVolatility("SeedOption")));
+
+		model.release(option);
+		assertTrue(Double.isNaN(EuropeanOptionModel.getImpliedVolatilitySeedCache().getVolatility("SeedOption")));
+	}
 }
@@ -0,0 +1,122 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BlackScholesBatchModel;
+import com.ngray.option.model.ImpliedVolatilityChainSolver;
+import com.ngray.option.model.OptionBatch;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+
+public class TestImpliedVolatilityChainSolver {
+
+	private final double spot = 100.0;
+	private final double riskFreeRate = 0.01;
+	private final double dividendYield = 0.02;
+	private final int strikes = 41;
+
+	/**
+	 * Create call and put chains on two expiries with a vol smile, in descending strike order
+	 * so that the solver has to sort them, and price them to give the option prices
+	 * @return
+	 */
+	private OptionBatch createChains(double[] volatilities) {
+		OptionBatch batch = new OptionBatch(4 * strikes);
+		int i = 0;
+		for (Type callOrPut : Type.values()) {
+			for (double timeToExpiry : new double[] { 0.1, 0.5 }) {
+				for (int j = strikes - 1; j >= 0; --j) {
+					double strike = 80.0 + j;
+					double volatility = 0.2 + 0.5 * Math.pow(Math.log(strike/spot), 2);
+					batch.set(i, callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+					volatilities[i++] = volatility;
+				}
+			}
+		}
+		BlackScholesBatchModel.calcOptionPricesAndGreeks(batch);
+		System.arraycopy(batch.getPrice(), 0, batch.getOptionPrice(), 0, batch.size());
+		return batch;
+	}
+
+	@Test
+	public void testSolve() {
+		System.out.println("\nTesting chain implied vol solve...");
+		double[] volatilities = new double[4 * strikes];
+		OptionBatch batch = createChains(volatilities);
+
+		int failures = ImpliedVolatilityChainSolver.solve(batch);
+		int totalIterations = 0;
+		for (int i = 0; i < batch.size(); ++i) {
+			assertEquals(Status.CONVERGED, batch.getStatus()[i]);
+			assertEquals(volatilities[i], batch.getVolatility()[i], 1e-10);
+			totalIterations += batch.getIterations()[i];
+		}
+		System.out.println("Failures = " + failures + ", average iterations = " + ((double)totalIterations)/batch.size());
+		assertEquals(0, failures);
+
+		// the same options solved independently
+		BlackScholesBatchModel.calcImpliedVolatilities(batch);
+		int independentIterations = 0;
+		for (int i = 0; i < batch.size(); ++i) {
+			independentIterations += batch.getIterations()[i];
+		}
+		System.out.println("Average iterations solved independently = " + ((double)independentIterations)/batch.size());
+		assertTrue(totalIterations < independentIterations);
+	}
+
+	@Test
+	public void testRejectsInconsistentPrices() {
+		System.out.println("\nTesting chain implied vol solve rejects inconsistent prices...");
+		double[] volatilities = new double[4 * strikes];
+		OptionBatch batch = createChains(volatilities);
+
+		// the first chain is 0.1 year calls in descending strike order, so index 10 is strike 110
+		// a call price above that of the next lower strike can't be right
+		batch.getOptionPrice()[10] = batch.getOptionPrice()[11] + 0.5;
+		// and a call price below intrinsic value has no volatility
+		batch.getOptionPrice()[40] = 15.0;
+
+		int failures = ImpliedVolatilityChainSolver.solve(batch);
+		System.out.println("Failures = " + failures);
+		assertEquals(2, failures);
+		assertEquals(Status.ARBITRAGE_VIOLATION, batch.getStatus()[10]);
+		assertTrue(Double.isNaN(batch.getVolatility()[10]));
+		assertEquals(0, batch.getIterations()[10]);
+		assertEquals(Status.BELOW_INTRINSIC_VALUE, batch.getStatus()[40]);
+		assertEquals(0, batch.getIterations()[40]);
+		assertEquals(Status.CONVERGED, batch.getStatus()[9]);
+		assertEquals(volatilities[9], batch.getVolatility()[9], 1e-10);
+	}
+
+	@Test
+	public void testRejectsOnlyAnOutlier() {
+		System.out.println("\nTesting chain implied vol solve rejects only an outlier in the middle of a chain...");
+		double[] volatilities = new double[4 * strikes];
+		OptionBatch batch = createChains(volatilities);
+
+		// strike 110 of the 0.1 year calls priced below every higher strike, but consistent with strike 109,
+		// so it would be accepted when checked against the strikes below it alone
+		batch.getOptionPrice()[10] = 0.5 * batch.getOptionPrice()[0];
+
+		int failures = ImpliedVolatilityChainSolver.solve(batch);
+		System.out.println("Failures = " + failures);
+		assertEquals(1, failures);
+		assertEquals(Status.ARBITRAGE_VIOLATION, batch.getStatus()[10]);
+		assertTrue(Double.isNaN(batch.getVolatility()[10]));
+		for (int i = 0; i < batch.size(); ++i) {
+			if (i != 10) {
+				assertEquals(Status.CONVERGED, batch.getStatus()[i]);
+				assertEquals(volatilities[i], batch.getVolatility()[i], 1e-10);
+			}
+		}
+
+		// an outlier at the lowest strike is rejected in favour of the strikes above it
+		batch = createChains(volatilities);
+		batch.getOptionPrice()[strikes - 1] = batch.getOptionPrice()[strikes - 2] + 1.5;
+		assertEquals(1, ImpliedVolatilityChainSolver.solve(batch));
+		assertEquals(Status.ARBITRAGE_VIOLATION, batch.getStatus()[strikes - 1]);
+		assertEquals(Status.CONVERGED, batch.getStatus()[strikes - 2]);
+	}
+}
@@ -0,0 +1,94 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.ImpliedVolatilityResult;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+import com.ngray.option.model.ImpliedVolatilitySeedCache;
+
+public class TestImpliedVolatilitySeedCache {
+
+	private final double spot = 100.0;
+	private final double strike = 105.0;
+	private final double timeToExpiry = 0.25;
+	private final double riskFreeRate = 0.01;
+	private final double dividendYield = 0.02;
+
+	@Test
+	public void testSeededSolves() {
+		System.out.println("\nTesting seeded implied vol solves on a stream of prices...");
+		ImpliedVolatilitySeedCache cache = new ImpliedVolatilitySeedCache();
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+
+		double volatility = 0.2;
+		for (int tick = 0; tick < 100; ++tick) {
+			volatility += tick % 2 == 0 ? 0.003 : -0.002;
+			double price = BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+			cache.solve("Option", Type.CALL, spot, strike, price, timeToExpiry, riskFreeRate, dividendYield, result);
+			assertTrue(result.isConverged());
+			assertEquals(volatility, result.getVolatility(), 1e-10);
+			assertEquals(result.getVolatility(), cache.getVolatility("Option"), 0.0);
+		}
+		System.out.println(cache);
+		assertEquals(100, cache.getSolveCount());
+		assertEquals(99, cache.getHitCount());
+		assertEquals(0, cache.getFallbackCount());
+		assertEquals(0.99, cache.getHitRate(), 1e-12);
+		assertTrue(cache.getAverageIterations() <= 3.0);
+	}
+
+	@Test
+	public void testSeedsKeptPerInstrument() {
+		System.out.println("\nTesting implied vol seeds are kept per instrument...");
+		ImpliedVolatilitySeedCache cache = new ImpliedVolatilitySeedCache();
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+
+		double callPrice = BlackScholesModel.calcCallOptionPrice(spot, strike, 0.3, timeToExpiry, riskFreeRate, dividendYield);
+		double putPrice = BlackScholesModel.calcPutOptionPrice(spot, strike, 0.15, timeToExpiry, riskFreeRate, dividendYield);
+		cache.solve("Call", Type.CALL, spot, strike, callPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+		cache.solve("Put", Type.PUT, spot, strike, putPrice, timeToExpiry, riskFreeRate, dividendYield, result);
+		assertEquals(0.3, cache.getVolatility("Call"), 1e-10);
+		assertEquals(0.15, cache.getVolatility("Put"), 1e-10);
+		assertEquals(0, cache.getHitCount());
+
+		// a price below intrinsic value leaves the seed untouched
+		cache.solve("Put", Type.PUT, spot, strike, 1.0, timeToExpiry, riskFreeRate, dividendYield, result);
+		assertEquals(Status.BELOW_INTRINSIC_VALUE, result.getStatus());
+		assertEquals(0.15, cache.getVolatility("Put"), 1e-10);
+
+		cache.remove("Call");
+		assertTrue(Double.isNaN(cache.getVolatility("Call")));
+		assertEquals(1, cache.size());
+		cache.resetStatistics();
+		assertEquals(0, cache.getSolveCount());
+	}
+
+	@Test
+	public void testCapacityEvictsLeastRecentlyUsed() {
+		System.out.println("\nTesting implied vol seed cache evicts least recently used seeds at capacity...");
+		ImpliedVolatilitySeedCache cache = new ImpliedVolatilitySeedCache(10);
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+
+		double price = BlackScholesModel.calcCallOptionPrice(spot, strike, 0.2, timeToExpiry, riskFreeRate, dividendYield);
+		for (int i = 0; i < 10; ++i) {
+			cache.solve("Option" + i, Type.CALL, spot, strike, price, timeToExpiry, riskFreeRate, dividendYield, result);
+		}
+		assertEquals(10, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+
+		// using Option0 again makes Option1 and Option2 the least recently used
+		cache.solve("Option0", Type.CALL, spot, strike, price, timeToExpiry, riskFreeRate, dividendYield, result);
+		cache.solve("Option10", Type.CALL, spot, strike, price, timeToExpiry, riskFreeRate, dividendYield, result);
+		System.out.println(cache);
+		assertEquals(9, cache.size());
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(0.2, cache.getVolatility("Option0"), 1e-10);
+		assertEquals(0.2, cache.getVolatility("Option10"), 1e-10);
+		assertTrue(Double.isNaN(cache.getVolatility("Option1")));
+		assertTrue(Double.isNaN(cache.getVolatility("Option2")));
+	}
+}
@@ -0,0 +1,87 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.ImpliedVolatilityResult;
+import com.ngray.option.model.ImpliedVolatilityResult.Status;
+import com.ngray.option.model.ImpliedVolatilitySolver;
+
+public class TestImpliedVolatilitySolver {
+
+	private final double spot = 100.0;
+	private final double riskFreeRate = 0.01;
+	private final double dividendYield = 0.02;
+
+	@Test
+	public void testRoundTrip() {
+		System.out.println("\nTesting implied vol round trip across strikes, vols and expiries...");
+		BlackScholesResult price = new BlackScholesResult();
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		double maxError = 0.0;
+		int maxIterations = 0;
+		for (Type callOrPut : Type.values()) {
+			for (double strike = 50.0; strike <= 200.0; strike += 10.0) {
+				for (double volatility = 0.05; volatility <= 1.5; volatility += 0.15) {
+					for (double timeToExpiry = 7.0/365.0; timeToExpiry <= 2.0; timeToExpiry *= 2.0) {
+						BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield, price);
+						// skip prices with too little time value to determine the vol
+						if (price.getVega() < 1e-4) {
+							continue;
+						}
+						ImpliedVolatilitySolver.solve(callOrPut, spot, strike, price.getPrice(), timeToExpiry, riskFreeRate, dividendYield, result);
+						assertEquals(Status.CONVERGED, result.getStatus());
+						maxError = Math.max(maxError, Math.abs(result.getVolatility() - volatility));
+						maxIterations = Math.max(maxIterations, result.getIterations());
+					}
+				}
+			}
+		}
+		System.out.println("Max error = " + maxError + ", max iterations = " + maxIterations);
+		assertTrue(maxError < 1e-8);
+		assertTrue(maxIterations <= 10);
+	}
+
+	@Test
+	public void testInitialGuess() {
+		System.out.println("\nTesting implied vol from initial guess...");
+		double price = BlackScholesModel.calcCallOptionPrice(spot, 110.0, 0.25, 0.5, riskFreeRate, dividendYield);
+		ImpliedVolatilityResult result = ImpliedVolatilitySolver.solve(Type.CALL, spot, 110.0, price, 0.5, riskFreeRate, dividendYield, 0.2501, new ImpliedVolatilityResult());
+		System.out.println(result);
+		assertTrue(result.isConverged());
+		assertEquals(0.25, result.getVolatility(), 1e-12);
+		assertTrue(result.getIterations() <= 3);
+	}
+
+	@Test
+	public void testPriceOutsideBounds() {
+		System.out.println("\nTesting implied vol for prices outside no-arbitrage bounds...");
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		ImpliedVolatilitySolver.solve(Type.CALL, spot, 80.0, 1.0, 0.5, riskFreeRate, dividendYield, result);
+		System.out.println(result);
+		assertEquals(Status.BELOW_INTRINSIC_VALUE, result.getStatus());
+		assertEquals(ImpliedVolatilitySolver.MIN_VOLATILITY, result.getVolatility(), 0.0);
+
+		ImpliedVolatilitySolver.solve(Type.PUT, spot, 80.0, 85.0, 0.5, riskFreeRate, dividendYield, result);
+		System.out.println(result);
+		assertEquals(Status.ABOVE_MAXIMUM_VALUE, result.getStatus());
+		assertEquals(ImpliedVolatilitySolver.MAX_VOLATILITY, result.getVolatility(), 0.0);
+	}
+
+	@Test
+	public void testInvalidInput() {
+		System.out.println("\nTesting implied vol for invalid input...");
+		ImpliedVolatilityResult result = new ImpliedVolatilityResult();
+		ImpliedVolatilitySolver.solve(Type.CALL, spot, 100.0, 5.0, 0.0, riskFreeRate, dividendYield, result);
+		System.out.println(result);
+		assertEquals(Status.INVALID_INPUT, result.getStatus());
+		assertTrue(Double.isNaN(result.getVolatility()));
+
+		ImpliedVolatilitySolver.solve(Type.PUT, spot, 100.0, Double.NaN, 0.5, riskFreeRate, dividendYield, result);
+		assertEquals(Status.INVALID_INPUT, result.getStatus());
+	}
+}
@@ -0,0 +1,152 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataException;
+import com.ngray.option.model.AverageRateOptionPayoff;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.model.MonteCarloEngine;
+import com.ngray.option.model.MonteCarloModel;
+import com.ngray.option.model.MonteCarloResult;
+import com.ngray.option.model.VanillaOptionPayoff;
+import com.ngray.option.risk.Risk;
+
+public class TestMonteCarloEngine {
+
+	private final double spot = 100.0;
+	private final double strike = 100.0;
+	private final double volatility = 0.25;
+	private final double timeToExpiry = 0.5;
+	private final double riskFreeRate = 0.03;
+	private final double dividendYield = 0.01;
+
+	@Test
+	public void testReproducible() {
+		System.out.println("\nTesting Monte Carlo results are reproducible from the seed...");
+		VanillaOptionPayoff payoff = new VanillaOptionPayoff(Type.CALL, strike);
+		MonteCarloEngine engine = new MonteCarloEngine(50001, 1, 42L);
+		MonteCarloResult sequential = engine.simulate(payoff, null, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, false, new MonteCarloResult());
+		MonteCarloResult parallel = engine.simulate(payoff, null, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+		System.out.println(sequential);
+		assertEquals(50002, sequential.getPaths());
+		assertEquals(sequential.toString(), parallel.toString());
+
+		MonteCarloResult reseeded = new MonteCarloEngine(50001, 1, 43L).simulate(payoff, null, spot, volatility, timeToExpiry,
+				riskFreeRate, dividendYield, false, new MonteCarloResult());
+		assertNotEquals(sequential.getPrice(), reseeded.getPrice(), 0.0);
+	}
+
+	@Test
+	public void testAgainstBlackScholes() {
+		System.out.println("\nTesting Monte Carlo against Black-Scholes...");
+		MonteCarloEngine engine = new MonteCarloEngine(200000, 1, 1L);
+		for (Type callOrPut : Type.values()) {
+			VanillaOptionPayoff payoff = new VanillaOptionPayoff(callOrPut, strike);
+			MonteCarloResult result = engine.simulate(payoff, null, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+			BlackScholesResult expected = BlackScholesModel.calcOptionPriceAndGreeks(callOrPut, spot, strike, volatility, timeToExpiry,
+					riskFreeRate, dividendYield, new BlackScholesResult());
+			System.out.println(result);
+			System.out.println(expected);
+			assertEquals(expected.getPrice(), result.getPrice(), 4 * result.getStandardError());
+			assertEquals(expected.getDelta(), result.getDelta(), 0.002);
+			assertEquals(expected.getGamma(), result.getGamma(), 0.0005);
+			assertEquals(expected.getVega(), result.getVega(), 0.003);
+			assertEquals(expected.getTheta(), result.getTheta(), 0.0005);
+			assertEquals(expected.getRho(), result.getRho(), 0.003);
+
+			// the option is its own perfect control
+			MonteCarloResult controlled = engine.simulate(payoff, payoff, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+			assertEquals(expected.getPrice(), controlled.getPrice(), 1e-10);
+			assertEquals(1.0, controlled.getControlVariateCoefficient(), 1e-10);
+		}
+	}
+
+	@Test
+	public void testJumps() {
+		System.out.println("\nTesting Monte Carlo with jumps...");
+		VanillaOptionPayoff payoff = new VanillaOptionPayoff(Type.PUT, strike);
+		MonteCarloEngine engine = new MonteCarloEngine(200000, 1, 7L, 0.5, -0.1, 0.15);
+		MonteCarloResult result = engine.simulate(payoff, null, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+		// with the option as its own control the price is the Merton series value
+		MonteCarloResult merton = engine.simulate(payoff, payoff, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+		System.out.println(result);
+		System.out.println(merton);
+		assertEquals(merton.getPrice(), result.getPrice(), 4 * result.getStandardError());
+		// downward jumps fatten the left tail, so the put is worth more than without them
+		assertTrue(merton.getPrice() > BlackScholesModel.calcPutOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield) + 0.5);
+	}
+
+	@Test
+	public void testAverageRateOption() {
+		System.out.println("\nTesting Monte Carlo with an average rate option...");
+		MonteCarloEngine engine = new MonteCarloEngine(50000, 50, 3L);
+		AverageRateOptionPayoff payoff = new AverageRateOptionPayoff(Type.CALL, strike);
+		VanillaOptionPayoff control = new VanillaOptionPayoff(Type.CALL, strike);
+		MonteCarloResult uncontrolled = engine.simulate(payoff, null, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+		MonteCarloResult controlled = engine.simulate(payoff, control, spot, volatility, timeToExpiry, riskFreeRate, dividendYield, true, new MonteCarloResult());
+		System.out.println(uncontrolled);
+		System.out.println(controlled);
+		assertEquals(uncontrolled.getPrice(), controlled.getPrice(), 4 * uncontrolled.getStandardError());
+		assertTrue(controlled.getStandardError() < uncontrolled.getStandardError());
+		// averaging damps the volatility, so the average rate option is worth less than the European
+		assertTrue(controlled.getPrice() < BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield));
+		assertTrue(controlled.getVega() > 0.0);
+	}
+
+	@Test
+	public void testMonteCarloModel() throws MarketDataException, ModelException {
+		System.out.println("\nTesting MonteCarloModel...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 06, 16));
+		when(option.getStrike()).thenReturn(7275.0);
+		when(option.getType()).thenReturn(Type.CALL);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getIdentifier()).thenReturn("MonteCarloOption");
+
+		OptionReferenceDataMap.insert(
+				"MonteCarloOption",
+				new OptionReferenceData("MonteCarloOption", underlying, 7275.0, LocalDate.of(2017, 06, 16), Type.CALL, 0.0, 0.0)
+				);
+
+		MarketDataCollection marketData = mock(MarketDataCollection.class);
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("Underlying", 7275.0, MarketData.Type.PRICE));
+		when(marketData.getMarketData(option)).thenReturn(new MarketData("MonteCarloOption", 0.12, MarketData.Type.VOLATILITY));
+
+		MonteCarloEngine engine = new MonteCarloEngine(100000, 1, 11L);
+		Risk risk = new MonteCarloModel(engine).calculateRisk(option, marketData, LocalDate.of(2017, 05, 16));
+		System.out.println(risk);
+		double timeToExpiry = 31.0/365.0;
+
+		// the model's estimate, controlled by the underlying, is a genuine estimate of the Black-Scholes price
+		MonteCarloResult result = engine.simulate(new VanillaOptionPayoff(Type.CALL, 7275.0), VanillaOptionPayoff.underlying(), 7275.0, 0.12,
+				timeToExpiry, 0.0, 0.0, true, new MonteCarloResult());
+		System.out.println(result);
+		assertEquals(result.getPrice(), risk.getValue(), 0.0);
+		assertTrue(result.getStandardError() > 0.0);
+		assertEquals(BlackScholesModel.calcCallOptionPrice(7275.0, 7275.0, 0.12, timeToExpiry, 0.0, 0.0), risk.getValue(), 4 * result.getStandardError());
+		// the control removes the part of the error which moves with the underlying
+		MonteCarloResult uncontrolled = engine.simulate(new VanillaOptionPayoff(Type.CALL, 7275.0), null, 7275.0, 0.12,
+				timeToExpiry, 0.0, 0.0, true, new MonteCarloResult());
+		assertTrue(result.getStandardError() < uncontrolled.getStandardError());
+		assertNotEquals(1.0, result.getControlVariateCoefficient(), 1e-3);
+		assertEquals(BlackScholesModel.calcCallOptionDelta(7275.0, 7275.0, 0.12, timeToExpiry, 0.0, 0.0), risk.getDelta(), 0.005);
+		assertEquals(0.12, risk.getImpliedVolatility(), 0.0);
+	}
+}
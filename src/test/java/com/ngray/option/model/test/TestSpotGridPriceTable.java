@@ -0,0 +1,150 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.MissingReferenceDataException;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.EuropeanOptionPricingContext;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.model.SpotGridPriceTable;
+import com.ngray.option.model.SpotGridPriceTableCache;
+import com.ngray.option.risk.Risk;
+
+public class TestSpotGridPriceTable {
+
+	private final LocalDate valueDate = LocalDate.of(2017, 05, 16);
+
+	private EuropeanOption createOption(String identifier, Type callOrPut, double strike) {
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 8, 18));
+		when(option.getStrike()).thenReturn(strike);
+		when(option.getType()).thenReturn(callOrPut);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getIdentifier()).thenReturn(identifier);
+
+		OptionReferenceDataMap.insert(
+				identifier,
+				new OptionReferenceData(identifier, underlying, strike, LocalDate.of(2017, 8, 18), callOrPut, 0.01, 0.02)
+				);
+		return option;
+	}
+
+	@Test
+	public void testInterpolation() throws ModelException, MissingReferenceDataException {
+		System.out.println("\nTesting SpotGridPriceTable interpolation...");
+		for (Type callOrPut : Type.values()) {
+			EuropeanOptionPricingContext context = EuropeanOptionPricingContext.compile(createOption("GridOption" + callOrPut, callOrPut, 7300.0), valueDate);
+			SpotGridPriceTable table = SpotGridPriceTable.build(context, 7275.0, 0.15,
+					SpotGridPriceTableCache.DEFAULT_POINTS, SpotGridPriceTableCache.DEFAULT_WIDTH_IN_STANDARD_DEVIATIONS);
+			System.out.println(table);
+			assertTrue(table.contains(7275.0));
+			assertFalse(table.contains(table.getUpperSpot() + 1.0));
+			assertFalse(table.contains(table.getLowerSpot() - 1.0));
+			assertTrue(table.getPriceInterpolationError() < 1e-3);
+
+			BlackScholesResult exact = new BlackScholesResult();
+			BlackScholesResult interpolated = new BlackScholesResult();
+			double maxPriceError = 0.0;
+			int samples = 1000;
+			for (int i = 0; i <= samples; ++i) {
+				double spot = table.getLowerSpot() + i * (table.getUpperSpot() - table.getLowerSpot())/samples;
+				BlackScholesModel.calcOptionPriceAndGreeks(context, spot, 0.15, exact);
+				table.interpolate(spot, interpolated);
+				maxPriceError = Math.max(maxPriceError, Math.abs(exact.getPrice() - interpolated.getPrice()));
+				assertEquals(exact.getDelta(), interpolated.getDelta(), 2 * table.getDeltaInterpolationError() + 1e-12);
+				assertEquals(exact.getGamma(), interpolated.getGamma(), 1e-6);
+				assertEquals(exact.getVega(), interpolated.getVega(), 1e-3);
+				assertEquals(exact.getTheta(), interpolated.getTheta(), 1e-4);
+				assertEquals(exact.getRho(), interpolated.getRho(), 1e-2);
+			}
+			System.out.println("Max price error = " + maxPriceError);
+			// the reported error is measured at the midpoints, where Hermite interpolation errs most
+			assertTrue(maxPriceError <= 2 * table.getPriceInterpolationError() + 1e-12);
+
+			// grid points are exact
+			BlackScholesModel.calcOptionPriceAndGreeks(context, table.getLowerSpot(), 0.15, exact);
+			assertEquals(exact.getPrice(), table.interpolate(table.getLowerSpot(), interpolated).getPrice(), 1e-9);
+			BlackScholesModel.calcOptionPriceAndGreeks(context, table.getUpperSpot(), 0.15, exact);
+			assertEquals(exact.getPrice(), table.interpolate(table.getUpperSpot(), interpolated).getPrice(), 1e-9);
+		}
+
+		EuropeanOptionPricingContext context = EuropeanOptionPricingContext.compile(createOption("GridOptionTiming", Type.CALL, 7300.0), valueDate);
+		SpotGridPriceTable table = SpotGridPriceTable.build(context, 7275.0, 0.15, 65, 4.0);
+		BlackScholesResult result = new BlackScholesResult();
+		int evaluations = 1000000;
+		double sum = 0.0;
+		long start = System.nanoTime();
+		for (int i = 0; i < evaluations; ++i) {
+			sum += BlackScholesModel.calcOptionPriceAndGreeks(context, 7200.0 + (i % 100), 0.15, result).getPrice();
+		}
+		long modelTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < evaluations; ++i) {
+			sum -= table.interpolate(7200.0 + (i % 100), result).getPrice();
+		}
+		long interpolationTime = System.nanoTime() - start;
+		System.out.println("Model time = " + modelTime/evaluations + "ns, interpolation time = " + interpolationTime/evaluations + "ns, checksum = " + sum);
+	}
+
+	@Test
+	public void testCache() {
+		System.out.println("\nTesting SpotGridPriceTableCache...");
+		EuropeanOption option = createOption("CachedGridOption", Type.PUT, 7250.0);
+		SpotGridPriceTableCache cache = new SpotGridPriceTableCache(33, 3.0, 0.001);
+
+		assertNull(cache.calculateRisk(option, 7275.0, valueDate));
+		SpotGridPriceTable table = cache.update(option, 7275.0, 0.15, valueDate);
+		assertNotNull(table);
+		assertEquals(1, cache.getRebuildCount());
+
+		Risk risk = cache.calculateRisk(option, 7300.0, valueDate);
+		System.out.println(risk);
+		BlackScholesResult exact = BlackScholesModel.calcOptionPriceAndGreeks(Type.PUT, 7300.0, 7250.0, 0.15, 94.0/365.0, 0.02, 0.01, new BlackScholesResult());
+		assertEquals(exact.getPrice(), risk.getValue(), table.getPriceInterpolationError());
+		assertEquals(exact.getDelta(), risk.getDelta(), table.getDeltaInterpolationError());
+		assertEquals(0.15, risk.getImpliedVolatility(), 0.0);
+		assertEquals(7300.0, risk.getUnderlyingPrice(), 0.0);
+
+		// small volatility moves and spot moves on the grid keep the table
+		assertSame(table, cache.update(option, 7300.0, 0.1505, valueDate));
+		// larger volatility moves, spot moves off the grid and a new value date rebuild it
+		assertNotSame(table, table = cache.update(option, 7300.0, 0.152, valueDate));
+		assertNull(cache.calculateRisk(option, table.getUpperSpot() * 1.01, valueDate));
+		assertNotSame(table, table = cache.update(option, table.getUpperSpot() * 1.01, 0.152, valueDate));
+		assertNull(cache.calculateRisk(option, 7300.0, valueDate.plusDays(1)));
+		assertNotSame(table, cache.update(option, 7300.0, 0.152, valueDate.plusDays(1)));
+		assertEquals(4, cache.getRebuildCount());
+
+		// options which can't be tabulated have no table
+		assertNull(cache.update(option, Double.NaN, Double.NaN, valueDate));
+		assertNull(cache.getTable(option));
+
+		// tables are kept per option, and dropped when the option is released
+		EuropeanOption sameIdentifier = createOption("CachedGridOption", Type.CALL, 7250.0);
+		assertNotNull(cache.update(sameIdentifier, 7275.0, 0.15, valueDate));
+		assertNull(cache.getTable(option));
+		assertNull(cache.calculateRisk(option, 7275.0, valueDate));
+		assertNotNull(cache.update(option, 7275.0, 0.15, valueDate));
+		assertEquals(2, cache.size());
+		cache.remove(sameIdentifier);
+		assertNull(cache.getTable(sameIdentifier));
+		assertNotNull(cache.getTable(option));
+		System.out.println(cache);
+		assertEquals(5, cache.getLookupCount());
+		assertEquals(1, cache.getInterpolationCount());
+	}
+}
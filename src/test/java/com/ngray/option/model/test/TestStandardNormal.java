@@ -0,0 +1,40 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.junit.Test;
+
+import com.ngray.option.model.StandardNormal;
+
+public class TestStandardNormal {
+
+	private final NormalDistribution reference = new NormalDistribution();
+
+	@Test
+	public void testCumulativeProbability() {
+		System.out.println("\nTesting standard normal CDF against commons-math...");
+		double maxError = 0.0;
+		for (double x = -40.0; x <= 40.0; x += 0.001) {
+			maxError = Math.max(maxError, Math.abs(reference.cumulativeProbability(x) - StandardNormal.cumulativeProbability(x)));
+		}
+		System.out.println("Max error = " + maxError);
+		assertTrue(maxError < 1e-15);
+
+		assertEquals(0.5, StandardNormal.cumulativeProbability(0.0), 0.0);
+		assertEquals(0.0, StandardNormal.cumulativeProbability(Double.NEGATIVE_INFINITY), 0.0);
+		assertEquals(1.0, StandardNormal.cumulativeProbability(Double.POSITIVE_INFINITY), 0.0);
+		assertTrue(Double.isNaN(StandardNormal.cumulativeProbability(Double.NaN)));
+	}
+
+	@Test
+	public void testDensity() {
+		System.out.println("\nTesting standard normal PDF against commons-math...");
+		double maxError = 0.0;
+		for (double x = -40.0; x <= 40.0; x += 0.001) {
+			maxError = Math.max(maxError, Math.abs(reference.density(x) - StandardNormal.density(x)));
+		}
+		System.out.println("Max error = " + maxError);
+		assertTrue(maxError < 1e-15);
+	}
+}
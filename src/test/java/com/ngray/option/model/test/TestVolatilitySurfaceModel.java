@@ -0,0 +1,191 @@
+package com.ngray.option.model.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+
+import org.apache.commons.math3.analysis.interpolation.BicubicInterpolator;
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataException;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.model.OptionBatch;
+import com.ngray.option.model.VolatilitySurfaceModel;
+import com.ngray.option.mongo.Price.SnapshotType;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.volatilitysurface.VolatilitySurface;
+import com.ngray.option.volatilitysurface.VolatilitySurfaceException;
+
+public class TestVolatilitySurfaceModel {
+
+	private final LocalDate valueDate = LocalDate.of(2017, 05, 16);
+	private final double[] daysToExpiry = { 10.0, 31.0, 59.0, 94.0, 185.0 };
+	private final double[] strikeOffsets = { -800.0, -600.0, -400.0, -200.0, 0.0, 200.0, 400.0, 600.0, 800.0 };
+
+	// a skewed smile which flattens with expiry
+	private double calculateSurfaceVolatility(double daysToExpiry, double strikeOffset) {
+		double moneyness = strikeOffset/1000.0;
+		return 0.14 + 0.02 * Math.sqrt(daysToExpiry/365.0) + (0.05 * moneyness * moneyness - 0.04 * moneyness) * 30.0/(30.0 + daysToExpiry);
+	}
+
+	private VolatilitySurface createSurface() {
+		double[][] impliedVolatilities = new double[daysToExpiry.length][strikeOffsets.length];
+		for (int i = 0; i < daysToExpiry.length; ++i) {
+			for (int j = 0; j < strikeOffsets.length; ++j) {
+				impliedVolatilities[i][j] = calculateSurfaceVolatility(daysToExpiry[i], strikeOffsets[j]);
+			}
+		}
+		return new VolatilitySurface("TestSurface", "TestSurface", valueDate, Type.CALL, SnapshotType.CLOSE, new BicubicInterpolator(),
+				daysToExpiry, strikeOffsets, impliedVolatilities);
+	}
+
+	@Test
+	public void testCalcOptionPricesAndGreeks() throws ModelException, VolatilitySurfaceException {
+		System.out.println("\nTesting VolatilitySurfaceModel on a hypothetical chain...");
+		VolatilitySurface surface = createSurface();
+		VolatilitySurfaceModel model = new VolatilitySurfaceModel(surface);
+
+		// every 25 point strike of calls and puts on a range of expiries, with some off the surface
+		double spot = 7275.0;
+		double atmStrike = 7300.0;
+		int strikes = 81;
+		double[] expiries = { 5.0, 17.0, 45.0, 73.0, 150.0 };
+		OptionBatch batch = new OptionBatch(2 * strikes * expiries.length);
+		int k = 0;
+		for (double days : expiries) {
+			for (int i = 0; i < strikes; ++i) {
+				for (Type callOrPut : Type.values()) {
+					batch.set(k++, callOrPut, spot, atmStrike - 1000.0 + 25.0 * i, Double.NaN, days/365.0, 0.01, 0.02);
+				}
+			}
+		}
+
+		int invalidPoints = model.calcOptionPricesAndGreeks(batch, atmStrike);
+		// the first expiry is before the surface starts, and strikes more than 800 from the atm strike are off its edges
+		assertEquals(2 * strikes + 4 * 2 * 16, invalidPoints);
+
+		BlackScholesResult result = new BlackScholesResult();
+		int valid = 0;
+		for (int i = 0; i < batch.size(); ++i) {
+			double days = batch.getTimeToExpiry()[i] * 365.0;
+			double strikeOffset = batch.getStrike()[i] - atmStrike;
+			if (!surface.isValidPoint(days, strikeOffset)) {
+				assertTrue(Double.isNaN(batch.getVolatility()[i]));
+				assertTrue(Double.isNaN(batch.getPrice()[i]));
+				continue;
+			}
+			++valid;
+			assertEquals(surface.getImpliedVolatility(days, strikeOffset), batch.getVolatility()[i], 0.0);
+			// the bicubic surface reproduces the smile closely between its nodes
+			assertEquals(calculateSurfaceVolatility(days, strikeOffset), batch.getVolatility()[i], 0.005);
+			BlackScholesModel.calcOptionPriceAndGreeks(batch.getType(i), spot, batch.getStrike()[i], batch.getVolatility()[i],
+					batch.getTimeToExpiry()[i], 0.01, 0.02, result);
+			assertEquals(result.getPrice(), batch.getPrice()[i], 1e-10);
+			assertEquals(result.getDelta(), batch.getDelta()[i], 1e-12);
+		}
+		assertEquals(batch.size() - invalidPoints, valid);
+
+		int repeats = 1000;
+		long start = System.nanoTime();
+		for (int i = 0; i < repeats; ++i) {
+			model.calcOptionPricesAndGreeks(batch, atmStrike);
+		}
+		long time = (System.nanoTime() - start)/repeats;
+		System.out.println("Priced " + batch.size() + " options in " + time/1000 + "us, " + time/batch.size() + "ns per option");
+	}
+
+	@Test
+	public void testCalculateRisk() throws ModelException, MarketDataException, VolatilitySurfaceException {
+		System.out.println("\nTesting VolatilitySurfaceModel with a hypothetical option...");
+		VolatilitySurfaceModel model = new VolatilitySurfaceModel(createSurface());
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 8, 18));
+		when(option.getStrike()).thenReturn(7525.0);
+		when(option.getType()).thenReturn(Type.PUT);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getIdentifier()).thenReturn("HypotheticalPut");
+		when(option.getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+
+		OptionReferenceDataMap.insert(
+				"HypotheticalPut",
+				new OptionReferenceData("HypotheticalPut", underlying, 7525.0, LocalDate.of(2017, 8, 18), Type.PUT, 0.02, 0.01)
+				);
+
+		// the option has no market data of its own
+		MarketDataCollection marketData = mock(MarketDataCollection.class);
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("Underlying", 7275.0, MarketData.Type.PRICE));
+
+		Risk risk = model.calculateRisk(option, marketData, valueDate);
+		System.out.println(risk);
+		double volatility = createSurface().getImpliedVolatility(94.0, 250.0);
+		assertEquals(volatility, risk.getImpliedVolatility(), 0.0);
+		assertEquals(BlackScholesModel.calcPutOptionPrice(7275.0, 7525.0, volatility, 94.0/365.0, 0.01, 0.02), risk.getValue(), 1e-10);
+		verify(marketData, never()).getMarketData(option);
+
+		// off the surface
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("Underlying", 6500.0, MarketData.Type.PRICE));
+		try {
+			model.calculateRisk(option, marketData, valueDate);
+			fail("Expected ModelException");
+		} catch (ModelException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCalculateRiskWithoutReferenceData() throws ModelException, MarketDataException, VolatilitySurfaceException {
+		System.out.println("\nTesting VolatilitySurfaceModel with a hypothetical option without reference data...");
+		VolatilitySurfaceModel model = new VolatilitySurfaceModel(createSurface());
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("UnreferencedUnderlying");
+
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getExpiryDate()).thenReturn(LocalDate.of(2017, 8, 18));
+		when(option.getStrike()).thenReturn(7525.0);
+		when(option.getType()).thenReturn(Type.PUT);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getIdentifier()).thenReturn("UnreferencedPut");
+		when(option.getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+
+		MarketDataCollection marketData = mock(MarketDataCollection.class);
+		when(marketData.getMarketData(underlying)).thenReturn(new MarketData("UnreferencedUnderlying", 7275.0, MarketData.Type.PRICE));
+
+		// with no reference data on the underlying, the option is priced at zero rates
+		double volatility = createSurface().getImpliedVolatility(94.0, 250.0);
+		Risk risk = model.calculateRisk(option, marketData, valueDate);
+		System.out.println(risk);
+		assertEquals(BlackScholesModel.calcPutOptionPrice(7275.0, 7525.0, volatility, 94.0/365.0, 0.0, 0.0), risk.getValue(), 1e-10);
+		verify(option, times(1)).getStrike();
+
+		// reference data for another option leaves the context valid
+		OptionReferenceDataMap.insert(
+				"UnreferencedOther",
+				new OptionReferenceData("UnreferencedOther", underlying, 7000.0, LocalDate.of(2017, 8, 18), Type.CALL, 0.02, 0.01)
+				);
+		model.calculateRisk(option, marketData, valueDate);
+		verify(option, times(1)).getStrike();
+
+		// but reference data for the option itself recompiles it
+		OptionReferenceDataMap.insert(
+				"UnreferencedPut",
+				new OptionReferenceData("UnreferencedPut", underlying, 7525.0, LocalDate.of(2017, 8, 18), Type.PUT, 0.02, 0.01)
+				);
+		risk = model.calculateRisk(option, marketData, valueDate);
+		verify(option, times(2)).getStrike();
+		assertEquals(BlackScholesModel.calcPutOptionPrice(7275.0, 7525.0, volatility, 94.0/365.0, 0.01, 0.02), risk.getValue(), 1e-10);
+	}
+}
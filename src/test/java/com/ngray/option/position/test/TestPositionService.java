@@ -0,0 +1,130 @@
+package com.ngray.option.position.test;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.ngray.option.ig.position.IGPosition;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.position.Position;
+import com.ngray.option.position.PositionListener;
+import com.ngray.option.position.PositionService;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskService;
+
+public class TestPositionService {
+
+	// exposes the position building of initialize without a session
+	private static class TestService extends PositionService {
+
+		TestService(int threads) {
+			this(threads, null);
+		}
+
+		TestService(int threads, RiskService riskService) {
+			super("Test", null, riskService, null, null);
+			setInitializationThreads(threads);
+		}
+
+		List<Position> build(List<IGPosition> igPositions) {
+			return createPositions(igPositions);
+		}
+
+		void subscribe(Position position) {
+			subscribeToRiskService(position, getRiskService());
+		}
+
+		void unsubscribe(Position position) {
+			unsubscribeFromRiskService(position, getRiskService());
+		}
+	}
+
+	private static IGPosition createIGPosition(String dealId, String epic, String instrumentType, String direction, double size) {
+		return IGPosition.fromJson(
+				"{\"market\": {\"epic\": \"" + epic + "\", \"instrumentType\": \"" + instrumentType + "\", \"bid\": 101.0, \"offer\": 102.0}, " +
+				"\"position\": {\"dealId\": \"" + dealId + "\", \"direction\": \"" + direction + "\", \"dealSize\": " + size + ", \"openLevel\": 100.0}}");
+	}
+
+	@Test
+	public void testParallelCreatePositions() {
+		System.out.println("\nTesting PositionService parallel position building...");
+		List<IGPosition> igPositions = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			if (i % 25 == 7) {
+				// no reference data for this option, so it is left out
+				igPositions.add(createIGPosition("Deal" + i, "OP.UNKNOWN" + i, "OPT_INDICES", "BUY", 1.0));
+			} else {
+				igPositions.add(createIGPosition("Deal" + i, "Security" + i, "SHARES", i % 2 == 0 ? "BUY" : "SELL", 1.0 + i));
+			}
+		}
+
+		List<Position> sequential = new TestService(1).build(igPositions);
+		List<Position> parallel = new TestService(4).build(igPositions);
+		assertEquals(96, sequential.size());
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < sequential.size(); ++i) {
+			assertEquals(sequential.get(i).getId(), parallel.get(i).getId());
+			assertEquals(sequential.get(i).getPositionPnL(), parallel.get(i).getPositionPnL(), 0.0);
+			assertEquals(sequential.get(i).getPositionRisk().getDelta(), parallel.get(i).getPositionRisk().getDelta(), 0.0);
+		}
+		assertEquals(-2.0, parallel.get(1).getPositionRisk().getDelta(), 0.0);
+		assertTrue(new TestService(4).build(new ArrayList<>()).isEmpty());
+	}
+
+	@Test
+	public void testBatchRisk() throws InterruptedException {
+		System.out.println("\nTesting PositionService batched risk updates...");
+		RiskService riskService = new RiskService("TestRisk", new MarketDataService("TestMarketData", null), LocalDate.of(2017, 5, 16));
+		riskService.setBatchWindow(50);
+		TestService service = new TestService(1, riskService);
+		service.setBatchRisk(true);
+		List<IGPosition> igPositions = new ArrayList<>();
+		igPositions.add(createIGPosition("Deal0", "Security0", "SHARES", "SELL", 2.0));
+		Position position = service.build(igPositions).get(0);
+		List<Risk> updates = new CopyOnWriteArrayList<>();
+		service.addListener(new PositionListener() {
+			@Override
+			public void onPositionRiskUpdate(Position position) {
+				updates.add(position.getPositionRisk());
+			}
+			@Override
+			public void onPositionPnLUpdate(Position position) {
+			}
+			@Override
+			public void onOpenPosition(Position position) {
+			}
+			@Override
+			public void onDeletePosition(Position position) {
+			}
+			@Override
+			public void onUpdatePosition(Position position) {
+			}
+		});
+		service.subscribe(position);
+
+		// a burst of risk updates within the window updates the position once, with the latest risk
+		for (int i = 1; i <= 10; ++i) {
+			riskService.publishRisk(position.getInstrument(), new Risk(i, 0.1 * i, 0.0, 0.0, 0.0, 0.0, 0.15, i, 100.0));
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (updates.isEmpty()) {
+			assertTrue("Timed out waiting for the batch", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		Thread.sleep(100);
+		assertEquals(1, updates.size());
+		assertEquals(-2.0, updates.get(0).getDelta(), 1e-12);
+
+		// closing the position drops its batch subscription
+		service.unsubscribe(position);
+		riskService.publishRisk(position.getInstrument(), new Risk());
+		Thread.sleep(100);
+		assertEquals(1, updates.size());
+		riskService.shutdown();
+	}
+}
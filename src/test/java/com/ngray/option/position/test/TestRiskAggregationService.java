@@ -0,0 +1,158 @@
+package com.ngray.option.position.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.position.Position;
+import com.ngray.option.position.RiskAggregationService;
+import com.ngray.option.position.RiskAggregationService.Dimension;
+import com.ngray.option.position.RiskAggregationService.Totals;
+import com.ngray.option.risk.Risk;
+
+public class TestRiskAggregationService {
+
+	private static Security createSecurity(String identifier) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		when(security.getUnderlying()).thenReturn(security);
+		return security;
+	}
+
+	private static EuropeanOption createOption(String identifier, Security underlying, LocalDate expiry, Type callOrPut) {
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn(identifier);
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getExpiryDate()).thenReturn(expiry);
+		when(option.getType()).thenReturn(callOrPut);
+		return option;
+	}
+
+	private static Risk createRisk(Random random) {
+		return new Risk(random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(), -random.nextDouble(),
+				random.nextDouble(), 0.15, 0.0, 7000.0);
+	}
+
+	// the totals by brute force
+	private static double[] sum(List<Position> positions, String underlying, String expiry, String callOrPut) {
+		double[] result = new double[3];
+		for (Position position : positions) {
+			if ((underlying == null || underlying.equals(position.getUnderlying().getIdentifier())) &&
+					(expiry == null || expiry.equals(RiskAggregationService.getExpiry(position))) &&
+					(callOrPut == null || callOrPut.equals(RiskAggregationService.getCallOrPut(position)))) {
+				result[0] += 1.0;
+				result[1] += Double.isNaN(position.getPositionPnL()) ? 0.0 : position.getPositionPnL();
+				result[2] += Double.isNaN(position.getPositionRisk().getDelta()) ? 0.0 : position.getPositionRisk().getDelta();
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testIncrementalTotals() {
+		System.out.println("\nTesting RiskAggregationService totals...");
+		Random random = new Random(29);
+		Security[] underlyings = { createSecurity("FTSE"), createSecurity("DAX") };
+		LocalDate[] expiries = { LocalDate.of(2017, 6, 16), LocalDate.of(2017, 7, 21), LocalDate.of(2017, 9, 15) };
+
+		RiskAggregationService aggregation = new RiskAggregationService("Test");
+		List<Position> positions = new ArrayList<>();
+		for (int i = 0; i < 200; ++i) {
+			Security underlying = underlyings[i % underlyings.length];
+			FinancialInstrument instrument = i % 10 == 0 ? underlying :
+				createOption("Option" + i, underlying, expiries[i % expiries.length], i % 3 == 0 ? Type.PUT : Type.CALL);
+			Position position = new Position("Deal" + i, instrument, 1 + random.nextInt(5), 100.0);
+			positions.add(position);
+			aggregation.updatePosition("Account", position);
+		}
+		// new positions have no risk or PnL yet
+		assertEquals(200, aggregation.getTotals().getPositionCount());
+		assertEquals(0.0, aggregation.getTotals().getDelta(), 0.0);
+
+		for (int tick = 0; tick < 5000; ++tick) {
+			Position position = positions.get(random.nextInt(positions.size()));
+			if (random.nextBoolean()) {
+				position.updatePositionRisk(createRisk(random));
+			} else {
+				position.updatePositionPnL(new MarketData(position.getId(), 100.0 + random.nextGaussian(), MarketData.Type.PRICE));
+			}
+			aggregation.updatePosition("Account", position);
+		}
+
+		// closing positions removes their contribution
+		for (int i = 0; i < 20; ++i) {
+			aggregation.removePosition("Account", positions.remove(random.nextInt(positions.size())));
+		}
+		System.out.println(aggregation);
+		System.out.println(aggregation.getTotals());
+
+		String[][] levels = {
+				{ null, null, null },
+				{ "FTSE", null, null },
+				{ "DAX", "2017-07", null },
+				{ null, "2017-09", "PUT" },
+				{ "FTSE", "2017-06", "CALL" },
+				{ "DAX", RiskAggregationService.NONE, RiskAggregationService.NONE }
+		};
+		for (String[] level : levels) {
+			double[] expected = sum(positions, level[0], level[1], level[2]);
+			Totals totals = aggregation.getTotals("Account", level[0], level[1], level[2]);
+			assertEquals(expected[0], totals.getPositionCount(), 0.0);
+			assertEquals(expected[1], totals.getPnL(), 1e-9);
+			assertEquals(expected[2], totals.getDelta(), 1e-9);
+			assertEquals(totals.getDelta(), aggregation.getTotals(null, level[0], level[1], level[2]).getDelta(), 0.0);
+		}
+		assertEquals(0, aggregation.getTotals("Other", null, null, null).getPositionCount());
+
+		Map<String, Totals> byUnderlying = aggregation.getTotals(Dimension.UNDERLYING);
+		assertEquals(2, byUnderlying.size());
+		assertEquals(aggregation.getTotals().getGamma(), byUnderlying.get("FTSE").getGamma() + byUnderlying.get("DAX").getGamma(), 1e-9);
+		assertEquals(4, aggregation.getTotals(Dimension.EXPIRY).size());
+
+		positions.forEach(position -> aggregation.removePosition("Account", position));
+		assertEquals(0, aggregation.getPositionCount());
+		assertEquals(0, aggregation.getTotals().getPositionCount());
+		assertEquals(0.0, aggregation.getTotals().getVega(), 0.0);
+	}
+
+	@Test
+	public void testStaleRisk() {
+		System.out.println("\nTesting RiskAggregationService keeps stale risk without computing it...");
+		Security ftse = createSecurity("FTSE");
+		RiskAggregationService aggregation = new RiskAggregationService("Test");
+		Position position = new Position("Deal", ftse, 2.0, 100.0);
+		position.updatePositionRisk(new Risk(7000.0, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 7000.0, 7000.0));
+		aggregation.updatePosition("Account", position);
+		assertEquals(2.0, aggregation.getTotals().getDelta(), 0.0);
+
+		// stale risk keeps contributing its last value, and is counted, until it is read
+		position.markRiskStale(() -> {
+			fail("Stale risk computed by the aggregation");
+			return null;
+		});
+		aggregation.updatePosition("Account", position);
+		Totals totals = aggregation.getTotals();
+		System.out.println(totals);
+		assertEquals(1, totals.getStaleCount());
+		assertEquals(2.0, totals.getDelta(), 0.0);
+
+		position.updatePositionRisk(new Risk(7100.0, 0.5, 0.0, 0.0, 0.0, 0.0, 0.0, 7100.0, 7100.0));
+		aggregation.updatePosition("Account", position);
+		assertEquals(0, aggregation.getTotals().getStaleCount());
+		assertEquals(1.0, aggregation.getTotals().getDelta(), 0.0);
+		aggregation.removePosition("Account", position);
+		assertEquals(0, aggregation.getTotals().getPositionCount());
+	}
+}
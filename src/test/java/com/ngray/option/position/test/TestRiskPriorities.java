@@ -0,0 +1,126 @@
+package com.ngray.option.position.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.position.Position;
+import com.ngray.option.position.RiskPriorities;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.service.ConflatingExecutor;
+import com.ngray.option.ui.InstrumentVisibility;
+
+public class TestRiskPriorities {
+
+	private static Security createSecurity(String identifier) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		when(security.getUnderlying()).thenReturn(security);
+		return security;
+	}
+
+	private static EuropeanOption createOption(String identifier, Security underlying) {
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn(identifier);
+		when(option.getUnderlying()).thenReturn(underlying);
+		return option;
+	}
+
+	// risk on one contract with the given vega and gamma, the underlying at 100
+	private static Risk createRisk(double vega, double gamma) {
+		return new Risk(1.0, 0.5, gamma, vega, -0.1, 0.1, 0.15, 1.0, 100.0);
+	}
+
+	@Test
+	public void testBands() {
+		System.out.println("\nTesting RiskPriorities bands...");
+		Security underlying = createSecurity("FTSE");
+		EuropeanOption atm = createOption("ATM", underlying);
+		EuropeanOption otm = createOption("OTM", underlying);
+		Security other = createSecurity("DAX");
+
+		RiskPriorities priorities = new RiskPriorities("Test", 100.0, 10.0);
+		assertEquals(3, priorities.getBandCount());
+		assertEquals(2, priorities.getBand(atm));
+
+		// vega of 40 and gamma PnL of 0.5 x 0.2 x 1^2 per contract, on 5 contracts short
+		Position atmPosition = new Position("ATM1", atm, -5.0, 10.0);
+		atmPosition.updatePositionRisk(createRisk(40.0, 0.2));
+		assertEquals(200.5, RiskPriorities.getMateriality(atmPosition), 1e-9);
+		Position otmPosition = new Position("OTM1", otm, 2.0, 1.0);
+		otmPosition.updatePositionRisk(createRisk(1.0, 0.01));
+		priorities.updatePosition(atmPosition);
+		priorities.updatePosition(otmPosition);
+		System.out.println(priorities);
+
+		assertEquals(0, priorities.getBand(atm));
+		assertEquals(2, priorities.getBand(otm));
+		// the underlying carries the materiality of its options
+		assertEquals(200.5 + 2.01, priorities.getMateriality(underlying), 1e-9);
+		assertEquals(0, priorities.getBand(underlying));
+		assertEquals(2, priorities.getBand(other));
+
+		// updates replace a position's materiality, and closing removes it
+		atmPosition.updatePositionRisk(createRisk(3.0, 0.0));
+		priorities.updatePosition(atmPosition);
+		assertEquals(1, priorities.getBand(atm));
+		priorities.removePosition(atmPosition);
+		assertEquals(0.0, priorities.getMateriality(atm), 0.0);
+		assertEquals(2.01, priorities.getMateriality(underlying), 1e-9);
+
+		// everything on a visible underlying is urgent, until the last view closes
+		priorities.setVisible(underlying, true);
+		priorities.setVisible(underlying, true);
+		assertEquals(0, priorities.getBand(otm));
+		priorities.setVisible(underlying, false);
+		assertEquals(0, priorities.getBand(otm));
+		priorities.setVisible(underlying, false);
+		assertEquals(2, priorities.getBand(otm));
+		assertEquals(2, priorities.applyAsInt(other));
+	}
+
+	@Test
+	public void testVisibleScheduledFirst() throws InterruptedException {
+		System.out.println("\nTesting RiskPriorities schedules visible instruments before immaterial ones...");
+		Security shown = createSecurity("FTSE");
+		Security hidden = createSecurity("DAX");
+		RiskPriorities priorities = new RiskPriorities("Test", 100.0, 10.0);
+		ConflatingExecutor<FinancialInstrument> executor = new ConflatingExecutor<>("TestPriorities", 1, priorities, 10L, 100L, 1000L);
+
+		// hold the only thread while the hidden instrument, then the shown one, are submitted
+		CountDownLatch release = new CountDownLatch(1);
+		executor.submit(createSecurity("Blocker"), () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		List<FinancialInstrument> order = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(2);
+		InstrumentVisibility visibility = new InstrumentVisibility(priorities, shown);
+		visibility.setShowing(true);
+		executor.submit(hidden, () -> { order.add(hidden); done.countDown(); });
+		executor.submit(shown, () -> { order.add(shown); done.countDown(); });
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(shown, hidden), order);
+
+		// once hidden again it's no more urgent than any other immaterial instrument
+		visibility.setShowing(false);
+		visibility.setShowing(false);
+		assertFalse(priorities.isVisible(shown));
+		assertEquals(priorities.getBand(hidden), priorities.getBand(shown));
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,214 @@
+package com.ngray.option.risk.shard.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.ig.refdata.OptionReferenceData;
+import com.ngray.option.ig.refdata.OptionReferenceDataMap;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskCache;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+import com.ngray.option.risk.shard.ShardedRiskDataSource;
+
+public class TestShardedRiskDataSource {
+
+	private static final LocalDate VALUE_DATE = LocalDate.of(2017, 5, 16);
+
+	// wait for the next update whose underlying price is as given
+	private static Risk awaitRisk(BlockingQueue<Risk> updates, double underlyingPrice) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (System.currentTimeMillis() < deadline) {
+			Risk risk = updates.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			if (risk != null && risk.getUnderlyingPrice() == underlyingPrice) {
+				return risk;
+			}
+		}
+		fail("No risk with underlying price " + underlyingPrice);
+		return null;
+	}
+
+	@Test
+	public void testWorkers() throws InterruptedException, ModelException {
+		System.out.println("\nTesting ShardedRiskDataSource...");
+		Security ftse = new Security("SHARD.FTSE");
+		Security dax = new Security("SHARD.DAX");
+		EuropeanOption call = new EuropeanOption("SHARD.FTSE.C7000", ftse, 7000.0, LocalDate.of(2017, 12, 15), EuropeanOption.Type.CALL);
+		OptionReferenceDataMap.insert(call.getIdentifier(), new OptionReferenceData(call.getIdentifier(), ftse, 7000.0,
+				call.getExpiryDate(), EuropeanOption.Type.CALL, 0.03, 0.005));
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		ShardedRiskDataSource dataSource = new ShardedRiskDataSource("TestShards", marketDataService, VALUE_DATE, 2, 1);
+		RiskService riskService = new RiskService(marketDataService, VALUE_DATE, null, null, null, new RiskCache("TestRisk"), dataSource);
+		riskService.start();
+
+		BlockingQueue<Risk> callUpdates = new LinkedBlockingQueue<>();
+		BlockingQueue<Risk> daxUpdates = new LinkedBlockingQueue<>();
+		RiskListener callListener = (instrument, risk) -> callUpdates.add(risk);
+		riskService.addRiskListener(call, callListener);
+		riskService.addRiskListener(dax, (instrument, risk) -> daxUpdates.add(risk));
+
+		// the option goes to the worker of its underlying, and the next underlying to the other worker
+		assertEquals(0, dataSource.getShard(call));
+		assertEquals(-1, dataSource.getShard(ftse));
+		assertEquals(1, dataSource.getShard(dax));
+
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7000.0, MarketData.Type.PRICE));
+		marketDataService.publishData(call, new MarketData(call.getIdentifier(), 0.15, MarketData.Type.VOLATILITY));
+		marketDataService.publishData(dax, new MarketData(dax.getIdentifier(), 12499.0, 12501.0, MarketData.Type.PRICE));
+
+		// the workers' risk matches risk calculated here
+		Risk callRisk = awaitRisk(callUpdates, 7000.0);
+		Map<FinancialInstrument, MarketData> marketData = new HashMap<>();
+		marketData.put(ftse, new MarketData(ftse.getIdentifier(), 7000.0, MarketData.Type.PRICE));
+		marketData.put(call, new MarketData(call.getIdentifier(), 0.15, MarketData.Type.VOLATILITY));
+		Risk expected = call.getModel().calculateRisk(call, new MarketDataCollection(marketData), VALUE_DATE);
+		System.out.println(callRisk);
+		assertEquals(expected.getValue(), callRisk.getValue(), 1e-9);
+		assertEquals(expected.getDelta(), callRisk.getDelta(), 1e-12);
+		assertEquals(expected.getVega(), callRisk.getVega(), 1e-9);
+		assertEquals(expected.getVanna(), callRisk.getVanna(), 1e-12);
+		assertEquals(12500.0, awaitRisk(daxUpdates, 12500.0).getValue(), 0.0);
+		assertEquals(callRisk.getValue(), riskService.getRiskCache().getRisk(call).getValue(), 0.0);
+
+		// underlying ticks revalue the option within its worker
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7100.0, MarketData.Type.PRICE));
+		assertTrue(awaitRisk(callUpdates, 7100.0).getValue() > callRisk.getValue());
+		System.out.println(dataSource);
+		assertTrue(dataSource.getRiskCount() >= 3);
+
+		riskService.removeRiskListener(call, callListener);
+		assertEquals(-1, dataSource.getShard(call));
+		riskService.shutdown();
+	}
+
+	// a data source whose worker processes the test can kill
+	private static class KillableShardedRiskDataSource extends ShardedRiskDataSource {
+		private final Map<Integer, Process> processes = new ConcurrentHashMap<>();
+
+		KillableShardedRiskDataSource(String name, MarketDataService marketDataService, int shardCount) {
+			super(name, marketDataService, VALUE_DATE, shardCount, 1);
+		}
+
+		@Override
+		protected Process launchWorker(int shard, int port) throws IOException {
+			Process process = super.launchWorker(shard, port);
+			processes.put(shard, process);
+			return process;
+		}
+
+		void kill(int shard) {
+			processes.get(shard).destroyForcibly();
+		}
+	}
+
+	// wait for the instrument to be placed on the given shard
+	private static void awaitShard(ShardedRiskDataSource dataSource, FinancialInstrument instrument, int shard) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (dataSource.getShard(instrument) != shard) {
+			if (System.currentTimeMillis() > deadline) {
+				fail(instrument + " not placed on shard " + shard);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testWorkerFailure() throws InterruptedException {
+		System.out.println("\nTesting ShardedRiskDataSource worker failure...");
+		Security ftse = new Security("SHARDFAIL.FTSE");
+		Security dax = new Security("SHARDFAIL.DAX");
+		EuropeanOption call = new EuropeanOption("SHARDFAIL.FTSE.C7000", ftse, 7000.0, LocalDate.of(2017, 12, 15), EuropeanOption.Type.CALL);
+		OptionReferenceDataMap.insert(call.getIdentifier(), new OptionReferenceData(call.getIdentifier(), ftse, 7000.0,
+				call.getExpiryDate(), EuropeanOption.Type.CALL, 0.03, 0.005));
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		KillableShardedRiskDataSource dataSource = new KillableShardedRiskDataSource("TestShards", marketDataService, 2);
+		RiskService riskService = new RiskService(marketDataService, VALUE_DATE, null, null, null, new RiskCache("TestRisk"), dataSource);
+		riskService.start();
+
+		BlockingQueue<Risk> callUpdates = new LinkedBlockingQueue<>();
+		CountDownLatch callStale = new CountDownLatch(1);
+		riskService.addRiskListener(call, new RiskListener() {
+
+			@Override
+			public void onRiskUpdate(FinancialInstrument instrument, Risk risk) {
+				callUpdates.add(risk);
+			}
+
+			@Override
+			public void onRiskStale(FinancialInstrument instrument) {
+				callStale.countDown();
+			}
+		});
+		riskService.addRiskListener(dax, (instrument, risk) -> {});
+		assertEquals(0, dataSource.getShard(call));
+		assertEquals(1, dataSource.getShard(dax));
+
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7000.0, MarketData.Type.PRICE));
+		marketDataService.publishData(call, new MarketData(call.getIdentifier(), 0.15, MarketData.Type.VOLATILITY));
+		Risk callRisk = awaitRisk(callUpdates, 7000.0);
+
+		// the instruments of a failed worker are marked stale and moved to the remaining worker
+		dataSource.kill(0);
+		assertTrue(callStale.await(30, TimeUnit.SECONDS));
+		awaitShard(dataSource, call, 1);
+		assertEquals(1, dataSource.getLiveShardCount());
+		assertEquals(1, dataSource.getFailureCount());
+		assertEquals(callRisk.getValue(), awaitRisk(callUpdates, 7000.0).getValue(), 1e-9);
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7100.0, MarketData.Type.PRICE));
+		assertTrue(awaitRisk(callUpdates, 7100.0).getValue() > callRisk.getValue());
+
+		// with no worker left, risk is calculated in process
+		dataSource.kill(1);
+		awaitShard(dataSource, call, ShardedRiskDataSource.IN_PROCESS);
+		assertEquals(ShardedRiskDataSource.IN_PROCESS, dataSource.getShard(dax));
+		System.out.println(dataSource);
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7200.0, MarketData.Type.PRICE));
+		marketDataService.publishData(call, new MarketData(call.getIdentifier(), 0.15, MarketData.Type.VOLATILITY));
+		assertTrue(awaitRisk(callUpdates, 7200.0).getValue() > callRisk.getValue());
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testStartFailure() throws InterruptedException {
+		System.out.println("\nTesting ShardedRiskDataSource falls back to calculating in process...");
+		Security ftse = new Security("SHARDSTART.FTSE");
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		ShardedRiskDataSource dataSource = new ShardedRiskDataSource("TestShards", marketDataService, VALUE_DATE, 2, 1) {
+
+			@Override
+			protected Process launchWorker(int shard, int port) throws IOException {
+				throw new IOException("Cannot launch worker " + shard);
+			}
+		};
+		RiskService riskService = new RiskService(marketDataService, VALUE_DATE, null, null, null, new RiskCache("TestRisk"), dataSource);
+		riskService.start();
+
+		BlockingQueue<Risk> updates = new LinkedBlockingQueue<>();
+		riskService.addRiskListener(ftse, (instrument, risk) -> updates.add(risk));
+		assertEquals(ShardedRiskDataSource.IN_PROCESS, dataSource.getShard(ftse));
+		assertEquals(0, dataSource.getLiveShardCount());
+		marketDataService.publishData(ftse, new MarketData(ftse.getIdentifier(), 7000.0, MarketData.Type.PRICE));
+		assertEquals(7000.0, awaitRisk(updates, 7000.0).getValue(), 0.0);
+		riskService.shutdown();
+	}
+}
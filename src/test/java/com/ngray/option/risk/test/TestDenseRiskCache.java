@@ -0,0 +1,262 @@
+package com.ngray.option.risk.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.InstrumentRegistry;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.risk.DenseRiskCache;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+
+public class TestDenseRiskCache {
+
+	private static Security createSecurity(String identifier) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		return security;
+	}
+
+	private static void write(DenseRiskCache cache, int slot, double x) {
+		cache.write(slot, x, x, x, x, x, x, x, x, x, x, x, x, x);
+	}
+
+	@Test
+	public void testInsertAndRead() {
+		System.out.println("\nTesting DenseRiskCache insert and read...");
+		DenseRiskCache cache = new DenseRiskCache("Test", 2);
+		FinancialInstrument first = createSecurity("First");
+		FinancialInstrument second = createSecurity("Second");
+		FinancialInstrument third = createSecurity("Third");
+
+		assertNull(cache.getRisk(first));
+		Risk risk = new Risk(10.0, 0.5, 0.01, 12.0, -1.5, 3.0, 0.1, 0.2, 0.3, 0.4, 0.15, 10.0, 7000.0);
+		cache.insertRisk(first, risk);
+		Risk cached = cache.getRisk(first);
+		assertEquals(risk.toString(), cached.toString());
+		assertEquals(risk.getCharm(), cached.getCharm(), 0.0);
+		assertEquals(risk.getUnderlyingPrice(), cached.getUnderlyingPrice(), 0.0);
+
+		// slot reads, scaled as Risk.multiply scales
+		int slot = cache.getSlot(first);
+		assertEquals(0, slot);
+		assertSame(first, cache.getInstrument(slot));
+		double[] out = new double[DenseRiskCache.FIELDS];
+		assertTrue(cache.read(slot, -3.0, out));
+		Risk scaled = risk.multiply(-3.0);
+		assertEquals(scaled.getDelta(), out[DenseRiskCache.DELTA], 0.0);
+		assertEquals(scaled.getSpeed(), out[DenseRiskCache.SPEED], 0.0);
+		assertEquals(scaled.getImpliedVolatility(), out[DenseRiskCache.IMPLIED_VOLATILITY], 0.0);
+		assertEquals(scaled.getPrice(), out[DenseRiskCache.PRICE], 0.0);
+		assertEquals(0.5, cache.read(slot, DenseRiskCache.DELTA), 0.0);
+
+		// removed risk frees its slot, which reads as absent until it is reassigned
+		assertTrue(cache.getVersion(slot) > 0);
+		cache.removeRisk(first);
+		assertNull(cache.getRisk(first));
+		assertFalse(cache.read(slot, out));
+		assertEquals(0, cache.getVersion(slot));
+		assertNull(cache.getInstrument(slot));
+		assertEquals(0, cache.getSlotCount());
+
+		// freed slots are reused before unassigned ones, and instruments beyond the capacity go in the map
+		cache.insertRisk(second, risk);
+		assertEquals(slot, cache.getSlot(second));
+		assertSame(second, cache.getInstrument(slot));
+		cache.insertRisk(first, risk);
+		cache.insertRisk(third, risk);
+		assertEquals(2, cache.getSlotCount());
+		assertEquals(-1, cache.getSlot(third));
+		assertEquals(risk.getValue(), cache.getRisk(third).getValue(), 0.0);
+		cache.removeRisk(third);
+		assertNull(cache.getRisk(third));
+		System.out.println(cache);
+	}
+
+	@Test
+	public void testConsistentSnapshots() throws InterruptedException {
+		System.out.println("\nTesting DenseRiskCache consistent snapshots under concurrent writes...");
+		DenseRiskCache cache = new DenseRiskCache("Test", 4);
+		int slot = cache.getSlot(createSecurity("Instrument"));
+		write(cache, slot, 0.0);
+
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicInteger torn = new AtomicInteger();
+		AtomicLong reads = new AtomicLong();
+		Thread[] writers = new Thread[2];
+		for (int w = 0; w < writers.length; ++w) {
+			int writer = w;
+			writers[w] = new Thread(() -> {
+				for (int i = 0; !done.get(); ++i) {
+					write(cache, slot, writer * 1e9 + i);
+				}
+			});
+		}
+		Thread[] readers = new Thread[2];
+		for (int r = 0; r < readers.length; ++r) {
+			readers[r] = new Thread(() -> {
+				double[] out = new double[DenseRiskCache.FIELDS];
+				while (!done.get()) {
+					cache.read(slot, out);
+					reads.incrementAndGet();
+					for (int i = 1; i < out.length; ++i) {
+						if (out[i] != out[0]) {
+							torn.incrementAndGet();
+							break;
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : writers) thread.start();
+		for (Thread thread : readers) thread.start();
+		Thread.sleep(500);
+		done.set(true);
+		for (Thread thread : writers) thread.join();
+		for (Thread thread : readers) thread.join();
+
+		System.out.println("Reads: " + reads.get() + ", versions written: " + cache.getVersion(slot)/2);
+		assertTrue(reads.get() > 0);
+		assertEquals(0, torn.get());
+	}
+
+	@Test
+	public void testNoAllocation() {
+		System.out.println("\nTesting DenseRiskCache steady state allocation...");
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("Thread allocation not measurable on this JVM");
+			return;
+		}
+		com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+		long threadId = Thread.currentThread().getId();
+
+		DenseRiskCache cache = new DenseRiskCache("Test", 16);
+		int slot = cache.getSlot(createSecurity("Instrument"));
+		double[] out = new double[DenseRiskCache.FIELDS];
+		double sum = 0.0;
+		for (int i = 0; i < 20000; ++i) {
+			write(cache, slot, i);
+			cache.read(slot, 2.0, out);
+			sum += out[DenseRiskCache.DELTA];
+		}
+
+		long ticks = 100000;
+		long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < ticks; ++i) {
+			write(cache, slot, i);
+			cache.read(slot, 2.0, out);
+			sum += out[DenseRiskCache.DELTA];
+		}
+		long time = System.nanoTime() - start;
+		long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+		System.out.println("Allocated " + allocated + " bytes over " + ticks + " writes and reads, " + time/ticks + "ns each, checksum " + sum);
+		assertTrue(allocated < 1024);
+	}
+
+	@Test
+	public void testRiskServiceListeners() {
+		System.out.println("\nTesting RiskService publishing into a DenseRiskCache...");
+		RiskService riskService = new RiskService(new MarketDataService("TestMarketData", null), LocalDate.of(2017, 5, 16),
+				null, null, null, new DenseRiskCache("TestRisk"));
+		FinancialInstrument security = createSecurity("Published");
+		List<Risk> updates = new ArrayList<>();
+		RiskListener first = (instrument, risk) -> updates.add(risk);
+		RiskListener second = (instrument, risk) -> updates.add(risk);
+		riskService.addRiskListener(security, first);
+		riskService.addRiskListener(security, second);
+
+		// every listener is passed the published risk, rather than a copy read back from the slot
+		Risk risk = new Risk(10.0, 0.5, 0.01, 12.0, -1.5, 3.0, 0.1, 0.2, 0.3, 0.4, 0.15, 10.0, 7000.0);
+		riskService.publishRisk(security, risk);
+		assertEquals(2, updates.size());
+		assertSame(risk, updates.get(0));
+		assertSame(risk, updates.get(1));
+		assertEquals(risk.getVanna(), riskService.getRisk(security).getVanna(), 0.0);
+
+		// the last unsubscription drops the risk and releases the instrument's id
+		int id = security.getInstrumentId();
+		riskService.removeRiskListener(security, first);
+		assertSame(security, InstrumentRegistry.getInstrument(id));
+		riskService.removeRiskListener(security, second);
+		assertNull(InstrumentRegistry.getInstrument(id));
+		assertEquals(-1, InstrumentRegistry.findId(security));
+		assertNull(riskService.getRisk(security));
+
+		// risk still arriving after the unsubscription is dropped without registering the instrument again
+		riskService.publishRisk(security, risk);
+		assertEquals(2, updates.size());
+		assertEquals(-1, InstrumentRegistry.findId(security));
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testResubscriptionReusesSlots() {
+		System.out.println("\nTesting DenseRiskCache slot reuse across resubscriptions...");
+		DenseRiskCache cache = new DenseRiskCache("TestRisk", 2);
+		RiskService riskService = new RiskService(new MarketDataService("TestMarketData", null), LocalDate.of(2017, 5, 16),
+				null, null, null, cache);
+		Risk risk = new Risk(10.0, 0.5, 0.01, 12.0, -1.5, 3.0, 0.1, 0.2, 0.3, 0.4, 0.15, 10.0, 7000.0);
+		RiskListener listener = (instrument, update) -> {};
+		for (int i = 0; i < 4 * cache.getCapacity(); ++i) {
+			FinancialInstrument security = createSecurity("Resubscribed");
+			riskService.addRiskListener(security, listener);
+			riskService.publishRisk(security, risk);
+			assertEquals(0, cache.getSlot(security));
+			riskService.removeRiskListener(security, listener);
+			assertEquals(0, cache.getSlotCount());
+		}
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testInsertRacingRemoval() throws InterruptedException {
+		System.out.println("\nTesting DenseRiskCache inserts racing the removal of their slot...");
+		DenseRiskCache cache = new DenseRiskCache("Test", 1);
+		FinancialInstrument removed = createSecurity("Removed");
+		FinancialInstrument reassigned = createSecurity("Reassigned");
+		int removedId = removed.getInstrumentId();
+		Risk removedRisk = new Risk(1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0);
+		Risk reassignedRisk = new Risk(2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0);
+		AtomicBoolean stop = new AtomicBoolean(false);
+		List<Thread> writers = new ArrayList<>();
+		for (int i = 0; i < 2; ++i) {
+			writers.add(new Thread(() -> {
+				while (!stop.get()) {
+					cache.insertRisk(removedId, removedRisk);
+				}
+			}));
+		}
+		writers.forEach(Thread::start);
+		try {
+			for (int i = 0; i < 200000; ++i) {
+				cache.removeRisk(removed);
+				cache.insertRisk(reassigned, reassignedRisk);
+				// an insert of the removed instrument's risk must not land in the slot reassigned meanwhile
+				Risk risk = cache.getRisk(reassigned);
+				assertEquals(2.0, risk.getValue(), 0.0);
+				assertEquals(2.0, risk.getUnderlyingPrice(), 0.0);
+				cache.removeRisk(reassigned);
+			}
+		} finally {
+			stop.set(true);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+	}
+}
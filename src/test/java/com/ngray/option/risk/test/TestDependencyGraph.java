@@ -0,0 +1,270 @@
+package com.ngray.option.risk.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.model.Model;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.risk.DependencyGraph;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+import com.ngray.option.service.ConflatingExecutor;
+
+public class TestDependencyGraph {
+
+	@Test
+	public void testTopologicalOrder() {
+		System.out.println("\nTesting DependencyGraph order and conflation...");
+		// an underlying with two options, and a spread and a book built from them
+		DependencyGraph<String> graph = new DependencyGraph<>();
+		assertTrue(graph.addDependency("Underlying", "Call"));
+		assertTrue(graph.addDependency("Underlying", "Put"));
+		assertTrue(graph.addDependency("Call", "Spread"));
+		assertTrue(graph.addDependency("Put", "Spread"));
+		assertTrue(graph.addDependency("Spread", "Book"));
+		assertTrue(graph.addDependency("Underlying", "Book"));
+		assertTrue(graph.addDependency("Other", "OtherCall"));
+		assertEquals(7, graph.size());
+
+		// cycles are rejected
+		assertFalse(graph.addDependency("Book", "Underlying"));
+		assertFalse(graph.addDependency("Call", "Call"));
+
+		// several ticks before a pass recalculate each node once
+		assertEquals(4, graph.markChanged("Underlying"));
+		assertEquals(0, graph.markChanged("Underlying"));
+		assertEquals(0, graph.markChanged("Call"));
+		List<String> dirty = graph.takeDirty();
+		System.out.println(dirty + " " + graph);
+		assertEquals(4, dirty.size());
+		assertTrue(dirty.indexOf("Call") < dirty.indexOf("Spread"));
+		assertTrue(dirty.indexOf("Put") < dirty.indexOf("Spread"));
+		assertEquals(3, dirty.indexOf("Book"));
+		assertEquals(Collections.emptyList(), graph.takeDirty());
+
+		// only the affected nodes are marked
+		assertEquals(2, graph.markChanged("Put"));
+		assertEquals(Arrays.asList("Spread", "Book"), graph.takeDirty());
+		assertEquals(1, graph.markChanged("Other"));
+		assertEquals(Collections.singletonList("OtherCall"), graph.takeDirty());
+
+		assertEquals(5, graph.getChangeCount());
+		assertEquals(7, graph.getMarkedCount());
+		assertEquals(6, graph.getConflatedCount());
+		assertEquals(3, graph.getPassCount());
+		assertEquals(7, graph.getTakenCount());
+
+		// removed nodes are forgotten
+		graph.markChanged("Underlying");
+		graph.removeNode("Spread");
+		assertTrue(graph.getDependents("Underlying").contains("Book"));
+		List<String> remaining = graph.takeDirty();
+		assertFalse(remaining.contains("Spread"));
+		assertEquals(3, remaining.size());
+		graph.removeNode("OtherCall");
+		assertFalse(graph.contains("Other"));
+		assertTrue(graph.getInputs("Book").contains("Underlying"));
+	}
+
+	@Test
+	public void testRiskServiceRecalculatesOnUnderlyingTick() throws ModelException {
+		System.out.println("\nTesting RiskService recalculates options on underlying ticks...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+
+		// a model which values the option at the underlying price times the volatility it's given
+		AtomicInteger valuations = new AtomicInteger();
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			valuations.incrementAndGet();
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double spot = marketData.getMarketData(underlying).getMid();
+			MarketData optionMarketData = marketData.getMarketData(instrument);
+			double volatility = optionMarketData.getType() == MarketData.Type.VOLATILITY ? optionMarketData.getMid() : 0.15;
+			return new Risk(spot * volatility, 0.5, 0.001, 10.0, -1.0, 1.0, volatility, spot * volatility, spot);
+		});
+
+		EuropeanOption[] options = new EuropeanOption[3];
+		for (int i = 0; i < options.length; ++i) {
+			options[i] = mock(EuropeanOption.class);
+			when(options[i].getIdentifier()).thenReturn("Option" + i);
+			when(options[i].getUnderlying()).thenReturn(underlying);
+			when(options[i].getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+			when(options[i].getModel()).thenReturn(model);
+		}
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7000.0, MarketData.Type.PRICE));
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16));
+		Risk[] published = new Risk[options.length];
+		RiskListener[] listeners = new RiskListener[options.length];
+		for (int i = 0; i < options.length; ++i) {
+			int index = i;
+			listeners[i] = riskService.addRiskListener(options[i], (instrument, risk) -> published[index] = risk);
+		}
+
+		// the options' own ticks value them at their implied volatility
+		for (EuropeanOption option : options) {
+			marketDataService.publishData(option, new MarketData(option.getIdentifier(), 100.0, MarketData.Type.PRICE));
+		}
+		assertEquals(options.length, valuations.get());
+		assertEquals(0.15 * 7000.0, published[0].getValue(), 1e-10);
+
+		// an underlying tick revalues every option once at its last volatility
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7100.0, MarketData.Type.PRICE));
+		assertEquals(2 * options.length, valuations.get());
+		for (Risk risk : published) {
+			assertEquals(0.15 * 7100.0, risk.getValue(), 1e-10);
+			assertEquals(7100.0, risk.getUnderlyingPrice(), 0.0);
+		}
+		System.out.println(riskService.getDependencyGraph());
+
+		// options without subscriptions are no longer revalued, and the last one releases the underlying
+		riskService.removeRiskListener(options[0], listeners[0]);
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7200.0, MarketData.Type.PRICE));
+		assertEquals(3 * options.length - 1, valuations.get());
+		assertEquals(0.15 * 7100.0, published[0].getValue(), 1e-10);
+		riskService.removeRiskListener(options[1], listeners[1]);
+		riskService.removeRiskListener(options[2], listeners[2]);
+		assertFalse(riskService.getDependencyGraph().contains(underlying));
+		assertTrue(marketDataService.getListeners(underlying).isEmpty());
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testRiskServiceExecutorRecalculatesUnderlyingAndOptionsInOneTick() throws ModelException, InterruptedException {
+		System.out.println("\nTesting RiskService recalculates an underlying and its options from one tick on the executor...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn("Option");
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+
+		// the underlying is valued at its price, and the option at the underlying price times its volatility
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double spot = marketData.getMarketData(underlying).getMid();
+			if (instrument == underlying) {
+				return new Risk(spot, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, spot, spot);
+			}
+			double volatility = marketData.getMarketData(instrument).getMid();
+			return new Risk(spot * volatility, 0.5, 0.001, 10.0, -1.0, 1.0, volatility, spot * volatility, spot);
+		});
+		when(underlying.getModel()).thenReturn(model);
+		when(option.getModel()).thenReturn(model);
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7000.0, MarketData.Type.PRICE));
+		ConflatingExecutor<FinancialInstrument> computeExecutor = new ConflatingExecutor<>("TestRiskCompute", 1);
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16), null, null, computeExecutor);
+		BlockingQueue<Risk> underlyingUpdates = new LinkedBlockingQueue<>();
+		BlockingQueue<Risk> optionUpdates = new LinkedBlockingQueue<>();
+		riskService.addRiskListener(underlying, (instrument, risk) -> underlyingUpdates.add(risk));
+		riskService.addRiskListener(option, (instrument, risk) -> optionUpdates.add(risk));
+		marketDataService.publishData(option, new MarketData("Option", 0.2, MarketData.Type.VOLATILITY));
+		assertEquals(0.2 * 7000.0, optionUpdates.poll(10, TimeUnit.SECONDS).getValue(), 1e-10);
+
+		// hold the only thread so both recalculations of the tick are pending together
+		CountDownLatch release = new CountDownLatch(1);
+		computeExecutor.submit(mock(Security.class), () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7100.0, MarketData.Type.PRICE));
+		release.countDown();
+
+		// neither replaces the other
+		Risk underlyingRisk = underlyingUpdates.poll(10, TimeUnit.SECONDS);
+		assertNotNull(underlyingRisk);
+		assertEquals(7100.0, underlyingRisk.getValue(), 0.0);
+		Risk optionRisk = optionUpdates.poll(10, TimeUnit.SECONDS);
+		assertNotNull(optionRisk);
+		assertEquals(0.2 * 7100.0, optionRisk.getValue(), 1e-10);
+		System.out.println(computeExecutor);
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testRiskServiceExecutorNeverRepricesAnOptionConcurrently() throws ModelException, InterruptedException {
+		System.out.println("\nTesting RiskService reprices an option on one key for its own and its underlying's ticks...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn("Option");
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+
+		// the revaluation following the underlying tick blocks until released
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+				MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+				double spot = marketData.getMarketData(underlying).getMid();
+				double volatility = marketData.getMarketData(instrument).getMid();
+				if (spot == 7100.0 && volatility == 0.2) {
+					entered.countDown();
+					release.await();
+				}
+				return new Risk(spot * volatility, 0.5, 0.001, 10.0, -1.0, 1.0, volatility, spot * volatility, spot);
+			} finally {
+				running.decrementAndGet();
+			}
+		});
+		when(option.getModel()).thenReturn(model);
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7000.0, MarketData.Type.PRICE));
+		ConflatingExecutor<FinancialInstrument> computeExecutor = new ConflatingExecutor<>("TestRiskCompute", 2);
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16), null, null, computeExecutor);
+		BlockingQueue<Risk> updates = new LinkedBlockingQueue<>();
+		riskService.addRiskListener(option, (instrument, risk) -> updates.add(risk));
+		marketDataService.publishData(option, new MarketData("Option", 0.2, MarketData.Type.VOLATILITY));
+		assertEquals(0.2 * 7000.0, updates.poll(10, TimeUnit.SECONDS).getValue(), 1e-10);
+
+		// the option's own tick during the revaluation waits for it, so the newer result is published last
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7100.0, MarketData.Type.PRICE));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		marketDataService.publishData(option, new MarketData("Option", 0.3, MarketData.Type.VOLATILITY));
+		Thread.sleep(200);
+		assertTrue(updates.isEmpty());
+		release.countDown();
+		assertEquals(0.2 * 7100.0, updates.poll(10, TimeUnit.SECONDS).getValue(), 1e-10);
+		assertEquals(0.3 * 7100.0, updates.poll(10, TimeUnit.SECONDS).getValue(), 1e-10);
+		assertEquals(1, maxRunning.get());
+		assertEquals(0.3 * 7100.0, riskService.getRiskCache().getRisk(option).getValue(), 1e-10);
+		riskService.shutdown();
+	}
+}
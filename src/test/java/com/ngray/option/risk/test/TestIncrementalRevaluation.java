@@ -0,0 +1,135 @@
+package com.ngray.option.risk.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.Type;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.model.BlackScholesModel;
+import com.ngray.option.model.BlackScholesResult;
+import com.ngray.option.model.ImpliedVolatilityResult;
+import com.ngray.option.model.ImpliedVolatilitySolver;
+import com.ngray.option.risk.IncrementalRevaluation;
+import com.ngray.option.risk.Risk;
+
+public class TestIncrementalRevaluation {
+
+	private static final LocalDate VALUE_DATE = LocalDate.of(2017, 5, 16);
+
+	private final double strike = 7300.0;
+	private final double timeToExpiry = 0.25;
+	private final double riskFreeRate = 0.01;
+	private final double dividendYield = 0.02;
+
+	private Risk calculateFullRisk(double spot, double optionPrice) {
+		ImpliedVolatilityResult impliedVolatility = ImpliedVolatilitySolver.solve(Type.CALL, spot, strike, optionPrice, timeToExpiry,
+				riskFreeRate, dividendYield, new ImpliedVolatilityResult());
+		double volatility = impliedVolatility.getVolatility();
+		BlackScholesResult result = BlackScholesModel.calcOptionPriceAndGreeks(Type.CALL, spot, strike, volatility, timeToExpiry,
+				riskFreeRate, dividendYield, new BlackScholesResult());
+		return new Risk(optionPrice, result.getDelta(), result.getGamma(), result.getVega(), result.getTheta(), result.getRho(),
+				result.getVanna(), result.getVolga(), result.getCharm(), result.getSpeed(), volatility, optionPrice, spot);
+	}
+
+	private double calculateOptionPrice(double spot, double volatility) {
+		return BlackScholesModel.calcCallOptionPrice(spot, strike, volatility, timeToExpiry, riskFreeRate, dividendYield);
+	}
+
+	@Test
+	public void testTickStream() {
+		System.out.println("\nTesting IncrementalRevaluation on a stream of ticks...");
+		EuropeanOption option = mock(EuropeanOption.class);
+		IncrementalRevaluation revaluation = new IncrementalRevaluation(0.002, 0.0025, 50);
+		Random random = new Random(17);
+		double spot = 7275.0;
+		double volatility = 0.15;
+		double maxDeltaError = 0.0;
+		double maxVolatilityError = 0.0;
+		int ticks = 5000;
+		for (int i = 0; i < ticks; ++i) {
+			// a tick of a point or so in the index and a fraction of a vol point in the option
+			spot += random.nextGaussian();
+			volatility += 0.0002 * random.nextGaussian();
+			double optionPrice = calculateOptionPrice(spot, volatility);
+			MarketData underlyingPrice = new MarketData("Underlying", spot, MarketData.Type.PRICE);
+			MarketData marketData = new MarketData("Option", optionPrice, MarketData.Type.PRICE);
+
+			Risk exact = calculateFullRisk(spot, optionPrice);
+			Risk risk = revaluation.revalue(option, underlyingPrice, marketData, VALUE_DATE);
+			if (risk == null) {
+				revaluation.recordFullRevaluation(option, underlyingPrice, marketData, exact, VALUE_DATE);
+				continue;
+			}
+			assertEquals(optionPrice, risk.getValue(), 0.0);
+			assertEquals(spot, risk.getUnderlyingPrice(), 0.0);
+			maxDeltaError = Math.max(maxDeltaError, Math.abs(exact.getDelta() - risk.getDelta()));
+			maxVolatilityError = Math.max(maxVolatilityError, Math.abs(exact.getImpliedVolatility() - risk.getImpliedVolatility()));
+			// gamma and theta are rolled forward in spot only, so drift with the volatility
+			assertEquals(exact.getGamma(), risk.getGamma(), 0.03 * exact.getGamma());
+			assertEquals(exact.getVega(), risk.getVega(), 0.01 * exact.getVega());
+			assertEquals(exact.getTheta(), risk.getTheta(), 0.03 * Math.abs(exact.getTheta()));
+		}
+		System.out.println(revaluation);
+		System.out.println("Max delta error = " + maxDeltaError + ", max volatility error = " + maxVolatilityError);
+		assertEquals(ticks, revaluation.getUpdateCount());
+		assertTrue(revaluation.getFullRevaluationRate() >= 1.0/50);
+		assertTrue(revaluation.getFullRevaluationRate() < 0.2);
+		assertTrue(maxDeltaError < 0.001);
+		assertTrue(maxVolatilityError < 0.0001);
+		assertTrue(revaluation.getMaxDeltaError() < 0.001);
+		assertTrue(revaluation.getMaxVolatilityError() < 0.0001);
+		assertEquals(0.0, revaluation.getMaxValueError(), 0.0);
+	}
+
+	@Test
+	public void testThresholds() {
+		System.out.println("\nTesting IncrementalRevaluation thresholds...");
+		EuropeanOption option = mock(EuropeanOption.class);
+		IncrementalRevaluation revaluation = new IncrementalRevaluation(0.002, 0.0025, 5);
+		double spot = 7275.0;
+		MarketData underlyingPrice = new MarketData("Underlying", spot, MarketData.Type.PRICE);
+		MarketData marketData = new MarketData("Option", calculateOptionPrice(spot, 0.15), MarketData.Type.PRICE);
+
+		// nothing to expand from until the first full revaluation
+		assertNull(revaluation.revalue(option, underlyingPrice, marketData, VALUE_DATE));
+		revaluation.recordFullRevaluation(option, underlyingPrice, marketData, calculateFullRisk(spot, marketData.getMid()), VALUE_DATE);
+
+		// small moves are expanded
+		MarketData smallSpotMove = new MarketData("Underlying", spot * 1.001, MarketData.Type.PRICE);
+		MarketData smallVolatilityMove = new MarketData("Option", 0.152, MarketData.Type.VOLATILITY);
+		Risk risk = revaluation.revalue(option, smallSpotMove, smallVolatilityMove, VALUE_DATE);
+		assertNotNull(risk);
+		assertEquals(0.152, risk.getImpliedVolatility(), 1e-12);
+		assertEquals(calculateOptionPrice(spot * 1.001, 0.152), risk.getValue(), 0.01);
+
+		// large moves are not
+		assertNull(revaluation.revalue(option, new MarketData("Underlying", spot * 1.003, MarketData.Type.PRICE), marketData, VALUE_DATE));
+		assertNull(revaluation.revalue(option, underlyingPrice, new MarketData("Option", 0.153, MarketData.Type.VOLATILITY), VALUE_DATE));
+
+		// and every fifth update since the last full revaluation is revalued in full
+		revaluation.recordFullRevaluation(option, underlyingPrice, marketData, calculateFullRisk(spot, marketData.getMid()), VALUE_DATE);
+		for (int i = 0; i < 4; ++i) {
+			assertNotNull(revaluation.revalue(option, underlyingPrice, marketData, VALUE_DATE));
+		}
+		assertNull(revaluation.revalue(option, underlyingPrice, marketData, VALUE_DATE));
+		System.out.println(revaluation);
+
+		// theta is applied over the days between value dates, not the time between calls
+		Risk base = calculateFullRisk(spot, marketData.getMid());
+		revaluation.recordFullRevaluation(option, underlyingPrice, marketData, base, VALUE_DATE);
+		MarketData unchangedVolatility = new MarketData("Option", base.getImpliedVolatility(), MarketData.Type.VOLATILITY);
+		assertEquals(base.getValue(), revaluation.revalue(option, underlyingPrice, unchangedVolatility, VALUE_DATE).getValue(), 1e-10);
+		assertEquals(base.getValue() + base.getTheta(),
+				revaluation.revalue(option, underlyingPrice, unchangedVolatility, VALUE_DATE.plusDays(1)).getValue(), 1e-10);
+
+		// valuations without usable greeks can't be expanded
+		revaluation.recordFullRevaluation(option, underlyingPrice, marketData, new Risk(), VALUE_DATE);
+		assertNull(revaluation.revalue(option, underlyingPrice, marketData, VALUE_DATE));
+	}
+}
@@ -0,0 +1,226 @@
+package com.ngray.option.risk.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.EuropeanOption;
+import com.ngray.option.financialinstrument.EuropeanOption.ExerciseStyle;
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.model.Model;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.position.Position;
+import com.ngray.option.risk.EagerRiskListener;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskListener;
+import com.ngray.option.risk.RiskService;
+import com.ngray.option.service.ConflatingExecutor;
+
+public class TestLazyRiskService {
+
+	private static Security createSecurity(String identifier, Model model) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		when(security.getModel()).thenReturn(model);
+		return security;
+	}
+
+	private static void tick(MarketDataService marketDataService, Security security, double price) {
+		marketDataService.publishData(security, new MarketData(security.getIdentifier(), price, MarketData.Type.PRICE));
+	}
+
+	@Test
+	public void testLazyMode() throws ModelException {
+		System.out.println("\nTesting RiskService lazy mode...");
+		AtomicInteger calculations = new AtomicInteger();
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			calculations.incrementAndGet();
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double price = marketData.getMarketData(instrument).getMid();
+			return new Risk(price, 1.0, 0.0, 0.0, 0.0, 0.0, Double.NaN, price, price);
+		});
+		Security lazySecurity = createSecurity("Lazy", model);
+		Security eagerSecurity = createSecurity("Eager", model);
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16));
+		riskService.setLazy(true);
+
+		List<FinancialInstrument> stale = new CopyOnWriteArrayList<>();
+		List<Risk> updates = new CopyOnWriteArrayList<>();
+		riskService.addRiskListener(lazySecurity, new RiskListener() {
+
+			@Override
+			public void onRiskUpdate(FinancialInstrument instrument, Risk risk) {
+				updates.add(risk);
+			}
+
+			@Override
+			public void onRiskStale(FinancialInstrument instrument) {
+				stale.add(instrument);
+			}
+		});
+		List<Risk> eagerUpdates = new CopyOnWriteArrayList<>();
+		EagerRiskListener eagerListener = (instrument, risk) -> eagerUpdates.add(risk);
+		riskService.addRiskListener(eagerSecurity, eagerListener);
+
+		// ticks only mark unread risk stale, and listeners hear of it once
+		for (int i = 0; i < 3; ++i) {
+			tick(marketDataService, lazySecurity, 100.0 + i);
+			tick(marketDataService, eagerSecurity, 200.0 + i);
+		}
+		assertEquals(3, calculations.get());
+		assertEquals(3, eagerUpdates.size());
+		assertEquals(1, stale.size());
+		assertTrue(updates.isEmpty());
+		assertTrue(riskService.isStale(lazySecurity));
+		assertFalse(riskService.isStale(eagerSecurity));
+
+		// the first read computes from the latest inputs, and later reads are memoized
+		assertEquals(102.0, riskService.getRisk(lazySecurity).getValue(), 0.0);
+		assertEquals(102.0, riskService.getRisk(lazySecurity).getValue(), 0.0);
+		assertEquals(4, calculations.get());
+		assertFalse(riskService.isStale(lazySecurity));
+		assertEquals(202.0, riskService.getRisk(eagerSecurity).getValue(), 0.0);
+
+		// a position reads its risk on demand
+		Position position = new Position("Deal", lazySecurity, -2.0, 100.0);
+		tick(marketDataService, lazySecurity, 110.0);
+		assertEquals(2, stale.size());
+		position.markRiskStale(() -> riskService.getRisk(lazySecurity));
+		assertEquals(4, calculations.get());
+		assertEquals(-220.0, position.getPositionRisk().getValue(), 0.0);
+		assertEquals(-220.0, position.getPositionRisk().getValue(), 0.0);
+		assertEquals(5, calculations.get());
+		System.out.println("Stale: " + riskService.getStaleCount() + ", lazy calculations: " + riskService.getLazyCalculationCount());
+		assertEquals(4, riskService.getStaleCount());
+		assertEquals(2, riskService.getLazyCalculationCount());
+
+		// leaving lazy mode computes on every tick again
+		tick(marketDataService, lazySecurity, 111.0);
+		riskService.setLazy(false);
+		tick(marketDataService, lazySecurity, 120.0);
+		assertFalse(riskService.isStale(lazySecurity));
+		assertEquals(1, updates.size());
+		assertEquals(120.0, riskService.getRisk(lazySecurity).getValue(), 0.0);
+		assertEquals(6, calculations.get());
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testLazyModeOnExecutor() throws ModelException, InterruptedException {
+		System.out.println("\nTesting RiskService lazy mode computes stale risk on its executor...");
+		List<Thread> calculationThreads = new CopyOnWriteArrayList<>();
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			calculationThreads.add(Thread.currentThread());
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double price = marketData.getMarketData(instrument).getMid();
+			return new Risk(price, 1.0, 0.0, 0.0, 0.0, 0.0, Double.NaN, price, price);
+		});
+		Security security = createSecurity("Lazy", model);
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16), null, null,
+				new ConflatingExecutor<>("TestRiskCompute", 1));
+		riskService.setLazy(true);
+
+		Position position = new Position("Deal", security, -2.0, 100.0);
+		BlockingQueue<Risk> updates = new LinkedBlockingQueue<>();
+		riskService.addRiskListener(security, new RiskListener() {
+
+			@Override
+			public void onRiskUpdate(FinancialInstrument instrument, Risk risk) {
+				position.updatePositionRisk(risk);
+				updates.add(risk);
+			}
+
+			@Override
+			public void onRiskStale(FinancialInstrument instrument) {
+				position.markRiskStale(() -> riskService.requestRisk(instrument));
+			}
+		});
+
+		// reading stale risk requests it and returns the last value, then the update arrives from the executor
+		tick(marketDataService, security, 100.0);
+		assertTrue(position.isRiskStale());
+		assertTrue(calculationThreads.isEmpty());
+		position.getPositionRisk();
+		assertEquals(100.0, updates.poll(10, TimeUnit.SECONDS).getValue(), 0.0);
+		assertEquals(-200.0, position.getPositionRisk().getValue(), 0.0);
+		assertFalse(position.isRiskStale());
+		assertFalse(riskService.isStale(security));
+		assertEquals(1, calculationThreads.size());
+		assertNotSame(Thread.currentThread(), calculationThreads.get(0));
+
+		tick(marketDataService, security, 110.0);
+		assertEquals(-200.0, position.getLastPositionRisk().getValue(), 0.0);
+		position.getPositionRisk();
+		assertEquals(110.0, updates.poll(10, TimeUnit.SECONDS).getValue(), 0.0);
+		assertEquals(-220.0, position.getLastPositionRisk().getValue(), 0.0);
+		assertEquals(2, riskService.getLazyCalculationCount());
+		riskService.shutdown();
+	}
+
+	@Test
+	public void testLazyModeKeepsOptionTickAcrossUnderlyingTick() throws ModelException {
+		System.out.println("\nTesting RiskService lazy mode keeps an option's own tick when its underlying ticks...");
+		Security underlying = mock(Security.class);
+		when(underlying.getIdentifier()).thenReturn("Underlying");
+
+		// a model which values the option at the underlying price times the volatility it's given
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double spot = marketData.getMarketData(underlying).getMid();
+			double volatility = marketData.getMarketData(instrument).getMid();
+			return new Risk(spot * volatility, 0.5, 0.001, 10.0, -1.0, 1.0, volatility, spot * volatility, spot);
+		});
+		EuropeanOption option = mock(EuropeanOption.class);
+		when(option.getIdentifier()).thenReturn("Option");
+		when(option.getUnderlying()).thenReturn(underlying);
+		when(option.getExerciseStyle()).thenReturn(ExerciseStyle.EUROPEAN);
+		when(option.getModel()).thenReturn(model);
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7000.0, MarketData.Type.PRICE));
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16));
+		riskService.setLazy(true);
+		RiskListener listener = (instrument, risk) -> {};
+		riskService.addRiskListener(option, listener);
+
+		marketDataService.publishData(option, new MarketData("Option", 0.15, MarketData.Type.VOLATILITY));
+		assertEquals(0.15 * 7000.0, riskService.getRisk(option).getValue(), 1e-10);
+
+		// the underlying tick after the option's own leaves its new volatility to be valued at the new spot
+		marketDataService.publishData(option, new MarketData("Option", 0.2, MarketData.Type.VOLATILITY));
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7100.0, MarketData.Type.PRICE));
+		assertTrue(riskService.isStale(option));
+		Risk risk = riskService.getRisk(option);
+		assertEquals(0.2, risk.getImpliedVolatility(), 0.0);
+		assertEquals(0.2 * 7100.0, risk.getValue(), 1e-10);
+
+		// a further underlying tick alone values it at its last volatility
+		marketDataService.publishData(underlying, new MarketData("Underlying", 7200.0, MarketData.Type.PRICE));
+		assertEquals(0.2 * 7200.0, riskService.getRisk(option).getValue(), 1e-10);
+		riskService.removeRiskListener(option, listener);
+		riskService.shutdown();
+	}
+}
@@ -0,0 +1,192 @@
+package com.ngray.option.risk.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.ngray.option.financialinstrument.FinancialInstrument;
+import com.ngray.option.financialinstrument.Security;
+import com.ngray.option.marketdata.MarketData;
+import com.ngray.option.marketdata.MarketDataCollection;
+import com.ngray.option.marketdata.MarketDataService;
+import com.ngray.option.model.Model;
+import com.ngray.option.model.ModelException;
+import com.ngray.option.risk.Risk;
+import com.ngray.option.risk.RiskBatchListener;
+import com.ngray.option.risk.RiskBatchPublisher;
+import com.ngray.option.risk.RiskService;
+
+public class TestRiskBatchPublisher {
+
+	private static Security createSecurity(String identifier, Model model) {
+		Security security = mock(Security.class);
+		when(security.getIdentifier()).thenReturn(identifier);
+		when(security.getModel()).thenReturn(model);
+		return security;
+	}
+
+	private static void awaitBatches(List<?> batches, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (batches.size() < count) {
+			assertTrue("Timed out waiting for " + count + " batches", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testWindow() throws InterruptedException {
+		System.out.println("\nTesting RiskBatchPublisher window...");
+		List<Map<FinancialInstrument, Risk>> batches = new CopyOnWriteArrayList<>();
+		RiskBatchPublisher publisher = new RiskBatchPublisher("TestWindow", batches::add);
+		Security first = createSecurity("First", null);
+		Security second = createSecurity("Second", null);
+
+		// with no window each update is its own batch
+		publisher.publish(first, new Risk());
+		assertEquals(1, batches.size());
+		assertEquals(1, batches.get(0).size());
+
+		// updates within the window are delivered together, the latest for each instrument
+		publisher.setWindowMillis(50);
+		Risk latest = new Risk(2.0, 0.5, 0.0, 0.0, 0.0, 0.0, 0.15, 2.0, 100.0);
+		publisher.publish(first, new Risk());
+		publisher.publish(second, new Risk());
+		publisher.publish(first, latest);
+		assertEquals(1, batches.size());
+		awaitBatches(batches, 2);
+		System.out.println(publisher);
+		assertEquals(2, batches.get(1).size());
+		assertSame(latest, batches.get(1).get(first));
+		assertEquals(4, publisher.getUpdateCount());
+		assertEquals(1, publisher.getConflatedCount());
+		assertEquals(2, publisher.getMaxBatchSize());
+		assertEquals(1.5, publisher.getAverageBatchSize(), 1e-12);
+
+		// shutdown drops the pending batch
+		publisher.publish(second, latest);
+		publisher.shutdown();
+		Thread.sleep(100);
+		assertEquals(2, batches.size());
+	}
+
+	@Test
+	public void testConcurrentPublishing() throws InterruptedException {
+		System.out.println("\nTesting RiskBatchPublisher delivery order under concurrent publishing...");
+		int updateCount = 20000;
+		Security[] securities = new Security[4];
+		for (int i = 0; i < securities.length; ++i) {
+			securities[i] = createSecurity("Security" + i, null);
+		}
+		Map<FinancialInstrument, Double> delivered = new ConcurrentHashMap<>();
+		AtomicInteger delivering = new AtomicInteger();
+		AtomicBoolean overlapped = new AtomicBoolean(false);
+		AtomicBoolean reordered = new AtomicBoolean(false);
+		RiskBatchPublisher publisher = new RiskBatchPublisher("TestConcurrent", batch -> {
+			if (delivering.incrementAndGet() > 1) {
+				overlapped.set(true);
+			}
+			batch.forEach((instrument, risk) -> {
+				Double previous = delivered.put(instrument, risk.getValue());
+				if (previous != null && previous > risk.getValue()) {
+					reordered.set(true);
+				}
+			});
+			delivering.decrementAndGet();
+		});
+
+		// each thread publishes rising values of its own instrument, while the window switches to and from zero
+		List<Thread> threads = new ArrayList<>();
+		for (Security security : securities) {
+			threads.add(new Thread(() -> {
+				for (int value = 1; value <= updateCount; ++value) {
+					publisher.publish(security, new Risk(value, 0.0, 0.0, 0.0, 0.0, 0.0, 0.15, value, 100.0));
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (int i = 0; threads.stream().anyMatch(Thread::isAlive); ++i) {
+			publisher.setWindowMillis(i % 3);
+			Thread.sleep(1);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		publisher.setWindowMillis(0);
+		System.out.println(publisher);
+
+		assertFalse("Batches were delivered concurrently", overlapped.get());
+		assertFalse("An older batch was delivered after a newer one", reordered.get());
+		for (Security security : securities) {
+			assertEquals(updateCount, delivered.get(security), 0.0);
+		}
+		publisher.shutdown();
+	}
+
+	@Test
+	public void testRiskServiceBatchListener() throws ModelException, InterruptedException {
+		System.out.println("\nTesting RiskService batch listeners...");
+		Model model = mock(Model.class);
+		when(model.calculateRisk(any(FinancialInstrument.class), any(MarketDataCollection.class), any(LocalDate.class))).thenAnswer(invocation -> {
+			FinancialInstrument instrument = (FinancialInstrument)invocation.getArguments()[0];
+			MarketDataCollection marketData = (MarketDataCollection)invocation.getArguments()[1];
+			double price = marketData.getMarketData(instrument).getMid();
+			return new Risk(price, 1.0, 0.0, 0.0, 0.0, 0.0, Double.NaN, price, price);
+		});
+		Security[] securities = new Security[10];
+		for (int i = 0; i < securities.length; ++i) {
+			securities[i] = createSecurity("Security" + i, model);
+		}
+
+		MarketDataService marketDataService = new MarketDataService("TestMarketData", null);
+		RiskService riskService = new RiskService("TestRisk", marketDataService, LocalDate.of(2017, 5, 16));
+		riskService.setBatchWindow(100);
+		List<Map<FinancialInstrument, Risk>> batches = new CopyOnWriteArrayList<>();
+		List<Map<FinancialInstrument, Risk>> oddBatches = new CopyOnWriteArrayList<>();
+		RiskBatchListener listener = batches::add;
+		RiskBatchListener oddListener = oddBatches::add;
+		for (int i = 0; i < securities.length; ++i) {
+			riskService.addRiskBatchListener(securities[i], listener);
+			if (i % 2 == 1) {
+				riskService.addRiskBatchListener(securities[i], oddListener);
+			}
+		}
+
+		// a burst of ticks is delivered as one batch, each listener seeing only its own instruments
+		for (int tick = 0; tick < 5; ++tick) {
+			for (int i = 0; i < securities.length; ++i) {
+				marketDataService.publishData(securities[i], new MarketData(securities[i].getIdentifier(), 100.0 + tick, MarketData.Type.PRICE));
+			}
+		}
+		awaitBatches(batches, 1);
+		awaitBatches(oddBatches, 1);
+		System.out.println(riskService.getBatchPublisher());
+		assertEquals(1, batches.size());
+		assertEquals(securities.length, batches.get(0).size());
+		assertEquals(104.0, batches.get(0).get(securities[3]).getValue(), 0.0);
+		assertEquals(securities.length/2, oddBatches.get(0).size());
+		assertFalse(oddBatches.get(0).containsKey(securities[2]));
+		try {
+			batches.get(0).clear();
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+		}
+
+		// the last batch subscription releases the market data
+		for (int i = 0; i < securities.length; ++i) {
+			riskService.removeRiskBatchListener(securities[i], listener);
+			riskService.removeRiskBatchListener(securities[i], oddListener);
+			assertTrue(marketDataService.getListeners(securities[i]).isEmpty());
+		}
+		riskService.shutdown();
+	}
+}
@@ -0,0 +1,268 @@
+package com.ngray.option.service.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.ngray.option.service.ConflatingExecutor;
+
+public class TestConflatingExecutor {
+
+	private static void awaitExecuted(ConflatingExecutor<?> executor, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getExecutedCount() < count || executor.getActiveCount() > 0 || executor.getQueueDepth() > 0) {
+			assertTrue("Timed out waiting for " + executor, System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testConflation() throws InterruptedException {
+		System.out.println("\nTesting ConflatingExecutor conflation...");
+		ConflatingExecutor<String> executor = new ConflatingExecutor<>("TestConflation", 1);
+		try {
+			// hold the only thread while updates for another key arrive
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			executor.submit("Blocker", () -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+			for (int i = 0; i < 100; ++i) {
+				int value = i;
+				executor.submit("Instrument", () -> values.add(value));
+			}
+			System.out.println(executor);
+			assertEquals(1, executor.getQueueDepth());
+			assertEquals(101, executor.getSubmittedCount());
+			assertEquals(99, executor.getConflatedCount());
+
+			release.countDown();
+			awaitExecuted(executor, 2);
+			System.out.println(executor);
+			assertEquals(Collections.singletonList(99), values);
+			assertEquals(2, executor.getExecutedCount());
+
+			// a pending update is dropped when its key is removed
+			CountDownLatch started2 = new CountDownLatch(1);
+			CountDownLatch release2 = new CountDownLatch(1);
+			executor.submit("Blocker", () -> {
+				started2.countDown();
+				try {
+					release2.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(started2.await(10, TimeUnit.SECONDS));
+			executor.submit("Instrument", () -> values.add(100));
+			executor.remove("Instrument");
+			release2.countDown();
+			Thread.sleep(50);
+			assertEquals(Collections.singletonList(99), values);
+
+			executor.resetStatistics();
+			assertEquals(0, executor.getSubmittedCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testOrderingPerKey() throws InterruptedException {
+		System.out.println("\nTesting ConflatingExecutor ordering per key...");
+		ConflatingExecutor<Integer> executor = new ConflatingExecutor<>("TestOrdering", 4);
+		try {
+			int keys = 20;
+			int updates = 2000;
+			Map<Integer, AtomicBoolean> running = new ConcurrentHashMap<>();
+			Map<Integer, AtomicInteger> lastValue = new ConcurrentHashMap<>();
+			AtomicInteger violations = new AtomicInteger();
+			for (int key = 0; key < keys; ++key) {
+				running.put(key, new AtomicBoolean());
+				lastValue.put(key, new AtomicInteger(-1));
+			}
+
+			for (int i = 0; i < updates; ++i) {
+				int key = i % keys;
+				int value = i;
+				executor.submit(key, () -> {
+					// no two tasks for a key run at once, and each sees a later update than the last
+					if (!running.get(key).compareAndSet(false, true)) {
+						violations.incrementAndGet();
+					}
+					if (lastValue.get(key).getAndSet(value) >= value) {
+						violations.incrementAndGet();
+					}
+					Thread.yield();
+					running.get(key).set(false);
+				});
+			}
+			awaitExecuted(executor, 1);
+			System.out.println(executor);
+
+			assertEquals(0, violations.get());
+			assertEquals(updates, executor.getSubmittedCount());
+			assertEquals(updates, executor.getExecutedCount() + executor.getConflatedCount());
+			// the latest update of every key is always run
+			for (int key = 0; key < keys; ++key) {
+				assertEquals(updates - keys + key, lastValue.get(key).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRemoveWhileRunning() throws InterruptedException {
+		System.out.println("\nTesting ConflatingExecutor remove while running...");
+		ConflatingExecutor<String> executor = new ConflatingExecutor<>("TestRemove", 2);
+		try {
+			AtomicBoolean running = new AtomicBoolean();
+			AtomicInteger violations = new AtomicInteger();
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			executor.submit("Instrument", () -> {
+				running.set(true);
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				order.add("First");
+				running.set(false);
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			// a task submitted after removing a running key still waits for the running task, though a thread is free
+			executor.remove("Instrument");
+			executor.submit("Instrument", () -> {
+				if (running.get()) {
+					violations.incrementAndGet();
+				}
+				order.add("Second");
+			});
+			Thread.sleep(50);
+			assertEquals(Collections.emptyList(), order);
+			release.countDown();
+			awaitExecuted(executor, 2);
+			System.out.println(executor);
+			assertEquals(Arrays.asList("First", "Second"), order);
+			assertEquals(0, violations.get());
+
+			// a removed key is forgotten once its run completes
+			assertEquals(1, executor.getKeyCount());
+			executor.remove("Instrument");
+			assertEquals(0, executor.getKeyCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		System.out.println("\nTesting ConflatingExecutor with a failing task...");
+		ConflatingExecutor<String> executor = new ConflatingExecutor<>("TestFailure", 1);
+		try {
+			AtomicInteger runs = new AtomicInteger();
+			executor.submit("Instrument", () -> { throw new IllegalStateException("Test failure"); });
+			awaitExecuted(executor, 1);
+			executor.submit("Instrument", () -> runs.incrementAndGet());
+			awaitExecuted(executor, 2);
+			System.out.println(executor);
+			assertEquals(1, executor.getFailedCount());
+			assertEquals(1, runs.get());
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testPriorityBands() throws InterruptedException {
+		System.out.println("\nTesting ConflatingExecutor priority bands...");
+		// keys starting with H are urgent, with a 20ms target, the rest lax with 200ms
+		ConflatingExecutor<String> executor = new ConflatingExecutor<>("TestPriority", 1, key -> key.startsWith("H") ? 0 : 1, 20, 200);
+		try {
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			executor.submit("Blocker", () -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+
+			// urgent keys overtake lax keys which arrived before them
+			for (int i = 0; i < 3; ++i) {
+				String key = "L" + i;
+				executor.submit(key, () -> order.add(key));
+			}
+			for (int i = 0; i < 3; ++i) {
+				String key = "H" + i;
+				executor.submit(key, () -> order.add(key));
+			}
+			release.countDown();
+			awaitExecuted(executor, 7);
+			assertEquals(Arrays.asList("H0", "H1", "H2", "L0", "L1", "L2"), order);
+
+			// but not once a lax key has waited past its target
+			order.clear();
+			CountDownLatch blocked = new CountDownLatch(1);
+			CountDownLatch unblock = new CountDownLatch(1);
+			executor.submit("Blocker", () -> {
+				blocked.countDown();
+				try {
+					unblock.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			executor.submit("Late", () -> order.add("Late"));
+			Thread.sleep(250);
+			executor.submit("H3", () -> order.add("H3"));
+			unblock.countDown();
+			awaitExecuted(executor, 10);
+			System.out.println(executor);
+			assertEquals(Arrays.asList("Late", "H3"), order);
+
+			assertEquals(2, executor.getBandCount());
+			assertEquals(4, executor.getRunCount(0));
+			assertEquals(6, executor.getRunCount(1));
+			assertTrue(executor.getMaxStalenessMillis(1) >= 250.0);
+			assertTrue(executor.getMeanStalenessMillis(1) <= executor.getMaxStalenessMillis(1));
+			assertTrue(executor.getLateCount(1) >= 1);
+			executor.resetStatistics();
+			assertEquals(0, executor.getRunCount(1));
+			assertEquals(0.0, executor.getMaxStalenessMillis(1), 0.0);
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+}